@@ -0,0 +1,108 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The region decoded in parallel by tiles must be the same size as the region decoded at once, so
+ * the parallel decode is a drop in replacement.
+ */
+public class ParallelRegionDecoderTest {
+
+	private static final int IMAGE_WIDTH = 1000;
+
+	private static final int IMAGE_HEIGHT = 900;
+
+	/**
+	 * Not a multiple of the tested sample sizes in either dimension
+	 */
+	private static final Rect REGION = new Rect(5, 3, 998, 898);
+
+	private Context mContext;
+
+	private File mFile;
+
+	private Uri mUri;
+
+	private ExecutorService mExecutor;
+
+	@Before
+	public void setUp() throws Exception {
+		mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+		mFile = new File(mContext.getCacheDir(), "parallel_region_decoder_test.jpg");
+		Bitmap image = Bitmap.createBitmap(IMAGE_WIDTH, IMAGE_HEIGHT, Bitmap.Config.ARGB_8888);
+		image.eraseColor(0xff336699);
+		FileOutputStream stream = new FileOutputStream(mFile);
+		try {
+			image.compress(Bitmap.CompressFormat.JPEG, 90, stream);
+		} finally {
+			stream.close();
+			image.recycle();
+		}
+		mUri = Uri.fromFile(mFile);
+		mExecutor = Executors.newFixedThreadPool(2);
+	}
+
+	@After
+	public void tearDown() {
+		mExecutor.shutdown();
+		//noinspection ResultOfMethodCallIgnored
+		mFile.delete();
+	}
+
+	@Test
+	public void decodeRegion_sizeMatchesSerialDecode() throws Exception {
+		BitmapRegionDecoder decoder =
+				BitmapUtils.newRegionDecoder(mContext.getContentResolver(), mUri);
+		ParallelRegionDecoder parallelDecoder =
+				new ParallelRegionDecoder(mContext, mUri, 3, mExecutor);
+		try {
+			for (int sampleSize : new int[]{1, 2, 4, 8}) {
+				BitmapFactory.Options options = new BitmapFactory.Options();
+				options.inSampleSize = sampleSize;
+				Bitmap serial = decoder.decodeRegion(REGION, options);
+				Bitmap parallel = parallelDecoder.decodeRegion(decoder, REGION, sampleSize, null);
+				try {
+					assertEquals("width by sample " + sampleSize, serial.getWidth(), parallel.getWidth());
+					assertEquals(
+							"height by sample " + sampleSize, serial.getHeight(), parallel.getHeight());
+				} finally {
+					serial.recycle();
+					parallel.recycle();
+				}
+			}
+		} finally {
+			parallelDecoder.close();
+			decoder.recycle();
+		}
+	}
+}
@@ -0,0 +1,469 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.net.Uri;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Crops many crop rectangles of the same image from a single decode.<br>
+ * The union of the crop rectangles is decoded once by the region decoder, sampled by the smallest
+ * sample size any of the crops needs, and every crop is transformed from the shared region into
+ * its own output and encoded to its save uri. The crops are produced in parallel on the given
+ * executor, the calling thread crops too so the batch completes even if no executor thread is free
+ * to help.<br>
+ * If the union is too large for the available memory or fails to decode, every crop decodes its
+ * own region as a single crop would.<br>
+ * See {@link ImageCropView#cropImagesAsync(List)} and {@link CropEngine}.
+ */
+public final class BatchCropper {
+
+	// region: Fields and Consts
+
+	/**
+	 * The number of batches cropped from a single decode of the union of their crop rectangles
+	 */
+	private static final AtomicInteger mSharedDecodeCount = new AtomicInteger();
+
+	private final Context mContext;
+
+	/**
+	 * The Android URI of the image to crop, null if cropping a bitmap
+	 */
+	private final Uri mUri;
+
+	/**
+	 * the bitmap to crop if not cropping image loaded from URI
+	 */
+	private final Bitmap mBitmap;
+
+	/**
+	 * the original width/height of the image to be cropped (for image loaded from URI)
+	 */
+	private final int mOrgWidth;
+
+	private final int mOrgHeight;
+
+	private final List<CropSpec> mSpecs;
+
+	private final int mDegreesRotated;
+
+	private final boolean mFlipHorizontally;
+
+	private final boolean mFlipVertically;
+
+	private final RegionDecoderSession mRegionDecoderSession;
+
+	private final DecodeCancelSignal mCancelSignal;
+
+	/**
+	 * The rectangle of every crop in the source image
+	 */
+	private final Rect[] mRects;
+
+	/**
+	 * The sample size every crop can be decoded by to get its requested size
+	 */
+	private final int[] mSampleSizes;
+
+	private final ImageCropView.CropResult[] mResults;
+
+	/**
+	 * The decoded union of the crop rectangles, null if every crop decodes its own region
+	 */
+	private Bitmap mRegion;
+
+	private final Rect mRegionRect = new Rect();
+
+	private int mRegionSampleSize = 1;
+
+	/**
+	 * The filter to resize the crops by their requested size
+	 */
+	private ImageCropView.ResizeFilter mResizeFilter = ImageCropView.ResizeFilter.BILINEAR;
+
+	/**
+	 * The executor to resample the crops on in parallel
+	 */
+	private Executor mResizeExecutor;
+	// endregion
+
+	BatchCropper(
+			Context context,
+			Uri uri,
+			Bitmap bitmap,
+			int orgWidth,
+			int orgHeight,
+			List<CropSpec> specs,
+			int degreesRotated,
+			boolean flipHorizontally,
+			boolean flipVertically,
+			RegionDecoderSession regionDecoderSession,
+			DecodeCancelSignal cancelSignal) {
+		mContext = context;
+		mUri = uri;
+		mBitmap = bitmap;
+		mOrgWidth = orgWidth;
+		mOrgHeight = orgHeight;
+		mSpecs = specs;
+		mDegreesRotated = degreesRotated;
+		mFlipHorizontally = flipHorizontally;
+		mFlipVertically = flipVertically;
+		mRegionDecoderSession = regionDecoderSession;
+		mCancelSignal = cancelSignal;
+		mRects = new Rect[specs.size()];
+		mSampleSizes = new int[specs.size()];
+		mResults = new ImageCropView.CropResult[specs.size()];
+	}
+
+	/**
+	 * The number of batches cropped from a single decode of the union of their crop rectangles.
+	 */
+	public static int getSharedDecodeCount() {
+		return mSharedDecodeCount.get();
+	}
+
+	/**
+	 * Set the filter to resize the crops by their requested size, see {@link Resampler}.
+	 */
+	void setResizeFilter(ImageCropView.ResizeFilter resizeFilter, Executor executor) {
+		mResizeFilter = resizeFilter;
+		mResizeExecutor = executor;
+	}
+
+	/**
+	 * Crop all crops of the batch, in parallel on the given executor if not null.
+	 *
+	 * @throws CancellationException if the cancel signal was cancelled, no cropped bitmap is kept
+	 */
+	List<ImageCropView.CropResult> crop(Executor executor) {
+		for (int i = 0; i < mSpecs.size(); i++) {
+			CropSpec spec = mSpecs.get(i);
+			mRects[i] =
+					BitmapUtils.getRectFromPoints(
+							spec.getCropPointsInt(),
+							mBitmap != null ? mBitmap.getWidth() : mOrgWidth,
+							mBitmap != null ? mBitmap.getHeight() : mOrgHeight,
+							spec.isFixAspectRatio(),
+							spec.getAspectRatioX(),
+							spec.getAspectRatioY());
+			int width = spec.getReqWidth() > 0 ? spec.getReqWidth() : mRects[i].width();
+			int height = spec.getReqHeight() > 0 ? spec.getReqHeight() : mRects[i].height();
+			mSampleSizes[i] =
+					BitmapUtils.calculateInSampleSizeByReqestedSize(
+							mRects[i].width(), mRects[i].height(), width, height);
+		}
+
+		try {
+			if (mUri != null) {
+				decodeUnionRegion();
+			}
+
+			BatchJob job = new BatchJob();
+			if (executor != null) {
+				for (int i = 1; i < mSpecs.size(); i++) {
+					try {
+						executor.execute(job);
+					} catch (RejectedExecutionException e) {
+						break;
+					}
+				}
+			}
+			job.run();
+			job.awaitCrops();
+
+			if (job.mCancelled) {
+				releaseResults();
+				throw new CancellationException("Batch crop cancelled");
+			}
+			return Arrays.asList(mResults);
+		} finally {
+			if (mRegion != null) {
+				BitmapPool.recycle(mRegion);
+				mRegion = null;
+			}
+		}
+	}
+
+	/**
+	 * Decode the union of the crop rectangles by the smallest sample size of the crops, unless it
+	 * doesn't fit the available memory, or the image format doesn't support region decoding.
+	 */
+	private void decodeUnionRegion() {
+		ImageHeader header = ImageHeaderCache.get(mContext, mUri);
+		if (mSpecs.size() < 2 || header != null && !header.regionDecodingSupported) {
+			return;
+		}
+
+		int sampleSize = Integer.MAX_VALUE;
+		for (int i = 0; i < mRects.length; i++) {
+			sampleSize = Math.min(sampleSize, mSampleSizes[i]);
+			if (i == 0) {
+				mRegionRect.set(mRects[i]);
+			} else {
+				mRegionRect.union(mRects[i]);
+			}
+		}
+
+		// the region is held together with the outputs being cropped from it
+		long available = MemoryBudget.getAvailableBitmapBytes(mContext);
+		long regionBytes =
+				(long) (mRegionRect.width() / sampleSize) * (mRegionRect.height() / sampleSize) * 4;
+		if (regionBytes * 2 > available) {
+			return;
+		}
+
+		try {
+			BitmapUtils.BitmapSampled region =
+					BitmapUtils.decodeSampledBitmapRegion(
+							mContext, mUri, mRegionRect, sampleSize, mRegionDecoderSession, mCancelSignal);
+			if (region.bitmap != null && mCancelSignal != null) {
+				mCancelSignal.checkDecoded(region.bitmap);
+			}
+			mRegion = region.bitmap;
+			mRegionSampleSize = region.sampleSize;
+			if (mRegion != null) {
+				mSharedDecodeCount.incrementAndGet();
+			}
+		} catch (CancellationException e) {
+			throw e;
+		} catch (Exception | OutOfMemoryError ignored) {
+			// every crop decodes its own region
+		}
+	}
+
+	/**
+	 * Crop and save (if save uri given) the crop of the given index.
+	 */
+	private ImageCropView.CropResult cropSpec(int index) {
+		CropSpec spec = mSpecs.get(index);
+		Bitmap bitmap = null;
+		int sampleSize = 1;
+		try {
+			if (mCancelSignal != null) {
+				mCancelSignal.throwIfCancelled();
+			}
+			if (mRegion != null) {
+				sampleSize = Math.max(mSampleSizes[index], mRegionSampleSize);
+				try {
+					bitmap = cropFromRegion(spec, mRects[index], sampleSize);
+				} catch (OutOfMemoryError e) {
+					MemoryBudget.onOutOfMemory();
+					bitmap = null;
+				}
+			}
+			if (bitmap == null) {
+				BitmapUtils.BitmapSampled bitmapSampled = cropSingle(spec);
+				bitmap = bitmapSampled.bitmap;
+				sampleSize = bitmapSampled.sampleSize;
+			}
+
+			Uri uri = null;
+			if (spec.getSaveUri() != null) {
+				BitmapUtils.writeBitmapToUri(
+						mContext,
+						bitmap,
+						spec.getSaveUri(),
+						spec.getSaveCompressFormat(),
+						spec.getSaveCompressQuality());
+				if (bitmap != null) {
+					BitmapPool.recycle(bitmap);
+					bitmap = null;
+				}
+				uri = spec.getSaveUri();
+			}
+			return newResult(index, bitmap, uri, null, sampleSize);
+		} catch (CancellationException e) {
+			if (bitmap != null) {
+				BitmapPool.recycle(bitmap);
+			}
+			throw e;
+		} catch (Exception e) {
+			if (bitmap != null) {
+				BitmapPool.recycle(bitmap);
+			}
+			return newResult(index, null, null, e, 1);
+		}
+	}
+
+	/**
+	 * Transform the crop of the given rectangle out of the decoded union region, drawn at the given
+	 * sample size.
+	 */
+	private Bitmap cropFromRegion(CropSpec spec, Rect rect, int sampleSize) {
+		int regionSampleSize = mRegionSampleSize;
+		int left = (rect.left - mRegionRect.left) / regionSampleSize;
+		int top = (rect.top - mRegionRect.top) / regionSampleSize;
+		int right = (rect.right - mRegionRect.left + regionSampleSize - 1) / regionSampleSize;
+		int bottom = (rect.bottom - mRegionRect.top + regionSampleSize - 1) / regionSampleSize;
+		Rect sourceRect =
+				new Rect(
+						left,
+						top,
+						Math.max(left + 1, Math.min(mRegion.getWidth(), right)),
+						Math.max(top + 1, Math.min(mRegion.getHeight(), bottom)));
+
+		return BitmapUtils.transformCrop(
+				mRegion,
+				sourceRect,
+				regionSampleSize / (float) sampleSize,
+				spec.getCropPointsInt(),
+				rect,
+				1f / sampleSize,
+				mDegreesRotated,
+				spec.isFixAspectRatio(),
+				spec.getAspectRatioX(),
+				spec.getAspectRatioY(),
+				mFlipHorizontally,
+				mFlipVertically,
+				spec.getReqWidth(),
+				spec.getReqHeight(),
+				spec.getReqSizeOptions(),
+				mResizeFilter,
+				mResizeExecutor);
+	}
+
+	/**
+	 * Crop the given crop by itself, decoding its own region.
+	 */
+	private BitmapUtils.BitmapSampled cropSingle(CropSpec spec) {
+		if (mUri != null) {
+			return BitmapUtils.cropBitmap(
+					mContext,
+					mUri,
+					spec.getCropPointsInt(),
+					mDegreesRotated,
+					mOrgWidth,
+					mOrgHeight,
+					spec.isFixAspectRatio(),
+					spec.getAspectRatioX(),
+					spec.getAspectRatioY(),
+					spec.getReqWidth(),
+					spec.getReqHeight(),
+					spec.getReqSizeOptions(),
+					mResizeFilter,
+					mResizeExecutor,
+					mFlipHorizontally,
+					mFlipVertically,
+					mRegionDecoderSession,
+					mCancelSignal);
+		} else {
+			return BitmapUtils.cropBitmapObjectHandleOOM(
+					mContext,
+					mBitmap,
+					spec.getCropPointsInt(),
+					mDegreesRotated,
+					spec.isFixAspectRatio(),
+					spec.getAspectRatioX(),
+					spec.getAspectRatioY(),
+					mFlipHorizontally,
+					mFlipVertically,
+					spec.getReqWidth(),
+					spec.getReqHeight(),
+					spec.getReqSizeOptions(),
+					mResizeFilter,
+					mResizeExecutor);
+		}
+	}
+
+	private ImageCropView.CropResult newResult(
+			int index, Bitmap bitmap, Uri uri, Exception error, int sampleSize) {
+		return new ImageCropView.CropResult(
+				mBitmap,
+				mUri,
+				bitmap,
+				uri,
+				error,
+				mSpecs.get(index).getCropPoints(),
+				new Rect(mRects[index]),
+				mBitmap != null
+						? new Rect(0, 0, mBitmap.getWidth(), mBitmap.getHeight())
+						: new Rect(0, 0, mOrgWidth, mOrgHeight),
+				mDegreesRotated,
+				sampleSize);
+	}
+
+	/**
+	 * Release the bitmaps of the crops of cancelled batch.
+	 */
+	private void releaseResults() {
+		for (ImageCropView.CropResult result : mResults) {
+			if (result != null && result.getBitmap() != null) {
+				BitmapPool.recycle(result.getBitmap());
+				DecodeCancelSignal.onBitmapReleased();
+			}
+		}
+	}
+
+	// region: Inner class: BatchJob
+
+	/**
+	 * Crops the crops of the batch by every thread running it until all crops were claimed.
+	 */
+	private final class BatchJob implements Runnable {
+
+		private final AtomicInteger mNextSpec = new AtomicInteger();
+
+		private final CountDownLatch mDone = new CountDownLatch(mSpecs.size());
+
+		private volatile boolean mCancelled;
+
+		@Override
+		public void run() {
+			int index;
+			while ((index = mNextSpec.getAndIncrement()) < mSpecs.size()) {
+				try {
+					if (!mCancelled) {
+						mResults[index] = cropSpec(index);
+					}
+				} catch (CancellationException e) {
+					mCancelled = true;
+				} finally {
+					mDone.countDown();
+				}
+			}
+		}
+
+		/**
+		 * Wait for the crops claimed by helper threads to complete.<br>
+		 * Interruption only skips the crops not started yet, the running crops are still awaited as
+		 * they use the shared region.
+		 */
+		void awaitCrops() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					mDone.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+					mCancelled = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	// endregion
+}
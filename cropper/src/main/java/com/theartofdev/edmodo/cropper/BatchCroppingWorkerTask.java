@@ -0,0 +1,149 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.AsyncTask;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+/**
+ * Task to crop a batch of crops of the same image asynchronously from the UI thread, see {@link
+ * BatchCropper}.
+ */
+final class BatchCroppingWorkerTask
+		extends AsyncTask<Void, Void, List<ImageCropView.CropResult>> {
+
+	// region: Fields and Consts
+
+	/**
+	 * Use a WeakReference to ensure the ImageView can be garbage collected
+	 */
+	private final WeakReference<ImageCropView> mCropImageViewReference;
+
+	private final BatchCropper mBatchCropper;
+
+	/**
+	 * The executor to crop the batch in parallel on
+	 */
+	private final Executor mExecutor;
+
+	/**
+	 * Used to abort the running decode when the task is cancelled
+	 */
+	private final DecodeCancelSignal mCancelSignal = new DecodeCancelSignal();
+	// endregion
+
+	BatchCroppingWorkerTask(
+			ImageCropView imageCropView,
+			Uri uri,
+			Bitmap bitmap,
+			int orgWidth,
+			int orgHeight,
+			List<CropSpec> specs,
+			int degreesRotated,
+			boolean flipHorizontally,
+			boolean flipVertically,
+			RegionDecoderSession regionDecoderSession,
+			Executor executor) {
+		mCropImageViewReference = new WeakReference<>(imageCropView);
+		mExecutor = executor;
+		mBatchCropper =
+				new BatchCropper(
+						imageCropView.getContext(),
+						uri,
+						bitmap,
+						orgWidth,
+						orgHeight,
+						specs,
+						degreesRotated,
+						flipHorizontally,
+						flipVertically,
+						regionDecoderSession,
+						mCancelSignal);
+		mBatchCropper.setResizeFilter(imageCropView.getResizeFilter(), executor);
+	}
+
+	/**
+	 * Cancel the task and abort its running decode, bitmaps cropped by the task are released.
+	 */
+	void abort() {
+		mCancelSignal.cancel();
+		cancel(true);
+	}
+
+	/**
+	 * Crop the batch in background.
+	 *
+	 * @param params ignored
+	 * @return the result of every crop of the batch
+	 */
+	@Override
+	protected List<ImageCropView.CropResult> doInBackground(Void... params) {
+		try {
+			if (!isCancelled()) {
+				return mBatchCropper.crop(mExecutor);
+			}
+			return null;
+		} catch (CancellationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Once complete, see if ImageView is still around and deliver the results.
+	 *
+	 * @param results the results of the batch cropping
+	 */
+	@Override
+	protected void onPostExecute(List<ImageCropView.CropResult> results) {
+		if (results != null) {
+			boolean completeCalled = false;
+			if (!isCancelled()) {
+				ImageCropView imageCropView = mCropImageViewReference.get();
+				if (imageCropView != null) {
+					completeCalled = true;
+					imageCropView.onImagesCroppingAsyncComplete(results);
+				}
+			}
+			if (!completeCalled) {
+				releaseResults(results);
+			}
+		}
+	}
+
+	/**
+	 * Task cancelled after the batch was cropped, release the cropped bitmaps right away.
+	 */
+	@Override
+	protected void onCancelled(List<ImageCropView.CropResult> results) {
+		if (results != null) {
+			releaseResults(results);
+		}
+	}
+
+	/**
+	 * Fast release of the unused cropped bitmaps.
+	 */
+	private static void releaseResults(List<ImageCropView.CropResult> results) {
+		for (ImageCropView.CropResult result : results) {
+			if (result != null && result.getBitmap() != null) {
+				BitmapPool.recycle(result.getBitmap());
+			}
+		}
+	}
+}
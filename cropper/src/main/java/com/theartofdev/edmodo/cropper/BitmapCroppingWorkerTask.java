@@ -12,15 +12,18 @@
 
 package com.theartofdev.edmodo.cropper;
 
-import android.content.Context;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 
 import java.lang.ref.WeakReference;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
 
 /**
- * Task to crop bitmap asynchronously from the UI thread.
+ * Task to crop bitmap asynchronously from the UI thread, see {@link CropOperation}.
  */
 final class BitmapCroppingWorkerTask
 		extends AsyncTask<Void, Void, BitmapCroppingWorkerTask.Result> {
@@ -33,179 +36,64 @@ final class BitmapCroppingWorkerTask
 	private final WeakReference<ImageCropView> mCropImageViewReference;
 
 	/**
-	 * the bitmap to crop
+	 * The crop this task runs
 	 */
-	private final Bitmap mBitmap;
+	private final CropOperation mOperation;
 
 	/**
-	 * The Android URI of the image to load
+	 * The executor to encode the cropped image on if different than the cropping executor, null to
+	 * encode on the cropping thread
 	 */
-	private final Uri mUri;
+	private Executor mEncodeExecutor;
 
 	/**
-	 * The context of the crop image view widget used for loading of bitmap by Android URI
+	 * Used to abort the running decode when the task is cancelled
 	 */
-	private final Context mContext;
+	private final DecodeCancelSignal mCancelSignal = new DecodeCancelSignal();
 
 	/**
-	 * Required cropping 4 points (x0,y0,x1,y1,x2,y2,x3,y3)
+	 * The speculative crop to take the cropped bitmap of, null to crop by this task
 	 */
-	private final float[] mCropPoints;
-
-	/**
-	 * Degrees the image was rotated after loading
-	 */
-	private final int mDegreesRotated;
-
-	/**
-	 * the original width of the image to be cropped (for image loaded from URI)
-	 */
-	private final int mOrgWidth;
-
-	/**
-	 * the original height of the image to be cropped (for image loaded from URI)
-	 */
-	private final int mOrgHeight;
-
-	/**
-	 * is there is fixed aspect ratio for the crop rectangle
-	 */
-	private final boolean mFixAspectRatio;
-
-	/**
-	 * the X aspect ration of the crop rectangle
-	 */
-	private final int mAspectRatioX;
-
-	/**
-	 * the Y aspect ration of the crop rectangle
-	 */
-	private final int mAspectRatioY;
-
-	/**
-	 * required width of the cropping image
-	 */
-	private final int mReqWidth;
-
-	/**
-	 * required height of the cropping image
-	 */
-	private final int mReqHeight;
-
-	/**
-	 * is the image flipped horizontally
-	 */
-	private final boolean mFlipHorizontally;
-
-	/**
-	 * is the image flipped vertically
-	 */
-	private final boolean mFlipVertically;
+	private SpeculativeCrop mSpeculativeCrop;
+	// endregion
 
-	/**
-	 * The option to handle requested width/height
-	 */
-	private final ImageCropView.RequestSizeOptions mReqSizeOptions;
+	BitmapCroppingWorkerTask(ImageCropView imageCropView, CropOperation operation) {
+		mCropImageViewReference = new WeakReference<>(imageCropView);
+		mOperation = operation;
+	}
 
 	/**
-	 * the Android Uri to save the cropped image to
+	 * Set the executor to encode the cropped image on if different than the executor this task is
+	 * executed on, null to encode on the cropping thread.
 	 */
-	private final Uri mSaveUri;
+	void setEncodeExecutor(Executor encodeExecutor) {
+		mEncodeExecutor = encodeExecutor;
+	}
 
 	/**
-	 * the compression format to use when writing the image
+	 * Set the speculative crop matching this crop to take the cropped bitmap of instead of cropping.
 	 */
-	private final Bitmap.CompressFormat mSaveCompressFormat;
+	void setSpeculativeCrop(SpeculativeCrop speculativeCrop) {
+		mSpeculativeCrop = speculativeCrop;
+	}
 
 	/**
-	 * the quality (if applicable) to use when writing the image (0 - 100)
+	 * Cancel the task and abort its running decode, bitmaps decoded by the task are released right
+	 * away.
 	 */
-	private final int mSaveCompressQuality;
-	// endregion
-
-	BitmapCroppingWorkerTask(
-			ImageCropView imageCropView,
-			Bitmap bitmap,
-			float[] cropPoints,
-			int degreesRotated,
-			boolean fixAspectRatio,
-			int aspectRatioX,
-			int aspectRatioY,
-			int reqWidth,
-			int reqHeight,
-			boolean flipHorizontally,
-			boolean flipVertically,
-			ImageCropView.RequestSizeOptions options,
-			Uri saveUri,
-			Bitmap.CompressFormat saveCompressFormat,
-			int saveCompressQuality) {
-
-		mCropImageViewReference = new WeakReference<>(imageCropView);
-		mContext = imageCropView.getContext();
-		mBitmap = bitmap;
-		mCropPoints = cropPoints;
-		mUri = null;
-		mDegreesRotated = degreesRotated;
-		mFixAspectRatio = fixAspectRatio;
-		mAspectRatioX = aspectRatioX;
-		mAspectRatioY = aspectRatioY;
-		mReqWidth = reqWidth;
-		mReqHeight = reqHeight;
-		mFlipHorizontally = flipHorizontally;
-		mFlipVertically = flipVertically;
-		mReqSizeOptions = options;
-		mSaveUri = saveUri;
-		mSaveCompressFormat = saveCompressFormat;
-		mSaveCompressQuality = saveCompressQuality;
-		mOrgWidth = 0;
-		mOrgHeight = 0;
-	}
-
-	BitmapCroppingWorkerTask(
-			ImageCropView imageCropView,
-			Uri uri,
-			float[] cropPoints,
-			int degreesRotated,
-			int orgWidth,
-			int orgHeight,
-			boolean fixAspectRatio,
-			int aspectRatioX,
-			int aspectRatioY,
-			int reqWidth,
-			int reqHeight,
-			boolean flipHorizontally,
-			boolean flipVertically,
-			ImageCropView.RequestSizeOptions options,
-			Uri saveUri,
-			Bitmap.CompressFormat saveCompressFormat,
-			int saveCompressQuality) {
-
-		mCropImageViewReference = new WeakReference<>(imageCropView);
-		mContext = imageCropView.getContext();
-		mUri = uri;
-		mCropPoints = cropPoints;
-		mDegreesRotated = degreesRotated;
-		mFixAspectRatio = fixAspectRatio;
-		mAspectRatioX = aspectRatioX;
-		mAspectRatioY = aspectRatioY;
-		mOrgWidth = orgWidth;
-		mOrgHeight = orgHeight;
-		mReqWidth = reqWidth;
-		mReqHeight = reqHeight;
-		mFlipHorizontally = flipHorizontally;
-		mFlipVertically = flipVertically;
-		mReqSizeOptions = options;
-		mSaveUri = saveUri;
-		mSaveCompressFormat = saveCompressFormat;
-		mSaveCompressQuality = saveCompressQuality;
-		mBitmap = null;
+	void abort() {
+		mCancelSignal.cancel();
+		if (mSpeculativeCrop != null) {
+			mSpeculativeCrop.release();
+		}
+		cancel(true);
 	}
 
 	/**
 	 * The Android URI that this task is currently loading.
 	 */
 	public Uri getUri() {
-		return mUri;
+		return mOperation.getUri();
 	}
 
 	/**
@@ -219,58 +107,67 @@ final class BitmapCroppingWorkerTask
 		try {
 			if (!isCancelled()) {
 
-				BitmapUtils.BitmapSampled bitmapSampled;
-				if (mUri != null) {
-					bitmapSampled =
-							BitmapUtils.cropBitmap(
-									mContext,
-									mUri,
-									mCropPoints,
-									mDegreesRotated,
-									mOrgWidth,
-									mOrgHeight,
-									mFixAspectRatio,
-									mAspectRatioX,
-									mAspectRatioY,
-									mReqWidth,
-									mReqHeight,
-									mFlipHorizontally,
-									mFlipVertically);
-				} else if (mBitmap != null) {
-					bitmapSampled =
-							BitmapUtils.cropBitmapObjectHandleOOM(
-									mBitmap,
-									mCropPoints,
-									mDegreesRotated,
-									mFixAspectRatio,
-									mAspectRatioX,
-									mAspectRatioY,
-									mFlipHorizontally,
-									mFlipVertically);
-				} else {
-					return new Result((Bitmap) null, 1);
+				Result result =
+						mSpeculativeCrop != null ? mSpeculativeCrop.take() : mOperation.crop(mCancelSignal);
+				if (result.isSave || result.bitmap == null) {
+					// saved directly without cropped bitmap, or nothing to crop
+					return result;
 				}
 
-				Bitmap bitmap =
-						BitmapUtils.resizeBitmap(bitmapSampled.bitmap, mReqWidth, mReqHeight, mReqSizeOptions);
-
-				if (mSaveUri == null) {
-					return new Result(bitmap, bitmapSampled.sampleSize);
+				Bitmap bitmap = result.bitmap;
+				if (isCancelled()) {
+					// don't deliver or encode the result of cancelled crop
+					releaseCancelled(bitmap);
+					return null;
+				} else if (!mOperation.isSave()) {
+					return result;
+				} else if (mEncodeExecutor != null) {
+					// free the cropping thread, the result is delivered once encoded
+					encodeAsync(bitmap, result.sampleSize);
 				} else {
-					BitmapUtils.writeBitmapToUri(
-							mContext, bitmap, mSaveUri, mSaveCompressFormat, mSaveCompressQuality);
-					if (bitmap != null) {
-						bitmap.recycle();
-					}
-					return new Result(mSaveUri, bitmapSampled.sampleSize);
+					return mOperation.encode(bitmap, result.sampleSize);
 				}
 			}
 			return null;
+		} catch (CancellationException e) {
+			return null;
 		} catch (Exception e) {
-			return new Result(e, mSaveUri != null);
+			return new Result(e, mOperation.isSave());
 		}
 	}
 
+	/**
+	 * Write the cropped bitmap to the save uri on the encode executor, then deliver the result on the
+	 * UI thread.
+	 */
+	private void encodeAsync(final Bitmap bitmap, final int sampleSize) {
+		final Handler handler = new Handler(Looper.getMainLooper());
+		mEncodeExecutor.execute(
+				new Runnable() {
+					@Override
+					public void run() {
+						if (isCancelled()) {
+							releaseCancelled(bitmap);
+							return;
+						}
+						Result result;
+						try {
+							result = mOperation.encode(bitmap, sampleSize);
+						} catch (Exception e) {
+							result = new Result(e, true);
+						}
+						final Result finalResult = result;
+						handler.post(
+								new Runnable() {
+									@Override
+									public void run() {
+										deliverResult(finalResult);
+									}
+								});
+					}
+				});
+	}
+
 	/**
 	 * Once complete, see if ImageView is still around and set bitmap.
 	 *
@@ -278,6 +175,33 @@ final class BitmapCroppingWorkerTask
 	 */
 	@Override
 	protected void onPostExecute(Result result) {
+		deliverResult(result);
+	}
+
+	/**
+	 * Task cancelled after the bitmap was cropped, release it right away.
+	 */
+	@Override
+	protected void onCancelled(Result result) {
+		if (result != null && result.bitmap != null) {
+			releaseCancelled(result.bitmap);
+		}
+	}
+
+	/**
+	 * Release the bitmap cropped by cancelled task or speculative crop.
+	 */
+	static void releaseCancelled(Bitmap bitmap) {
+		if (bitmap != null) {
+			BitmapPool.recycle(bitmap);
+			DecodeCancelSignal.onBitmapReleased();
+		}
+	}
+
+	/**
+	 * Deliver the result of cropping to the ImageView if still around and task was not cancelled.
+	 */
+	private void deliverResult(Result result) {
 		if (result != null) {
 			boolean completeCalled = false;
 			if (!isCancelled()) {
@@ -289,7 +213,7 @@ final class BitmapCroppingWorkerTask
 			}
 			if (!completeCalled && result.bitmap != null) {
 				// fast release of unused bitmap
-				result.bitmap.recycle();
+				BitmapPool.recycle(result.bitmap);
 			}
 		}
 	}
@@ -19,11 +19,15 @@ import android.os.AsyncTask;
 import android.util.DisplayMetrics;
 
 import java.lang.ref.WeakReference;
+import java.util.concurrent.CancellationException;
 
 /**
- * Task to load bitmap asynchronously from the UI thread.
+ * Task to load bitmap asynchronously from the UI thread.<br>
+ * For large images a coarse placeholder is published as progress before the full preview.
  */
-final class BitmapLoadingWorkerTask extends AsyncTask<Void, Void, BitmapLoadingWorkerTask.Result> {
+final class BitmapLoadingWorkerTask
+		extends AsyncTask<Void, BitmapUtils.BitmapSampled, BitmapLoadingWorkerTask.Result>
+		implements BitmapUtils.OnPlaceholderDecodedListener {
 
 	// region: Fields and Consts
 
@@ -51,6 +55,11 @@ final class BitmapLoadingWorkerTask extends AsyncTask<Void, Void, BitmapLoadingW
 	 * required height of the cropping image after density adjustment
 	 */
 	private final int mHeight;
+
+	/**
+	 * Used to abort the running decode when the task is cancelled
+	 */
+	private final DecodeCancelSignal mCancelSignal = new DecodeCancelSignal();
 	// endregion
 
 	public BitmapLoadingWorkerTask(ImageCropView imageCropView, Uri uri) {
@@ -72,6 +81,15 @@ final class BitmapLoadingWorkerTask extends AsyncTask<Void, Void, BitmapLoadingW
 		return mUri;
 	}
 
+	/**
+	 * Cancel the task and abort its running decode, bitmaps decoded by the task are released right
+	 * away.
+	 */
+	void abort() {
+		mCancelSignal.cancel();
+		cancel(true);
+	}
+
 	/**
 	 * Decode image in background.
 	 *
@@ -84,23 +102,50 @@ final class BitmapLoadingWorkerTask extends AsyncTask<Void, Void, BitmapLoadingW
 			if (!isCancelled()) {
 
 				BitmapUtils.BitmapSampled decodeResult =
-						BitmapUtils.decodeSampledBitmap(mContext, mUri, mWidth, mHeight);
+						BitmapUtils.decodeSampledBitmap(mContext, mUri, mWidth, mHeight, this, mCancelSignal);
 
 				if (!isCancelled()) {
-
-					BitmapUtils.RotateBitmapResult rotateResult =
-							BitmapUtils.rotateBitmapByExif(decodeResult.bitmap, mContext, mUri);
-
 					return new Result(
-							mUri, rotateResult.bitmap, decodeResult.sampleSize, rotateResult.degrees);
+							mUri, decodeResult.bitmap, decodeResult.sampleSize, decodeResult.header.degrees);
 				}
+				// cancelled after decode completed
+				BitmapPreviewCache.release(decodeResult.bitmap);
+				DecodeCancelSignal.onBitmapReleased();
 			}
 			return null;
+		} catch (CancellationException e) {
+			return null;
 		} catch (Exception e) {
 			return new Result(mUri, e);
 		}
 	}
 
+	/**
+	 * Publish the decoded placeholder to be shown until the full preview is decoded.
+	 */
+	@Override
+	public void onPlaceholderDecoded(BitmapUtils.BitmapSampled placeholder) {
+		if (!isCancelled()) {
+			publishProgress(placeholder);
+		} else {
+			BitmapPool.recycle(placeholder.bitmap);
+			DecodeCancelSignal.onBitmapReleased();
+		}
+	}
+
+	/**
+	 * See if ImageView is still around and show the placeholder.
+	 */
+	@Override
+	protected void onProgressUpdate(BitmapUtils.BitmapSampled... values) {
+		ImageCropView imageCropView = mCropImageViewReference.get();
+		if (!isCancelled() && imageCropView != null) {
+			imageCropView.onSetImageUriAsyncPlaceholder(values[0]);
+		} else {
+			BitmapPool.recycle(values[0].bitmap);
+		}
+	}
+
 	/**
 	 * Once complete, see if ImageView is still around and set bitmap.
 	 *
@@ -119,11 +164,23 @@ final class BitmapLoadingWorkerTask extends AsyncTask<Void, Void, BitmapLoadingW
 			}
 			if (!completeCalled && result.bitmap != null) {
 				// fast release of unused bitmap
-				result.bitmap.recycle();
+				BitmapPreviewCache.release(result.bitmap);
 			}
 		}
 	}
 
+	/**
+	 * Task cancelled after the bitmap was decoded, release it so a cached preview isn't held
+	 * forever.
+	 */
+	@Override
+	protected void onCancelled(Result result) {
+		if (result != null && result.bitmap != null) {
+			BitmapPreviewCache.release(result.bitmap);
+			DecodeCancelSignal.onBitmapReleased();
+		}
+	}
+
 	// region: Inner class: Result
 
 	/**
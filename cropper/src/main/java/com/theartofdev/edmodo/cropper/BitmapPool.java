@@ -0,0 +1,212 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Process wide pool of released bitmaps bucketed by allocation size, reused for decoding into
+ * (inBitmap) and as the target of rotate/flip/crop transformations to avoid allocating a new large
+ * bitmap for every image load and crop.<br>
+ * Bitmaps the library used to recycle are returned here by {@link #recycle(Bitmap)}, the pool is
+ * limited by max size in bytes evicting (recycling) the least recently released bitmaps.<br>
+ * Requires KitKat to reuse bitmap of different dimensions, on older devices bitmaps are recycled.
+ */
+public final class BitmapPool {
+
+	/**
+	 * Don't reuse a bitmap larger than this multiple of the requested size, wastes memory
+	 */
+	private static final int MAX_SIZE_MULTIPLE = 4;
+
+	/**
+	 * The pooled bitmaps by allocation byte count
+	 */
+	private static final TreeMap<Integer, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+
+	/**
+	 * The pooled bitmaps by the order they were released, for eviction
+	 */
+	private static final ArrayDeque<Bitmap> mReleaseOrder = new ArrayDeque<>();
+
+	/**
+	 * The max total allocation byte count of the pooled bitmaps
+	 */
+	private static int mMaxSize = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, 1 << 30);
+
+	/**
+	 * The current total allocation byte count of the pooled bitmaps
+	 */
+	private static int mSize;
+
+	/**
+	 * The number of requests served by a pooled bitmap
+	 */
+	private static int mHitCount;
+
+	/**
+	 * The number of requests no pooled bitmap could serve
+	 */
+	private static int mMissCount;
+
+	private BitmapPool() {
+	}
+
+	/**
+	 * The max total size in bytes of the pooled bitmaps, 0 disables the pool.<br>
+	 * <i>Default: 1/16 of the max heap size</i>
+	 */
+	public static synchronized void setMaxSize(int maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("Cannot set max size to value less than 0.");
+		}
+		mMaxSize = maxSize;
+		trimToSize(mMaxSize);
+	}
+
+	/**
+	 * The current total size in bytes of the pooled bitmaps.
+	 */
+	public static synchronized int getSize() {
+		return mSize;
+	}
+
+	/**
+	 * The number of bitmap requests that reused a pooled bitmap.
+	 */
+	public static synchronized int getHitCount() {
+		return mHitCount;
+	}
+
+	/**
+	 * The number of bitmap requests that had to allocate a new bitmap.
+	 */
+	public static synchronized int getMissCount() {
+		return mMissCount;
+	}
+
+	/**
+	 * The fraction (0-1) of bitmap requests that reused a pooled bitmap.
+	 */
+	public static synchronized float getReuseRate() {
+		int total = mHitCount + mMissCount;
+		return total > 0 ? mHitCount / (float) total : 0;
+	}
+
+	/**
+	 * Recycle all the pooled bitmaps.
+	 */
+	public static synchronized void clear() {
+		trimToSize(0);
+	}
+
+	/**
+	 * Get a pooled bitmap reconfigured to the given size and config with all pixels transparent.<br>
+	 * Only ARGB_8888 bitmaps are pooled.
+	 *
+	 * @return the bitmap or null if none in the pool can hold the requested size
+	 */
+	static Bitmap get(int width, int height, Bitmap.Config config) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT
+				|| config != Bitmap.Config.ARGB_8888
+				|| width < 1
+				|| height < 1
+				|| (long) width * height > Integer.MAX_VALUE / 4) {
+			return null;
+		}
+		int byteCount = width * height * 4;
+		Bitmap bitmap = null;
+		synchronized (BitmapPool.class) {
+			Map.Entry<Integer, ArrayDeque<Bitmap>> entry = mBuckets.ceilingEntry(byteCount);
+			if (entry != null && entry.getKey() <= (long) byteCount * MAX_SIZE_MULTIPLE) {
+				bitmap = removeFromBucket(entry.getKey());
+				mReleaseOrder.remove(bitmap);
+				mHitCount++;
+			} else {
+				mMissCount++;
+			}
+		}
+		if (bitmap != null) {
+			bitmap.reconfigure(width, height, config);
+			bitmap.setHasAlpha(true);
+			bitmap.eraseColor(0);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Release the given bitmap that is no longer used, add it to the pool if it can be reused or
+	 * recycle it.
+	 */
+	static void recycle(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled()) {
+			return;
+		}
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+				&& bitmap.isMutable()
+				&& bitmap.getConfig() == Bitmap.Config.ARGB_8888) {
+			int byteCount = bitmap.getAllocationByteCount();
+			synchronized (BitmapPool.class) {
+				if (byteCount <= mMaxSize) {
+					trimToSize(mMaxSize - byteCount);
+					ArrayDeque<Bitmap> bucket = mBuckets.get(byteCount);
+					if (bucket == null) {
+						bucket = new ArrayDeque<>();
+						mBuckets.put(byteCount, bucket);
+					}
+					bucket.add(bitmap);
+					mReleaseOrder.add(bitmap);
+					mSize += byteCount;
+					return;
+				}
+			}
+		}
+		bitmap.recycle();
+	}
+
+	/**
+	 * Recycle the least recently released bitmaps until the pool size is within the given size.
+	 */
+	private static void trimToSize(int maxSize) {
+		Iterator<Bitmap> iterator = mReleaseOrder.iterator();
+		while (mSize > maxSize && iterator.hasNext()) {
+			Bitmap bitmap = iterator.next();
+			iterator.remove();
+			ArrayDeque<Bitmap> bucket = mBuckets.get(bitmap.getAllocationByteCount());
+			if (bucket != null && bucket.remove(bitmap) && bucket.isEmpty()) {
+				mBuckets.remove(bitmap.getAllocationByteCount());
+			}
+			mSize -= bitmap.getAllocationByteCount();
+			bitmap.recycle();
+		}
+	}
+
+	/**
+	 * Remove the most recently released bitmap from the bucket of the given allocation byte count.
+	 */
+	private static Bitmap removeFromBucket(int byteCount) {
+		ArrayDeque<Bitmap> bucket = mBuckets.get(byteCount);
+		Bitmap bitmap = bucket.removeLast();
+		if (bucket.isEmpty()) {
+			mBuckets.remove(byteCount);
+		}
+		mSize -= byteCount;
+		return bitmap;
+	}
+}
@@ -0,0 +1,154 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.LruCache;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Process wide LRU cache of decoded preview bitmaps limited by the bitmaps byte count, so returning
+ * to an image that was just shown for cropping doesn't decode it again.<br>
+ * Cached bitmaps may be shown by several crop image views at the same time, so every user of a
+ * bitmap acquired or put here must give it back by {@link #release(Bitmap)} instead of recycling
+ * it. A bitmap is recycled (returned to {@link BitmapPool}) only when it is both evicted from the
+ * cache and released by all users.
+ */
+public final class BitmapPreviewCache {
+
+	/**
+	 * The bitmaps by preview key, see {@link #getKey(String, int, int)}
+	 */
+	private static final LruCache<String, Bitmap> mCache =
+			new LruCache<String, Bitmap>((int) Math.min(Runtime.getRuntime().maxMemory() / 8, 1 << 30)) {
+				@Override
+				protected int sizeOf(String key, Bitmap value) {
+					// pooled bitmaps may be reconfigured smaller than their allocation
+					return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+							? value.getAllocationByteCount()
+							: value.getByteCount();
+				}
+
+				@Override
+				protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+					if (oldValue != newValue) {
+						onEntryRemoved(oldValue);
+					}
+				}
+			};
+
+	/**
+	 * The number of users holding each bitmap that was acquired or put in the cache
+	 */
+	private static final Map<Bitmap, Integer> mReferences = new IdentityHashMap<>();
+
+	private BitmapPreviewCache() {
+	}
+
+	/**
+	 * Clear all the cached preview bitmaps, bitmaps still shown will be recycled when released.
+	 */
+	public static synchronized void clear() {
+		mCache.evictAll();
+	}
+
+	/**
+	 * Get the key of a preview bitmap decoded from the given source with the given sample size and
+	 * EXIF rotation.
+	 *
+	 * @param sourceKey the key of the source, see {@link ImageHeaderCache#getSourceKey}
+	 * @return the key or null if the source key is null
+	 */
+	static String getKey(String sourceKey, int sampleSize, int degrees) {
+		return sourceKey != null ? sourceKey + "|" + sampleSize + "|" + degrees : null;
+	}
+
+	/**
+	 * Get the cached preview bitmap for the given key and hold it until {@link #release(Bitmap)} is
+	 * called.
+	 *
+	 * @return the bitmap or null if not cached or key is null
+	 */
+	static synchronized Bitmap acquire(String key) {
+		Bitmap bitmap = key != null ? mCache.get(key) : null;
+		if (bitmap != null) {
+			if (bitmap.isRecycled()) {
+				mCache.remove(key);
+				return null;
+			}
+			retain(bitmap);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Cache the given newly decoded preview bitmap, the caller holds it until {@link
+	 * #release(Bitmap)} is called. No-op if the key is null.
+	 */
+	static synchronized void put(String key, Bitmap bitmap) {
+		if (key != null && bitmap != null) {
+			retain(bitmap);
+			mCache.put(key, bitmap);
+		}
+	}
+
+	/**
+	 * Release the given bitmap by one of its users.<br>
+	 * A bitmap that is not managed by the cache is recycled immediately, a cached bitmap is recycled
+	 * only when it was evicted and no other user holds it.
+	 */
+	static synchronized void release(Bitmap bitmap) {
+		if (bitmap == null) {
+			return;
+		}
+		Integer count = mReferences.get(bitmap);
+		if (count == null) {
+			BitmapPool.recycle(bitmap);
+		} else if (count > 1) {
+			mReferences.put(bitmap, count - 1);
+		} else {
+			mReferences.remove(bitmap);
+			if (!isCached(bitmap)) {
+				BitmapPool.recycle(bitmap);
+			}
+		}
+	}
+
+	/**
+	 * Add a user to the given bitmap.
+	 */
+	private static void retain(Bitmap bitmap) {
+		Integer count = mReferences.get(bitmap);
+		mReferences.put(bitmap, count != null ? count + 1 : 1);
+	}
+
+	/**
+	 * Is the given bitmap currently in the cache.
+	 */
+	private static boolean isCached(Bitmap bitmap) {
+		return mCache.snapshot().containsValue(bitmap);
+	}
+
+	/**
+	 * Bitmap removed from the cache, recycle if no user holds it.<br>
+	 * Invoked synchronously by cache operations, already in synchronized scope.
+	 */
+	private static void onEntryRemoved(Bitmap bitmap) {
+		if (!mReferences.containsKey(bitmap)) {
+			BitmapPool.recycle(bitmap);
+		}
+	}
+}
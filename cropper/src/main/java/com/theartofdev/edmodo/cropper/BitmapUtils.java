@@ -14,6 +14,7 @@ package com.theartofdev.edmodo.cropper;
 
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.BitmapRegionDecoder;
@@ -28,13 +29,17 @@ import android.net.Uri;
 import android.util.Log;
 import android.util.Pair;
 
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.lang.ref.WeakReference;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
@@ -68,6 +73,38 @@ public final class BitmapUtils {
 	 */
 	static final float[] POINTS2 = new float[6];
 
+	/**
+	 * The max number of leading bytes of an image source kept in memory to read the image header
+	 * from, enough to contain the JPEG EXIF segment (limited to 64K) and the frame header.
+	 */
+	private static final int IMAGE_HEADER_BUFFER_SIZE = 128 * 1024;
+
+	/**
+	 * The min number of pixels of an image slow enough to decode that showing a coarse placeholder
+	 * first is worth the extra read.
+	 */
+	private static final int PLACEHOLDER_MIN_PIXELS = 4 * 1000 * 1000;
+
+	/**
+	 * The sampling of the coarse placeholder relative to the preview, when no usable EXIF thumbnail.
+	 */
+	private static final int PLACEHOLDER_SAMPLE_MULTI = 8;
+
+	/**
+	 * The max sample size to decode an image by to fit in memory.
+	 */
+	private static final int MAX_DECODE_SAMPLE_SIZE = 512;
+
+	/**
+	 * The max multiple of the requested sampling to crop an image by to fit in memory.
+	 */
+	private static final int MAX_CROP_SAMPLE_MULTI = 16;
+
+	/**
+	 * The max scale down of a crop of bitmap object to fit in memory.
+	 */
+	private static final int MAX_CROP_SCALE = 8;
+
 	/**
 	 * Used to know the max texture size allowed to be rendered
 	 */
@@ -79,29 +116,18 @@ public final class BitmapUtils {
 	static Pair<String, WeakReference<Bitmap>> mStateBitmap;
 
 	/**
-	 * Rotate the given image by reading the Exif value of the image (uri).<br>
+	 * Rotate the given image by given Exif value.<br>
 	 * If no rotation is required the image will not be rotated.<br>
 	 * New bitmap is created and the old one is recycled.
 	 */
-	static RotateBitmapResult rotateBitmapByExif(Bitmap bitmap, Context context, Uri uri) {
-		ExifInterface ei = null;
-		try {
-			InputStream is = context.getContentResolver().openInputStream(uri);
-			if (is != null) {
-				ei = new ExifInterface(is);
-				is.close();
-			}
-		} catch (Exception ignored) {
-		}
-		return ei != null ? rotateBitmapByExif(bitmap, ei) : new RotateBitmapResult(bitmap, 0);
+	static RotateBitmapResult rotateBitmapByExif(Bitmap bitmap, ExifInterface exif) {
+		return new RotateBitmapResult(bitmap, getExifDegrees(exif));
 	}
 
 	/**
-	 * Rotate the given image by given Exif value.<br>
-	 * If no rotation is required the image will not be rotated.<br>
-	 * New bitmap is created and the old one is recycled.
+	 * Get the degrees the image should be rotated by the given Exif orientation value.
 	 */
-	static RotateBitmapResult rotateBitmapByExif(Bitmap bitmap, ExifInterface exif) {
+	private static int getExifDegrees(ExifInterface exif) {
 		int degrees;
 		int orientation =
 				exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
@@ -119,38 +145,191 @@ public final class BitmapUtils {
 				degrees = 0;
 				break;
 		}
-		return new RotateBitmapResult(bitmap, degrees);
+		return degrees;
 	}
 
 	/**
-	 * Decode bitmap from stream using sampling to get bitmap with the requested limit.
+	 * Decode bitmap from stream using sampling to get bitmap with the requested limit.<br>
+	 * The source is opened only once: the image header (dimensions, mime type and EXIF orientation)
+	 * is taken from {@link ImageHeaderCache} or read from the buffered leading bytes of the stream
+	 * and the same stream is then used to decode the pixels.<br>
+	 * If the preview is not cached and the image is large, a coarse placeholder is decoded first and
+	 * given to the placeholder listener (if not null) before decoding the full preview.<br>
+	 * The decode is aborted by cancel of the given signal (if not null), throwing {@link
+	 * CancellationException}.
 	 */
-	static BitmapSampled decodeSampledBitmap(Context context, Uri uri, int reqWidth, int reqHeight) {
-
+	static BitmapSampled decodeSampledBitmap(
+			Context context,
+			Uri uri,
+			int reqWidth,
+			int reqHeight,
+			OnPlaceholderDecodedListener placeholderListener,
+			DecodeCancelSignal cancelSignal) {
+		InputStream stream = null;
 		try {
 			ContentResolver resolver = context.getContentResolver();
 
-			// First decode with inJustDecodeBounds=true to check dimensions
-			BitmapFactory.Options options = decodeImageForOption(resolver, uri);
+			String sourceKey = ImageHeaderCache.getSourceKey(context, uri);
+			ImageHeader header = ImageHeaderCache.get(sourceKey);
+
+			byte[] headerBytes = null;
+			int headerLength = 0;
+			if (header == null) {
+				stream = openInputStream(resolver, uri);
+
+				// read the header from the leading bytes, keep them to replay for the pixels decode
+				headerBytes = new byte[IMAGE_HEADER_BUFFER_SIZE];
+				headerLength = readFully(stream, headerBytes);
+				header = decodeImageHeader(headerBytes, headerLength);
+
+				if (!header.hasBounds()) {
+					// the frame header is beyond the buffered bytes, rare but possible
+					BitmapFactory.Options boundsOptions = decodeImageForOption(resolver, uri);
+					header =
+							new ImageHeader(
+									boundsOptions.outWidth,
+									boundsOptions.outHeight,
+									boundsOptions.outMimeType,
+									header.degrees);
+				}
+				ImageHeaderCache.put(sourceKey, header);
+			}
 
-			if (options.outWidth == -1 && options.outHeight == -1)
+			if (header.width == -1 && header.height == -1)
 				throw new RuntimeException("File is not a picture");
 
 			// Calculate inSampleSize
-			options.inSampleSize =
+			int sampleSize =
 					Math.max(
-							calculateInSampleSizeByReqestedSize(
-									options.outWidth, options.outHeight, reqWidth, reqHeight),
-							calculateInSampleSizeByMaxTextureSize(options.outWidth, options.outHeight));
+							calculateInSampleSizeByReqestedSize(header.width, header.height, reqWidth, reqHeight),
+							calculateInSampleSizeByMaxTextureSize(header.width, header.height));
+			sampleSize =
+					MemoryBudget.planSampleSize(
+							context, header.width, header.height, sampleSize, 1, 0, MAX_DECODE_SAMPLE_SIZE);
+
+			// the same preview may be already decoded, for another view or before configuration change
+			String previewKey = BitmapPreviewCache.getKey(sourceKey, sampleSize, header.degrees);
+			Bitmap cached = BitmapPreviewCache.acquire(previewKey);
+			if (cached != null) {
+				return new BitmapSampled(cached, sampleSize, header);
+			}
+			cached = PreviewDiskCache.get(context, uri, sourceKey, sampleSize);
+			if (cached != null) {
+				BitmapPreviewCache.put(previewKey, cached);
+				return new BitmapSampled(cached, sampleSize, header);
+			}
+
+			if (placeholderListener != null
+					&& (long) header.width * header.height >= PLACEHOLDER_MIN_PIXELS) {
+				Bitmap placeholder =
+						decodePlaceholder(
+								resolver, uri, header, sampleSize, headerBytes, headerLength, cancelSignal);
+				if (placeholder != null) {
+					placeholderListener.onPlaceholderDecoded(
+							new BitmapSampled(placeholder, sampleSize, header));
+				}
+			}
+
+			if (cancelSignal != null) {
+				cancelSignal.throwIfCancelled();
+			}
+			if (stream == null) {
+				stream = openInputStream(resolver, uri);
+			}
 
-			// Decode bitmap with inSampleSize set
-			Bitmap bitmap = decodeImage(resolver, uri, options);
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inSampleSize = sampleSize;
+			setReusableBitmap(options, header.width, header.height);
+
+			// Decode bitmap with inSampleSize set, replay the header bytes before the rest of stream
+			InputStream pixelsStream =
+					headerBytes != null
+							? new SequenceInputStream(
+							new ByteArrayInputStream(headerBytes, 0, headerLength), stream)
+							: stream;
+			stream = null;
+			Bitmap bitmap = decodeImage(resolver, uri, pixelsStream, options, cancelSignal);
+
+			// cache only the preview of the requested sample size, not the OOM fallback
+			if (options.inSampleSize == sampleSize) {
+				BitmapPreviewCache.put(previewKey, bitmap);
+				PreviewDiskCache.put(context, uri, sourceKey, sampleSize, bitmap);
+			}
 
-			return new BitmapSampled(bitmap, options.inSampleSize);
+			return new BitmapSampled(bitmap, options.inSampleSize, header);
 
+		} catch (CancellationException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new RuntimeException(
 					"Failed to load sampled bitmap: " + uri + "\r\n" + e.getMessage(), e);
+		} finally {
+			closeSafe(stream);
+		}
+	}
+
+	/**
+	 * Decode a coarse placeholder of the given image to show until the full preview is decoded.<br>
+	 * Uses the EXIF thumbnail if it has the image aspect ratio (no letterbox), otherwise decodes the
+	 * image with high sampling if JPEG, cheap only for JPEG that is scaled down in the DCT domain.
+	 *
+	 * @param sampleSize  the sample size the full preview will be decoded with
+	 * @param headerBytes the leading bytes of the image if already read, null otherwise
+	 * @return the placeholder bitmap or null if failed or no placeholder is cheap to decode
+	 */
+	private static Bitmap decodePlaceholder(
+			ContentResolver resolver,
+			Uri uri,
+			ImageHeader header,
+			int sampleSize,
+			byte[] headerBytes,
+			int headerLength,
+			DecodeCancelSignal cancelSignal) {
+		try {
+			if (headerBytes == null) {
+				InputStream stream = null;
+				try {
+					stream = openInputStream(resolver, uri);
+					headerBytes = new byte[IMAGE_HEADER_BUFFER_SIZE];
+					headerLength = readFully(stream, headerBytes);
+				} finally {
+					closeSafe(stream);
+				}
+			}
+
+			byte[] thumbnail = null;
+			try {
+				ExifInterface exif =
+						new ExifInterface(new ByteArrayInputStream(headerBytes, 0, headerLength));
+				thumbnail = exif.getThumbnail();
+			} catch (Exception ignored) {
+			}
+			if (thumbnail != null) {
+				Bitmap bitmap = BitmapFactory.decodeByteArray(thumbnail, 0, thumbnail.length);
+				if (bitmap != null) {
+					float imageRatio = header.width / (float) header.height;
+					float thumbnailRatio = bitmap.getWidth() / (float) bitmap.getHeight();
+					if (Math.abs(imageRatio - thumbnailRatio) < imageRatio * 0.02f) {
+						return bitmap;
+					}
+					bitmap.recycle();
+				}
+			}
+
+			// other formats decode every pixel regardless of sampling, no faster than the preview
+			if (!"image/jpeg".equals(header.mimeType)) {
+				return null;
+			}
+
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inSampleSize = sampleSize * PLACEHOLDER_SAMPLE_MULTI;
+			options.inMutable = true;
+			return decodeImage(resolver, uri, options, cancelSignal);
+		} catch (CancellationException e) {
+			throw e;
+		} catch (Exception e) {
+			Log.w("AIC", "Failed to decode placeholder: " + uri, e);
+			return null;
 		}
 	}
 
@@ -159,10 +338,13 @@ public final class BitmapUtils {
 	 * rotation.<br>
 	 * if the rotation is not 0,90,180 or 270 degrees then we must first crop a larger area of the
 	 * image that contains the requires rectangle, rotate and then crop again a sub rectangle.<br>
-	 * If crop fails due to OOM we scale the cropping image by 0.5 every time it fails until it is
-	 * small enough.
+	 * The crop is resized by the given options in the same pass, see {@link #transformCrop}.<br>
+	 * The cropping image is scaled by the power of 2 the crop fits in the available memory by, see
+	 * {@link MemoryBudget}, if crop still fails due to OOM we scale it by 0.5 every time it fails
+	 * until it is small enough.
 	 */
 	static BitmapSampled cropBitmapObjectHandleOOM(
+			Context context,
 			Bitmap bitmap,
 			float[] points,
 			int degreesRotated,
@@ -170,8 +352,31 @@ public final class BitmapUtils {
 			int aspectRatioX,
 			int aspectRatioY,
 			boolean flipHorizontally,
-			boolean flipVertically) {
-		int scale = 1;
+			boolean flipVertically,
+			int reqWidth,
+			int reqHeight,
+			ImageCropView.RequestSizeOptions options,
+			ImageCropView.ResizeFilter resizeFilter,
+			Executor resizeExecutor) {
+		Rect rect =
+				getRectFromPoints(
+						points,
+						bitmap.getWidth(),
+						bitmap.getHeight(),
+						fixAspectRatio,
+						aspectRatioX,
+						aspectRatioY);
+		int scale =
+				planCropSampleSize(
+						context,
+						rect.width(),
+						rect.height(),
+						1,
+						false,
+						reqWidth,
+						reqHeight,
+						options,
+						MAX_CROP_SCALE);
 		while (true) {
 			try {
 				Bitmap cropBitmap =
@@ -184,11 +389,17 @@ public final class BitmapUtils {
 								aspectRatioY,
 								1 / (float) scale,
 								flipHorizontally,
-								flipVertically);
+								flipVertically,
+								reqWidth,
+								reqHeight,
+								options,
+								resizeFilter,
+								resizeExecutor);
 				return new BitmapSampled(cropBitmap, scale);
 			} catch (OutOfMemoryError e) {
+				MemoryBudget.onOutOfMemory();
 				scale *= 2;
-				if (scale > 8) {
+				if (scale > MAX_CROP_SCALE) {
 					throw e;
 				}
 			}
@@ -213,7 +424,12 @@ public final class BitmapUtils {
 			int aspectRatioY,
 			float scale,
 			boolean flipHorizontally,
-			boolean flipVertically) {
+			boolean flipVertically,
+			int reqWidth,
+			int reqHeight,
+			ImageCropView.RequestSizeOptions options,
+			ImageCropView.ResizeFilter resizeFilter,
+			Executor resizeExecutor) {
 
 		// get the rectangle in original image that contains the required cropped area (larger for non
 		// rectangular crop)
@@ -226,35 +442,39 @@ public final class BitmapUtils {
 						aspectRatioX,
 						aspectRatioY);
 
-		// crop and rotate the cropped image in one operation
-		Matrix matrix = new Matrix();
-		matrix.setRotate(degreesRotated, bitmap.getWidth() / 2, bitmap.getHeight() / 2);
-		matrix.postScale(flipHorizontally ? -scale : scale, flipVertically ? -scale : scale);
-		Bitmap result =
-				Bitmap.createBitmap(bitmap, rect.left, rect.top, rect.width(), rect.height(), matrix, true);
-
-		if (result == bitmap) {
-			// corner case when all bitmap is selected, no worth optimizing for it
-			result = bitmap.copy(bitmap.getConfig(), false);
-		}
-
-		// rotating by 0, 90, 180 or 270 degrees doesn't require extra cropping
-		if (degreesRotated % 90 != 0) {
-
-			// extra crop because non rectangular crop cannot be done directly on the image without
-			// rotating first
-			result =
-					cropForRotatedImage(
-							result, points, rect, degreesRotated, fixAspectRatio, aspectRatioX, aspectRatioY);
-		}
-
-		return result;
+		// crop, rotate, flip and resize the cropped image in one operation
+		return transformCrop(
+				bitmap,
+				rect,
+				scale,
+				points,
+				rect,
+				scale,
+				degreesRotated,
+				fixAspectRatio,
+				aspectRatioX,
+				aspectRatioY,
+				flipHorizontally,
+				flipVertically,
+				reqWidth,
+				reqHeight,
+				options,
+				resizeFilter,
+				resizeExecutor);
 	}
 
 	/**
 	 * Crop image bitmap from URI by decoding it with specific width and height to down-sample if
 	 * required.<br>
-	 * Additionally if OOM is thrown try to increase the sampling (2,4,8).
+	 * The sampling is increased up front by the power of 2 the decoded region and the crop fit in the
+	 * available memory by, see {@link MemoryBudget}, additionally if OOM is still thrown try to
+	 * increase the sampling (2,4,8).<br>
+	 * The region is decoded by the given region decoder session of the image if not null and not
+	 * closed, to reuse the already indexed source.<br>
+	 * The decoded region is rotated, flipped, cropped and resized by the given options in a single
+	 * pass into the final bitmap, see {@link #transformCrop}.<br>
+	 * The crop is aborted by cancel of the given signal (if not null), throwing {@link
+	 * CancellationException}.
 	 */
 	static BitmapSampled cropBitmap(
 			Context context,
@@ -268,9 +488,38 @@ public final class BitmapUtils {
 			int aspectRatioY,
 			int reqWidth,
 			int reqHeight,
+			ImageCropView.RequestSizeOptions options,
+			ImageCropView.ResizeFilter resizeFilter,
+			Executor resizeExecutor,
 			boolean flipHorizontally,
-			boolean flipVertically) {
-		int sampleMulti = 1;
+			boolean flipVertically,
+			RegionDecoderSession regionDecoderSession,
+			DecodeCancelSignal cancelSignal) {
+
+		// skip the region decode attempt if the image format is known not to support it
+		ImageHeader header = ImageHeaderCache.get(context, loadedImageUri);
+		boolean regionDecoding = header == null || header.regionDecodingSupported;
+
+		Rect rect =
+				getRectFromPoints(points, orgWidth, orgHeight, fixAspectRatio, aspectRatioX, aspectRatioY);
+		int sampleSize =
+				calculateInSampleSizeByReqestedSize(
+						rect.width(),
+						rect.height(),
+						reqWidth > 0 ? reqWidth : rect.width(),
+						reqHeight > 0 ? reqHeight : rect.height());
+		int sampleMulti =
+				planCropSampleSize(
+						context,
+						rect.width(),
+						rect.height(),
+						sampleSize,
+						true,
+						reqWidth,
+						reqHeight,
+						options,
+						sampleSize * MAX_CROP_SAMPLE_MULTI)
+						/ sampleSize;
 		while (true) {
 			try {
 				// if successful, just return the resulting bitmap
@@ -286,13 +535,20 @@ public final class BitmapUtils {
 						aspectRatioY,
 						reqWidth,
 						reqHeight,
+						options,
+						resizeFilter,
+						resizeExecutor,
 						flipHorizontally,
 						flipVertically,
-						sampleMulti);
+						sampleMulti,
+						regionDecoding,
+						regionDecoderSession,
+						cancelSignal);
 			} catch (OutOfMemoryError e) {
 				// if OOM try to increase the sampling to lower the memory usage
+				MemoryBudget.onOutOfMemory();
 				sampleMulti *= 2;
-				if (sampleMulti > 16) {
+				if (sampleMulti > MAX_CROP_SAMPLE_MULTI) {
 					throw new RuntimeException(
 							"Failed to handle OOM by sampling ("
 									+ sampleMulti
@@ -437,52 +693,100 @@ public final class BitmapUtils {
 			Uri uri,
 			Bitmap.CompressFormat compressFormat,
 			int compressQuality)
-			throws FileNotFoundException {
-		OutputStream outputStream = null;
-		try {
-			outputStream = context.getContentResolver().openOutputStream(uri);
-			bitmap.compress(compressFormat, compressQuality, outputStream);
-		} finally {
-			closeSafe(outputStream);
-		}
+			throws IOException {
+		writeBitmapToUri(
+				context, bitmap, uri, compressFormat, compressQuality, ExifInterface.ORIENTATION_NORMAL);
 	}
 
 	/**
-	 * Resize the given bitmap to the given width/height by the given option.<br>
+	 * Write the given bitmap to the given uri using the given compression, with EXIF segment of the
+	 * given orientation if not normal (JPEG only).
 	 */
-	static Bitmap resizeBitmap(
-			Bitmap bitmap, int reqWidth, int reqHeight, ImageCropView.RequestSizeOptions options) {
+	static void writeBitmapToUri(
+			Context context,
+			Bitmap bitmap,
+			Uri uri,
+			Bitmap.CompressFormat compressFormat,
+			int compressQuality,
+			int exifOrientation)
+			throws IOException {
+		writeBitmapToUri(
+				context, bitmap, uri, compressFormat, compressQuality, exifOrientation, 0, null);
+	}
+
+	/**
+	 * Write the given bitmap to the given uri using the given compression, with EXIF segment of the
+	 * given orientation if not normal (JPEG only).<br>
+	 * If max bytes is given for lossy compression, the bitmap is written by the highest quality up to
+	 * the given quality that fits in it, see {@link QualitySearch}.
+	 *
+	 * @param maxBytes the max size of the written image, 0 if not limited
+	 * @param executor the executor to search the quality in parallel on, null for the calling thread
+	 * @throws IOException if no quality fits the max bytes, nothing is written to the uri
+	 */
+	static void writeBitmapToUri(
+			Context context,
+			Bitmap bitmap,
+			Uri uri,
+			Bitmap.CompressFormat compressFormat,
+			int compressQuality,
+			int exifOrientation,
+			int maxBytes,
+			Executor executor)
+			throws IOException {
+		QualitySearch.Candidate candidate = null;
+		if (maxBytes > 0 && compressFormat != Bitmap.CompressFormat.PNG) {
+			candidate =
+					QualitySearch.encode(
+							bitmap, compressFormat, compressQuality, maxBytes, exifOrientation, executor);
+			if (!candidate.fits()) {
+				throw new IOException(
+						"Failed to fit image in "
+								+ maxBytes
+								+ " bytes, smallest is "
+								+ candidate.getSize()
+								+ " bytes by quality "
+								+ candidate.mQuality
+								+ ": "
+								+ uri);
+			}
+		}
+
+		long expectedSize =
+				candidate != null
+						? candidate.getSize()
+						: estimateCompressedSize(
+								(long) bitmap.getWidth() * bitmap.getHeight(), compressFormat, compressQuality);
+		SaveOutputStream saveStream = null;
 		try {
-			if (reqWidth > 0
-					&& reqHeight > 0
-					&& (options == ImageCropView.RequestSizeOptions.RESIZE_FIT
-					|| options == ImageCropView.RequestSizeOptions.RESIZE_INSIDE
-					|| options == ImageCropView.RequestSizeOptions.RESIZE_EXACT)) {
-
-				Bitmap resized = null;
-				if (options == ImageCropView.RequestSizeOptions.RESIZE_EXACT) {
-					resized = Bitmap.createScaledBitmap(bitmap, reqWidth, reqHeight, false);
-				} else {
-					int width = bitmap.getWidth();
-					int height = bitmap.getHeight();
-					float scale = Math.max(width / (float) reqWidth, height / (float) reqHeight);
-					if (scale > 1 || options == ImageCropView.RequestSizeOptions.RESIZE_FIT) {
-						resized =
-								Bitmap.createScaledBitmap(
-										bitmap, (int) (width / scale), (int) (height / scale), false);
-					}
+			saveStream = SaveOutputStream.open(context, uri, expectedSize);
+			if (candidate != null) {
+				candidate.writeTo(saveStream);
+			} else {
+				OutputStream outputStream = saveStream;
+				if (exifOrientation != ExifInterface.ORIENTATION_NORMAL
+						&& compressFormat == Bitmap.CompressFormat.JPEG) {
+					outputStream = new ExifOrientationOutputStream(outputStream, exifOrientation);
 				}
-				if (resized != null) {
-					if (resized != bitmap) {
-						bitmap.recycle();
-					}
-					return resized;
+				if (!bitmap.compress(compressFormat, compressQuality, outputStream)) {
+					throw new IOException("Failed to compress bitmap: " + uri);
 				}
 			}
-		} catch (Exception e) {
-			Log.w("AIC", "Failed to resize cropped image, return bitmap before resize", e);
+			saveStream.commit();
+		} finally {
+			closeSafe(saveStream);
 		}
-		return bitmap;
+	}
+
+	/**
+	 * Estimate the upper size of image of the given pixels compressed by the given compression, to
+	 * preallocate the saved file by. About a byte per pixel for lossy compression at full quality.
+	 */
+	static long estimateCompressedSize(
+			long pixels, Bitmap.CompressFormat compressFormat, int compressQuality) {
+		return compressFormat == Bitmap.CompressFormat.PNG
+				? pixels * 3
+				: pixels * Math.max(10, compressQuality) / 100;
 	}
 
 	// region: Private methods
@@ -491,9 +795,10 @@ public final class BitmapUtils {
 	 * Crop image bitmap from URI by decoding it with specific width and height to down-sample if
 	 * required.
 	 *
-	 * @param orgWidth    used to get rectangle from points (handle edge cases to limit rectangle)
-	 * @param orgHeight   used to get rectangle from points (handle edge cases to limit rectangle)
-	 * @param sampleMulti used to increase the sampling of the image to handle memory issues.
+	 * @param orgWidth       used to get rectangle from points (handle edge cases to limit rectangle)
+	 * @param orgHeight      used to get rectangle from points (handle edge cases to limit rectangle)
+	 * @param sampleMulti    used to increase the sampling of the image to handle memory issues.
+	 * @param regionDecoding if to try decoding only the required region, false to decode full image
 	 */
 	private static BitmapSampled cropBitmap(
 			Context context,
@@ -507,9 +812,15 @@ public final class BitmapUtils {
 			int aspectRatioY,
 			int reqWidth,
 			int reqHeight,
+			ImageCropView.RequestSizeOptions options,
+			ImageCropView.ResizeFilter resizeFilter,
+			Executor resizeExecutor,
 			boolean flipHorizontally,
 			boolean flipVertically,
-			int sampleMulti) {
+			int sampleMulti,
+			boolean regionDecoding,
+			RegionDecoderSession regionDecoderSession,
+			DecodeCancelSignal cancelSignal) {
 
 		// get the rectangle in original image that contains the required cropped area (larger for non
 		// rectangular crop)
@@ -521,35 +832,58 @@ public final class BitmapUtils {
 
 		Bitmap result = null;
 		int sampleSize = 1;
-		try {
-			// decode only the required image from URI, optionally sub-sampling if reqWidth/reqHeight is
-			// given.
-			BitmapSampled bitmapSampled =
-					decodeSampledBitmapRegion(context, loadedImageUri, rect, width, height, sampleMulti);
-			result = bitmapSampled.bitmap;
-			sampleSize = bitmapSampled.sampleSize;
-		} catch (Exception ignored) {
+		if (regionDecoding) {
+			try {
+				// decode only the required image from URI, optionally sub-sampling if reqWidth/reqHeight is
+				// given.
+				BitmapSampled bitmapSampled =
+						decodeSampledBitmapRegion(
+								context,
+								loadedImageUri,
+								rect,
+								width,
+								height,
+								sampleMulti,
+								regionDecoderSession,
+								cancelSignal);
+				result = bitmapSampled.bitmap;
+				sampleSize = bitmapSampled.sampleSize;
+			} catch (CancellationException e) {
+				throw e;
+			} catch (Exception ignored) {
+			}
 		}
 
 		if (result != null) {
+			Bitmap region = result;
 			try {
-				// rotate the decoded region by the required amount
-				result = rotateAndFlipBitmapInt(result, degreesRotated, flipHorizontally, flipVertically);
-
-				// rotating by 0, 90, 180 or 270 degrees doesn't require extra cropping
-				if (degreesRotated % 90 != 0) {
-
-					// extra crop because non rectangular crop cannot be done directly on the image without
-					// rotating first
-					result =
-							cropForRotatedImage(
-									result, points, rect, degreesRotated, fixAspectRatio, aspectRatioX, aspectRatioY);
+				// stop before the transform if cancelled while decoding the region
+				if (cancelSignal != null) {
+					cancelSignal.checkDecoded(region);
 				}
-			} catch (OutOfMemoryError e) {
-				if (result != null) {
-					result.recycle();
-				}
-				throw e;
+
+				// rotate, flip, crop and resize the decoded region into the final bitmap in one pass
+				result =
+						transformCrop(
+								region,
+								new Rect(0, 0, region.getWidth(), region.getHeight()),
+								1,
+								points,
+								rect,
+								1f / sampleSize,
+								degreesRotated,
+								fixAspectRatio,
+								aspectRatioX,
+								aspectRatioY,
+								flipHorizontally,
+								flipVertically,
+								reqWidth,
+								reqHeight,
+								options,
+								resizeFilter,
+								resizeExecutor);
+			} finally {
+				BitmapPool.recycle(region);
 			}
 			return new BitmapSampled(result, sampleSize);
 		} else {
@@ -566,8 +900,13 @@ public final class BitmapUtils {
 					rect,
 					width,
 					height,
+					// the width/height default to the crop size, resize only to requested size
+					reqWidth > 0 && reqHeight > 0 ? options : ImageCropView.RequestSizeOptions.NONE,
+					resizeFilter,
+					resizeExecutor,
 					flipHorizontally,
-					flipVertically);
+					flipVertically,
+					cancelSignal);
 		}
 	}
 
@@ -587,18 +926,31 @@ public final class BitmapUtils {
 			Rect rect,
 			int width,
 			int height,
+			ImageCropView.RequestSizeOptions requestSizeOptions,
+			ImageCropView.ResizeFilter resizeFilter,
+			Executor resizeExecutor,
 			boolean flipHorizontally,
-			boolean flipVertically) {
+			boolean flipVertically,
+			DecodeCancelSignal cancelSignal) {
 		Bitmap result = null;
 		int sampleSize;
 		try {
 			BitmapFactory.Options options = new BitmapFactory.Options();
-			options.inSampleSize =
-					sampleSize =
-							sampleMulti
-									* calculateInSampleSizeByReqestedSize(rect.width(), rect.height(), width, height);
+			sampleSize =
+					sampleMulti
+							* calculateInSampleSizeByReqestedSize(rect.width(), rect.height(), width, height);
+			ImageHeader header = ImageHeaderCache.get(context, loadedImageUri);
+			if (header != null && header.hasBounds()) {
+				// the full image is decoded
+				sampleSize =
+						MemoryBudget.planSampleSize(
+								context, header.width, header.height, sampleSize, 1, 0, MAX_DECODE_SAMPLE_SIZE);
+			}
+			options.inSampleSize = sampleSize;
+			options.inMutable = true;
 
-			Bitmap fullBitmap = decodeImage(context.getContentResolver(), loadedImageUri, options);
+			Bitmap fullBitmap =
+					decodeImage(context.getContentResolver(), loadedImageUri, options, cancelSignal);
 			if (fullBitmap != null) {
 				try {
 					// adjust crop points by the sampling because the image is smaller
@@ -618,18 +970,23 @@ public final class BitmapUtils {
 									aspectRatioY,
 									1,
 									flipHorizontally,
-									flipVertically);
+									flipVertically,
+									width,
+									height,
+									requestSizeOptions,
+									resizeFilter,
+									resizeExecutor);
 				} finally {
-					if (result != fullBitmap) {
-						fullBitmap.recycle();
-					}
+					BitmapPool.recycle(fullBitmap);
 				}
 			}
 		} catch (OutOfMemoryError e) {
 			if (result != null) {
-				result.recycle();
+				BitmapPool.recycle(result);
 			}
 			throw e;
+		} catch (CancellationException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new RuntimeException(
 					"Failed to load sampled bitmap: " + loadedImageUri + "\r\n" + e.getMessage(), e);
@@ -638,76 +995,517 @@ public final class BitmapUtils {
 	}
 
 	/**
-	 * Decode image from uri using "inJustDecodeBounds" to get the image dimensions.
+	 * Decode image from uri using "inJustDecodeBounds" to get the image dimensions.<br>
+	 * Decodes against the file descriptor if available so only the header pages are read.
 	 */
-	private static BitmapFactory.Options decodeImageForOption(ContentResolver resolver, Uri uri)
+	static BitmapFactory.Options decodeImageForOption(ContentResolver resolver, Uri uri)
 			throws FileNotFoundException {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+
+		AssetFileDescriptor fd = openWholeFileDescriptor(resolver, uri);
+		if (fd != null) {
+			try {
+				BitmapFactory.decodeFileDescriptor(fd.getFileDescriptor(), EMPTY_RECT, options);
+			} finally {
+				closeSafe(fd);
+			}
+		}
+
+		if (options.outWidth <= 0) {
+			InputStream stream = null;
+			try {
+				stream = resolver.openInputStream(uri);
+				BitmapFactory.decodeStream(stream, EMPTY_RECT, options);
+			} finally {
+				closeSafe(stream);
+			}
+		}
+		options.inJustDecodeBounds = false;
+		return options;
+	}
+
+	/**
+	 * Create region decoder of the given image uri.<br>
+	 * Decodes against the file descriptor if the provider serves the uri as a whole file, so the
+	 * encoded data is read on demand, a stream is copied whole into native memory by the decoder.
+	 * Fallback to stream if the descriptor is not available or not seekable (pipe).
+	 */
+	static BitmapRegionDecoder newRegionDecoder(ContentResolver resolver, Uri uri)
+			throws IOException {
+		AssetFileDescriptor fd = openWholeFileDescriptor(resolver, uri);
+		if (fd != null) {
+			try {
+				// shareable so the data isn't copied, the decoder keeps its own duplicate of the descriptor
+				BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(fd.getFileDescriptor(), true);
+				if (decoder != null) {
+					return decoder;
+				}
+			} catch (IOException e) {
+				Log.w("AIC", "Failed to create region decoder by file descriptor: " + uri, e);
+			} finally {
+				closeSafe(fd);
+			}
+		}
+
 		InputStream stream = null;
 		try {
-			stream = resolver.openInputStream(uri);
-			BitmapFactory.Options options = new BitmapFactory.Options();
-			options.inJustDecodeBounds = true;
-			BitmapFactory.decodeStream(stream, EMPTY_RECT, options);
-			options.inJustDecodeBounds = false;
-			return options;
+			stream = openInputStream(resolver, uri);
+			return BitmapRegionDecoder.newInstance(stream, false);
+		} finally {
+			closeSafe(stream);
+		}
+	}
+
+	/**
+	 * Open file descriptor of the given uri if the provider serves it as a whole file, null if not
+	 * available or only part of a file (asset in APK).
+	 */
+	private static AssetFileDescriptor openWholeFileDescriptor(ContentResolver resolver, Uri uri) {
+		try {
+			AssetFileDescriptor fd = resolver.openAssetFileDescriptor(uri, "r");
+			if (fd != null
+					&& (fd.getStartOffset() != 0
+					|| fd.getDeclaredLength() != AssetFileDescriptor.UNKNOWN_LENGTH)) {
+				closeSafe(fd);
+				fd = null;
+			}
+			return fd;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Read the image header from the given leading bytes of the image source.<br>
+	 * If the bytes don't contain the image frame header the returned header has no bounds.
+	 */
+	private static ImageHeader decodeImageHeader(byte[] data, int length) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeByteArray(data, 0, length, options);
+
+		int degrees = 0;
+		try {
+			degrees = getExifDegrees(new ExifInterface(new ByteArrayInputStream(data, 0, length)));
+		} catch (Exception ignored) {
+		}
+		return new ImageHeader(options.outWidth, options.outHeight, options.outMimeType, degrees);
+	}
+
+	/**
+	 * Set the given options to decode into a pooled bitmap that can hold the given image size sampled
+	 * by the options "inSampleSize", if there is one.<br>
+	 * The decoded bitmap is mutable so it can be returned to the pool when recycled.
+	 */
+	static void setReusableBitmap(BitmapFactory.Options options, int width, int height) {
+		int sampleSize = Math.max(1, options.inSampleSize);
+		options.inMutable = true;
+		options.inBitmap =
+				BitmapPool.get(
+						(width + sampleSize - 1) / sampleSize,
+						(height + sampleSize - 1) / sampleSize,
+						Bitmap.Config.ARGB_8888);
+	}
+
+	/**
+	 * Return the pooled bitmap set on the given options back to the pool after failing to decode into
+	 * it, to decode into new bitmap.
+	 */
+	static void releaseReusableBitmap(BitmapFactory.Options options) {
+		if (options.inBitmap != null) {
+			BitmapPool.recycle(options.inBitmap);
+			options.inBitmap = null;
+		}
+	}
+
+	/**
+	 * Transform the given rectangle of the source bitmap to the final cropped image in a single pass.
+	 * <br>
+	 * Rotation, flip, the extra crop of image rotated by not straight angle and the resize by the
+	 * given options are composed into one matrix drawn into a single bitmap of the final size
+	 * (pooled if available), instead of a new bitmap for every step.<br>
+	 * Resize by half or less, or by a filter other than bilinear, is completed by {@link Resampler}
+	 * from the transform drawn by half or without resize.<br>
+	 * The source bitmap is not recycled.
+	 *
+	 * @param sourceRect   the rectangle of the source bitmap that contains the crop
+	 * @param drawScale    the scale to draw the source bitmap pixels by
+	 * @param points       the crop points, in the units of the rect
+	 * @param rect         the rectangle that contains the crop, in the units of the points
+	 * @param pointsScale  the scale of the points units in the drawn (before resize) pixels
+	 * @param resizeFilter   the filter to resize the crop by, see {@link Resampler}
+	 * @param resizeExecutor the executor to resample in parallel on, null to resample on the
+	 *                       calling thread
+	 */
+	static Bitmap transformCrop(
+			Bitmap source,
+			Rect sourceRect,
+			float drawScale,
+			float[] points,
+			Rect rect,
+			float pointsScale,
+			int degreesRotated,
+			boolean fixAspectRatio,
+			int aspectRatioX,
+			int aspectRatioY,
+			boolean flipHorizontally,
+			boolean flipVertically,
+			int reqWidth,
+			int reqHeight,
+			ImageCropView.RequestSizeOptions options,
+			ImageCropView.ResizeFilter resizeFilter,
+			Executor resizeExecutor) {
+
+		// rotate and flip around the origin, then move the rotated image to the origin
+		RectF dstRect = new RectF(0, 0, sourceRect.width(), sourceRect.height());
+		Matrix matrix = new Matrix();
+		matrix.setScale(drawScale, drawScale);
+		matrix.postRotate(degreesRotated);
+		matrix.postScale(flipHorizontally ? -1 : 1, flipVertically ? -1 : 1);
+		RectF deviceRect = new RectF();
+		matrix.mapRect(deviceRect, dstRect);
+		int rotatedWidth = Math.max(1, Math.round(deviceRect.width()));
+		int rotatedHeight = Math.max(1, Math.round(deviceRect.height()));
+
+		// rotating by 0, 90, 180 or 270 degrees doesn't require extra cropping, otherwise crop the
+		// rectangle of the crop window out of the rotated image
+		Rect cropRect = new Rect(0, 0, rotatedWidth, rotatedHeight);
+		if (degreesRotated % 90 != 0) {
+			Rect rotatedRect = new Rect(rect);
+			getRotatedCropRect(
+					points, rotatedRect, degreesRotated, fixAspectRatio, aspectRatioX, aspectRatioY);
+			cropRect.set(
+					Math.round(rotatedRect.left * pointsScale),
+					Math.round(rotatedRect.top * pointsScale),
+					Math.round(rotatedRect.right * pointsScale),
+					Math.round(rotatedRect.bottom * pointsScale));
+			if (!cropRect.intersect(0, 0, rotatedWidth, rotatedHeight) || cropRect.isEmpty()) {
+				cropRect.set(0, 0, rotatedWidth, rotatedHeight);
+			}
+		}
+		matrix.postTranslate(-deviceRect.left - cropRect.left, -deviceRect.top - cropRect.top);
+
+		// resize the crop to the requested size, by the transform draw if bilinear filtering suffices,
+		// otherwise by the resampler after the transform (drawn by half if resized to half or less)
+		int width = cropRect.width();
+		int height = cropRect.height();
+		int[] size = getResizedSize(width, height, reqWidth, reqHeight, options);
+		boolean resample =
+				size != null && Resampler.isRequired(width, height, size[0], size[1], resizeFilter);
+		if (size != null) {
+			int drawWidth = !resample ? size[0] : width >= size[0] * 2 ? width / 2 : width;
+			int drawHeight = !resample ? size[1] : height >= size[1] * 2 ? height / 2 : height;
+			matrix.postScale(drawWidth / (float) width, drawHeight / (float) height);
+			width = drawWidth;
+			height = drawHeight;
+		}
+
+		Bitmap result = BitmapPool.get(width, height, Bitmap.Config.ARGB_8888);
+		if (result == null) {
+			result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		}
+
+		Paint paint = new Paint();
+		paint.setFilterBitmap(true);
+		paint.setAntiAlias(!matrix.rectStaysRect());
+
+		Canvas canvas = new Canvas(result);
+		canvas.concat(matrix);
+		canvas.drawBitmap(source, sourceRect, dstRect, paint);
+		canvas.setBitmap(null);
+		result.setHasAlpha(source.hasAlpha() || !matrix.rectStaysRect());
+
+		if (resample) {
+			Bitmap transformed = result;
+			try {
+				result =
+						Resampler.resize(
+								transformed, size[0], size[1], resizeFilter, resizeExecutor);
+			} finally {
+				BitmapPool.recycle(transformed);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Plan the sample size to crop a region of the given size by, see {@link MemoryBudget}: the
+	 * decoded region (if decoded), the transformed crop, and the transform drawn by half if resampled
+	 * or the resized crop.
+	 *
+	 * @param decoded if the region is decoded for the crop, otherwise cropped from a held bitmap
+	 */
+	private static int planCropSampleSize(
+			Context context,
+			int width,
+			int height,
+			int sampleSize,
+			boolean decoded,
+			int reqWidth,
+			int reqHeight,
+			ImageCropView.RequestSizeOptions options,
+			int maxSampleSize) {
+		float copies = decoded ? 1 : 0;
+		long fixedBytes = 0;
+		int sampledWidth = width / sampleSize;
+		int sampledHeight = height / sampleSize;
+		int[] size = getResizedSize(sampledWidth, sampledHeight, reqWidth, reqHeight, options);
+		if (size == null) {
+			copies += 1;
+		} else {
+			fixedBytes = (long) size[0] * size[1] * 4;
+			if (sampledWidth >= size[0] * 2 || sampledHeight >= size[1] * 2) {
+				copies += 0.25f;
+			}
+		}
+		return MemoryBudget.planSampleSize(
+				context, width, height, sampleSize, copies, fixedBytes, maxSampleSize);
+	}
+
+	/**
+	 * Get the size to resize an image of the given size to by the given option.
+	 *
+	 * @return the width and height or null if the image is not resized
+	 */
+	private static int[] getResizedSize(
+			int width,
+			int height,
+			int reqWidth,
+			int reqHeight,
+			ImageCropView.RequestSizeOptions options) {
+		if (reqWidth > 0
+				&& reqHeight > 0
+				&& (options == ImageCropView.RequestSizeOptions.RESIZE_FIT
+				|| options == ImageCropView.RequestSizeOptions.RESIZE_INSIDE
+				|| options == ImageCropView.RequestSizeOptions.RESIZE_EXACT)) {
+			if (options == ImageCropView.RequestSizeOptions.RESIZE_EXACT) {
+				return new int[]{reqWidth, reqHeight};
+			}
+			float scale = Math.max(width / (float) reqWidth, height / (float) reqHeight);
+			if (scale > 1 || options == ImageCropView.RequestSizeOptions.RESIZE_FIT) {
+				return new int[]{
+						Math.max(1, (int) (width / scale)), Math.max(1, (int) (height / scale))};
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Open input stream of the given uri, fail if the provider returned no stream.
+	 */
+	private static InputStream openInputStream(ContentResolver resolver, Uri uri)
+			throws FileNotFoundException {
+		InputStream stream = resolver.openInputStream(uri);
+		if (stream == null) {
+			throw new FileNotFoundException("Failed to open input stream: " + uri);
+		}
+		return stream;
+	}
+
+	/**
+	 * Read from the given stream until the given buffer is full or the stream has ended.
+	 *
+	 * @return the number of bytes read into the buffer
+	 */
+	private static int readFully(InputStream stream, byte[] buffer) throws IOException {
+		int length = 0;
+		while (length < buffer.length) {
+			int read = stream.read(buffer, length, buffer.length - length);
+			if (read < 0) {
+				break;
+			}
+			length += read;
+		}
+		return length;
+	}
+
+	/**
+	 * Decode image from the given already opened stream using given "inSampleSize", the stream is
+	 * closed after.<br>
+	 * If failed due to out-of-memory fallback to reopen the uri raising the inSampleSize until
+	 * success, if failed to decode into the pooled "inBitmap" reopen to decode into new bitmap.<br>
+	 * The decode is aborted by cancel of the given signal (if not null).
+	 */
+	private static Bitmap decodeImage(
+			ContentResolver resolver,
+			Uri uri,
+			InputStream stream,
+			BitmapFactory.Options options,
+			DecodeCancelSignal cancelSignal)
+			throws FileNotFoundException {
+		if (cancelSignal != null) {
+			cancelSignal.register(options);
+		}
+		try {
+			Bitmap bitmap = BitmapFactory.decodeStream(stream, EMPTY_RECT, options);
+			if (cancelSignal != null) {
+				cancelSignal.checkDecoded(bitmap);
+			}
+			if (bitmap != null || options.inBitmap == null) {
+				return bitmap;
+			}
+		} catch (OutOfMemoryError e) {
+			MemoryBudget.onOutOfMemory();
+			options.inSampleSize *= 2;
+		} catch (IllegalArgumentException e) {
+			// the pooled bitmap cannot hold the decoded image
+			if (options.inBitmap == null) {
+				throw e;
+			}
 		} finally {
 			closeSafe(stream);
+			if (cancelSignal != null) {
+				cancelSignal.unregister(options);
+			}
 		}
+		releaseReusableBitmap(options);
+		return decodeImage(resolver, uri, options, cancelSignal);
 	}
 
 	/**
 	 * Decode image from uri using given "inSampleSize", but if failed due to out-of-memory then raise
-	 * the inSampleSize until success.
+	 * the inSampleSize until success.<br>
+	 * The decode is aborted by cancel of the given signal (if not null).
 	 */
 	private static Bitmap decodeImage(
-			ContentResolver resolver, Uri uri, BitmapFactory.Options options)
+			ContentResolver resolver,
+			Uri uri,
+			BitmapFactory.Options options,
+			DecodeCancelSignal cancelSignal)
 			throws FileNotFoundException {
-		do {
-			InputStream stream = null;
-			try {
-				stream = resolver.openInputStream(uri);
-				return BitmapFactory.decodeStream(stream, EMPTY_RECT, options);
-			} catch (OutOfMemoryError e) {
-				options.inSampleSize *= 2;
-			} finally {
-				closeSafe(stream);
+		if (cancelSignal != null) {
+			cancelSignal.throwIfCancelled();
+			cancelSignal.register(options);
+		}
+		try {
+			do {
+				InputStream stream = null;
+				try {
+					stream = resolver.openInputStream(uri);
+					Bitmap bitmap = BitmapFactory.decodeStream(stream, EMPTY_RECT, options);
+					return cancelSignal != null ? cancelSignal.checkDecoded(bitmap) : bitmap;
+				} catch (OutOfMemoryError e) {
+					MemoryBudget.onOutOfMemory();
+					options.inSampleSize *= 2;
+				} catch (IllegalArgumentException e) {
+					if (options.inBitmap == null) {
+						throw e;
+					}
+					releaseReusableBitmap(options);
+				} finally {
+					closeSafe(stream);
+				}
+			} while (options.inSampleSize <= MAX_DECODE_SAMPLE_SIZE);
+		} finally {
+			if (cancelSignal != null) {
+				cancelSignal.unregister(options);
 			}
-		} while (options.inSampleSize <= 512);
+		}
 		throw new RuntimeException("Failed to decode image: " + uri);
 	}
 
 	/**
 	 * Decode specific rectangle bitmap from stream using sampling to get bitmap with the requested
-	 * limit.
+	 * limit.<br>
+	 * The region decode cannot be interrupted, the given signal (if not null) is checked before and
+	 * after it, the caller checks the returned bitmap.
 	 *
-	 * @param sampleMulti used to increase the sampling of the image to handle memory issues.
+	 * @param sampleMulti          used to increase the sampling of the image to handle memory issues.
+	 * @param regionDecoderSession the session to decode by if not null and not closed, otherwise a
+	 *                             decoder is opened for this decode only
 	 */
 	private static BitmapSampled decodeSampledBitmapRegion(
-			Context context, Uri uri, Rect rect, int reqWidth, int reqHeight, int sampleMulti) {
-		InputStream stream = null;
+			Context context,
+			Uri uri,
+			Rect rect,
+			int reqWidth,
+			int reqHeight,
+			int sampleMulti,
+			RegionDecoderSession regionDecoderSession,
+			DecodeCancelSignal cancelSignal) {
+		return decodeSampledBitmapRegion(
+				context,
+				uri,
+				rect,
+				sampleMulti
+						* calculateInSampleSizeByReqestedSize(
+						rect.width(), rect.height(), reqWidth, reqHeight),
+				regionDecoderSession,
+				cancelSignal);
+	}
+
+	/**
+	 * Decode specific rectangle bitmap from stream by the given sample size, increased up front if
+	 * the region doesn't fit in the available memory, see {@link MemoryBudget}, or if the decode
+	 * still runs out of memory.
+	 *
+	 * @param regionDecoderSession the session to decode by if not null and not closed, otherwise a
+	 *                             decoder is opened for this decode only
+	 * @return the decoded bitmap with the sample size used, null bitmap if failed to decode by any
+	 * sample size
+	 */
+	static BitmapSampled decodeSampledBitmapRegion(
+			Context context,
+			Uri uri,
+			Rect rect,
+			int sampleSize,
+			RegionDecoderSession regionDecoderSession,
+			DecodeCancelSignal cancelSignal) {
 		BitmapRegionDecoder decoder = null;
+		boolean sessionDecoder = false;
 		try {
+			if (cancelSignal != null) {
+				cancelSignal.throwIfCancelled();
+			}
 			BitmapFactory.Options options = new BitmapFactory.Options();
 			options.inSampleSize =
-					sampleMulti
-							* calculateInSampleSizeByReqestedSize(
-							rect.width(), rect.height(), reqWidth, reqHeight);
+					MemoryBudget.planSampleSize(
+							context, rect.width(), rect.height(), sampleSize, 1, 0, MAX_DECODE_SAMPLE_SIZE);
+
+			setReusableBitmap(options, rect.width(), rect.height());
 
-			stream = context.getContentResolver().openInputStream(uri);
-			decoder = BitmapRegionDecoder.newInstance(stream, false);
+			if (regionDecoderSession != null) {
+				decoder = regionDecoderSession.acquire();
+				sessionDecoder = decoder != null;
+			}
+			if (decoder == null) {
+				decoder = newRegionDecoder(context.getContentResolver(), uri);
+			}
+			ParallelRegionDecoder parallelDecoder =
+					regionDecoderSession != null ? regionDecoderSession.getParallelDecoder() : null;
 			do {
+				if (cancelSignal != null) {
+					cancelSignal.throwIfCancelled();
+				}
 				try {
+					if (parallelDecoder != null
+							&& parallelDecoder.shouldDecodeParallel(rect, options.inSampleSize)) {
+						releaseReusableBitmap(options);
+						Bitmap bitmap =
+								parallelDecoder.decodeRegion(decoder, rect, options.inSampleSize, cancelSignal);
+						return new BitmapSampled(bitmap, options.inSampleSize);
+					}
 					return new BitmapSampled(decoder.decodeRegion(rect, options), options.inSampleSize);
 				} catch (OutOfMemoryError e) {
+					MemoryBudget.onOutOfMemory();
 					options.inSampleSize *= 2;
+				} catch (IllegalArgumentException e) {
+					if (options.inBitmap == null) {
+						throw e;
+					}
+					releaseReusableBitmap(options);
 				}
-			} while (options.inSampleSize <= 512);
+			} while (options.inSampleSize <= MAX_DECODE_SAMPLE_SIZE);
+		} catch (CancellationException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new RuntimeException(
 					"Failed to load sampled bitmap: " + uri + "\r\n" + e.getMessage(), e);
 		} finally {
-			closeSafe(stream);
-			if (decoder != null) {
+			if (sessionDecoder) {
+				regionDecoderSession.release(decoder);
+			} else if (decoder != null) {
 				decoder.recycle();
 			}
 		}
@@ -716,55 +1514,46 @@ public final class BitmapUtils {
 
 	/**
 	 * Special crop of bitmap rotated by not stright angle, in this case the original crop bitmap
-	 * contains parts beyond the required crop area, this method crops the already cropped and rotated
-	 * bitmap to the final rectangle.<br>
+	 * contains parts beyond the required crop area, this method sets the given rect to the final
+	 * rectangle in the rotated crop bitmap.<br>
 	 * Note: rotating by 0, 90, 180 or 270 degrees doesn't require extra cropping.
+	 *
+	 * @param rect the rectangle that contains the crop, set to the rectangle in the rotated crop
 	 */
-	private static Bitmap cropForRotatedImage(
-			Bitmap bitmap,
+	private static void getRotatedCropRect(
 			float[] points,
 			Rect rect,
 			int degreesRotated,
 			boolean fixAspectRatio,
 			int aspectRatioX,
 			int aspectRatioY) {
-		if (degreesRotated % 90 != 0) {
-
-			int adjLeft = 0, adjTop = 0, width = 0, height = 0;
-			double rads = Math.toRadians(degreesRotated);
-			int compareTo =
-					degreesRotated < 90 || (degreesRotated > 180 && degreesRotated < 270)
-							? rect.left
-							: rect.right;
-			for (int i = 0; i < points.length; i += 2) {
-				if (points[i] >= compareTo - 1 && points[i] <= compareTo + 1) {
-					adjLeft = (int) Math.abs(Math.sin(rads) * (rect.bottom - points[i + 1]));
-					adjTop = (int) Math.abs(Math.cos(rads) * (points[i + 1] - rect.top));
-					width = (int) Math.abs((points[i + 1] - rect.top) / Math.sin(rads));
-					height = (int) Math.abs((rect.bottom - points[i + 1]) / Math.cos(rads));
-					break;
-				}
-			}
-
-			rect.set(adjLeft, adjTop, adjLeft + width, adjTop + height);
-			if (fixAspectRatio) {
-				fixRectForAspectRatio(rect, aspectRatioX, aspectRatioY);
+		int adjLeft = 0, adjTop = 0, width = 0, height = 0;
+		double rads = Math.toRadians(degreesRotated);
+		int compareTo =
+				degreesRotated < 90 || (degreesRotated > 180 && degreesRotated < 270)
+						? rect.left
+						: rect.right;
+		for (int i = 0; i < points.length; i += 2) {
+			if (points[i] >= compareTo - 1 && points[i] <= compareTo + 1) {
+				adjLeft = (int) Math.abs(Math.sin(rads) * (rect.bottom - points[i + 1]));
+				adjTop = (int) Math.abs(Math.cos(rads) * (points[i + 1] - rect.top));
+				width = (int) Math.abs((points[i + 1] - rect.top) / Math.sin(rads));
+				height = (int) Math.abs((rect.bottom - points[i + 1]) / Math.cos(rads));
+				break;
 			}
+		}
 
-			Bitmap bitmapTmp = bitmap;
-			bitmap = Bitmap.createBitmap(bitmap, rect.left, rect.top, rect.width(), rect.height());
-			if (bitmapTmp != bitmap) {
-				bitmapTmp.recycle();
-			}
+		rect.set(adjLeft, adjTop, adjLeft + width, adjTop + height);
+		if (fixAspectRatio) {
+			fixRectForAspectRatio(rect, aspectRatioX, aspectRatioY);
 		}
-		return bitmap;
 	}
 
 	/**
 	 * Calculate the largest inSampleSize value that is a power of 2 and keeps both height and width
 	 * larger than the requested height and width.
 	 */
-	private static int calculateInSampleSizeByReqestedSize(
+	static int calculateInSampleSizeByReqestedSize(
 			int width, int height, int reqWidth, int reqHeight) {
 		int inSampleSize = 1;
 		if (height > reqHeight || width > reqWidth) {
@@ -793,27 +1582,6 @@ public final class BitmapUtils {
 		return inSampleSize;
 	}
 
-	/**
-	 * Rotate the given bitmap by the given degrees.<br>
-	 * New bitmap is created and the old one is recycled.
-	 */
-	private static Bitmap rotateAndFlipBitmapInt(
-			Bitmap bitmap, int degrees, boolean flipHorizontally, boolean flipVertically) {
-		if (degrees > 0 || flipHorizontally || flipVertically) {
-			Matrix matrix = new Matrix();
-			matrix.setRotate(degrees);
-			matrix.postScale(flipHorizontally ? -1 : 1, flipVertically ? -1 : 1);
-			Bitmap newBitmap =
-					Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, false);
-			if (newBitmap != bitmap) {
-				bitmap.recycle();
-			}
-			return newBitmap;
-		} else {
-			return bitmap;
-		}
-	}
-
 	/**
 	 * Get the max size of bitmap allowed to be rendered on the device.<br>
 	 * http://stackoverflow.com/questions/7428996/hw-accelerated-activity-how-to-get-opengl-texture-size-limit.
@@ -870,7 +1638,7 @@ public final class BitmapUtils {
 	 *
 	 * @param closeable the closable object to close
 	 */
-	private static void closeSafe(Closeable closeable) {
+	static void closeSafe(Closeable closeable) {
 		if (closeable != null) {
 			try {
 				closeable.close();
@@ -879,6 +1647,19 @@ public final class BitmapUtils {
 		}
 	}
 
+	/**
+	 * Close the given file descriptor and ignore any exception thrown, not {@link Closeable} before
+	 * API 19.
+	 */
+	private static void closeSafe(AssetFileDescriptor fd) {
+		if (fd != null) {
+			try {
+				fd.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
 	/**
 	 * Create a new bitmap that has all pixels beyond the oval shape transparent. Old bitmap is
 	 * recycled.
@@ -907,6 +1688,23 @@ public final class BitmapUtils {
 		return output;
 	}
 
+	// region: Inner class: OnPlaceholderDecodedListener
+
+	/**
+	 * Interface definition for a callback to be invoked when the coarse placeholder of an image is
+	 * decoded, before the full preview.
+	 */
+	interface OnPlaceholderDecodedListener {
+
+		/**
+		 * Called on the decoding thread when the placeholder is decoded.
+		 *
+		 * @param placeholder the placeholder bitmap, with the sample size and header of the preview
+		 */
+		void onPlaceholderDecoded(BitmapSampled placeholder);
+	}
+	// endregion
+
 	// region: Inner class: BitmapSampled
 
 	/**
@@ -924,9 +1722,19 @@ public final class BitmapUtils {
 		 */
 		final int sampleSize;
 
+		/**
+		 * The header of the source image if it was read during the decode, null otherwise
+		 */
+		final ImageHeader header;
+
 		BitmapSampled(Bitmap bitmap, int sampleSize) {
+			this(bitmap, sampleSize, null);
+		}
+
+		BitmapSampled(Bitmap bitmap, int sampleSize, ImageHeader header) {
 			this.bitmap = bitmap;
 			this.sampleSize = sampleSize;
+			this.header = header;
 		}
 	}
 	// endregion
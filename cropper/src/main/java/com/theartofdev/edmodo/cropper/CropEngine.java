@@ -0,0 +1,427 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Crops images without a view, for background jobs and services.<br>
+ * Crops an image loaded from URI or a bitmap by a {@link CropSpec} and the given rotation and
+ * flip, the same way {@link ImageCropView} crops the image set to it, synchronously on the calling
+ * thread or asynchronously on the engine executor returning a {@link Future}.<br>
+ * The crop points are in the source image pixels, the EXIF orientation of the source is not
+ * applied, add it to the rotation if required.<br>
+ * Configure the engine before cropping, an engine can be shared by concurrent crops.
+ */
+public final class CropEngine {
+
+	// region: Fields and Consts
+
+	private final Context mContext;
+
+	/**
+	 * The executor to run async crops, parallel decode and parallel encode on
+	 */
+	private final Executor mExecutor;
+
+	/**
+	 * if to save full resolution crop too large for the available memory band by band
+	 */
+	private volatile boolean mTiledCropEnabled;
+
+	/**
+	 * if to save crops of JPEG images to JPEG losslessly when possible
+	 */
+	private volatile boolean mLosslessCropEnabled;
+
+	/**
+	 * if to save JPEG crops rotated by multiples of 90 degrees with EXIF orientation
+	 */
+	private volatile boolean mSaveRotationAsExif;
+
+	/**
+	 * The max number of threads to decode a large crop region by in parallel
+	 */
+	private volatile int mDecodeParallelism = 1;
+
+	/**
+	 * The filter to resize crops by their requested size
+	 */
+	private volatile ImageCropView.ResizeFilter mResizeFilter = ImageCropView.ResizeFilter.BILINEAR;
+	// endregion
+
+	/**
+	 * Create engine running on {@link ImageCropExecutors#getDefault()}.
+	 */
+	public CropEngine(Context context) {
+		this(context, null);
+	}
+
+	/**
+	 * @param executor the executor to run async crops on, null for {@link
+	 *                 ImageCropExecutors#getDefault()}
+	 */
+	public CropEngine(Context context, Executor executor) {
+		mContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+		mExecutor = executor != null ? executor : ImageCropExecutors.getDefault();
+	}
+
+	/**
+	 * The executor async crops run on.
+	 */
+	public Executor getExecutor() {
+		return mExecutor;
+	}
+
+	/**
+	 * See {@link ImageCropView#setTiledCropEnabled(boolean)}.
+	 */
+	public CropEngine setTiledCropEnabled(boolean tiledCropEnabled) {
+		mTiledCropEnabled = tiledCropEnabled;
+		return this;
+	}
+
+	/**
+	 * See {@link ImageCropView#setLosslessCropEnabled(boolean)}.
+	 */
+	public CropEngine setLosslessCropEnabled(boolean losslessCropEnabled) {
+		mLosslessCropEnabled = losslessCropEnabled;
+		return this;
+	}
+
+	/**
+	 * See {@link ImageCropView#setSaveRotationAsExif(boolean)}.
+	 */
+	public CropEngine setSaveRotationAsExif(boolean saveRotationAsExif) {
+		mSaveRotationAsExif = saveRotationAsExif;
+		return this;
+	}
+
+	/**
+	 * See {@link ImageCropView#setDecodeParallelism(int)}, decoded in parallel on the engine
+	 * executor.
+	 */
+	public CropEngine setDecodeParallelism(int decodeParallelism) {
+		if (decodeParallelism < 1) {
+			throw new IllegalArgumentException("Cannot set decode parallelism to a number < 1");
+		}
+		mDecodeParallelism = decodeParallelism;
+		return this;
+	}
+
+	/**
+	 * See {@link ImageCropView#setResizeFilter(ImageCropView.ResizeFilter)}.
+	 */
+	public CropEngine setResizeFilter(ImageCropView.ResizeFilter resizeFilter) {
+		mResizeFilter = resizeFilter != null ? resizeFilter : ImageCropView.ResizeFilter.BILINEAR;
+		return this;
+	}
+
+	/**
+	 * Crop the image at the given uri by the given crop, must not be called on the UI thread.
+	 *
+	 * @param source           the Android Uri of the image to crop
+	 * @param spec             the crop points, aspect ratio and output of the crop
+	 * @param degreesRotated   the rotation of the cropped image
+	 * @param flipHorizontally if to flip the cropped image horizontally
+	 * @param flipVertically   if to flip the cropped image vertically
+	 * @return the crop result, with the error if the crop failed
+	 */
+	public ImageCropView.CropResult crop(
+			Uri source,
+			CropSpec spec,
+			int degreesRotated,
+			boolean flipHorizontally,
+			boolean flipVertically) {
+		return crop(source, null, spec, degreesRotated, flipHorizontally, flipVertically, null);
+	}
+
+	/**
+	 * Crop the given bitmap by the given crop, must not be called on the UI thread.<br>
+	 * The given bitmap is not recycled.
+	 *
+	 * @see #crop(Uri, CropSpec, int, boolean, boolean)
+	 */
+	public ImageCropView.CropResult crop(
+			Bitmap source,
+			CropSpec spec,
+			int degreesRotated,
+			boolean flipHorizontally,
+			boolean flipVertically) {
+		return crop(null, source, spec, degreesRotated, flipHorizontally, flipVertically, null);
+	}
+
+	/**
+	 * Crop the image at the given uri by all the given crops from a single decode of the image, see
+	 * {@link BatchCropper}, must not be called on the UI thread.
+	 *
+	 * @return the result of every crop in the order of the given crops, failed crops have the error
+	 * @throws RuntimeException if failed to read the image dimensions
+	 */
+	public List<ImageCropView.CropResult> crop(
+			Uri source,
+			List<CropSpec> specs,
+			int degreesRotated,
+			boolean flipHorizontally,
+			boolean flipVertically) {
+		return crop(source, specs, degreesRotated, flipHorizontally, flipVertically, null);
+	}
+
+	/**
+	 * Crop the image at the given uri by the given crop on the engine executor.<br>
+	 * Cancelling the future aborts the running decode.
+	 *
+	 * @see #crop(Uri, CropSpec, int, boolean, boolean)
+	 */
+	public Future<ImageCropView.CropResult> cropAsync(
+			final Uri source,
+			final CropSpec spec,
+			final int degreesRotated,
+			final boolean flipHorizontally,
+			final boolean flipVertically) {
+		final DecodeCancelSignal cancelSignal = new DecodeCancelSignal();
+		return execute(
+				new Callable<ImageCropView.CropResult>() {
+					@Override
+					public ImageCropView.CropResult call() {
+						return crop(
+								source, null, spec, degreesRotated, flipHorizontally, flipVertically, cancelSignal);
+					}
+				},
+				cancelSignal);
+	}
+
+	/**
+	 * Crop the given bitmap by the given crop on the engine executor.
+	 *
+	 * @see #crop(Bitmap, CropSpec, int, boolean, boolean)
+	 */
+	public Future<ImageCropView.CropResult> cropAsync(
+			final Bitmap source,
+			final CropSpec spec,
+			final int degreesRotated,
+			final boolean flipHorizontally,
+			final boolean flipVertically) {
+		final DecodeCancelSignal cancelSignal = new DecodeCancelSignal();
+		return execute(
+				new Callable<ImageCropView.CropResult>() {
+					@Override
+					public ImageCropView.CropResult call() {
+						return crop(
+								null, source, spec, degreesRotated, flipHorizontally, flipVertically, cancelSignal);
+					}
+				},
+				cancelSignal);
+	}
+
+	/**
+	 * Crop the image at the given uri by all the given crops on the engine executor.<br>
+	 * Cancelling the future aborts the running decode.
+	 *
+	 * @see #crop(Uri, List, int, boolean, boolean)
+	 */
+	public Future<List<ImageCropView.CropResult>> cropAsync(
+			final Uri source,
+			final List<CropSpec> specs,
+			final int degreesRotated,
+			final boolean flipHorizontally,
+			final boolean flipVertically) {
+		final DecodeCancelSignal cancelSignal = new DecodeCancelSignal();
+		return execute(
+				new Callable<List<ImageCropView.CropResult>>() {
+					@Override
+					public List<ImageCropView.CropResult> call() {
+						return crop(
+								source, specs, degreesRotated, flipHorizontally, flipVertically, cancelSignal);
+					}
+				},
+				cancelSignal);
+	}
+
+	// region: Private methods
+
+	/**
+	 * Crop the image at the given uri, or the given bitmap if no uri, by the given crop.
+	 *
+	 * @param cancelSignal aborts the running decode, null if not cancellable
+	 */
+	ImageCropView.CropResult crop(
+			Uri uri,
+			Bitmap bitmap,
+			CropSpec spec,
+			int degreesRotated,
+			boolean flipHorizontally,
+			boolean flipVertically,
+			DecodeCancelSignal cancelSignal) {
+		Rect wholeImageRect = null;
+		Rect cropRect = null;
+		RegionDecoderSession regionDecoderSession = null;
+		try {
+			wholeImageRect =
+					uri != null
+							? decodeImageBounds(uri)
+							: new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight());
+			cropRect =
+					BitmapUtils.getRectFromPoints(
+							spec.getCropPointsInt(),
+							wholeImageRect.width(),
+							wholeImageRect.height(),
+							spec.isFixAspectRatio(),
+							spec.getAspectRatioX(),
+							spec.getAspectRatioY());
+
+			if (uri != null) {
+				regionDecoderSession = new RegionDecoderSession(mContext, uri);
+				regionDecoderSession.setParallelism(mDecodeParallelism, mExecutor);
+			}
+
+			CropOperation operation =
+					new CropOperation(
+							mContext,
+							uri,
+							bitmap,
+							spec.getCropPointsInt(),
+							degreesRotated,
+							wholeImageRect.width(),
+							wholeImageRect.height(),
+							spec.isFixAspectRatio(),
+							spec.getAspectRatioX(),
+							spec.getAspectRatioY(),
+							spec.getReqWidth(),
+							spec.getReqHeight(),
+							flipHorizontally,
+							flipVertically,
+							spec.getReqSizeOptions(),
+							spec.getSaveUri(),
+							spec.getSaveCompressFormat(),
+							spec.getSaveCompressQuality());
+			operation.setRegionDecoderSession(regionDecoderSession);
+			operation.setTiledCropEnabled(mTiledCropEnabled);
+			operation.setLosslessCropEnabled(mLosslessCropEnabled);
+			operation.setSaveRotationAsExif(mSaveRotationAsExif);
+			operation.setResizeFilter(mResizeFilter, mExecutor);
+
+			BitmapCroppingWorkerTask.Result result = operation.run(cancelSignal);
+			return new ImageCropView.CropResult(
+					bitmap,
+					uri,
+					result.bitmap,
+					result.uri,
+					result.error,
+					spec.getCropPoints(),
+					cropRect,
+					wholeImageRect,
+					degreesRotated,
+					result.sampleSize);
+		} catch (CancellationException e) {
+			throw e;
+		} catch (Exception e) {
+			return new ImageCropView.CropResult(
+					bitmap,
+					uri,
+					null,
+					null,
+					e,
+					spec.getCropPoints(),
+					cropRect,
+					wholeImageRect,
+					degreesRotated,
+					1);
+		} finally {
+			if (regionDecoderSession != null) {
+				regionDecoderSession.close();
+			}
+		}
+	}
+
+	/**
+	 * Crop the image at the given uri by all the given crops from a single decode.
+	 */
+	private List<ImageCropView.CropResult> crop(
+			Uri uri,
+			List<CropSpec> specs,
+			int degreesRotated,
+			boolean flipHorizontally,
+			boolean flipVertically,
+			DecodeCancelSignal cancelSignal) {
+		Rect wholeImageRect = decodeImageBounds(uri);
+		RegionDecoderSession regionDecoderSession = new RegionDecoderSession(mContext, uri);
+		regionDecoderSession.setParallelism(mDecodeParallelism, mExecutor);
+		try {
+			BatchCropper batchCropper =
+					new BatchCropper(
+							mContext,
+							uri,
+							null,
+							wholeImageRect.width(),
+							wholeImageRect.height(),
+							new ArrayList<>(specs),
+							degreesRotated,
+							flipHorizontally,
+							flipVertically,
+							regionDecoderSession,
+							cancelSignal);
+			batchCropper.setResizeFilter(mResizeFilter, mExecutor);
+			return batchCropper.crop(mExecutor);
+		} finally {
+			regionDecoderSession.close();
+		}
+	}
+
+	/**
+	 * Get the rectangle of the dimensions of the image at the given uri.
+	 */
+	Rect decodeImageBounds(Uri uri) {
+		BitmapFactory.Options options;
+		try {
+			options = BitmapUtils.decodeImageForOption(mContext.getContentResolver(), uri);
+		} catch (Exception e) {
+			throw new RuntimeException(
+					"Failed to load sampled bitmap: " + uri + "\r\n" + e.getMessage(), e);
+		}
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			throw new RuntimeException("Failed to decode image bounds: " + uri);
+		}
+		return new Rect(0, 0, options.outWidth, options.outHeight);
+	}
+
+	/**
+	 * Run the given crop on the engine executor, cancelling the returned future aborts the running
+	 * decode by the given signal.
+	 */
+	private <T> Future<T> execute(Callable<T> callable, final DecodeCancelSignal cancelSignal) {
+		FutureTask<T> future =
+				new FutureTask<T>(callable) {
+					@Override
+					public boolean cancel(boolean mayInterruptIfRunning) {
+						cancelSignal.cancel();
+						return super.cancel(mayInterruptIfRunning);
+					}
+				};
+		mExecutor.execute(future);
+		return future;
+	}
+	// endregion
+}
@@ -0,0 +1,507 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.net.Uri;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A single crop of an image loaded from URI or of a bitmap, with its output options, independent
+ * of any view or thread.<br>
+ * Saves losslessly or band by band when enabled and possible, otherwise crops into a bitmap that
+ * is returned or encoded to the save uri. Used by {@link BitmapCroppingWorkerTask} and {@link
+ * CropEngine}.
+ */
+final class CropOperation {
+
+	// region: Fields and Consts
+
+	private final Context mContext;
+
+	/**
+	 * the bitmap to crop
+	 */
+	private final Bitmap mBitmap;
+
+	/**
+	 * The Android URI of the image to load
+	 */
+	private final Uri mUri;
+
+	/**
+	 * Required cropping 4 points (x0,y0,x1,y1,x2,y2,x3,y3)
+	 */
+	private final float[] mCropPoints;
+
+	/**
+	 * Degrees the image was rotated after loading
+	 */
+	private final int mDegreesRotated;
+
+	/**
+	 * the original width of the image to be cropped (for image loaded from URI)
+	 */
+	private final int mOrgWidth;
+
+	/**
+	 * the original height of the image to be cropped (for image loaded from URI)
+	 */
+	private final int mOrgHeight;
+
+	/**
+	 * is there is fixed aspect ratio for the crop rectangle
+	 */
+	private final boolean mFixAspectRatio;
+
+	/**
+	 * the X aspect ration of the crop rectangle
+	 */
+	private final int mAspectRatioX;
+
+	/**
+	 * the Y aspect ration of the crop rectangle
+	 */
+	private final int mAspectRatioY;
+
+	/**
+	 * required width of the cropping image
+	 */
+	private final int mReqWidth;
+
+	/**
+	 * required height of the cropping image
+	 */
+	private final int mReqHeight;
+
+	/**
+	 * is the image flipped horizontally
+	 */
+	private final boolean mFlipHorizontally;
+
+	/**
+	 * is the image flipped vertically
+	 */
+	private final boolean mFlipVertically;
+
+	/**
+	 * The option to handle requested width/height
+	 */
+	private final ImageCropView.RequestSizeOptions mReqSizeOptions;
+
+	/**
+	 * the Android Uri to save the cropped image to
+	 */
+	private final Uri mSaveUri;
+
+	/**
+	 * the compression format to use when writing the image
+	 */
+	private final Bitmap.CompressFormat mSaveCompressFormat;
+
+	/**
+	 * the quality (if applicable) to use when writing the image (0 - 100)
+	 */
+	private final int mSaveCompressQuality;
+
+	/**
+	 * The region decoder session of the image to crop by, null to open decoder for this crop only
+	 */
+	private RegionDecoderSession mRegionDecoderSession;
+
+	/**
+	 * if to save full resolution crop too large for the available memory band by band
+	 */
+	private boolean mTiledCropEnabled;
+
+	/**
+	 * If to crop JPEG images losslessly when possible, see {@link LosslessJpegTransform}
+	 */
+	private boolean mLosslessCropEnabled;
+
+	/**
+	 * If to save crops rotated/flipped by multiples of 90 degrees unrotated with EXIF orientation
+	 */
+	private boolean mSaveRotationAsExif;
+
+	/**
+	 * The EXIF orientation to save the crop with, normal if the rotation was applied to the pixels
+	 */
+	private int mExifOrientation = ExifInterface.ORIENTATION_NORMAL;
+
+	/**
+	 * The smaller renditions to save with the cropped image, null if none
+	 */
+	private List<CropRendition> mRenditions;
+
+	/**
+	 * The executor to encode the renditions on in parallel
+	 */
+	private Executor mRenditionExecutor;
+
+	/**
+	 * The max size of the saved image to search the compression quality by, 0 if not limited
+	 */
+	private int mSaveMaxBytes;
+
+	/**
+	 * The executor to search the compression quality on in parallel
+	 */
+	private Executor mSaveMaxBytesExecutor;
+
+	/**
+	 * The filter to resize the crop by the requested size
+	 */
+	private ImageCropView.ResizeFilter mResizeFilter = ImageCropView.ResizeFilter.BILINEAR;
+
+	/**
+	 * The executor to resample the crop on in parallel
+	 */
+	private Executor mResizeExecutor;
+	// endregion
+
+	/**
+	 * @param uri       the image to crop, null to crop the given bitmap
+	 * @param bitmap    the bitmap to crop if uri is null
+	 * @param orgWidth  the original width of the image loaded from URI, 0 for bitmap
+	 * @param orgHeight the original height of the image loaded from URI, 0 for bitmap
+	 */
+	CropOperation(
+			Context context,
+			Uri uri,
+			Bitmap bitmap,
+			float[] cropPoints,
+			int degreesRotated,
+			int orgWidth,
+			int orgHeight,
+			boolean fixAspectRatio,
+			int aspectRatioX,
+			int aspectRatioY,
+			int reqWidth,
+			int reqHeight,
+			boolean flipHorizontally,
+			boolean flipVertically,
+			ImageCropView.RequestSizeOptions options,
+			Uri saveUri,
+			Bitmap.CompressFormat saveCompressFormat,
+			int saveCompressQuality) {
+		mContext = context;
+		mUri = uri;
+		mBitmap = uri == null ? bitmap : null;
+		mCropPoints = cropPoints;
+		mDegreesRotated = degreesRotated;
+		mOrgWidth = orgWidth;
+		mOrgHeight = orgHeight;
+		mFixAspectRatio = fixAspectRatio;
+		mAspectRatioX = aspectRatioX;
+		mAspectRatioY = aspectRatioY;
+		mReqWidth = reqWidth;
+		mReqHeight = reqHeight;
+		mFlipHorizontally = flipHorizontally;
+		mFlipVertically = flipVertically;
+		mReqSizeOptions = options;
+		mSaveUri = saveUri;
+		mSaveCompressFormat = saveCompressFormat;
+		mSaveCompressQuality = saveCompressQuality;
+	}
+
+	/**
+	 * The Android URI of the image to crop, null if cropping bitmap.
+	 */
+	Uri getUri() {
+		return mUri;
+	}
+
+	/**
+	 * If the crop is saved to uri and not returned as bitmap.
+	 */
+	boolean isSave() {
+		return mSaveUri != null;
+	}
+
+	/**
+	 * Set the region decoder session of the loaded image to decode the cropped region by, so crops
+	 * of the same image don't re-read and re-index the whole source.
+	 */
+	void setRegionDecoderSession(RegionDecoderSession regionDecoderSession) {
+		mRegionDecoderSession = regionDecoderSession;
+	}
+
+	/**
+	 * Set if to save full resolution crop of image loaded from URI that is too large for the
+	 * available memory band by band by {@link TiledCropWriter}, instead of lowering its resolution.
+	 */
+	void setTiledCropEnabled(boolean tiledCropEnabled) {
+		mTiledCropEnabled = tiledCropEnabled;
+	}
+
+	/**
+	 * Set if to save crops of JPEG images rotated by multiples of 90 degrees without resize to JPEG
+	 * losslessly, by transforming the source DCT coefficients instead of decoding and re-encoding.
+	 */
+	void setLosslessCropEnabled(boolean losslessCropEnabled) {
+		mLosslessCropEnabled = losslessCropEnabled;
+	}
+
+	/**
+	 * Set if to save JPEG crops rotated by multiples of 90 degrees and/or flipped unrotated, with the
+	 * rotation and flip written as EXIF orientation, instead of transforming the pixels.
+	 */
+	void setSaveRotationAsExif(boolean saveRotationAsExif) {
+		mSaveRotationAsExif = saveRotationAsExif;
+	}
+
+	/**
+	 * Set the smaller renditions to save with the cropped image, each downscaled from the previous
+	 * one and encoded in parallel on the given executor, see {@link RenditionCascade}.
+	 */
+	void setRenditions(List<CropRendition> renditions, Executor executor) {
+		mRenditions = renditions;
+		mRenditionExecutor = executor;
+	}
+
+	/**
+	 * Set the max size of the saved image, it is saved by the highest compression quality up to the
+	 * save quality that fits, searched in parallel on the given executor, see {@link QualitySearch}.
+	 * The save fails if none fits.
+	 */
+	void setSaveMaxBytes(int saveMaxBytes, Executor executor) {
+		mSaveMaxBytes = saveMaxBytes;
+		mSaveMaxBytesExecutor = executor;
+	}
+
+	/**
+	 * Set the filter to resize the crop by the requested size, see {@link Resampler}.
+	 */
+	void setResizeFilter(ImageCropView.ResizeFilter resizeFilter, Executor executor) {
+		mResizeFilter = resizeFilter;
+		mResizeExecutor = executor;
+	}
+
+	/**
+	 * If the bitmap cropped by the given operation, that is not saved, is the bitmap this operation
+	 * crops, so it can be used instead of cropping again.<br>
+	 * Not if this operation may save without a cropped bitmap or unrotated with EXIF orientation.
+	 */
+	boolean canUseCropOf(CropOperation other) {
+		if (mSaveUri != null
+				&& (maySaveWithoutBitmap()
+				|| isExifRotationSave()
+				&& (mDegreesRotated != 0 || mFlipHorizontally || mFlipVertically))) {
+			return false;
+		}
+		return other.mSaveUri == null
+				&& (mUri != null ? mUri.equals(other.mUri) : other.mUri == null && mBitmap == other.mBitmap)
+				&& Arrays.equals(mCropPoints, other.mCropPoints)
+				&& mDegreesRotated == other.mDegreesRotated
+				&& mOrgWidth == other.mOrgWidth
+				&& mOrgHeight == other.mOrgHeight
+				&& mFixAspectRatio == other.mFixAspectRatio
+				&& mAspectRatioX == other.mAspectRatioX
+				&& mAspectRatioY == other.mAspectRatioY
+				&& mReqWidth == other.mReqWidth
+				&& mReqHeight == other.mReqHeight
+				&& mReqSizeOptions == other.mReqSizeOptions
+				&& mResizeFilter == other.mResizeFilter
+				&& mFlipHorizontally == other.mFlipHorizontally
+				&& mFlipVertically == other.mFlipVertically;
+	}
+
+	/**
+	 * Crop the image and save it to the save uri if given.
+	 *
+	 * @param cancelSignal aborts the running decode, null if not cancellable
+	 */
+	BitmapCroppingWorkerTask.Result run(DecodeCancelSignal cancelSignal) throws Exception {
+		BitmapCroppingWorkerTask.Result result = crop(cancelSignal);
+		if (result.isSave || mSaveUri == null || result.bitmap == null) {
+			return result;
+		}
+		return encode(result.bitmap, result.sampleSize);
+	}
+
+	/**
+	 * Crop the image into a bitmap, or save it directly if it can be saved losslessly or band by
+	 * band.
+	 *
+	 * @param cancelSignal aborts the running decode, null if not cancellable
+	 * @return the saved result if already saved, otherwise the cropped bitmap (null if no image)
+	 */
+	BitmapCroppingWorkerTask.Result crop(DecodeCancelSignal cancelSignal) throws Exception {
+		if (maySaveWithoutBitmap()) {
+			Rect rect =
+					BitmapUtils.getRectFromPoints(
+							mCropPoints, mOrgWidth, mOrgHeight, mFixAspectRatio, mAspectRatioX, mAspectRatioY);
+			if (mLosslessCropEnabled
+					&& LosslessJpegTransform.isSupported(
+					mDegreesRotated, mReqWidth, mReqHeight, mSaveCompressFormat)
+					&& LosslessJpegTransform.transformToUri(
+					mContext,
+					mUri,
+					rect,
+					mDegreesRotated,
+					mFlipHorizontally,
+					mFlipVertically,
+					cancelSignal,
+					mSaveUri)) {
+				return new BitmapCroppingWorkerTask.Result(mSaveUri, 1);
+			}
+			if (mTiledCropEnabled
+					&& TiledCropWriter.isSupported(
+					mDegreesRotated, mReqWidth, mReqHeight, mSaveCompressFormat)
+					&& TiledCropWriter.exceedsAvailableMemory(mContext, rect)) {
+				TiledCropWriter.cropToUri(
+						mContext,
+						mUri,
+						rect,
+						mDegreesRotated,
+						mFlipHorizontally,
+						mFlipVertically,
+						mRegionDecoderSession,
+						cancelSignal,
+						mSaveUri,
+						mSaveCompressFormat,
+						mSaveCompressQuality);
+				return new BitmapCroppingWorkerTask.Result(mSaveUri, 1);
+			}
+		}
+
+		int degreesRotated = mDegreesRotated;
+		boolean flipHorizontally = mFlipHorizontally;
+		boolean flipVertically = mFlipVertically;
+		int reqWidth = mReqWidth;
+		int reqHeight = mReqHeight;
+		if (isExifRotationSave()) {
+			// crop without rotation, the requested size is of the rotated image
+			mExifOrientation =
+					ExifOrientationOutputStream.getExifOrientation(
+							mDegreesRotated, mFlipHorizontally, mFlipVertically);
+			if (mDegreesRotated % 180 != 0) {
+				reqWidth = mReqHeight;
+				reqHeight = mReqWidth;
+			}
+			degreesRotated = 0;
+			flipHorizontally = false;
+			flipVertically = false;
+		}
+
+		BitmapUtils.BitmapSampled bitmapSampled;
+		if (mUri != null) {
+			bitmapSampled =
+					BitmapUtils.cropBitmap(
+							mContext,
+							mUri,
+							mCropPoints,
+							degreesRotated,
+							mOrgWidth,
+							mOrgHeight,
+							mFixAspectRatio,
+							mAspectRatioX,
+							mAspectRatioY,
+							reqWidth,
+							reqHeight,
+							mReqSizeOptions,
+							mResizeFilter,
+							mResizeExecutor,
+							flipHorizontally,
+							flipVertically,
+							mRegionDecoderSession,
+							cancelSignal);
+		} else if (mBitmap != null) {
+			bitmapSampled =
+					BitmapUtils.cropBitmapObjectHandleOOM(
+							mContext,
+							mBitmap,
+							mCropPoints,
+							degreesRotated,
+							mFixAspectRatio,
+							mAspectRatioX,
+							mAspectRatioY,
+							flipHorizontally,
+							flipVertically,
+							reqWidth,
+							reqHeight,
+							mReqSizeOptions,
+							mResizeFilter,
+							mResizeExecutor);
+		} else {
+			return new BitmapCroppingWorkerTask.Result((Bitmap) null, 1);
+		}
+
+		// the crop is already resized by the crop transform
+		return new BitmapCroppingWorkerTask.Result(bitmapSampled.bitmap, bitmapSampled.sampleSize);
+	}
+
+	/**
+	 * If the crop may be saved losslessly or band by band, without cropped bitmap.<br>
+	 * Not with renditions, downscaled from the cropped bitmap, or max bytes, searched by encoding it.
+	 */
+	private boolean maySaveWithoutBitmap() {
+		return (mLosslessCropEnabled || mTiledCropEnabled)
+				&& mUri != null
+				&& mSaveUri != null
+				&& mRenditions == null
+				&& mSaveMaxBytes == 0;
+	}
+
+	/**
+	 * If the crop is saved to JPEG unrotated with the rotation written as EXIF orientation.
+	 */
+	private boolean isExifRotationSave() {
+		return mSaveRotationAsExif
+				&& mSaveUri != null
+				&& mSaveCompressFormat == Bitmap.CompressFormat.JPEG
+				&& mDegreesRotated % 90 == 0;
+	}
+
+	/**
+	 * Write the cropped bitmap to the save uri, and its renditions if any, the bitmap is recycled
+	 * after.
+	 */
+	BitmapCroppingWorkerTask.Result encode(Bitmap bitmap, int sampleSize) throws Exception {
+		if (mRenditions != null && bitmap != null) {
+			RenditionCascade.write(
+					mContext,
+					bitmap,
+					mSaveUri,
+					mRenditions,
+					mSaveCompressFormat,
+					mSaveCompressQuality,
+					mExifOrientation,
+					mSaveMaxBytes,
+					mResizeFilter,
+					mRenditionExecutor);
+		} else {
+			BitmapUtils.writeBitmapToUri(
+					mContext,
+					bitmap,
+					mSaveUri,
+					mSaveCompressFormat,
+					mSaveCompressQuality,
+					mExifOrientation,
+					mSaveMaxBytes,
+					mSaveMaxBytesExecutor);
+		}
+		if (bitmap != null) {
+			BitmapPool.recycle(bitmap);
+		}
+		return new BitmapCroppingWorkerTask.Result(mSaveUri, sampleSize);
+	}
+}
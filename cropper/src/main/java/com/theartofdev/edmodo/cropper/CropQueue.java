@@ -0,0 +1,547 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs many crops of images loaded from URI by a {@link CropEngine} with bounded parallelism and
+ * memory.<br>
+ * A job is started only while fewer than the max concurrent jobs are running and its estimated
+ * pixel memory (the decoded region and the output) fits in the memory budget together with the
+ * jobs already in flight, so overlapping decodes never exceed the budget. A job estimated larger
+ * than the whole budget runs alone.<br>
+ * Submitting blocks while the queue holds the max queued jobs, so a producer of thousands of jobs
+ * is held back instead of queueing them all.<br>
+ * Progress of every job and of the whole queue is reported to the {@link Listener} and by {@link
+ * #getStats()}.
+ */
+public final class CropQueue {
+
+	// region: Fields and Consts
+
+	private final CropEngine mEngine;
+
+	/**
+	 * The max number of jobs running at the same time
+	 */
+	private final int mMaxConcurrentJobs;
+
+	/**
+	 * The max estimated pixel bytes of the jobs running at the same time
+	 */
+	private final long mMaxInFlightBytes;
+
+	/**
+	 * The max number of submitted jobs waiting to start
+	 */
+	private final int mMaxQueuedJobs;
+
+	/**
+	 * The submitted jobs waiting to start, in submit order
+	 */
+	private final ArrayDeque<Job> mQueue = new ArrayDeque<>();
+
+	private Listener mListener;
+
+	private int mRunningJobs;
+
+	private long mInFlightBytes;
+
+	private int mSubmittedJobs;
+
+	private int mCompletedJobs;
+
+	private int mFailedJobs;
+
+	/**
+	 * The total pixels of the crop rectangles of the completed jobs
+	 */
+	private long mCompletedPixels;
+
+	/**
+	 * The time the first job started, the time throughput is measured from
+	 */
+	private long mStartTime = -1;
+	// endregion
+
+	/**
+	 * @param engine            the engine to crop by, on its executor
+	 * @param maxConcurrentJobs the max number of jobs running at the same time
+	 * @param maxInFlightBytes  the max estimated pixel bytes of the jobs running at the same time
+	 * @param maxQueuedJobs     the max number of jobs waiting to start before submit blocks
+	 */
+	public CropQueue(
+			CropEngine engine, int maxConcurrentJobs, long maxInFlightBytes, int maxQueuedJobs) {
+		if (maxConcurrentJobs < 1) {
+			throw new IllegalArgumentException("Cannot set max concurrent jobs to a number < 1");
+		}
+		if (maxInFlightBytes < 1) {
+			throw new IllegalArgumentException("Cannot set max in flight bytes to a number < 1");
+		}
+		if (maxQueuedJobs < 1) {
+			throw new IllegalArgumentException("Cannot set max queued jobs to a number < 1");
+		}
+		mEngine = engine;
+		mMaxConcurrentJobs = maxConcurrentJobs;
+		mMaxInFlightBytes = maxInFlightBytes;
+		mMaxQueuedJobs = maxQueuedJobs;
+	}
+
+	/**
+	 * Set the listener of the progress of the jobs, called on the thread running the job.
+	 */
+	public synchronized void setListener(Listener listener) {
+		mListener = listener;
+	}
+
+	/**
+	 * Submit crop of the image at the given uri, see {@link CropEngine#crop(Uri, CropSpec, int,
+	 * boolean, boolean)}.<br>
+	 * Reads the image dimensions to estimate the job memory, and blocks while the queue is full,
+	 * must not be called on the UI thread.
+	 *
+	 * @return the job, a future of the crop result
+	 * @throws InterruptedException if interrupted while waiting for room in the queue
+	 */
+	public Job submit(
+			Uri source,
+			CropSpec spec,
+			int degreesRotated,
+			boolean flipHorizontally,
+			boolean flipVertically)
+			throws InterruptedException {
+		long estimatedBytes;
+		try {
+			estimatedBytes = estimateBytes(mEngine.decodeImageBounds(source), spec);
+		} catch (RuntimeException e) {
+			// fails fast when run
+			estimatedBytes = 0;
+		}
+		Job job =
+				new Job(
+						source,
+						spec,
+						degreesRotated,
+						flipHorizontally,
+						flipVertically,
+						estimatedBytes,
+						new DecodeCancelSignal());
+		synchronized (this) {
+			while (mQueue.size() >= mMaxQueuedJobs) {
+				wait();
+			}
+			mQueue.add(job);
+			mSubmittedJobs++;
+		}
+		schedule();
+		return job;
+	}
+
+	/**
+	 * Get snapshot of the aggregate progress of the queue.
+	 */
+	public synchronized Stats getStats() {
+		return new Stats(
+				mSubmittedJobs,
+				mCompletedJobs,
+				mFailedJobs,
+				mRunningJobs,
+				mQueue.size(),
+				mInFlightBytes,
+				mCompletedPixels,
+				mStartTime >= 0 ? SystemClock.uptimeMillis() - mStartTime : 0);
+	}
+
+	// region: Private methods
+
+	/**
+	 * Start the queued jobs that fit the concurrency and memory limits, in submit order.
+	 */
+	private void schedule() {
+		while (true) {
+			Job job;
+			synchronized (this) {
+				Job next = mQueue.peek();
+				if (next == null || mRunningJobs >= mMaxConcurrentJobs) {
+					return;
+				}
+				long bytes = Math.min(next.mEstimatedBytes, mMaxInFlightBytes);
+				if (mInFlightBytes + bytes > mMaxInFlightBytes) {
+					// the head of the queue waits for memory, later jobs don't overtake it
+					return;
+				}
+				job = mQueue.poll();
+				notifyAll();
+				mRunningJobs++;
+				mInFlightBytes += bytes;
+				if (mStartTime < 0) {
+					mStartTime = SystemClock.uptimeMillis();
+				}
+			}
+			try {
+				mEngine.getExecutor().execute(job);
+			} catch (RejectedExecutionException e) {
+				job.run();
+			}
+		}
+	}
+
+	/**
+	 * Update the queue state with the completed job and start the jobs waiting for it.
+	 */
+	private void onJobComplete(Job job, ImageCropView.CropResult result) {
+		Listener listener;
+		synchronized (this) {
+			mRunningJobs--;
+			mInFlightBytes -= Math.min(job.mEstimatedBytes, mMaxInFlightBytes);
+			if (result != null && result.isSuccessful()) {
+				mCompletedJobs++;
+				Rect rect = result.getCropRect();
+				mCompletedPixels += rect != null ? (long) rect.width() * rect.height() : 0;
+			} else {
+				mFailedJobs++;
+			}
+			listener = mListener;
+		}
+		if (listener != null) {
+			listener.onJobComplete(job, result);
+		}
+		schedule();
+	}
+
+	/**
+	 * Estimate the pixel bytes of the crop of the given image by the given spec: the region decoded
+	 * by the sample size the crop requires and the output bitmap.
+	 */
+	private static long estimateBytes(Rect wholeImageRect, CropSpec spec) {
+		Rect rect =
+				BitmapUtils.getRectFromPoints(
+						spec.getCropPointsInt(),
+						wholeImageRect.width(),
+						wholeImageRect.height(),
+						spec.isFixAspectRatio(),
+						spec.getAspectRatioX(),
+						spec.getAspectRatioY());
+		int width = spec.getReqWidth() > 0 ? spec.getReqWidth() : rect.width();
+		int height = spec.getReqHeight() > 0 ? spec.getReqHeight() : rect.height();
+		int sampleSize =
+				BitmapUtils.calculateInSampleSizeByReqestedSize(
+						rect.width(), rect.height(), width, height);
+		long regionBytes = (long) (rect.width() / sampleSize) * (rect.height() / sampleSize) * 4;
+		long outputBytes =
+				spec.getReqSizeOptions() == ImageCropView.RequestSizeOptions.RESIZE_FIT
+						|| spec.getReqSizeOptions() == ImageCropView.RequestSizeOptions.RESIZE_INSIDE
+						|| spec.getReqSizeOptions() == ImageCropView.RequestSizeOptions.RESIZE_EXACT
+						? Math.min(regionBytes, (long) width * height * 4)
+						: regionBytes;
+		return regionBytes + outputBytes;
+	}
+	// endregion
+
+	// region: Inner class: Job
+
+	/**
+	 * A crop job of the queue, the future of its crop result.
+	 */
+	public final class Job extends FutureTask<ImageCropView.CropResult> {
+
+		private final Uri mSource;
+
+		/**
+		 * The estimated pixel bytes of the job
+		 */
+		private final long mEstimatedBytes;
+
+		private final DecodeCancelSignal mCancelSignal;
+
+		private volatile long mStartTime = -1;
+
+		private volatile long mEndTime = -1;
+
+		private Job(
+				Uri source,
+				CropSpec spec,
+				int degreesRotated,
+				boolean flipHorizontally,
+				boolean flipVertically,
+				long estimatedBytes,
+				DecodeCancelSignal cancelSignal) {
+			super(
+					new CropCall(
+							source, spec, degreesRotated, flipHorizontally, flipVertically, cancelSignal));
+			mSource = source;
+			mEstimatedBytes = estimatedBytes;
+			mCancelSignal = cancelSignal;
+		}
+
+		/**
+		 * The Android Uri of the image cropped by the job.
+		 */
+		public Uri getSource() {
+			return mSource;
+		}
+
+		/**
+		 * The estimated pixel bytes of the job, counted against the memory budget.
+		 */
+		public long getEstimatedBytes() {
+			return mEstimatedBytes;
+		}
+
+		/**
+		 * If the job started running.
+		 */
+		public boolean isStarted() {
+			return mStartTime >= 0;
+		}
+
+		/**
+		 * The time the job ran in milliseconds, -1 if not complete.
+		 */
+		public long getDuration() {
+			return mEndTime >= 0 ? mEndTime - mStartTime : -1;
+		}
+
+		@Override
+		public void run() {
+			mStartTime = SystemClock.uptimeMillis();
+			Listener listener;
+			synchronized (CropQueue.this) {
+				listener = mListener;
+			}
+			if (listener != null && !isCancelled()) {
+				listener.onJobStarted(this);
+			}
+			ImageCropView.CropResult result = null;
+			try {
+				super.run();
+				if (!isCancelled()) {
+					result = get();
+				}
+			} catch (Exception ignored) {
+				// cancelled or failed, reported as failed job
+			} finally {
+				mEndTime = SystemClock.uptimeMillis();
+				onJobComplete(this, result);
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			mCancelSignal.cancel();
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled) {
+				// remove from the queue if not started, releasing room for submit
+				synchronized (CropQueue.this) {
+					if (mQueue.remove(this)) {
+						CropQueue.this.notifyAll();
+					}
+				}
+				schedule();
+			}
+			return cancelled;
+		}
+	}
+	// endregion
+
+	// region: Inner class: CropCall
+
+	/**
+	 * Crops the image of a job by the queue engine.
+	 */
+	private final class CropCall implements Callable<ImageCropView.CropResult> {
+
+		private final Uri mSource;
+
+		private final CropSpec mSpec;
+
+		private final int mDegreesRotated;
+
+		private final boolean mFlipHorizontally;
+
+		private final boolean mFlipVertically;
+
+		private final DecodeCancelSignal mCancelSignal;
+
+		CropCall(
+				Uri source,
+				CropSpec spec,
+				int degreesRotated,
+				boolean flipHorizontally,
+				boolean flipVertically,
+				DecodeCancelSignal cancelSignal) {
+			mSource = source;
+			mSpec = spec;
+			mDegreesRotated = degreesRotated;
+			mFlipHorizontally = flipHorizontally;
+			mFlipVertically = flipVertically;
+			mCancelSignal = cancelSignal;
+		}
+
+		@Override
+		public ImageCropView.CropResult call() {
+			return mEngine.crop(
+					mSource,
+					null,
+					mSpec,
+					mDegreesRotated,
+					mFlipHorizontally,
+					mFlipVertically,
+					mCancelSignal);
+		}
+	}
+	// endregion
+
+	// region: Inner class: Stats
+
+	/**
+	 * Snapshot of the aggregate progress of the queue.
+	 */
+	public static final class Stats {
+
+		private final int mSubmittedJobs;
+
+		private final int mCompletedJobs;
+
+		private final int mFailedJobs;
+
+		private final int mRunningJobs;
+
+		private final int mQueuedJobs;
+
+		private final long mInFlightBytes;
+
+		private final long mCompletedPixels;
+
+		private final long mElapsedTime;
+
+		Stats(
+				int submittedJobs,
+				int completedJobs,
+				int failedJobs,
+				int runningJobs,
+				int queuedJobs,
+				long inFlightBytes,
+				long completedPixels,
+				long elapsedTime) {
+			mSubmittedJobs = submittedJobs;
+			mCompletedJobs = completedJobs;
+			mFailedJobs = failedJobs;
+			mRunningJobs = runningJobs;
+			mQueuedJobs = queuedJobs;
+			mInFlightBytes = inFlightBytes;
+			mCompletedPixels = completedPixels;
+			mElapsedTime = elapsedTime;
+		}
+
+		/**
+		 * The number of jobs submitted.
+		 */
+		public int getSubmittedJobs() {
+			return mSubmittedJobs;
+		}
+
+		/**
+		 * The number of jobs completed successfully.
+		 */
+		public int getCompletedJobs() {
+			return mCompletedJobs;
+		}
+
+		/**
+		 * The number of jobs failed or cancelled while running.
+		 */
+		public int getFailedJobs() {
+			return mFailedJobs;
+		}
+
+		/**
+		 * The number of jobs running.
+		 */
+		public int getRunningJobs() {
+			return mRunningJobs;
+		}
+
+		/**
+		 * The number of jobs waiting to start.
+		 */
+		public int getQueuedJobs() {
+			return mQueuedJobs;
+		}
+
+		/**
+		 * The estimated pixel bytes of the running jobs.
+		 */
+		public long getInFlightBytes() {
+			return mInFlightBytes;
+		}
+
+		/**
+		 * The total pixels of the crop rectangles of the completed jobs.
+		 */
+		public long getCompletedPixels() {
+			return mCompletedPixels;
+		}
+
+		/**
+		 * The time in milliseconds since the first job started.
+		 */
+		public long getElapsedTime() {
+			return mElapsedTime;
+		}
+
+		/**
+		 * The completed jobs per second since the first job started.
+		 */
+		public float getJobsPerSecond() {
+			return mElapsedTime > 0 ? mCompletedJobs * 1000f / mElapsedTime : 0;
+		}
+
+		/**
+		 * The cropped megapixels per second since the first job started.
+		 */
+		public float getMegapixelsPerSecond() {
+			return mElapsedTime > 0 ? mCompletedPixels / 1000f / mElapsedTime : 0;
+		}
+	}
+	// endregion
+
+	// region: Inner class: Listener
+
+	/**
+	 * Listener of the progress of the jobs of the queue.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called when a job starts running, on the thread running it.
+		 */
+		void onJobStarted(Job job);
+
+		/**
+		 * Called when a job completes, on the thread that ran it.
+		 *
+		 * @param result the crop result, with the error if failed, null if cancelled
+		 */
+		void onJobComplete(Job job, ImageCropView.CropResult result);
+	}
+	// endregion
+}
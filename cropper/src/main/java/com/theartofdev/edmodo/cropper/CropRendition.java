@@ -0,0 +1,63 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.net.Uri;
+
+/**
+ * A smaller rendition of a saved crop: the cropped image downscaled to fit inside the given size,
+ * saved to its own uri with the compression of the crop.<br>
+ * See {@link ImageCropView#saveCroppedImageAsync(Uri, android.graphics.Bitmap.CompressFormat, int,
+ * int, int, ImageCropView.RequestSizeOptions, java.util.List)}.
+ */
+public final class CropRendition {
+
+	/**
+	 * The max width and height of the rendition
+	 */
+	private final int mMaxSize;
+
+	/**
+	 * the Android Uri to save the rendition to
+	 */
+	private final Uri mSaveUri;
+
+	/**
+	 * @param maxSize the max width and height of the rendition, the crop is not upscaled if smaller
+	 * @param saveUri the Android Uri to save the rendition to
+	 */
+	public CropRendition(int maxSize, Uri saveUri) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Cannot set rendition size to a number < 1");
+		}
+		if (saveUri == null) {
+			throw new IllegalArgumentException("Cannot set rendition save uri to null");
+		}
+		mMaxSize = maxSize;
+		mSaveUri = saveUri;
+	}
+
+	/**
+	 * The max width and height of the rendition.
+	 */
+	public int getMaxSize() {
+		return mMaxSize;
+	}
+
+	/**
+	 * the Android Uri to save the rendition to.
+	 */
+	public Uri getSaveUri() {
+		return mSaveUri;
+	}
+}
@@ -0,0 +1,260 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.net.Uri;
+
+/**
+ * The specification of a single crop of a batch of crops of the same image: the crop window, its
+ * aspect ratio, the output size and where to save it.<br>
+ * Create by {@link Builder}, see {@link ImageCropView#cropImagesAsync(java.util.List)} and
+ * {@link CropEngine}.
+ */
+public final class CropSpec {
+
+	// region: Fields and Consts
+
+	/**
+	 * The 4 points of the crop window in the source image (x0,y0,x1,y1,x2,y2,x3,y3)
+	 */
+	private final float[] mCropPoints;
+
+	/**
+	 * is there is fixed aspect ratio for the crop rectangle
+	 */
+	private final boolean mFixAspectRatio;
+
+	/**
+	 * the X aspect ration of the crop rectangle
+	 */
+	private final int mAspectRatioX;
+
+	/**
+	 * the Y aspect ration of the crop rectangle
+	 */
+	private final int mAspectRatioY;
+
+	/**
+	 * required width of the cropping image, 0 if not resized
+	 */
+	private final int mReqWidth;
+
+	/**
+	 * required height of the cropping image, 0 if not resized
+	 */
+	private final int mReqHeight;
+
+	/**
+	 * The option to handle requested width/height
+	 */
+	private final ImageCropView.RequestSizeOptions mReqSizeOptions;
+
+	/**
+	 * the Android Uri to save the cropped image to, null to get the cropped bitmap
+	 */
+	private final Uri mSaveUri;
+
+	/**
+	 * the compression format to use when writing the image
+	 */
+	private final Bitmap.CompressFormat mSaveCompressFormat;
+
+	/**
+	 * the quality (if applicable) to use when writing the image (0 - 100)
+	 */
+	private final int mSaveCompressQuality;
+	// endregion
+
+	private CropSpec(Builder builder) {
+		mCropPoints = builder.mCropPoints;
+		mFixAspectRatio = builder.mFixAspectRatio;
+		mAspectRatioX = builder.mAspectRatioX;
+		mAspectRatioY = builder.mAspectRatioY;
+		mReqSizeOptions = builder.mReqSizeOptions;
+		mReqWidth = mReqSizeOptions != ImageCropView.RequestSizeOptions.NONE ? builder.mReqWidth : 0;
+		mReqHeight = mReqSizeOptions != ImageCropView.RequestSizeOptions.NONE ? builder.mReqHeight : 0;
+		mSaveUri = builder.mSaveUri;
+		mSaveCompressFormat = builder.mSaveCompressFormat;
+		mSaveCompressQuality = builder.mSaveCompressQuality;
+	}
+
+	/**
+	 * The 4 points of the crop window in the source image (x0,y0,x1,y1,x2,y2,x3,y3).
+	 */
+	public float[] getCropPoints() {
+		return mCropPoints.clone();
+	}
+
+	/**
+	 * if the crop rectangle is fixed to the aspect ratio.
+	 */
+	public boolean isFixAspectRatio() {
+		return mFixAspectRatio;
+	}
+
+	public int getAspectRatioX() {
+		return mAspectRatioX;
+	}
+
+	public int getAspectRatioY() {
+		return mAspectRatioY;
+	}
+
+	/**
+	 * the width to resize the cropped image to, 0 if not resized.
+	 */
+	public int getReqWidth() {
+		return mReqWidth;
+	}
+
+	/**
+	 * the height to resize the cropped image to, 0 if not resized.
+	 */
+	public int getReqHeight() {
+		return mReqHeight;
+	}
+
+	public ImageCropView.RequestSizeOptions getReqSizeOptions() {
+		return mReqSizeOptions;
+	}
+
+	/**
+	 * the Android Uri to save the cropped image to, null to get the cropped bitmap.
+	 */
+	public Uri getSaveUri() {
+		return mSaveUri;
+	}
+
+	public Bitmap.CompressFormat getSaveCompressFormat() {
+		return mSaveCompressFormat;
+	}
+
+	public int getSaveCompressQuality() {
+		return mSaveCompressQuality;
+	}
+
+	/**
+	 * The crop points without copy, for the croppers.
+	 */
+	float[] getCropPointsInt() {
+		return mCropPoints;
+	}
+
+	// region: Inner class: Builder
+
+	/**
+	 * Builder of {@link CropSpec}.<br>
+	 * By default the crop is not resized and is saved using JPEG image compression with 90
+	 * compression quality.
+	 */
+	public static final class Builder {
+
+		private final float[] mCropPoints;
+
+		private boolean mFixAspectRatio;
+
+		private int mAspectRatioX = 1;
+
+		private int mAspectRatioY = 1;
+
+		private int mReqWidth;
+
+		private int mReqHeight;
+
+		private ImageCropView.RequestSizeOptions mReqSizeOptions =
+				ImageCropView.RequestSizeOptions.NONE;
+
+		private Uri mSaveUri;
+
+		private Bitmap.CompressFormat mSaveCompressFormat = Bitmap.CompressFormat.JPEG;
+
+		private int mSaveCompressQuality = 90;
+
+		/**
+		 * @param cropPoints the 4 points of the crop window in the source image
+		 *                   (x0,y0,x1,y1,x2,y2,x3,y3), see {@link ImageCropView#getCropPoints()}
+		 */
+		public Builder(float[] cropPoints) {
+			if (cropPoints == null || cropPoints.length != 8) {
+				throw new IllegalArgumentException("Cannot set crop points to other than 4 points");
+			}
+			mCropPoints = cropPoints.clone();
+		}
+
+		/**
+		 * @param cropRect the rectangle of the crop window in the source image
+		 */
+		public Builder(Rect cropRect) {
+			this(
+					new float[]{
+							cropRect.left,
+							cropRect.top,
+							cropRect.right,
+							cropRect.top,
+							cropRect.right,
+							cropRect.bottom,
+							cropRect.left,
+							cropRect.bottom
+					});
+		}
+
+		/**
+		 * Fix the crop rectangle to the given aspect ratio.
+		 */
+		public Builder setAspectRatio(int aspectRatioX, int aspectRatioY) {
+			if (aspectRatioX <= 0 || aspectRatioY <= 0) {
+				throw new IllegalArgumentException(
+						"Cannot set aspect ratio value to a number less than or equal to 0.");
+			}
+			mFixAspectRatio = true;
+			mAspectRatioX = aspectRatioX;
+			mAspectRatioY = aspectRatioY;
+			return this;
+		}
+
+		/**
+		 * the size to resize the cropped image to by the given option, see its documentation.
+		 */
+		public Builder setRequestedSize(
+				int reqWidth, int reqHeight, ImageCropView.RequestSizeOptions options) {
+			mReqWidth = reqWidth;
+			mReqHeight = reqHeight;
+			mReqSizeOptions = options;
+			return this;
+		}
+
+		/**
+		 * the Android Uri to save the cropped image to, null to get the cropped bitmap.
+		 */
+		public Builder setSaveUri(Uri saveUri) {
+			mSaveUri = saveUri;
+			return this;
+		}
+
+		/**
+		 * the compression format and quality (if applicable, 0 - 100) to use when writing the image.
+		 */
+		public Builder setSaveCompress(Bitmap.CompressFormat saveCompressFormat, int quality) {
+			mSaveCompressFormat = saveCompressFormat;
+			mSaveCompressQuality = quality;
+			return this;
+		}
+
+		public CropSpec build() {
+			return new CropSpec(this);
+		}
+	}
+	// endregion
+}
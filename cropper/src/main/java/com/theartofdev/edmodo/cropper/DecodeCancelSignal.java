@@ -0,0 +1,154 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cooperative cancellation of the decoding work of a loading/cropping task.<br>
+ * The decode options in use are registered so cancel can abort the running decode by {@link
+ * BitmapFactory.Options#requestCancelDecode()}, and the work checks {@link #throwIfCancelled()}
+ * between its steps to stop as soon as possible, releasing what it decoded.<br>
+ * Also tracks process wide counters of the cancelled work.
+ */
+public final class DecodeCancelSignal {
+
+	/**
+	 * The number of loading/cropping tasks cancelled
+	 */
+	private static final AtomicInteger mCancelledCount = new AtomicInteger();
+
+	/**
+	 * The number of decodes aborted in the middle by cancel
+	 */
+	private static final AtomicInteger mAbortedDecodeCount = new AtomicInteger();
+
+	/**
+	 * The number of bitmaps released because their task was cancelled
+	 */
+	private static final AtomicInteger mReleasedBitmapCount = new AtomicInteger();
+
+	/**
+	 * The decode options currently in use by the work
+	 */
+	private final Set<BitmapFactory.Options> mOptions = new HashSet<>();
+
+	private volatile boolean mCancelled;
+
+	DecodeCancelSignal() {
+	}
+
+	/**
+	 * The number of image loading/cropping tasks cancelled, by loading a new image or starting new
+	 * crop before the previous completed.
+	 */
+	public static int getCancelledCount() {
+		return mCancelledCount.get();
+	}
+
+	/**
+	 * The number of decodes aborted in the middle by cancel of their task.
+	 */
+	public static int getAbortedDecodeCount() {
+		return mAbortedDecodeCount.get();
+	}
+
+	/**
+	 * The number of decoded bitmaps released right away because their task was cancelled.
+	 */
+	public static int getReleasedBitmapCount() {
+		return mReleasedBitmapCount.get();
+	}
+
+	/**
+	 * Cancel the work, abort the running decodes.
+	 */
+	void cancel() {
+		synchronized (mOptions) {
+			if (mCancelled) {
+				return;
+			}
+			mCancelled = true;
+			for (BitmapFactory.Options options : mOptions) {
+				options.requestCancelDecode();
+			}
+		}
+		mCancelledCount.incrementAndGet();
+	}
+
+	boolean isCancelled() {
+		return mCancelled;
+	}
+
+	/**
+	 * Stop the work by throwing {@link CancellationException} if it was cancelled.
+	 */
+	void throwIfCancelled() {
+		if (mCancelled) {
+			throw new CancellationException();
+		}
+	}
+
+	/**
+	 * Register the given options used by a decode that is about to start, so cancel will abort it.
+	 */
+	void register(BitmapFactory.Options options) {
+		synchronized (mOptions) {
+			mOptions.add(options);
+			if (mCancelled) {
+				options.requestCancelDecode();
+			}
+		}
+	}
+
+	/**
+	 * Unregister the given options after their decode finished.
+	 */
+	void unregister(BitmapFactory.Options options) {
+		synchronized (mOptions) {
+			mOptions.remove(options);
+		}
+	}
+
+	/**
+	 * Check the result of a decode that was registered, if the work was cancelled during the decode
+	 * release the decoded bitmap (if any) and throw {@link CancellationException}.
+	 *
+	 * @return the given bitmap if not cancelled
+	 */
+	Bitmap checkDecoded(Bitmap bitmap) {
+		if (mCancelled) {
+			if (bitmap != null) {
+				BitmapPool.recycle(bitmap);
+				onBitmapReleased();
+			} else {
+				mAbortedDecodeCount.incrementAndGet();
+			}
+			throw new CancellationException();
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Count a bitmap released because the task was cancelled.
+	 */
+	static void onBitmapReleased() {
+		mReleasedBitmapCount.incrementAndGet();
+	}
+}
@@ -0,0 +1,175 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Inserts EXIF segment with the given orientation tag right after the start of the JPEG written to
+ * the stream, so an unrotated image can be saved with its rotation/flip as EXIF orientation instead
+ * of transforming the pixels.<br>
+ * If the JPEG starts with JFIF APP0 segment the EXIF segment is inserted after it, as JFIF requires
+ * APP0 right after the start of image marker.
+ */
+final class ExifOrientationOutputStream extends FilterOutputStream {
+
+	/**
+	 * The length of the JPEG start of image marker
+	 */
+	private static final int SOI_LENGTH = 2;
+
+	/**
+	 * The length of a segment marker
+	 */
+	private static final int MARKER_LENGTH = 2;
+
+	/**
+	 * The JFIF APP0 segment marker byte
+	 */
+	private static final int APP0 = 0xE0;
+
+	private final int mOrientation;
+
+	/**
+	 * The marker after the start of image, held until known if it is APP0
+	 */
+	private final byte[] mMarker = new byte[MARKER_LENGTH];
+
+	/**
+	 * The number of bytes written so far, until the EXIF segment is written
+	 */
+	private int mWritten;
+
+	/**
+	 * The length of the APP0 segment, read from its header
+	 */
+	private int mApp0Length;
+
+	private boolean mExifWritten;
+
+	/**
+	 * @param orientation the EXIF orientation, see {@link ExifInterface#TAG_ORIENTATION}
+	 */
+	ExifOrientationOutputStream(OutputStream out, int orientation) {
+		super(out);
+		mOrientation = orientation;
+	}
+
+	/**
+	 * Get the EXIF orientation of image rotated by the given degrees (clockwise) and then flipped.
+	 *
+	 * @param degreesRotated multiple of 90
+	 */
+	static int getExifOrientation(
+			int degreesRotated, boolean flipHorizontally, boolean flipVertically) {
+		int degrees = (degreesRotated % 360 + 360) % 360;
+		if (flipVertically) {
+			// flip vertically is the same as rotate by 180 and flip horizontally
+			degrees = (degrees + 180) % 360;
+			flipHorizontally = !flipHorizontally;
+		}
+		switch (degrees) {
+			case 90:
+				return flipHorizontally
+						? ExifInterface.ORIENTATION_TRANSPOSE
+						: ExifInterface.ORIENTATION_ROTATE_90;
+			case 180:
+				return flipHorizontally
+						? ExifInterface.ORIENTATION_FLIP_VERTICAL
+						: ExifInterface.ORIENTATION_ROTATE_180;
+			case 270:
+				return flipHorizontally
+						? ExifInterface.ORIENTATION_TRANSVERSE
+						: ExifInterface.ORIENTATION_ROTATE_270;
+			default:
+				return flipHorizontally
+						? ExifInterface.ORIENTATION_FLIP_HORIZONTAL
+						: ExifInterface.ORIENTATION_NORMAL;
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (mExifWritten) {
+			out.write(b);
+		} else {
+			writeHead(b);
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0 && !mExifWritten) {
+			writeHead(b[off++]);
+			len--;
+		}
+		if (len > 0) {
+			out.write(b, off, len);
+		}
+	}
+
+	/**
+	 * Write a byte of the JPEG before the EXIF segment: the start of image, the marker after it held
+	 * until known if APP0, and the APP0 segment if it is. The EXIF segment is written right after the
+	 * start of image if the marker is not APP0, otherwise at the end of the APP0 segment.
+	 */
+	private void writeHead(int b) throws IOException {
+		int position = mWritten++;
+		if (position < SOI_LENGTH) {
+			out.write(b);
+		} else if (position < SOI_LENGTH + MARKER_LENGTH) {
+			mMarker[position - SOI_LENGTH] = (byte) b;
+			if (mWritten == SOI_LENGTH + MARKER_LENGTH) {
+				if (mMarker[0] == (byte) 0xFF && (mMarker[1] & 0xFF) == APP0) {
+					out.write(mMarker);
+				} else {
+					writeExifSegment();
+					out.write(mMarker);
+				}
+			}
+		} else {
+			// the APP0 segment length (including the length bytes) then its data
+			out.write(b);
+			if (position == SOI_LENGTH + MARKER_LENGTH) {
+				mApp0Length = (b & 0xFF) << 8;
+			} else {
+				if (position == SOI_LENGTH + MARKER_LENGTH + 1) {
+					mApp0Length |= b & 0xFF;
+				}
+				if (mWritten >= SOI_LENGTH + MARKER_LENGTH + mApp0Length) {
+					writeExifSegment();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write APP1 segment with big endian TIFF header and a single IFD entry of the orientation.
+	 */
+	private void writeExifSegment() throws IOException {
+		out.write(
+				new byte[] {
+						(byte) 0xFF, (byte) 0xE1, 0, 34,
+						'E', 'x', 'i', 'f', 0, 0,
+						'M', 'M', 0, 42, 0, 0, 0, 8,
+						0, 1,
+						0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) mOrientation, 0, 0,
+						0, 0, 0, 0
+				});
+		mExifWritten = true;
+	}
+}
@@ -0,0 +1,116 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The default executor of the library background image work (decode, transform and encode), a
+ * bounded pool of background priority threads so image work doesn't compete with the app UI and
+ * network work on the shared {@link android.os.AsyncTask#THREAD_POOL_EXECUTOR}.<br>
+ * Sized by the device CPU count by default, can be resized by {@link #setDefaultPoolSize(int)} or
+ * replaced per view by {@link ImageCropView#setDecodeExecutor}, {@link
+ * ImageCropView#setTransformExecutor} and {@link ImageCropView#setEncodeExecutor}.
+ */
+public final class ImageCropExecutors {
+
+	/**
+	 * The time idle threads of the default pool are kept alive
+	 */
+	private static final int KEEP_ALIVE_SECONDS = 30;
+
+	/**
+	 * The default pool, created on first use
+	 */
+	private static ThreadPoolExecutor mDefaultExecutor;
+
+	private ImageCropExecutors() {
+	}
+
+	/**
+	 * Get the default executor of the library background image work.
+	 */
+	public static synchronized Executor getDefault() {
+		if (mDefaultExecutor == null) {
+			int size = getDevicePoolSize();
+			mDefaultExecutor =
+					new ThreadPoolExecutor(
+							size,
+							size,
+							KEEP_ALIVE_SECONDS,
+							TimeUnit.SECONDS,
+							new LinkedBlockingQueue<Runnable>(),
+							new BackgroundThreadFactory());
+			mDefaultExecutor.allowCoreThreadTimeOut(true);
+		}
+		return mDefaultExecutor;
+	}
+
+	/**
+	 * Set the number of threads of the default executor, 0 to size by the device CPU count.<br>
+	 * <i>Default: CPU count - 1, between 1 and 4</i>
+	 */
+	public static synchronized void setDefaultPoolSize(int poolSize) {
+		if (poolSize < 0) {
+			throw new IllegalArgumentException("Cannot set pool size to value less than 0.");
+		}
+		int size = poolSize > 0 ? poolSize : getDevicePoolSize();
+		ThreadPoolExecutor executor = (ThreadPoolExecutor) getDefault();
+		if (size > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(size);
+			executor.setCorePoolSize(size);
+		} else {
+			executor.setCorePoolSize(size);
+			executor.setMaximumPoolSize(size);
+		}
+	}
+
+	/**
+	 * Get the default pool size for the device: leave one core to the UI thread, up to 4 threads as
+	 * decoding is memory bound.
+	 */
+	private static int getDevicePoolSize() {
+		return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+	}
+
+	// region: Inner class: BackgroundThreadFactory
+
+	/**
+	 * Creates the default pool threads running at background priority.
+	 */
+	private static final class BackgroundThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger mCount = new AtomicInteger(1);
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			return new Thread(
+					new Runnable() {
+						@Override
+						public void run() {
+							Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+							runnable.run();
+						}
+					},
+					"ImageCrop #" + mCount.getAndIncrement());
+		}
+	}
+	// endregion
+}
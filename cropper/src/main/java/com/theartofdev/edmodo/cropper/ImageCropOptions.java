@@ -106,6 +106,55 @@ public class ImageCropOptions implements Parcelable {
 	 */
 	public boolean autoZoomEnabled;
 
+	/**
+	 * if to draw full resolution tiles of the visible area over the sampled image when zoomed in.<br>
+	 * default: false.
+	 */
+	public boolean tiledRenderingEnabled;
+
+	/**
+	 * if to crop and save full resolution crops too large for the available memory band by band
+	 * instead of lowering their resolution.<br>
+	 * default: false.
+	 */
+	public boolean tiledCropEnabled;
+
+	/**
+	 * The max number of threads to decode a large crop region by in parallel, split to tiles each
+	 * decoded by its own region decoder, 1 to decode on the cropping thread only.<br>
+	 * default: 1.
+	 */
+	public int decodeParallelism;
+
+	/**
+	 * if to save crops of JPEG images to JPEG losslessly when rotated by multiples of 90 degrees
+	 * without resize, the crop edges may be expanded to the JPEG block boundaries.<br>
+	 * default: false.
+	 */
+	public boolean losslessCropEnabled;
+
+	/**
+	 * if to save JPEG crops rotated by multiples of 90 degrees and/or flipped without transforming
+	 * the pixels, with the rotation and flip written as EXIF orientation.<br>
+	 * default: false.
+	 */
+	public boolean saveRotationAsExif;
+
+	/**
+	 * if to start cropping the current crop window in the background once the user releases it and
+	 * it stays put for a short time, so a following crop with the same parameters completes at
+	 * once.<br>
+	 * default: false.
+	 */
+	public boolean speculativeCropEnabled;
+
+	/**
+	 * The number of threads of the library default executor for background image work, 0 to size by
+	 * the device CPU count.<br>
+	 * default: 0.
+	 */
+	public int backgroundPoolSize;
+
 	/**
 	 * if multi-touch should be enabled on the crop box default: false
 	 */
@@ -242,6 +291,12 @@ public class ImageCropOptions implements Parcelable {
 	 */
 	public int outputCompressQuality;
 
+	/**
+	 * the max size in bytes of the written image, saved by the highest quality up to the output
+	 * compress quality that fits (JPEG/WEBP), 0 if not limited
+	 */
+	public int outputMaxBytes;
+
 	/**
 	 * the width to resize the cropped image to (see options)
 	 */
@@ -257,6 +312,11 @@ public class ImageCropOptions implements Parcelable {
 	 */
 	public ImageCropView.RequestSizeOptions outputRequestSizeOptions;
 
+	/**
+	 * the filter to resize the cropped image by (see options documentation)
+	 */
+	public ImageCropView.ResizeFilter resizeFilter;
+
 	/**
 	 * if the result of crop image activity should not save the cropped image bitmap
 	 */
@@ -327,6 +387,13 @@ public class ImageCropOptions implements Parcelable {
 		showCropOverlay = true;
 		showProgressBar = true;
 		autoZoomEnabled = true;
+		tiledRenderingEnabled = false;
+		tiledCropEnabled = false;
+		decodeParallelism = 1;
+		losslessCropEnabled = false;
+		saveRotationAsExif = false;
+		speculativeCropEnabled = false;
+		backgroundPoolSize = 0;
 		multiTouchEnabled = false;
 		maxZoom = 4;
 		initialCropWindowPaddingRatio = 0.1f;
@@ -359,9 +426,11 @@ public class ImageCropOptions implements Parcelable {
 		outputUri = Uri.EMPTY;
 		outputCompressFormat = Bitmap.CompressFormat.JPEG;
 		outputCompressQuality = 90;
+		outputMaxBytes = 0;
 		outputRequestWidth = 0;
 		outputRequestHeight = 0;
 		outputRequestSizeOptions = ImageCropView.RequestSizeOptions.NONE;
+		resizeFilter = ImageCropView.ResizeFilter.BILINEAR;
 		noOutputImage = false;
 
 		initialCropWindowRectangle = null;
@@ -549,6 +618,78 @@ public class ImageCropOptions implements Parcelable {
 			return this;
 		}
 
+		/**
+		 * if to draw full resolution tiles of the visible area over the sampled image when zoomed in,
+		 * keeps huge images sharp on zoom.<br>
+		 * default: false.
+		 */
+		public Builder setTiledRenderingEnabled(boolean tiledRenderingEnabled) {
+			mOptions.tiledRenderingEnabled = tiledRenderingEnabled;
+			return this;
+		}
+
+		/**
+		 * if to crop and save full resolution crops too large for the available memory band by band
+		 * streamed to the encoder, instead of lowering their resolution to fit.<br>
+		 * Used for JPEG/PNG output of crops rotated by multiples of 90 degrees without resize.<br>
+		 * default: false.
+		 */
+		public Builder setTiledCropEnabled(boolean tiledCropEnabled) {
+			mOptions.tiledCropEnabled = tiledCropEnabled;
+			return this;
+		}
+
+		/**
+		 * if to save crops of JPEG images to JPEG losslessly when rotated by multiples of 90 degrees
+		 * without resize, the crop edges may be expanded to the JPEG block boundaries.<br>
+		 * default: false.
+		 */
+		public Builder setLosslessCropEnabled(boolean losslessCropEnabled) {
+			mOptions.losslessCropEnabled = losslessCropEnabled;
+			return this;
+		}
+
+		/**
+		 * if to save JPEG crops rotated by multiples of 90 degrees and/or flipped without transforming
+		 * the pixels, with the rotation and flip written as EXIF orientation.<br>
+		 * default: false.
+		 */
+		public Builder setSaveRotationAsExif(boolean saveRotationAsExif) {
+			mOptions.saveRotationAsExif = saveRotationAsExif;
+			return this;
+		}
+
+		/**
+		 * if to start cropping the current crop window in the background once the user releases it
+		 * and it stays put for a short time, so a following crop with the same parameters completes
+		 * at once.<br>
+		 * default: false.
+		 */
+		public Builder setSpeculativeCropEnabled(boolean speculativeCropEnabled) {
+			mOptions.speculativeCropEnabled = speculativeCropEnabled;
+			return this;
+		}
+
+		/**
+		 * The max number of threads to decode a large crop region by in parallel, helper threads run
+		 * on the transform executor so the parallelism is also bounded by its pool size.<br>
+		 * <i>Default: 1</i>
+		 */
+		public Builder setDecodeParallelism(int decodeParallelism) {
+			mOptions.decodeParallelism = decodeParallelism;
+			return this;
+		}
+
+		/**
+		 * The number of threads of the library default executor for background image work (decode,
+		 * crop and encode), size by device class, 0 to size by the device CPU count.<br>
+		 * <i>Default: 0</i>
+		 */
+		public Builder setBackgroundPoolSize(int backgroundPoolSize) {
+			mOptions.backgroundPoolSize = backgroundPoolSize;
+			return this;
+		}
+
 		/**
 		 * if multi touch functionality is enabled.<br>
 		 * default: true.
@@ -760,6 +901,18 @@ public class ImageCropOptions implements Parcelable {
 			return this;
 		}
 
+		/**
+		 * the max size in bytes of the written image.<br>
+		 * The image is written by the highest quality up to the output compress quality that fits in
+		 * it, searched by encoding candidate qualities to memory in parallel, the crop fails if none
+		 * fits. Used for JPEG and WEBP compression.<br>
+		 * <i>Default: 0 - not limited</i>
+		 */
+		public Builder setOutputMaxBytes(int outputMaxBytes) {
+			mOptions.outputMaxBytes = outputMaxBytes;
+			return this;
+		}
+
 		/**
 		 * the size to resize the cropped image to.<br>
 		 * Uses {@link ImageCropView.RequestSizeOptions#RESIZE_INSIDE} option.<br>
@@ -781,6 +934,15 @@ public class ImageCropOptions implements Parcelable {
 			return this;
 		}
 
+		/**
+		 * the filter to resize the cropped image to the requested size by.<br>
+		 * <i>Default: BILINEAR</i>
+		 */
+		public Builder setResizeFilter(@NonNull ImageCropView.ResizeFilter resizeFilter) {
+			mOptions.resizeFilter = resizeFilter;
+			return this;
+		}
+
 		/**
 		 * if the result of crop image activity should not save the cropped image bitmap.<br>
 		 * Used if you want to crop the image manually and need only the crop rectangle and rotation
@@ -937,6 +1099,15 @@ public class ImageCropOptions implements Parcelable {
 		flipVertically = in.readByte() != 0;
 		cropMenuCropButtonTitle = TextUtils.CHAR_SEQUENCE_CREATOR.createFromParcel(in);
 		cropMenuCropButtonIcon = in.readInt();
+		tiledRenderingEnabled = in.readByte() != 0;
+		backgroundPoolSize = in.readInt();
+		tiledCropEnabled = in.readByte() != 0;
+		decodeParallelism = in.readInt();
+		losslessCropEnabled = in.readByte() != 0;
+		saveRotationAsExif = in.readByte() != 0;
+		speculativeCropEnabled = in.readByte() != 0;
+		outputMaxBytes = in.readInt();
+		resizeFilter = ImageCropView.ResizeFilter.values()[in.readInt()];
 	}
 
 	@Override
@@ -989,6 +1160,15 @@ public class ImageCropOptions implements Parcelable {
 		dest.writeByte((byte) (flipVertically ? 1 : 0));
 		TextUtils.writeToParcel(cropMenuCropButtonTitle, dest, flags);
 		dest.writeInt(cropMenuCropButtonIcon);
+		dest.writeByte((byte) (tiledRenderingEnabled ? 1 : 0));
+		dest.writeInt(backgroundPoolSize);
+		dest.writeByte((byte) (tiledCropEnabled ? 1 : 0));
+		dest.writeInt(decodeParallelism);
+		dest.writeByte((byte) (losslessCropEnabled ? 1 : 0));
+		dest.writeByte((byte) (saveRotationAsExif ? 1 : 0));
+		dest.writeByte((byte) (speculativeCropEnabled ? 1 : 0));
+		dest.writeInt(outputMaxBytes);
+		dest.writeInt(resizeFilter.ordinal());
 	}
 
 	@Override
@@ -1057,9 +1237,18 @@ public class ImageCropOptions implements Parcelable {
 		if (outputRequestHeight < 0) {
 			throw new IllegalArgumentException("Cannot set request height value to a number < 0 ");
 		}
+		if (outputMaxBytes < 0) {
+			throw new IllegalArgumentException("Cannot set output max bytes to a number < 0");
+		}
 		if (rotationDegrees < 0 || rotationDegrees > 360) {
 			throw new IllegalArgumentException(
 					"Cannot set rotation degrees value to a number < 0 or > 360");
 		}
+		if (backgroundPoolSize < 0) {
+			throw new IllegalArgumentException("Cannot set background pool size to a number < 0 ");
+		}
+		if (decodeParallelism < 1) {
+			throw new IllegalArgumentException("Cannot set decode parallelism to a number < 1");
+		}
 	}
 }
@@ -13,8 +13,10 @@
 package com.theartofdev.edmodo.cropper;
 
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -22,9 +24,9 @@ import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.Pair;
@@ -36,7 +38,11 @@ import android.widget.ImageView;
 import android.widget.ProgressBar;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import androidx.exifinterface.media.ExifInterface;
 
@@ -50,10 +56,15 @@ public class ImageCropView extends FrameLayout {
 
 	// region: Fields and Constants
 
+	/**
+	 * The time in milliseconds the released crop window must stay put to start its speculative crop
+	 */
+	private static final int SPECULATIVE_CROP_DELAY = 300;
+
 	/**
 	 * Image view widget used to show the image for cropping.
 	 */
-	private final ImageView mImageView;
+	private final TiledImageView mImageView;
 
 	/**
 	 * Overlay over the image view to show cropping UI.
@@ -92,6 +103,42 @@ public class ImageCropView extends FrameLayout {
 
 	private Bitmap mBitmap;
 
+	/**
+	 * The coarse placeholder shown while the full preview of the image URI is loading, with the
+	 * sample size and header of the preview it stands for
+	 */
+	private BitmapUtils.BitmapSampled mPlaceholder;
+
+	/**
+	 * The time (uptime millis) the current image URI started loading
+	 */
+	private long mLoadStartTime;
+
+	/**
+	 * The time in milliseconds from start of loading until the first image was shown, -1 if not yet
+	 */
+	private long mLoadFirstFrameTime = -1;
+
+	/**
+	 * The time in milliseconds from start of loading until the full preview was shown, -1 if not yet
+	 */
+	private long mLoadPreviewTime = -1;
+
+	/**
+	 * The region decoder session of the image loaded from URI, shared by crops and tiled rendering
+	 */
+	private RegionDecoderSession mRegionDecoderSession;
+
+	/**
+	 * The time (uptime millis) the current async crop started
+	 */
+	private long mCropStartTime;
+
+	/**
+	 * The time in milliseconds the last async crop took, -1 if none completed
+	 */
+	private long mCropTime = -1;
+
 	/**
 	 * The image rotation value used during loading of the image so we can reset to it
 	 */
@@ -150,6 +197,46 @@ public class ImageCropView extends FrameLayout {
 	 */
 	private boolean mAutoZoomEnabled = true;
 
+	/**
+	 * if to draw full resolution tiles of the visible area over the sampled image when zoomed in
+	 */
+	private boolean mTiledRenderingEnabled;
+
+	/**
+	 * if to crop and save full resolution crops too large for the available memory band by band
+	 */
+	private boolean mTiledCropEnabled;
+
+	/**
+	 * The max number of threads to decode a large crop region by in parallel
+	 */
+	private int mDecodeParallelism = 1;
+
+	/**
+	 * if to save crops of JPEG images to JPEG losslessly when possible
+	 */
+	private boolean mLosslessCropEnabled;
+
+	/**
+	 * if to save JPEG crops rotated by multiples of 90 degrees with EXIF orientation
+	 */
+	private boolean mSaveRotationAsExif;
+
+	/**
+	 * if to crop the released crop window in the background ahead of a crop request
+	 */
+	private boolean mSpeculativeCropEnabled;
+
+	/**
+	 * The max size in bytes of saved images, 0 if not limited
+	 */
+	private int mOutputMaxBytes;
+
+	/**
+	 * The filter to resize the cropped image by the requested size
+	 */
+	private ResizeFilter mResizeFilter = ResizeFilter.BILINEAR;
+
 	/**
 	 * The max zoom allowed during cropping
 	 */
@@ -180,6 +267,11 @@ public class ImageCropView extends FrameLayout {
 	 */
 	private OnCropImageCompleteListener mOnCropImageCompleteListener;
 
+	/**
+	 * callback to be invoked when image async batch cropping is complete.
+	 */
+	private OnCropImagesCompleteListener mOnCropImagesCompleteListener;
+
 	/**
 	 * The URI that the image was loaded from (if loaded from URI)
 	 */
@@ -240,6 +332,79 @@ public class ImageCropView extends FrameLayout {
 	 * Task used to crop bitmap async from UI thread
 	 */
 	private WeakReference<BitmapCroppingWorkerTask> mBitmapCroppingWorkerTask;
+
+	/**
+	 * The crop of the released crop window started ahead of a crop request, null if none
+	 */
+	private SpeculativeCrop mSpeculativeCrop;
+
+	/**
+	 * Starts the speculative crop once the released crop window stays put
+	 */
+	private final Runnable mSpeculativeCropRunnable =
+			new Runnable() {
+				@Override
+				public void run() {
+					startSpeculativeCrop();
+				}
+			};
+
+	/**
+	 * The requested width of the last crop, the speculative crop is cropped by
+	 */
+	private int mSpeculativeReqWidth;
+
+	/**
+	 * The requested height of the last crop, the speculative crop is cropped by
+	 */
+	private int mSpeculativeReqHeight;
+
+	/**
+	 * The resize method of the last crop, the speculative crop is cropped by
+	 */
+	private RequestSizeOptions mSpeculativeReqSizeOptions = RequestSizeOptions.NONE;
+
+	/**
+	 * Task used to crop batch of crops async from UI thread
+	 */
+	private WeakReference<BatchCroppingWorkerTask> mBatchCroppingWorkerTask;
+
+	/**
+	 * The executor to decode images on, null for the library default
+	 */
+	private Executor mDecodeExecutor;
+
+	/**
+	 * The executor to crop/rotate/resize images on, null for the library default
+	 */
+	private Executor mTransformExecutor;
+
+	/**
+	 * The executor to encode cropped images on, null for the library default
+	 */
+	private Executor mEncodeExecutor;
+
+	/**
+	 * Free the region decoder memory when the system runs low on memory
+	 */
+	private final ComponentCallbacks2 mMemoryCallbacks =
+			new ComponentCallbacks2() {
+				@Override
+				public void onTrimMemory(int level) {
+					if (level >= TRIM_MEMORY_RUNNING_LOW) {
+						trimRegionDecoderSession();
+					}
+				}
+
+				@Override
+				public void onLowMemory() {
+					trimRegionDecoderSession();
+				}
+
+				@Override
+				public void onConfigurationChanged(Configuration newConfig) {
+				}
+			};
 	// endregion
 
 	public ImageCropView(Context context) {
@@ -276,6 +441,32 @@ public class ImageCropView extends FrameLayout {
 									ta.getInt(R.styleable.ImageCropView_cropScaleType, options.scaleType.ordinal())];
 					options.autoZoomEnabled =
 							ta.getBoolean(R.styleable.ImageCropView_cropAutoZoomEnabled, options.autoZoomEnabled);
+					options.tiledRenderingEnabled =
+							ta.getBoolean(
+									R.styleable.ImageCropView_cropTiledRenderingEnabled,
+									options.tiledRenderingEnabled);
+					options.tiledCropEnabled =
+							ta.getBoolean(
+									R.styleable.ImageCropView_cropTiledCropEnabled, options.tiledCropEnabled);
+					options.decodeParallelism =
+							ta.getInteger(
+									R.styleable.ImageCropView_cropDecodeParallelism, options.decodeParallelism);
+					options.losslessCropEnabled =
+							ta.getBoolean(
+									R.styleable.ImageCropView_cropLosslessCropEnabled, options.losslessCropEnabled);
+					options.saveRotationAsExif =
+							ta.getBoolean(
+									R.styleable.ImageCropView_cropSaveRotationAsExif, options.saveRotationAsExif);
+					options.speculativeCropEnabled =
+							ta.getBoolean(
+									R.styleable.ImageCropView_cropSpeculativeCropEnabled,
+									options.speculativeCropEnabled);
+					options.outputMaxBytes =
+							ta.getInteger(R.styleable.ImageCropView_cropOutputMaxBytes, options.outputMaxBytes);
+					options.resizeFilter =
+							ResizeFilter.values()[
+									ta.getInt(
+											R.styleable.ImageCropView_cropResizeFilter, options.resizeFilter.ordinal())];
 					options.multiTouchEnabled =
 							ta.getBoolean(
 									R.styleable.ImageCropView_cropMultiTouchEnabled, options.multiTouchEnabled);
@@ -382,8 +573,20 @@ public class ImageCropView extends FrameLayout {
 
 		options.validate();
 
+		if (options.backgroundPoolSize > 0) {
+			ImageCropExecutors.setDefaultPoolSize(options.backgroundPoolSize);
+		}
+
 		mScaleType = options.scaleType;
 		mAutoZoomEnabled = options.autoZoomEnabled;
+		mTiledRenderingEnabled = options.tiledRenderingEnabled;
+		mTiledCropEnabled = options.tiledCropEnabled;
+		mDecodeParallelism = options.decodeParallelism;
+		mLosslessCropEnabled = options.losslessCropEnabled;
+		mSaveRotationAsExif = options.saveRotationAsExif;
+		mSpeculativeCropEnabled = options.speculativeCropEnabled;
+		mOutputMaxBytes = options.outputMaxBytes;
+		mResizeFilter = options.resizeFilter;
 		mMaxZoom = options.maxZoom;
 		mShowCropOverlay = options.showCropOverlay;
 		mShowProgressBar = options.showProgressBar;
@@ -402,6 +605,11 @@ public class ImageCropView extends FrameLayout {
 					@Override
 					public void onCropWindowChanged(boolean inProgress) {
 						handleCropWindowChanged(inProgress, true);
+						if (inProgress) {
+							cancelSpeculativeCrop();
+						} else {
+							scheduleSpeculativeCrop();
+						}
 						OnSetCropOverlayReleasedListener listener = mOnCropOverlayReleasedListener;
 						if (listener != null && !inProgress) {
 							listener.onCropOverlayReleased(getCropRect());
@@ -471,6 +679,226 @@ public class ImageCropView extends FrameLayout {
 		}
 	}
 
+	/**
+	 * if full resolution tiles of the visible area are drawn over the sampled image when zoomed in.
+	 * default: false.
+	 */
+	public boolean isTiledRenderingEnabled() {
+		return mTiledRenderingEnabled;
+	}
+
+	/**
+	 * Set tiled rendering to enabled/disabled.<br>
+	 * Images loaded by URI are shown sampled down to the screen size, when enabled zooming in
+	 * decodes only the visible area of the source image at the resolution the zoom requires.
+	 */
+	public void setTiledRenderingEnabled(boolean tiledRenderingEnabled) {
+		if (mTiledRenderingEnabled != tiledRenderingEnabled) {
+			mTiledRenderingEnabled = tiledRenderingEnabled;
+			updateTileSource();
+		}
+	}
+
+	/**
+	 * if full resolution crops too large for the available memory are saved band by band.
+	 * default: false.
+	 */
+	public boolean isTiledCropEnabled() {
+		return mTiledCropEnabled;
+	}
+
+	/**
+	 * Set tiled crop to enabled/disabled.<br>
+	 * When enabled, saving a full resolution crop of image loaded from URI that is too large for the
+	 * available memory decodes the crop in bands streamed to the encoder, instead of lowering the
+	 * resolution of the saved image to fit in memory.<br>
+	 * Used for JPEG/PNG output of crops rotated by multiples of 90 degrees without resize.
+	 */
+	public void setTiledCropEnabled(boolean tiledCropEnabled) {
+		mTiledCropEnabled = tiledCropEnabled;
+	}
+
+	/**
+	 * if crops of JPEG images are saved to JPEG losslessly when possible.
+	 * default: false.
+	 */
+	public boolean isLosslessCropEnabled() {
+		return mLosslessCropEnabled;
+	}
+
+	/**
+	 * Set lossless crop to enabled/disabled.<br>
+	 * When enabled, saving a crop of JPEG image loaded from URI to JPEG, rotated by multiple of 90
+	 * degrees without resize, transforms the JPEG data directly instead of decoding and re-encoding
+	 * it, so the saved image has no quality loss and no bitmap is created.<br>
+	 * The crop edges that end up at the left/top of the saved image are expanded to the JPEG block
+	 * boundaries (8 or 16 pixels), the save quality is not used. Progressive JPEG images are cropped
+	 * by decoding.
+	 */
+	public void setLosslessCropEnabled(boolean losslessCropEnabled) {
+		mLosslessCropEnabled = losslessCropEnabled;
+	}
+
+	/**
+	 * if JPEG crops rotated by multiples of 90 degrees are saved with EXIF orientation.
+	 * default: false.
+	 */
+	public boolean isSaveRotationAsExif() {
+		return mSaveRotationAsExif;
+	}
+
+	/**
+	 * Set saving rotation as EXIF orientation to enabled/disabled.<br>
+	 * When enabled, saving a crop to JPEG rotated by multiple of 90 degrees and/or flipped saves the
+	 * unrotated crop with the rotation and flip written as EXIF orientation, so the pixels are not
+	 * transformed and no rotated copy is allocated.<br>
+	 * The saved image is shown rotated only by viewers that respect EXIF orientation.
+	 */
+	public void setSaveRotationAsExif(boolean saveRotationAsExif) {
+		mSaveRotationAsExif = saveRotationAsExif;
+	}
+
+	/**
+	 * if the released crop window is cropped in the background ahead of a crop request.
+	 * default: false.
+	 */
+	public boolean isSpeculativeCropEnabled() {
+		return mSpeculativeCropEnabled;
+	}
+
+	/**
+	 * Set speculative crop to enabled/disabled.<br>
+	 * When enabled, once the user releases the crop window and it stays put for a short time it is
+	 * cropped in the background, by the requested size of the last crop. A following {@link
+	 * #getCroppedImageAsync()} or {@link #saveCroppedImageAsync(Uri)} of the same crop window and
+	 * requested size uses the speculative crop, only encoding it if saved, instead of cropping
+	 * again.<br>
+	 * Any change to the crop window, rotation or flip cancels the speculative crop.
+	 */
+	public void setSpeculativeCropEnabled(boolean speculativeCropEnabled) {
+		mSpeculativeCropEnabled = speculativeCropEnabled;
+		if (!speculativeCropEnabled) {
+			cancelSpeculativeCrop();
+		}
+	}
+
+	/**
+	 * The max size in bytes of saved images, 0 if not limited.
+	 * default: 0.
+	 */
+	public int getOutputMaxBytes() {
+		return mOutputMaxBytes;
+	}
+
+	/**
+	 * Set the max size in bytes of saved images, 0 to not limit.<br>
+	 * A crop saved to JPEG or WEBP is written by the highest quality up to the given save quality
+	 * that fits in the max size, searched by encoding candidate qualities to memory in parallel on
+	 * the encode executor. The crop fails with the smallest size achieved if none fits.
+	 */
+	public void setOutputMaxBytes(int outputMaxBytes) {
+		if (outputMaxBytes < 0) {
+			throw new IllegalArgumentException("Cannot set output max bytes to a number < 0");
+		}
+		mOutputMaxBytes = outputMaxBytes;
+	}
+
+	/**
+	 * The filter to resize the cropped image by the requested size.
+	 * default: {@link ResizeFilter#BILINEAR}.
+	 */
+	public ResizeFilter getResizeFilter() {
+		return mResizeFilter;
+	}
+
+	/**
+	 * Set the filter to resize the cropped image by the requested size, see {@link ResizeFilter}.
+	 * <br>
+	 * Resize by a filter other than bilinear, or by half or less, is done by separable resampling of
+	 * bands of rows in parallel.
+	 */
+	public void setResizeFilter(ResizeFilter resizeFilter) {
+		mResizeFilter = resizeFilter != null ? resizeFilter : ResizeFilter.BILINEAR;
+	}
+
+	/**
+	 * The max number of threads to decode a large crop region by in parallel.
+	 * default: 1.
+	 */
+	public int getDecodeParallelism() {
+		return mDecodeParallelism;
+	}
+
+	/**
+	 * Set the max number of threads to decode a large crop region of image loaded from URI by in
+	 * parallel.<br>
+	 * The region is split to tiles decoded by the cropping thread and helper threads on the transform
+	 * executor, each by its own region decoder, so the parallelism is also bounded by the executor
+	 * pool size. Small regions are decoded on the cropping thread only.
+	 *
+	 * @param decodeParallelism the max number of threads, 1 to not decode in parallel
+	 */
+	public void setDecodeParallelism(int decodeParallelism) {
+		if (decodeParallelism < 1) {
+			throw new IllegalArgumentException("Cannot set decode parallelism to a number < 1");
+		}
+		mDecodeParallelism = decodeParallelism;
+	}
+
+	/**
+	 * Get the executor images are decoded on, see {@link #setDecodeExecutor(Executor)}.
+	 */
+	public Executor getDecodeExecutor() {
+		return mDecodeExecutor != null ? mDecodeExecutor : ImageCropExecutors.getDefault();
+	}
+
+	/**
+	 * Set the executor to decode images set by {@link #setImageUriAsync(Uri)} and zoom tiles on.<br>
+	 * <i>Default: {@link ImageCropExecutors#getDefault()}</i>
+	 *
+	 * @param executor the executor to use, null for the library default
+	 */
+	public void setDecodeExecutor(Executor executor) {
+		mDecodeExecutor = executor;
+	}
+
+	/**
+	 * Get the executor images are cropped on, see {@link #setTransformExecutor(Executor)}.
+	 */
+	public Executor getTransformExecutor() {
+		return mTransformExecutor != null ? mTransformExecutor : ImageCropExecutors.getDefault();
+	}
+
+	/**
+	 * Set the executor to crop, rotate and resize images by {@link #getCroppedImageAsync()} and
+	 * {@link #saveCroppedImageAsync(Uri)} on.<br>
+	 * <i>Default: {@link ImageCropExecutors#getDefault()}</i>
+	 *
+	 * @param executor the executor to use, null for the library default
+	 */
+	public void setTransformExecutor(Executor executor) {
+		mTransformExecutor = executor;
+	}
+
+	/**
+	 * Get the executor cropped images are encoded on, see {@link #setEncodeExecutor(Executor)}.
+	 */
+	public Executor getEncodeExecutor() {
+		return mEncodeExecutor != null ? mEncodeExecutor : ImageCropExecutors.getDefault();
+	}
+
+	/**
+	 * Set the executor to encode and write cropped images by {@link #saveCroppedImageAsync(Uri)}
+	 * on.<br>
+	 * If the same as the transform executor the image is encoded on the cropping thread.<br>
+	 * <i>Default: {@link ImageCropExecutors#getDefault()}</i>
+	 *
+	 * @param executor the executor to use, null for the library default
+	 */
+	public void setEncodeExecutor(Executor executor) {
+		mEncodeExecutor = executor;
+	}
+
 	/**
 	 * Set multi touch functionality to enabled/disabled.
 	 */
@@ -548,6 +976,7 @@ public class ImageCropView extends FrameLayout {
 	 * it to be changed.
 	 */
 	public void setFixedAspectRatio(boolean fixAspectRatio) {
+		cancelSpeculativeCrop();
 		mOverlayViewCrop.setFixedAspectRatio(fixAspectRatio);
 	}
 
@@ -563,6 +992,7 @@ public class ImageCropView extends FrameLayout {
 	 */
 	public void setFlippedHorizontally(boolean flipHorizontally) {
 		if (mFlipHorizontally != flipHorizontally) {
+			cancelSpeculativeCrop();
 			mFlipHorizontally = flipHorizontally;
 			applyImageMatrix(getWidth(), getHeight(), true, false);
 		}
@@ -580,6 +1010,7 @@ public class ImageCropView extends FrameLayout {
 	 */
 	public void setFlippedVertically(boolean flipVertically) {
 		if (mFlipVertically != flipVertically) {
+			cancelSpeculativeCrop();
 			mFlipVertically = flipVertically;
 			applyImageMatrix(getWidth(), getHeight(), true, false);
 		}
@@ -714,6 +1145,32 @@ public class ImageCropView extends FrameLayout {
 		return mLoadedImageUri;
 	}
 
+	/**
+	 * Get the time in milliseconds from {@link #setImageUriAsync(Uri)} until the first image was
+	 * shown, the coarse placeholder for large images or the full preview, -1 if not shown yet.
+	 */
+	public long getImageFirstFrameTime() {
+		return mLoadFirstFrameTime;
+	}
+
+	/**
+	 * Get the time in milliseconds from {@link #setImageUriAsync(Uri)} until the full preview was
+	 * shown, -1 if not shown yet.
+	 */
+	public long getImagePreviewTime() {
+		return mLoadPreviewTime;
+	}
+
+	/**
+	 * Get the time in milliseconds the last {@link #getCroppedImageAsync()} or {@link
+	 * #saveCroppedImageAsync(Uri)} took until complete, -1 if none completed.<br>
+	 * Crops of image loaded from URI after the first reuse the open region decoder, see {@link
+	 * RegionDecoderSession#getReuseCount()}.
+	 */
+	public long getCropTime() {
+		return mCropTime;
+	}
+
 	/**
 	 * Gets the source Bitmap's dimensions. This represents the largest possible crop rectangle.
 	 *
@@ -814,6 +1271,7 @@ public class ImageCropView extends FrameLayout {
 	 * @param rect window rectangle (position and size) relative to source bitmap
 	 */
 	public void setCropRect(Rect rect) {
+		cancelSpeculativeCrop();
 		mOverlayViewCrop.setInitialCropWindowRect(rect);
 	}
 
@@ -821,6 +1279,7 @@ public class ImageCropView extends FrameLayout {
 	 * Reset crop window to initial rectangle.
 	 */
 	public void resetCropRect() {
+		cancelSpeculativeCrop();
 		mZoom = 1;
 		mZoomOffsetX = 0;
 		mZoomOffsetY = 0;
@@ -885,12 +1344,18 @@ public class ImageCropView extends FrameLayout {
 								mOverlayViewCrop.getAspectRatioY(),
 								reqWidth,
 								reqHeight,
+								options,
+								mResizeFilter,
+								getTransformExecutor(),
 								mFlipHorizontally,
-								mFlipVertically);
+								mFlipVertically,
+								getCropRegionDecoderSession(),
+								null);
 				croppedBitmap = bitmapSampled.bitmap;
 			} else {
 				croppedBitmap =
 						BitmapUtils.cropBitmapObjectHandleOOM(
+								getContext(),
 								mBitmap,
 								getCropPoints(),
 								mDegreesRotated,
@@ -898,11 +1363,14 @@ public class ImageCropView extends FrameLayout {
 								mOverlayViewCrop.getAspectRatioX(),
 								mOverlayViewCrop.getAspectRatioY(),
 								mFlipHorizontally,
-								mFlipVertically)
+								mFlipVertically,
+								reqWidth,
+								reqHeight,
+								options,
+								mResizeFilter,
+								getTransformExecutor())
 								.bitmap;
 			}
-
-			croppedBitmap = BitmapUtils.resizeBitmap(croppedBitmap, reqWidth, reqHeight, options);
 		}
 
 		return croppedBitmap;
@@ -1026,6 +1494,92 @@ public class ImageCropView extends FrameLayout {
 				reqWidth, reqHeight, options, saveUri, saveCompressFormat, saveCompressQuality);
 	}
 
+	/**
+	 * Save the cropped image based on the current crop window to the given uri, together with the
+	 * given smaller renditions of it, each saved to its own uri.<br>
+	 * The image is cropped once, every rendition is downscaled from the previous larger one and all
+	 * are encoded in parallel on the encode executor.<br>
+	 * The result will be invoked to listener set by {@link
+	 * #setOnCropImageCompleteListener(OnCropImageCompleteListener)}.
+	 *
+	 * @param saveUri             the Android Uri to save the cropped image to
+	 * @param saveCompressFormat  the compression format to use when writing the images
+	 * @param saveCompressQuality the quality (if applicable) to use when writing the images (0 - 100)
+	 * @param reqWidth            the width to resize the cropped image to (see options)
+	 * @param reqHeight           the height to resize the cropped image to (see options)
+	 * @param options             the resize method to use, see its documentation
+	 * @param renditions          the smaller renditions to save with the cropped image
+	 */
+	public void saveCroppedImageAsync(
+			Uri saveUri,
+			Bitmap.CompressFormat saveCompressFormat,
+			int saveCompressQuality,
+			int reqWidth,
+			int reqHeight,
+			RequestSizeOptions options,
+			List<CropRendition> renditions) {
+		if (mOnCropImageCompleteListener == null) {
+			throw new IllegalArgumentException("mOnCropImageCompleteListener is not set");
+		}
+		startCropWorkerTask(
+				reqWidth,
+				reqHeight,
+				options,
+				saveUri,
+				saveCompressFormat,
+				saveCompressQuality,
+				renditions != null && !renditions.isEmpty() ? new ArrayList<>(renditions) : null);
+	}
+
+	/**
+	 * Crop the image by all the given crops from a single decode of the image.<br>
+	 * The union of the crop rectangles is decoded once and all the crops are cropped from it in
+	 * parallel on the transform executor, each saved to its save uri if given. The current rotation
+	 * and flip of the image are applied to all the crops.<br>
+	 * The results will be invoked to listener set by {@link
+	 * #setOnCropImagesCompleteListener(OnCropImagesCompleteListener)}.
+	 *
+	 * @param specs the crops, the crop points are relative to the source bitmap like {@link
+	 *              #getCropPoints()}
+	 */
+	public void cropImagesAsync(List<CropSpec> specs) {
+		if (mOnCropImagesCompleteListener == null) {
+			throw new IllegalArgumentException("mOnCropImagesCompleteListener is not set");
+		}
+		Bitmap bitmap = mBitmap;
+		if (bitmap != null && !specs.isEmpty()) {
+			mImageView.clearAnimation();
+
+			BatchCroppingWorkerTask currentTask =
+					mBatchCroppingWorkerTask != null ? mBatchCroppingWorkerTask.get() : null;
+			if (currentTask != null) {
+				// cancel previous cropping
+				currentTask.abort();
+			}
+
+			// crop from the loaded bitmap if it is the full resolution image
+			Uri uri = mLoadedImageUri != null && mLoadedSampleSize > 1 ? mLoadedImageUri : null;
+			Executor transformExecutor = getTransformExecutor();
+			BatchCroppingWorkerTask task =
+					new BatchCroppingWorkerTask(
+							this,
+							uri,
+							uri == null ? bitmap : null,
+							bitmap.getWidth() * mLoadedSampleSize,
+							bitmap.getHeight() * mLoadedSampleSize,
+							new ArrayList<>(specs),
+							mDegreesRotated,
+							mFlipHorizontally,
+							mFlipVertically,
+							uri != null ? getCropRegionDecoderSession() : null,
+							transformExecutor);
+			mBatchCroppingWorkerTask = new WeakReference<>(task);
+			mCropStartTime = SystemClock.uptimeMillis();
+			task.executeOnExecutor(transformExecutor);
+			updateProgressBarState();
+		}
+	}
+
 	/**
 	 * Set the callback t
 	 */
@@ -1063,6 +1617,14 @@ public class ImageCropView extends FrameLayout {
 		mOnCropImageCompleteListener = listener;
 	}
 
+	/**
+	 * Set the callback to be invoked when image async batch cropping ({@link
+	 * #cropImagesAsync(List)}) is complete.
+	 */
+	public void setOnCropImagesCompleteListener(OnCropImagesCompleteListener listener) {
+		mOnCropImagesCompleteListener = listener;
+	}
+
 	/**
 	 * Sets a Bitmap as the content of the CropImageView.
 	 *
@@ -1124,7 +1686,7 @@ public class ImageCropView extends FrameLayout {
 			if (currentTask != null) {
 				// cancel previous loading (no check if the same URI because camera URI can be the same for
 				// different images)
-				currentTask.cancel(true);
+				currentTask.abort();
 			}
 
 			// either no existing task is working or we canceled it, need to load new URI
@@ -1132,8 +1694,11 @@ public class ImageCropView extends FrameLayout {
 			mRestoreCropWindowRect = null;
 			mRestoreDegreesRotated = 0;
 			mOverlayViewCrop.setInitialCropWindowRect(null);
+			mLoadStartTime = SystemClock.uptimeMillis();
+			mLoadFirstFrameTime = -1;
+			mLoadPreviewTime = -1;
 			mBitmapLoadingWorkerTask = new WeakReference<>(new BitmapLoadingWorkerTask(this, uri));
-			mBitmapLoadingWorkerTask.get().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+			mBitmapLoadingWorkerTask.get().executeOnExecutor(getDecodeExecutor());
 			updateProgressBarState();
 		}
 	}
@@ -1153,6 +1718,7 @@ public class ImageCropView extends FrameLayout {
 	 * @param degrees Integer specifying the number of degrees to rotate.
 	 */
 	public void rotateImage(int degrees) {
+		cancelSpeculativeCrop();
 		if (mBitmap != null) {
 			// Force degrees to be a non-zero value between 0 and 360 (inclusive)
 			if (degrees < 0) {
@@ -1231,6 +1797,7 @@ public class ImageCropView extends FrameLayout {
 	 * Flips the image horizontally.
 	 */
 	public void flipImageHorizontally() {
+		cancelSpeculativeCrop();
 		mFlipHorizontally = !mFlipHorizontally;
 		applyImageMatrix(getWidth(), getHeight(), true, false);
 	}
@@ -1239,6 +1806,7 @@ public class ImageCropView extends FrameLayout {
 	 * Flips the image vertically.
 	 */
 	public void flipImageVertically() {
+		cancelSpeculativeCrop();
 		mFlipVertically = !mFlipVertically;
 		applyImageMatrix(getWidth(), getHeight(), true, false);
 	}
@@ -1259,6 +1827,13 @@ public class ImageCropView extends FrameLayout {
 		if (result.error == null) {
 			mInitialDegreesRotated = result.degreesRotated;
 			setBitmap(result.bitmap, 0, result.uri, result.loadSampleSize, result.degreesRotated);
+
+			mLoadPreviewTime = SystemClock.uptimeMillis() - mLoadStartTime;
+			if (mLoadFirstFrameTime < 0) {
+				mLoadFirstFrameTime = mLoadPreviewTime;
+			}
+		} else {
+			clearPlaceholder();
 		}
 
 		OnSetImageUriCompleteListener listener = mOnSetImageUriCompleteListener;
@@ -1267,6 +1842,25 @@ public class ImageCropView extends FrameLayout {
 		}
 	}
 
+	/**
+	 * On decode of coarse placeholder during async bitmap loading show it until the full preview is
+	 * loaded, in the same position the preview will be shown so the swap is seamless.<br>
+	 * The crop overlay is not shown for the placeholder.
+	 *
+	 * @param placeholder the placeholder with the sample size and header of the preview
+	 */
+	void onSetImageUriAsyncPlaceholder(BitmapUtils.BitmapSampled placeholder) {
+		if (mBitmap != null) {
+			BitmapPool.recycle(placeholder.bitmap);
+			return;
+		}
+		clearPlaceholder();
+		mPlaceholder = placeholder;
+		mImageView.setImageBitmap(placeholder.bitmap);
+		applyPlaceholderMatrix(getWidth(), getHeight());
+		mLoadFirstFrameTime = SystemClock.uptimeMillis() - mLoadStartTime;
+	}
+
 	/**
 	 * On complete of the async bitmap cropping by {@link #getCroppedImageAsync()} call listener if
 	 * set.
@@ -1276,6 +1870,7 @@ public class ImageCropView extends FrameLayout {
 	void onImageCroppingAsyncComplete(BitmapCroppingWorkerTask.Result result) {
 
 		mBitmapCroppingWorkerTask = null;
+		mCropTime = SystemClock.uptimeMillis() - mCropStartTime;
 		updateProgressBarState();
 
 		OnCropImageCompleteListener listener = mOnCropImageCompleteListener;
@@ -1296,6 +1891,24 @@ public class ImageCropView extends FrameLayout {
 		}
 	}
 
+	/**
+	 * On complete of the async batch cropping by {@link #cropImagesAsync(List)} call listener if
+	 * set.
+	 *
+	 * @param results the results of the batch cropping
+	 */
+	void onImagesCroppingAsyncComplete(List<CropResult> results) {
+
+		mBatchCroppingWorkerTask = null;
+		mCropTime = SystemClock.uptimeMillis() - mCropStartTime;
+		updateProgressBarState();
+
+		OnCropImagesCompleteListener listener = mOnCropImagesCompleteListener;
+		if (listener != null) {
+			listener.onCropImagesComplete(this, results);
+		}
+	}
+
 	/**
 	 * Set the given bitmap to be used in for cropping<br>
 	 * Optionally clear full if the bitmap is new, or partial clear if the bitmap has been
@@ -1313,9 +1926,13 @@ public class ImageCropView extends FrameLayout {
 			mImageView.setImageBitmap(mBitmap);
 
 			mLoadedImageUri = imageUri;
+			if (imageUri != null) {
+				mRegionDecoderSession = new RegionDecoderSession(getContext(), imageUri);
+			}
 			mImageResource = imageResource;
 			mLoadedSampleSize = loadSampleSize;
 			mDegreesRotated = degreesRotated;
+			updateTileSource();
 
 			applyImageMatrix(getWidth(), getHeight(), true, false);
 
@@ -1333,10 +1950,12 @@ public class ImageCropView extends FrameLayout {
 	 */
 	private void clearImageInt() {
 
-		// if we allocated the bitmap, release it as fast as possible
-		if (mBitmap != null && (mImageResource > 0 || mLoadedImageUri != null)) {
-			mBitmap.recycle();
-		}
+		cancelSpeculativeCrop();
+
+		// if we allocated the bitmap, release it as fast as possible once removed from the image view,
+		// it may be reused by the bitmap pool (unless still shared by the preview cache)
+		Bitmap releaseBitmap =
+				mBitmap != null && (mImageResource > 0 || mLoadedImageUri != null) ? mBitmap : null;
 		mBitmap = null;
 
 		// clean the loaded image flags for new image
@@ -1351,10 +1970,65 @@ public class ImageCropView extends FrameLayout {
 		mSaveInstanceStateBitmapUri = null;
 
 		mImageView.setImageBitmap(null);
+		mImageView.clearTileSource();
+		if (mRegionDecoderSession != null) {
+			mRegionDecoderSession.close();
+			mRegionDecoderSession = null;
+		}
+		BitmapPreviewCache.release(releaseBitmap);
+		clearPlaceholder();
 
 		setCropOverlayVisibility();
 	}
 
+	/**
+	 * Set the source of full resolution tiles of the image view if tiled rendering is enabled and
+	 * the image was loaded from URI sampled down, clear it otherwise.
+	 */
+	private void updateTileSource() {
+		if (mTiledRenderingEnabled
+				&& mBitmap != null
+				&& mLoadedImageUri != null
+				&& mLoadedSampleSize > 1) {
+			mImageView.setTileSource(mRegionDecoderSession, mLoadedSampleSize, getDecodeExecutor());
+		} else {
+			mImageView.clearTileSource();
+		}
+	}
+
+	/**
+	 * Get the region decoder session of the loaded image set to decode crop regions by the current
+	 * parallelism on the transform executor, null if the image was not loaded from URI.
+	 */
+	private RegionDecoderSession getCropRegionDecoderSession() {
+		if (mRegionDecoderSession != null) {
+			mRegionDecoderSession.setParallelism(mDecodeParallelism, getTransformExecutor());
+		}
+		return mRegionDecoderSession;
+	}
+
+	/**
+	 * Free the memory of the open region decoder of the loaded image, reopened on next crop.
+	 */
+	private void trimRegionDecoderSession() {
+		if (mRegionDecoderSession != null) {
+			mRegionDecoderSession.trim();
+		}
+	}
+
+	/**
+	 * Release the placeholder shown while loading, if any.
+	 */
+	private void clearPlaceholder() {
+		if (mPlaceholder != null) {
+			if (mBitmap == null) {
+				mImageView.setImageBitmap(null);
+			}
+			BitmapPool.recycle(mPlaceholder.bitmap);
+			mPlaceholder = null;
+		}
+	}
+
 	/**
 	 * Gets the cropped image based on the current crop window.<br>
 	 * If (reqWidth,reqHeight) is given AND image is loaded from URI cropping will try to use sample
@@ -1379,6 +2053,25 @@ public class ImageCropView extends FrameLayout {
 			Uri saveUri,
 			Bitmap.CompressFormat saveCompressFormat,
 			int saveCompressQuality) {
+		startCropWorkerTask(
+				reqWidth, reqHeight, options, saveUri, saveCompressFormat, saveCompressQuality, null);
+	}
+
+	/**
+	 * Gets the cropped image based on the current crop window, see {@link
+	 * #startCropWorkerTask(int, int, RequestSizeOptions, Uri, Bitmap.CompressFormat, int)}.
+	 *
+	 * @param renditions if saveUri is given, the smaller renditions to save with the cropped image,
+	 *                   null if none
+	 */
+	private void startCropWorkerTask(
+			int reqWidth,
+			int reqHeight,
+			RequestSizeOptions options,
+			Uri saveUri,
+			Bitmap.CompressFormat saveCompressFormat,
+			int saveCompressQuality,
+			List<CropRendition> renditions) {
 		Bitmap bitmap = mBitmap;
 		if (bitmap != null) {
 			mImageView.clearAnimation();
@@ -1387,61 +2080,144 @@ public class ImageCropView extends FrameLayout {
 					mBitmapCroppingWorkerTask != null ? mBitmapCroppingWorkerTask.get() : null;
 			if (currentTask != null) {
 				// cancel previous cropping
-				currentTask.cancel(true);
+				currentTask.abort();
 			}
 
 			reqWidth = options != RequestSizeOptions.NONE ? reqWidth : 0;
 			reqHeight = options != RequestSizeOptions.NONE ? reqHeight : 0;
 
-			int orgWidth = bitmap.getWidth() * mLoadedSampleSize;
-			int orgHeight = bitmap.getHeight() * mLoadedSampleSize;
-			if (mLoadedImageUri != null
-					&& (mLoadedSampleSize > 1 || options == RequestSizeOptions.SAMPLING)) {
-				mBitmapCroppingWorkerTask =
-						new WeakReference<>(
-								new BitmapCroppingWorkerTask(
-										this,
-										mLoadedImageUri,
-										getCropPoints(),
-										mDegreesRotated,
-										orgWidth,
-										orgHeight,
-										mOverlayViewCrop.isFixAspectRatio(),
-										mOverlayViewCrop.getAspectRatioX(),
-										mOverlayViewCrop.getAspectRatioY(),
-										reqWidth,
-										reqHeight,
-										mFlipHorizontally,
-										mFlipVertically,
-										options,
-										saveUri,
-										saveCompressFormat,
-										saveCompressQuality));
+			CropOperation operation =
+					newCropOperation(
+							bitmap,
+							reqWidth,
+							reqHeight,
+							options,
+							saveUri,
+							saveCompressFormat,
+							saveCompressQuality);
+			if (saveUri != null && renditions != null) {
+				operation.setRenditions(renditions, getEncodeExecutor());
+			}
+			if (saveUri != null && mOutputMaxBytes > 0) {
+				operation.setSaveMaxBytes(mOutputMaxBytes, getEncodeExecutor());
+			}
+			BitmapCroppingWorkerTask task = new BitmapCroppingWorkerTask(this, operation);
+			mBitmapCroppingWorkerTask = new WeakReference<>(task);
+			Executor transformExecutor = getTransformExecutor();
+			Executor encodeExecutor = getEncodeExecutor();
+			task.setEncodeExecutor(encodeExecutor != transformExecutor ? encodeExecutor : null);
+
+			// the speculative crop of the crop window, if any, is taken or no longer needed
+			removeCallbacks(mSpeculativeCropRunnable);
+			if (mSpeculativeCrop != null && mSpeculativeCrop.matches(operation)) {
+				task.setSpeculativeCrop(mSpeculativeCrop);
+				mSpeculativeCrop = null;
 			} else {
-				mBitmapCroppingWorkerTask =
-						new WeakReference<>(
-								new BitmapCroppingWorkerTask(
-										this,
-										bitmap,
-										getCropPoints(),
-										mDegreesRotated,
-										mOverlayViewCrop.isFixAspectRatio(),
-										mOverlayViewCrop.getAspectRatioX(),
-										mOverlayViewCrop.getAspectRatioY(),
-										reqWidth,
-										reqHeight,
-										mFlipHorizontally,
-										mFlipVertically,
-										options,
-										saveUri,
-										saveCompressFormat,
-										saveCompressQuality));
+				cancelSpeculativeCrop();
 			}
-			mBitmapCroppingWorkerTask.get().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+			mSpeculativeReqWidth = reqWidth;
+			mSpeculativeReqHeight = reqHeight;
+			mSpeculativeReqSizeOptions = options;
+
+			mCropStartTime = SystemClock.uptimeMillis();
+			task.executeOnExecutor(transformExecutor);
 			updateProgressBarState();
 		}
 	}
 
+	/**
+	 * Create the crop of the current crop window of the given bitmap, of the loaded image URI if the
+	 * bitmap was down-sampled or sampling is requested.
+	 */
+	private CropOperation newCropOperation(
+			Bitmap bitmap,
+			int reqWidth,
+			int reqHeight,
+			RequestSizeOptions options,
+			Uri saveUri,
+			Bitmap.CompressFormat saveCompressFormat,
+			int saveCompressQuality) {
+		boolean useUri =
+				mLoadedImageUri != null
+						&& (mLoadedSampleSize > 1 || options == RequestSizeOptions.SAMPLING);
+		CropOperation operation =
+				new CropOperation(
+						getContext(),
+						useUri ? mLoadedImageUri : null,
+						bitmap,
+						getCropPoints(),
+						mDegreesRotated,
+						useUri ? bitmap.getWidth() * mLoadedSampleSize : 0,
+						useUri ? bitmap.getHeight() * mLoadedSampleSize : 0,
+						mOverlayViewCrop.isFixAspectRatio(),
+						mOverlayViewCrop.getAspectRatioX(),
+						mOverlayViewCrop.getAspectRatioY(),
+						reqWidth,
+						reqHeight,
+						mFlipHorizontally,
+						mFlipVertically,
+						options,
+						saveUri,
+						saveCompressFormat,
+						saveCompressQuality);
+		operation.setRegionDecoderSession(getCropRegionDecoderSession());
+		operation.setTiledCropEnabled(mTiledCropEnabled);
+		operation.setLosslessCropEnabled(mLosslessCropEnabled);
+		operation.setSaveRotationAsExif(mSaveRotationAsExif);
+		operation.setResizeFilter(mResizeFilter, getTransformExecutor());
+		return operation;
+	}
+
+	/**
+	 * Start the speculative crop of the crop window once it stays put for {@link
+	 * #SPECULATIVE_CROP_DELAY}, if enabled.
+	 */
+	private void scheduleSpeculativeCrop() {
+		cancelSpeculativeCrop();
+		if (mSpeculativeCropEnabled && mBitmap != null) {
+			postDelayed(mSpeculativeCropRunnable, SPECULATIVE_CROP_DELAY);
+		}
+	}
+
+	/**
+	 * Crop the current crop window in the background by the requested size of the last crop, unless
+	 * a crop is already running.
+	 */
+	private void startSpeculativeCrop() {
+		Bitmap bitmap = mBitmap;
+		BitmapCroppingWorkerTask currentTask =
+				mBitmapCroppingWorkerTask != null ? mBitmapCroppingWorkerTask.get() : null;
+		if (bitmap != null && currentTask == null && mSpeculativeCrop == null) {
+			SpeculativeCrop speculativeCrop =
+					new SpeculativeCrop(
+							newCropOperation(
+									bitmap,
+									mSpeculativeReqWidth,
+									mSpeculativeReqHeight,
+									mSpeculativeReqSizeOptions,
+									null,
+									null,
+									0));
+			try {
+				getTransformExecutor().execute(speculativeCrop);
+				mSpeculativeCrop = speculativeCrop;
+			} catch (RejectedExecutionException e) {
+				// busy, the crop is done when requested
+			}
+		}
+	}
+
+	/**
+	 * Cancel the scheduled or running speculative crop, its crop window changed or was cropped.
+	 */
+	private void cancelSpeculativeCrop() {
+		removeCallbacks(mSpeculativeCropRunnable);
+		if (mSpeculativeCrop != null) {
+			mSpeculativeCrop.release();
+			mSpeculativeCrop = null;
+		}
+	}
+
 	@Override
 	public Parcelable onSaveInstanceState() {
 		if (mLoadedImageUri == null && mBitmap == null && mImageResource < 1) {
@@ -1482,6 +2258,14 @@ public class ImageCropView extends FrameLayout {
 		bundle.putParcelable("CROP_WINDOW_RECT", BitmapUtils.RECT);
 		bundle.putString("CROP_SHAPE", mOverlayViewCrop.getCropShape().name());
 		bundle.putBoolean("CROP_AUTO_ZOOM_ENABLED", mAutoZoomEnabled);
+		bundle.putBoolean("CROP_TILED_RENDERING_ENABLED", mTiledRenderingEnabled);
+		bundle.putBoolean("CROP_TILED_CROP_ENABLED", mTiledCropEnabled);
+		bundle.putInt("CROP_DECODE_PARALLELISM", mDecodeParallelism);
+		bundle.putBoolean("CROP_LOSSLESS_CROP_ENABLED", mLosslessCropEnabled);
+		bundle.putBoolean("CROP_SAVE_ROTATION_AS_EXIF", mSaveRotationAsExif);
+		bundle.putBoolean("CROP_SPECULATIVE_CROP_ENABLED", mSpeculativeCropEnabled);
+		bundle.putInt("CROP_OUTPUT_MAX_BYTES", mOutputMaxBytes);
+		bundle.putString("CROP_RESIZE_FILTER", mResizeFilter.name());
 		bundle.putInt("CROP_MAX_ZOOM", mMaxZoom);
 		bundle.putBoolean("CROP_FLIP_HORIZONTALLY", mFlipHorizontally);
 		bundle.putBoolean("CROP_FLIP_VERTICALLY", mFlipVertically);
@@ -1545,6 +2329,15 @@ public class ImageCropView extends FrameLayout {
 				mOverlayViewCrop.setCropShape(CropShape.valueOf(bundle.getString("CROP_SHAPE")));
 
 				mAutoZoomEnabled = bundle.getBoolean("CROP_AUTO_ZOOM_ENABLED");
+				mTiledRenderingEnabled = bundle.getBoolean("CROP_TILED_RENDERING_ENABLED");
+				mTiledCropEnabled = bundle.getBoolean("CROP_TILED_CROP_ENABLED");
+				mDecodeParallelism = bundle.getInt("CROP_DECODE_PARALLELISM", 1);
+				mLosslessCropEnabled = bundle.getBoolean("CROP_LOSSLESS_CROP_ENABLED");
+				mSaveRotationAsExif = bundle.getBoolean("CROP_SAVE_ROTATION_AS_EXIF");
+				mSpeculativeCropEnabled = bundle.getBoolean("CROP_SPECULATIVE_CROP_ENABLED");
+				mOutputMaxBytes = bundle.getInt("CROP_OUTPUT_MAX_BYTES");
+				mResizeFilter = ResizeFilter.valueOf(bundle.getString("CROP_RESIZE_FILTER"));
+				updateTileSource();
 				mMaxZoom = bundle.getInt("CROP_MAX_ZOOM");
 
 				mFlipHorizontally = bundle.getBoolean("CROP_FLIP_HORIZONTALLY");
@@ -1617,11 +2410,27 @@ public class ImageCropView extends FrameLayout {
 		}
 	}
 
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		getContext().registerComponentCallbacks(mMemoryCallbacks);
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		getContext().unregisterComponentCallbacks(mMemoryCallbacks);
+		super.onDetachedFromWindow();
+	}
+
 	@Override
 	protected void onLayout(boolean changed, int l, int t, int r, int b) {
 
 		super.onLayout(changed, l, t, r, b);
 
+		if (mBitmap == null) {
+			applyPlaceholderMatrix(r - l, b - t);
+		}
+
 		if (mLayoutWidth > 0 && mLayoutHeight > 0) {
 			// Gets original parameters, and creates the new parameters
 			ViewGroup.LayoutParams origParams = this.getLayoutParams();
@@ -1677,6 +2486,7 @@ public class ImageCropView extends FrameLayout {
 	 * @param animate    if to animate the change to the image matrix, or set it directly
 	 */
 	private void handleCropWindowChanged(boolean inProgress, boolean animate) {
+		cancelSpeculativeCrop();
 		int width = getWidth();
 		int height = getHeight();
 		if (mBitmap != null && width > 0 && height > 0) {
@@ -1735,6 +2545,39 @@ public class ImageCropView extends FrameLayout {
 		}
 	}
 
+	/**
+	 * Set the matrix of the placeholder shown while loading so it is in the same position the full
+	 * preview will be shown by {@link #applyImageMatrix(float, float, boolean, boolean)} in its
+	 * initial state: scaled to the preview size, centered, rotated and scaled to the view.
+	 */
+	private void applyPlaceholderMatrix(float width, float height) {
+		if (mPlaceholder != null && width > 0 && height > 0) {
+			ImageHeader header = mPlaceholder.header;
+			int sampleSize = mPlaceholder.sampleSize;
+			float previewWidth = (header.width + sampleSize - 1) / sampleSize;
+			float previewHeight = (header.height + sampleSize - 1) / sampleSize;
+
+			Matrix matrix = new Matrix();
+			matrix.setScale(
+					previewWidth / mPlaceholder.bitmap.getWidth(),
+					previewHeight / mPlaceholder.bitmap.getHeight());
+			matrix.postTranslate((width - previewWidth) / 2, (height - previewHeight) / 2);
+			matrix.postRotate(header.degrees, width / 2, height / 2);
+
+			boolean swap = header.degrees == 90 || header.degrees == 270;
+			float scale =
+					Math.min(
+							width / (swap ? previewHeight : previewWidth),
+							height / (swap ? previewWidth : previewHeight));
+			if (mScaleType == ScaleType.FIT_CENTER
+					|| (mScaleType == ScaleType.CENTER_INSIDE && scale < 1)
+					|| (scale > 1 && mAutoZoomEnabled)) {
+				matrix.postScale(scale, scale, width / 2, height / 2);
+			}
+			mImageView.setImageMatrix(matrix);
+		}
+	}
+
 	/**
 	 * Apply matrix to handle the image inside the image view.
 	 *
@@ -1911,7 +2754,8 @@ public class ImageCropView extends FrameLayout {
 		boolean visible =
 				mShowProgressBar
 						&& (mBitmap == null && mBitmapLoadingWorkerTask != null
-						|| mBitmapCroppingWorkerTask != null);
+						|| mBitmapCroppingWorkerTask != null
+						|| mBatchCroppingWorkerTask != null);
 		mProgressBar.setVisibility(visible ? VISIBLE : INVISIBLE);
 	}
 
@@ -2060,6 +2904,33 @@ public class ImageCropView extends FrameLayout {
 	}
 	// endregion
 
+	// region: Inner class: ResizeFilter
+
+	/**
+	 * Possible filters to resize the cropped image by the requested width/height.
+	 */
+	public enum ResizeFilter {
+
+		/**
+		 * Bilinear filtering, halving the image first while larger than twice the requested size.<br>
+		 * Fastest, slightly blurry when downscaling and jagged when upscaling.
+		 */
+		BILINEAR,
+
+		/**
+		 * Box filter: every pixel is the exact average of the source pixels it covers.<br>
+		 * Sharper than bilinear when downscaling, same as bilinear when upscaling.
+		 */
+		BOX,
+
+		/**
+		 * Lanczos filter of 3 lobes.<br>
+		 * Sharpest when downscaling and upscaling, slowest, may show slight ringing at hard edges.
+		 */
+		LANCZOS
+	}
+	// endregion
+
 	// region: Inner class: OnSetImageUriCompleteListener
 
 	/**
@@ -2135,6 +3006,25 @@ public class ImageCropView extends FrameLayout {
 	}
 	// endregion
 
+	// region: Inner class: OnCropImagesCompleteListener
+
+	/**
+	 * Interface definition for a callback to be invoked when image async batch crop is complete.
+	 */
+	public interface OnCropImagesCompleteListener {
+
+		/**
+		 * Called when a crop image view has completed cropping a batch of crops of the image.<br>
+		 * There is a result for every crop in the order of the crops, each with the cropped bitmap,
+		 * saved cropped image uri or the error occurred during its cropping.
+		 *
+		 * @param view    The crop image view that cropping of image was complete.
+		 * @param results the crop image result data of every crop
+		 */
+		void onCropImagesComplete(ImageCropView view, List<CropResult> results);
+	}
+	// endregion
+
 	// region: Inner class: ActivityResult
 
 	/**
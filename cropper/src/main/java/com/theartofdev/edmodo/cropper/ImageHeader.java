@@ -0,0 +1,79 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.os.Build;
+
+/**
+ * The header data of an image source: dimensions, mime type and EXIF orientation.<br>
+ * Read once from the leading bytes of the source so the image doesn't need to be opened again to
+ * get them.
+ */
+final class ImageHeader {
+
+	/**
+	 * The width of the source image (-1 if the source is not a decodable image)
+	 */
+	final int width;
+
+	/**
+	 * The height of the source image (-1 if the source is not a decodable image)
+	 */
+	final int height;
+
+	/**
+	 * The mime type of the source image, null if unknown
+	 */
+	final String mimeType;
+
+	/**
+	 * The degrees the image should be rotated by its EXIF orientation (0, 90, 180 or 270)
+	 */
+	final int degrees;
+
+	/**
+	 * Is {@link android.graphics.BitmapRegionDecoder} able to decode the image format
+	 */
+	final boolean regionDecodingSupported;
+
+	ImageHeader(int width, int height, String mimeType, int degrees) {
+		this.width = width;
+		this.height = height;
+		this.mimeType = mimeType;
+		this.degrees = degrees;
+		this.regionDecodingSupported = isRegionDecodingSupported(mimeType);
+	}
+
+	/**
+	 * Is the header has the bounds of the image, false if the source could not be decoded.
+	 */
+	boolean hasBounds() {
+		return width > 0 && height > 0;
+	}
+
+	/**
+	 * Region decoder supports JPEG, PNG and WebP, HEIF only from Android P.<br>
+	 * If the mime type is unknown assume it is supported and let the decoder fail.
+	 */
+	private static boolean isRegionDecodingSupported(String mimeType) {
+		if (mimeType == null) {
+			return true;
+		}
+		if ("image/heif".equals(mimeType) || "image/heic".equals(mimeType)) {
+			return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P;
+		}
+		return "image/jpeg".equals(mimeType)
+				|| "image/png".equals(mimeType)
+				|| "image/webp".equals(mimeType);
+	}
+}
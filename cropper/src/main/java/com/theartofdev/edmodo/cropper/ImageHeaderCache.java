@@ -0,0 +1,136 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+import android.util.LruCache;
+
+import java.io.File;
+
+/**
+ * Process wide LRU cache of image headers (dimensions, orientation, mime type) so an image that was
+ * just inspected is not opened and parsed again.<br>
+ * Entries are keyed by the source uri together with its size and last modified time so a changed
+ * source (camera uri can be the same for different images) is never served stale header.
+ */
+public final class ImageHeaderCache {
+
+	/**
+	 * The max number of image headers to keep
+	 */
+	private static final int MAX_ENTRIES = 64;
+
+	/**
+	 * The headers cache by source key, see {@link #getSourceKey(Context, Uri)}
+	 */
+	private static final LruCache<String, ImageHeader> mCache = new LruCache<>(MAX_ENTRIES);
+
+	private ImageHeaderCache() {
+	}
+
+	/**
+	 * The number of times a cached header was found for the requested image.
+	 */
+	public static int getHitCount() {
+		return mCache.hitCount();
+	}
+
+	/**
+	 * The number of times a header was not cached and had to be read from the image.
+	 */
+	public static int getMissCount() {
+		return mCache.missCount();
+	}
+
+	/**
+	 * Clear all the cached image headers.
+	 */
+	public static void clear() {
+		mCache.evictAll();
+	}
+
+	/**
+	 * Get the cached header of the given image source, null if not cached or the source cannot be
+	 * identified by size and modification stamp.
+	 */
+	static ImageHeader get(Context context, Uri uri) {
+		return get(getSourceKey(context, uri));
+	}
+
+	/**
+	 * Get the cached header by the given source key, null if not cached or key is null.
+	 */
+	static ImageHeader get(String sourceKey) {
+		return sourceKey != null ? mCache.get(sourceKey) : null;
+	}
+
+	/**
+	 * Cache the given header by the given source key, no-op if key is null or header has no bounds.
+	 */
+	static void put(String sourceKey, ImageHeader header) {
+		if (sourceKey != null && header != null && header.hasBounds()) {
+			mCache.put(sourceKey, header);
+		}
+	}
+
+	/**
+	 * Get key identifying the current content of the given image source by its uri, size and last
+	 * modified time as reported by the file system or the content provider.
+	 *
+	 * @return the key or null if neither size nor modified time are available for the source
+	 */
+	static String getSourceKey(Context context, Uri uri) {
+		long size = -1;
+		long lastModified = -1;
+		String scheme = uri.getScheme();
+		if (ContentResolver.SCHEME_FILE.equals(scheme) && uri.getPath() != null) {
+			File file = new File(uri.getPath());
+			if (file.exists()) {
+				size = file.length();
+				lastModified = file.lastModified();
+			}
+		} else if (ContentResolver.SCHEME_CONTENT.equals(scheme)) {
+			Cursor cursor = null;
+			try {
+				cursor = context.getContentResolver().query(uri, null, null, null, null);
+				if (cursor != null && cursor.moveToFirst()) {
+					size = getLong(cursor, OpenableColumns.SIZE);
+					lastModified = getLong(cursor, DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+					if (lastModified < 0) {
+						lastModified = getLong(cursor, MediaStore.MediaColumns.DATE_MODIFIED);
+					}
+				}
+			} catch (Exception ignored) {
+			} finally {
+				if (cursor != null) {
+					cursor.close();
+				}
+			}
+		}
+		return size > -1 || lastModified > -1 ? uri + "|" + size + "|" + lastModified : null;
+	}
+
+	/**
+	 * Get long value of the given column in the cursor, -1 if the column is missing or null.
+	 */
+	private static long getLong(Cursor cursor, String column) {
+		int index = cursor.getColumnIndex(column);
+		return index > -1 && !cursor.isNull(index) ? cursor.getLong(index) : -1;
+	}
+}
@@ -0,0 +1,983 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Crops, rotates by multiples of 90 degrees and flips JPEG images losslessly, the same as jpegtran,
+ * by transforming the quantized DCT coefficients of the source without decoding pixels or
+ * re-encoding, so no bitmap is created and no generation loss is added.<br>
+ * The crop edges that end up at the left/top of the output are aligned to the source MCU
+ * boundaries (by expanding the crop, or trimming partial MCU at the image edge), rotate and flip
+ * are done per block by transposing and negating coefficients.<br>
+ * Supports baseline/extended Huffman coded 8 bit JPEG with a single scan of 1 or 3 (YCbCr)
+ * components, other JPEG images are cropped by decoding.
+ */
+final class LosslessJpegTransform {
+
+	// region: Fields and Consts
+
+	/**
+	 * The number of bits decoded by Huffman table lookup, longer codes are decoded bit by bit
+	 */
+	private static final int LOOKUP_BITS = 9;
+
+	/**
+	 * The frame components in frame order
+	 */
+	private Component[] mComponents;
+
+	/**
+	 * The frame components in scan order
+	 */
+	private Component[] mScanComponents;
+
+	/**
+	 * The quantization tables by id, in natural order
+	 */
+	private final int[][] mQuantTables = new int[4][];
+
+	private final HuffmanTable[] mDcTables = new HuffmanTable[4];
+
+	private final HuffmanTable[] mAcTables = new HuffmanTable[4];
+
+	/**
+	 * The ICC profile segments of the source, copied to the output
+	 */
+	private final List<byte[]> mIccSegments = new ArrayList<>();
+
+	/**
+	 * The Adobe color transform of the source, -1 if not specified
+	 */
+	private int mAdobeTransform = -1;
+
+	private int mWidth;
+
+	private int mHeight;
+
+	private int mMaxH;
+
+	private int mMaxV;
+
+	/**
+	 * The number of MCUs between restart markers, 0 if no restart markers
+	 */
+	private int mRestartInterval;
+
+	/**
+	 * If to transpose blocks (rotation by 90 or 270), done before flipping
+	 */
+	private final boolean mTranspose;
+
+	/**
+	 * If to flip the output horizontally/vertically
+	 */
+	private final boolean mFlipX;
+
+	private final boolean mFlipY;
+
+	/**
+	 * The dimensions of the output image
+	 */
+	private int mOutWidth;
+
+	private int mOutHeight;
+
+	private final InputStream mIn;
+
+	/**
+	 * The entropy coded data bits read but not consumed yet
+	 */
+	private int mBitBuffer;
+
+	private int mBitCount;
+
+	/**
+	 * The marker reached in the entropy coded data, -1 if none
+	 */
+	private int mMarker = -1;
+
+	private OutputStream mOut;
+
+	/**
+	 * The entropy coded data bits not written yet
+	 */
+	private int mOutBitBuffer;
+
+	private int mOutBitCount;
+	// endregion
+
+	private LosslessJpegTransform(
+			InputStream in, int degreesRotated, boolean flipHorizontally, boolean flipVertically) {
+		mIn = in;
+		int degrees = (degreesRotated % 360 + 360) % 360;
+		mTranspose = degrees == 90 || degrees == 270;
+		mFlipX = (degrees == 90 || degrees == 180) ^ flipHorizontally;
+		mFlipY = (degrees == 180 || degrees == 270) ^ flipVertically;
+	}
+
+	/**
+	 * If the crop with the given parameters can be written losslessly for JPEG source.
+	 */
+	static boolean isSupported(
+			int degreesRotated, int reqWidth, int reqHeight, Bitmap.CompressFormat format) {
+		return degreesRotated % 90 == 0
+				&& reqWidth <= 0
+				&& reqHeight <= 0
+				&& format == Bitmap.CompressFormat.JPEG;
+	}
+
+	/**
+	 * Crop the given rectangle of the JPEG image, rotate and flip it and write it to the given uri
+	 * losslessly.<br>
+	 * Nothing is written if the source is not supported, to crop it by decoding instead.
+	 *
+	 * @param rect         the rectangle to crop in the source image coordinates
+	 * @param cancelSignal checked between MCU rows to stop the crop, null if not cancellable
+	 * @return true if the crop was written, false if the source is not supported
+	 */
+	static boolean transformToUri(
+			Context context,
+			Uri uri,
+			Rect rect,
+			int degreesRotated,
+			boolean flipHorizontally,
+			boolean flipVertically,
+			DecodeCancelSignal cancelSignal,
+			Uri saveUri)
+			throws IOException {
+
+		LosslessJpegTransform transform;
+		InputStream inputStream = null;
+		try {
+			InputStream stream = context.getContentResolver().openInputStream(uri);
+			if (stream == null) {
+				throw new FileNotFoundException("Failed to open input stream: " + uri);
+			}
+			inputStream = new BufferedInputStream(stream, 64 * 1024);
+			transform =
+					new LosslessJpegTransform(inputStream, degreesRotated, flipHorizontally, flipVertically);
+			if (!transform.readHeaders() || !transform.readCoefficients(rect, cancelSignal)) {
+				return false;
+			}
+		} catch (IOException e) {
+			Log.w("AIC", "Failed to read JPEG for lossless crop, crop by decoding: " + uri, e);
+			return false;
+		} finally {
+			BitmapUtils.closeSafe(inputStream);
+		}
+
+		SaveOutputStream outputStream = null;
+		try {
+			outputStream = SaveOutputStream.open(context, saveUri, 0);
+			transform.write(outputStream);
+			outputStream.commit();
+		} finally {
+			BitmapUtils.closeSafe(outputStream);
+		}
+		return true;
+	}
+
+	// region: Private methods
+
+	/**
+	 * Read the headers up to the scan, return false if the image is not supported.
+	 */
+	private boolean readHeaders() throws IOException {
+		if (readByte() != 0xFF || readByte() != 0xD8) {
+			return false;
+		}
+		while (true) {
+			int marker = readMarker();
+			if (marker == 0xD9) {
+				return false;
+			}
+			int length = readShort() - 2;
+			switch (marker) {
+				case 0xDB:
+					if (!readQuantTables(length)) {
+						return false;
+					}
+					break;
+				case 0xC4:
+					readHuffmanTables(length);
+					break;
+				case 0xC0:
+				case 0xC1:
+					if (!readFrame()) {
+						return false;
+					}
+					break;
+				case 0xC2:
+				case 0xC3:
+				case 0xC5:
+				case 0xC6:
+				case 0xC7:
+				case 0xC9:
+				case 0xCA:
+				case 0xCB:
+				case 0xCD:
+				case 0xCE:
+				case 0xCF:
+					// progressive, lossless, hierarchical or arithmetic coded
+					return false;
+				case 0xDD:
+					mRestartInterval = readShort();
+					break;
+				case 0xE2:
+				case 0xEE:
+					readAppSegment(marker, length);
+					break;
+				case 0xDA:
+					return readScan();
+				default:
+					skipFully(length);
+					break;
+			}
+		}
+	}
+
+	private boolean readQuantTables(int length) throws IOException {
+		while (length > 0) {
+			int pqTq = readByte();
+			if ((pqTq >> 4) != 0 || (pqTq & 15) > 3) {
+				// 16 bit precision tables are not baseline
+				return false;
+			}
+			int[] table = new int[64];
+			for (int i = 0; i < 64; i++) {
+				table[StreamingJpegEncoder.ZIGZAG[i]] = readByte();
+			}
+			mQuantTables[pqTq & 15] = table;
+			length -= 65;
+		}
+		return true;
+	}
+
+	private void readHuffmanTables(int length) throws IOException {
+		while (length > 0) {
+			int tcTh = readByte();
+			int[] bits = new int[16];
+			int count = 0;
+			for (int i = 0; i < 16; i++) {
+				bits[i] = readByte();
+				count += bits[i];
+			}
+			int[] values = new int[count];
+			for (int i = 0; i < count; i++) {
+				values[i] = readByte();
+			}
+			HuffmanTable table = new HuffmanTable(bits, values);
+			if ((tcTh >> 4) == 0) {
+				mDcTables[tcTh & 3] = table;
+			} else {
+				mAcTables[tcTh & 3] = table;
+			}
+			length -= 17 + count;
+		}
+	}
+
+	private boolean readFrame() throws IOException {
+		int precision = readByte();
+		mHeight = readShort();
+		mWidth = readShort();
+		int count = readByte();
+		if (precision != 8 || mWidth < 1 || mHeight < 1 || (count != 1 && count != 3)) {
+			return false;
+		}
+		mComponents = new Component[count];
+		for (int i = 0; i < count; i++) {
+			Component component = new Component();
+			component.mId = readByte();
+			int hv = readByte();
+			component.mH = count == 1 ? 1 : hv >> 4;
+			component.mV = count == 1 ? 1 : hv & 15;
+			component.mQuantTable = readByte();
+			if (component.mH < 1
+					|| component.mH > 4
+					|| component.mV < 1
+					|| component.mV > 4
+					|| component.mQuantTable > 3) {
+				return false;
+			}
+			mMaxH = Math.max(mMaxH, component.mH);
+			mMaxV = Math.max(mMaxV, component.mV);
+			mComponents[i] = component;
+		}
+		return true;
+	}
+
+	/**
+	 * Read the ICC profile (APP2) to copy to the output and the Adobe (APP14) color transform.
+	 */
+	private void readAppSegment(int marker, int length) throws IOException {
+		byte[] data = new byte[length];
+		readFully(data);
+		if (marker == 0xE2 && length > 12 && startsWith(data, "ICC_PROFILE")) {
+			mIccSegments.add(data);
+		} else if (marker == 0xEE && length >= 12 && startsWith(data, "Adobe")) {
+			mAdobeTransform = data[11] & 0xFF;
+		}
+	}
+
+	private static boolean startsWith(byte[] data, String prefix) throws IOException {
+		return new String(data, 0, prefix.length(), "US-ASCII").equals(prefix);
+	}
+
+	private boolean readScan() throws IOException {
+		int count = readByte();
+		if (mComponents == null || count != mComponents.length) {
+			// multi scan images are not supported
+			return false;
+		}
+		mScanComponents = new Component[count];
+		for (int i = 0; i < count; i++) {
+			int id = readByte();
+			int tables = readByte();
+			for (Component component : mComponents) {
+				if (component.mId == id) {
+					component.mDcTable = tables >> 4;
+					component.mAcTable = tables & 15;
+					mScanComponents[i] = component;
+				}
+			}
+			if (mScanComponents[i] == null
+					|| mScanComponents[i].mDcTable > 3
+					|| mScanComponents[i].mAcTable > 3
+					|| mDcTables[mScanComponents[i].mDcTable] == null
+					|| mAcTables[mScanComponents[i].mAcTable] == null
+					|| mQuantTables[mScanComponents[i].mQuantTable] == null) {
+				return false;
+			}
+		}
+		int start = readByte();
+		int end = readByte();
+		int approximation = readByte();
+		// the output is written as YCbCr (JFIF), RGB or CMYK images are not supported
+		return start == 0
+				&& end == 63
+				&& approximation == 0
+				&& (count == 1 || mAdobeTransform != 0);
+	}
+
+	/**
+	 * Decode the coefficients of the MCUs of the crop, aligning the crop edges that end up at the
+	 * output leading edges to MCU boundaries.
+	 *
+	 * @return false if the crop is too small or too large to transform losslessly
+	 */
+	private boolean readCoefficients(Rect rect, DecodeCancelSignal cancelSignal)
+			throws IOException {
+		int mcuWidth = 8 * mMaxH;
+		int mcuHeight = 8 * mMaxV;
+		int left = Math.max(0, Math.min(mWidth, rect.left));
+		int top = Math.max(0, Math.min(mHeight, rect.top));
+		int right = Math.max(left, Math.min(mWidth, rect.right));
+		int bottom = Math.max(top, Math.min(mHeight, rect.bottom));
+
+		// the source edges at the left and top of the output after transpose and flip
+		boolean leftLeading = mTranspose ? !mFlipY : !mFlipX;
+		boolean topLeading = mTranspose ? !mFlipX : !mFlipY;
+		if (leftLeading) {
+			left -= left % mcuWidth;
+		} else {
+			right = alignEnd(right, mcuWidth, mWidth);
+		}
+		if (topLeading) {
+			top -= top % mcuHeight;
+		} else {
+			bottom = alignEnd(bottom, mcuHeight, mHeight);
+		}
+		if (right <= left || bottom <= top) {
+			return false;
+		}
+		mOutWidth = mTranspose ? bottom - top : right - left;
+		mOutHeight = mTranspose ? right - left : bottom - top;
+
+		// the MCUs that contain the crop
+		int mcuX0 = left / mcuWidth;
+		int mcuY0 = top / mcuHeight;
+		int mcuX1 = (right + mcuWidth - 1) / mcuWidth;
+		int mcuY1 = (bottom + mcuHeight - 1) / mcuHeight;
+
+		long bytes = 0;
+		for (Component component : mComponents) {
+			component.mBlocksWide = (mcuX1 - mcuX0) * component.mH;
+			component.mBlocksHigh = (mcuY1 - mcuY0) * component.mV;
+			bytes += (long) component.mBlocksWide * component.mBlocksHigh * 64 * 2;
+		}
+		if (bytes > MemoryBudget.getAvailableHeapBytes() / 2) {
+			return false;
+		}
+		for (Component component : mComponents) {
+			component.mCoefficients = new short[component.mBlocksWide * component.mBlocksHigh * 64];
+		}
+
+		int mcusWide = (mWidth + mcuWidth - 1) / mcuWidth;
+		short[] discard = new short[64];
+		int restartsLeft = mRestartInterval;
+		for (int mcuY = 0; mcuY < mcuY1; mcuY++) {
+			if (cancelSignal != null) {
+				cancelSignal.throwIfCancelled();
+			}
+			for (int mcuX = 0; mcuX < mcusWide; mcuX++) {
+				if (mRestartInterval > 0) {
+					if (restartsLeft == 0) {
+						readRestart();
+						restartsLeft = mRestartInterval;
+					}
+					restartsLeft--;
+				}
+				boolean store = mcuY >= mcuY0 && mcuX >= mcuX0 && mcuX < mcuX1;
+				for (Component component : mScanComponents) {
+					for (int by = 0; by < component.mV; by++) {
+						for (int bx = 0; bx < component.mH; bx++) {
+							if (store) {
+								int blockX = (mcuX - mcuX0) * component.mH + bx;
+								int blockY = (mcuY - mcuY0) * component.mV + by;
+								int offset = (blockY * component.mBlocksWide + blockX) * 64;
+								decodeBlock(component, component.mCoefficients, offset);
+							} else {
+								decodeBlock(component, discard, 0);
+							}
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Align the given end edge of the crop to MCU boundary, trimming the partial MCU at the image
+	 * edge.
+	 */
+	private static int alignEnd(int end, int mcuSize, int imageSize) {
+		int aligned = (end + mcuSize - 1) / mcuSize * mcuSize;
+		return aligned <= imageSize ? aligned : end - end % mcuSize;
+	}
+
+	/**
+	 * Decode Huffman coded block into the given coefficients in natural order, zero coefficients are
+	 * not written.
+	 */
+	private void decodeBlock(Component component, short[] coefficients, int offset)
+			throws IOException {
+		int size = decodeSymbol(mDcTables[component.mDcTable]);
+		if (size > 0) {
+			component.mPrevDc += extend(receiveBits(size), size);
+		}
+		coefficients[offset] = (short) component.mPrevDc;
+
+		HuffmanTable acTable = mAcTables[component.mAcTable];
+		for (int k = 1; k < 64; k++) {
+			int symbol = decodeSymbol(acTable);
+			int run = symbol >> 4;
+			size = symbol & 15;
+			if (size == 0) {
+				if (run != 15) {
+					break;
+				}
+				k += 15;
+			} else {
+				k += run;
+				if (k > 63) {
+					throw new IOException("Corrupt JPEG block");
+				}
+				coefficients[offset + StreamingJpegEncoder.ZIGZAG[k]] =
+						(short) extend(receiveBits(size), size);
+			}
+		}
+	}
+
+	private int decodeSymbol(HuffmanTable table) throws IOException {
+		fillBits();
+		int lookup = (mBitBuffer >>> (mBitCount - LOOKUP_BITS)) & ((1 << LOOKUP_BITS) - 1);
+		int entry = table.mLookup[lookup];
+		if (entry != 0) {
+			mBitCount -= entry >> 8;
+			return entry & 0xFF;
+		}
+		for (int length = LOOKUP_BITS + 1; length <= 16; length++) {
+			int code = (mBitBuffer >>> (mBitCount - length)) & ((1 << length) - 1);
+			if (code <= table.mMaxCode[length]) {
+				mBitCount -= length;
+				return table.mValues[code + table.mValueOffset[length]];
+			}
+		}
+		throw new IOException("Corrupt JPEG Huffman code");
+	}
+
+	private int receiveBits(int size) throws IOException {
+		fillBits();
+		mBitCount -= size;
+		return (mBitBuffer >>> mBitCount) & ((1 << size) - 1);
+	}
+
+	private static int extend(int value, int size) {
+		return value < (1 << (size - 1)) ? value - (1 << size) + 1 : value;
+	}
+
+	/**
+	 * Fill the bit buffer with at least 25 bits, zero bits once a marker is reached.
+	 */
+	private void fillBits() throws IOException {
+		while (mBitCount <= 24) {
+			int b = 0;
+			if (mMarker == -1) {
+				b = mIn.read();
+				if (b == 0xFF) {
+					int next = mIn.read();
+					while (next == 0xFF) {
+						next = mIn.read();
+					}
+					if (next != 0) {
+						mMarker = next;
+						b = 0;
+					}
+				} else if (b < 0) {
+					throw new EOFException("Unexpected end of JPEG data");
+				}
+			}
+			mBitBuffer = (mBitBuffer << 8) | b;
+			mBitCount += 8;
+		}
+	}
+
+	/**
+	 * Skip to the restart marker after restart interval and reset the decoder state.
+	 */
+	private void readRestart() throws IOException {
+		mBitBuffer = 0;
+		mBitCount = 0;
+		if (mMarker == -1) {
+			mMarker = readMarker();
+		}
+		if (mMarker < 0xD0 || mMarker > 0xD7) {
+			throw new IOException("Missing JPEG restart marker");
+		}
+		mMarker = -1;
+		for (Component component : mComponents) {
+			component.mPrevDc = 0;
+		}
+	}
+
+	/**
+	 * Write the transformed image, the coefficients are transformed block by block as written.
+	 */
+	private void write(OutputStream out) throws IOException {
+		mOut = out;
+		writeMarker(0xD8);
+
+		// JFIF APP0
+		writeMarker(0xE0);
+		writeShort(16);
+		mOut.write(new byte[] {'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0});
+		for (byte[] segment : mIccSegments) {
+			writeMarker(0xE2);
+			writeShort(segment.length + 2);
+			mOut.write(segment);
+		}
+
+		// quantization tables, transposed with the coefficients
+		for (int id = 0; id < mQuantTables.length; id++) {
+			boolean used = false;
+			for (Component component : mComponents) {
+				used |= component.mQuantTable == id;
+			}
+			if (used) {
+				writeMarker(0xDB);
+				writeShort(2 + 65);
+				mOut.write(id);
+				for (int i = 0; i < 64; i++) {
+					mOut.write(mQuantTables[id][transformIndex(StreamingJpegEncoder.ZIGZAG[i])]);
+				}
+			}
+		}
+
+		writeMarker(0xC0);
+		writeShort(8 + 3 * mComponents.length);
+		mOut.write(8);
+		writeShort(mOutHeight);
+		writeShort(mOutWidth);
+		mOut.write(mComponents.length);
+		for (Component component : mComponents) {
+			mOut.write(component.mId);
+			mOut.write(mTranspose
+					? (component.mV << 4) | component.mH
+					: (component.mH << 4) | component.mV);
+			mOut.write(component.mQuantTable);
+		}
+
+		// the standard Huffman tables, the transformed blocks have different symbols
+		boolean chrominance = mComponents.length > 1;
+		writeMarker(0xC4);
+		writeShort(2
+				+ (chrominance ? 4 : 2) * 17
+				+ (chrominance ? 2 : 1) * StreamingJpegEncoder.DC_VALUES.length
+				+ (chrominance ? 2 : 1) * StreamingJpegEncoder.AC_LUMINANCE_VALUES.length);
+		writeHuffmanTable(
+				0x00, StreamingJpegEncoder.DC_LUMINANCE_BITS, StreamingJpegEncoder.DC_VALUES);
+		writeHuffmanTable(
+				0x10, StreamingJpegEncoder.AC_LUMINANCE_BITS, StreamingJpegEncoder.AC_LUMINANCE_VALUES);
+		if (chrominance) {
+			writeHuffmanTable(
+					0x01, StreamingJpegEncoder.DC_CHROMINANCE_BITS, StreamingJpegEncoder.DC_VALUES);
+			writeHuffmanTable(
+					0x11,
+					StreamingJpegEncoder.AC_CHROMINANCE_BITS,
+					StreamingJpegEncoder.AC_CHROMINANCE_VALUES);
+		}
+
+		writeMarker(0xDA);
+		writeShort(6 + 2 * mComponents.length);
+		mOut.write(mComponents.length);
+		for (int i = 0; i < mComponents.length; i++) {
+			mOut.write(mComponents[i].mId);
+			mOut.write(i == 0 ? 0x00 : 0x11);
+		}
+		mOut.write(new byte[] {0, 63, 0});
+
+		writeScan();
+
+		// pad the last byte with 1-bits
+		if (mOutBitCount > 0) {
+			writeBits(0x7F, 8 - mOutBitCount);
+		}
+		writeMarker(0xD9);
+	}
+
+	/**
+	 * Entropy code the transformed blocks in the output MCU order.
+	 */
+	private void writeScan() throws IOException {
+		HuffmanEncoder luminance =
+				new HuffmanEncoder(
+						StreamingJpegEncoder.DC_LUMINANCE_BITS,
+						StreamingJpegEncoder.AC_LUMINANCE_BITS,
+						StreamingJpegEncoder.AC_LUMINANCE_VALUES);
+		HuffmanEncoder chrominance =
+				new HuffmanEncoder(
+						StreamingJpegEncoder.DC_CHROMINANCE_BITS,
+						StreamingJpegEncoder.AC_CHROMINANCE_BITS,
+						StreamingJpegEncoder.AC_CHROMINANCE_VALUES);
+
+		int outMaxH = mTranspose ? mMaxV : mMaxH;
+		int outMaxV = mTranspose ? mMaxH : mMaxV;
+		int mcusWide = (mOutWidth + 8 * outMaxH - 1) / (8 * outMaxH);
+		int mcusHigh = (mOutHeight + 8 * outMaxV - 1) / (8 * outMaxV);
+		int[] block = new int[64];
+		for (Component component : mComponents) {
+			component.mPrevDc = 0;
+		}
+		for (int mcuY = 0; mcuY < mcusHigh; mcuY++) {
+			for (int mcuX = 0; mcuX < mcusWide; mcuX++) {
+				for (int i = 0; i < mComponents.length; i++) {
+					Component component = mComponents[i];
+					int outH = mTranspose ? component.mV : component.mH;
+					int outV = mTranspose ? component.mH : component.mV;
+					int outBlocksWide = mTranspose ? component.mBlocksHigh : component.mBlocksWide;
+					int outBlocksHigh = mTranspose ? component.mBlocksWide : component.mBlocksHigh;
+					for (int by = 0; by < outV; by++) {
+						for (int bx = 0; bx < outH; bx++) {
+							// the source block of the output block
+							int x = mcuX * outH + bx;
+							int y = mcuY * outV + by;
+							x = mFlipX ? outBlocksWide - 1 - x : x;
+							y = mFlipY ? outBlocksHigh - 1 - y : y;
+							int offset =
+									mTranspose
+											? (x * component.mBlocksWide + y) * 64
+											: (y * component.mBlocksWide + x) * 64;
+							transformBlock(component.mCoefficients, offset, block);
+							component.mPrevDc =
+									encodeBlock(block, component.mPrevDc, i == 0 ? luminance : chrominance);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Transpose and flip the coefficients of the given source block into the given output block.
+	 */
+	private void transformBlock(short[] coefficients, int offset, int[] block) {
+		for (int v = 0; v < 8; v++) {
+			for (int u = 0; u < 8; u++) {
+				int index = v * 8 + u;
+				int value = coefficients[offset + transformIndex(index)];
+				if ((mFlipX && (u & 1) == 1) != (mFlipY && (v & 1) == 1)) {
+					value = -value;
+				}
+				block[index] = value;
+			}
+		}
+	}
+
+	/**
+	 * The natural index in the source block of the given natural index in the output block.
+	 */
+	private int transformIndex(int index) {
+		return mTranspose ? (index % 8) * 8 + index / 8 : index;
+	}
+
+	/**
+	 * Huffman code the given block of quantized coefficients in natural order.
+	 *
+	 * @return the DC coefficient of the block for the next block of the component
+	 */
+	private int encodeBlock(int[] block, int prevDc, HuffmanEncoder encoder) throws IOException {
+		int dc = block[0];
+		int diff = dc - prevDc;
+		int size = bitLength(diff);
+		writeBits(encoder.mDcCodes[size], encoder.mDcSizes[size]);
+		if (size > 0) {
+			writeBits(diff < 0 ? diff - 1 : diff, size);
+		}
+
+		int run = 0;
+		for (int k = 1; k < 64; k++) {
+			int value = block[StreamingJpegEncoder.ZIGZAG[k]];
+			if (value == 0) {
+				run++;
+			} else {
+				while (run > 15) {
+					writeBits(encoder.mAcCodes[0xF0], encoder.mAcSizes[0xF0]);
+					run -= 16;
+				}
+				size = bitLength(value);
+				int symbol = (run << 4) | size;
+				writeBits(encoder.mAcCodes[symbol], encoder.mAcSizes[symbol]);
+				writeBits(value < 0 ? value - 1 : value, size);
+				run = 0;
+			}
+		}
+		if (run > 0) {
+			writeBits(encoder.mAcCodes[0x00], encoder.mAcSizes[0x00]);
+		}
+		return dc;
+	}
+
+	private static int bitLength(int value) {
+		return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+	}
+
+	/**
+	 * Write the low bits of the given value to the entropy coded data, stuffing 0 after 0xFF bytes.
+	 */
+	private void writeBits(int value, int size) throws IOException {
+		mOutBitBuffer = (mOutBitBuffer << size) | (value & ((1 << size) - 1));
+		mOutBitCount += size;
+		while (mOutBitCount >= 8) {
+			int b = (mOutBitBuffer >> (mOutBitCount - 8)) & 0xFF;
+			mOut.write(b);
+			if (b == 0xFF) {
+				mOut.write(0);
+			}
+			mOutBitCount -= 8;
+		}
+	}
+
+	private void writeHuffmanTable(int tableClassId, int[] bits, int[] values) throws IOException {
+		mOut.write(tableClassId);
+		for (int bit : bits) {
+			mOut.write(bit);
+		}
+		for (int value : values) {
+			mOut.write(value);
+		}
+	}
+
+	private void writeMarker(int marker) throws IOException {
+		mOut.write(0xFF);
+		mOut.write(marker);
+	}
+
+	private void writeShort(int value) throws IOException {
+		mOut.write((value >> 8) & 0xFF);
+		mOut.write(value & 0xFF);
+	}
+
+	/**
+	 * Read the next marker, skipping fill bytes.
+	 */
+	private int readMarker() throws IOException {
+		int b = readByte();
+		while (b != 0xFF) {
+			b = readByte();
+		}
+		while (b == 0xFF) {
+			b = readByte();
+		}
+		return b;
+	}
+
+	private int readByte() throws IOException {
+		int b = mIn.read();
+		if (b < 0) {
+			throw new EOFException("Unexpected end of JPEG data");
+		}
+		return b;
+	}
+
+	private int readShort() throws IOException {
+		return (readByte() << 8) | readByte();
+	}
+
+	private void readFully(byte[] data) throws IOException {
+		int offset = 0;
+		while (offset < data.length) {
+			int read = mIn.read(data, offset, data.length - offset);
+			if (read < 0) {
+				throw new EOFException("Unexpected end of JPEG data");
+			}
+			offset += read;
+		}
+	}
+
+	private void skipFully(int length) throws IOException {
+		while (length > 0) {
+			long skipped = mIn.skip(length);
+			if (skipped <= 0) {
+				readByte();
+				skipped = 1;
+			}
+			length -= skipped;
+		}
+	}
+	// endregion
+
+	// region: Inner class: Component
+
+	/**
+	 * Frame component parameters and the coefficients of its blocks in the crop.
+	 */
+	private static final class Component {
+
+		int mId;
+
+		/**
+		 * The horizontal and vertical sampling factors
+		 */
+		int mH;
+
+		int mV;
+
+		int mQuantTable;
+
+		int mDcTable;
+
+		int mAcTable;
+
+		/**
+		 * The DC coefficient of the previous block, DC is coded as difference
+		 */
+		int mPrevDc;
+
+		/**
+		 * The dimensions in blocks of the MCUs of the crop
+		 */
+		int mBlocksWide;
+
+		int mBlocksHigh;
+
+		/**
+		 * The quantized coefficients of the blocks of the crop in natural order, 64 per block
+		 */
+		short[] mCoefficients;
+	}
+	// endregion
+
+	// region: Inner class: HuffmanTable
+
+	/**
+	 * Huffman decoding table, codes up to {@link #LOOKUP_BITS} long are decoded by lookup.
+	 */
+	private static final class HuffmanTable {
+
+		/**
+		 * The code length and symbol ((length << 8) | symbol) by the next bits, 0 for longer codes
+		 */
+		final int[] mLookup = new int[1 << LOOKUP_BITS];
+
+		/**
+		 * The largest code of each length, -1 if none
+		 */
+		final int[] mMaxCode = new int[17];
+
+		/**
+		 * The offset of the value index from the code of each length
+		 */
+		final int[] mValueOffset = new int[17];
+
+		final int[] mValues;
+
+		HuffmanTable(int[] bits, int[] values) {
+			mValues = values;
+			int code = 0;
+			int k = 0;
+			for (int length = 1; length <= 16; length++) {
+				mValueOffset[length] = k - code;
+				for (int i = 0; i < bits[length - 1] && k < values.length; i++, k++, code++) {
+					if (length <= LOOKUP_BITS) {
+						int shift = LOOKUP_BITS - length;
+						for (int j = 0; j < 1 << shift; j++) {
+							mLookup[(code << shift) | j] = (length << 8) | values[k];
+						}
+					}
+				}
+				mMaxCode[length] = bits[length - 1] > 0 ? code - 1 : -1;
+				code <<= 1;
+			}
+		}
+	}
+	// endregion
+
+	// region: Inner class: HuffmanEncoder
+
+	/**
+	 * Huffman codes and code lengths by symbol of DC and AC tables.
+	 */
+	private static final class HuffmanEncoder {
+
+		final int[] mDcCodes = new int[256];
+
+		final int[] mDcSizes = new int[256];
+
+		final int[] mAcCodes = new int[256];
+
+		final int[] mAcSizes = new int[256];
+
+		HuffmanEncoder(int[] dcBits, int[] acBits, int[] acValues) {
+			StreamingJpegEncoder.initHuffmanCodes(
+					dcBits, StreamingJpegEncoder.DC_VALUES, mDcCodes, mDcSizes);
+			StreamingJpegEncoder.initHuffmanCodes(acBits, acValues, mAcCodes, mAcSizes);
+		}
+	}
+	// endregion
+}
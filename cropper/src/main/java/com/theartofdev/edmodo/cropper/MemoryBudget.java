@@ -0,0 +1,143 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plans the sampling of decodes and crops by the memory available for their bitmaps, so the
+ * sampling is raised up front instead of by decoding again after {@link OutOfMemoryError}.<br>
+ * Bitmap pixels are allocated on the Java heap before Android O and in native memory since, so the
+ * available memory is the free heap before O, and the memory the system has before it starts
+ * killing processes since.<br>
+ * The out of memory errors still caught and retried are counted, the plan should make them rare.
+ */
+public final class MemoryBudget {
+
+	// region: Fields and Consts
+
+	/**
+	 * The share of the available memory a single plan may use, other work allocates at the same
+	 * time
+	 */
+	private static final float PLAN_SHARE = 0.75f;
+
+	/**
+	 * The number of decodes and crops planned by a larger sample size than required
+	 */
+	private static final AtomicInteger mPlannedSamplingCount = new AtomicInteger();
+
+	/**
+	 * The number of out of memory errors caught and retried by a larger sample size
+	 */
+	private static final AtomicInteger mOutOfMemoryCount = new AtomicInteger();
+	// endregion
+
+	private MemoryBudget() {
+	}
+
+	/**
+	 * The number of decodes and crops planned by a larger sample size than required, to fit in the
+	 * available memory.
+	 */
+	public static int getPlannedSamplingCount() {
+		return mPlannedSamplingCount.get();
+	}
+
+	/**
+	 * The number of out of memory errors caught while decoding or cropping and retried by a larger
+	 * sample size, despite the plan.
+	 */
+	public static int getOutOfMemoryCount() {
+		return mOutOfMemoryCount.get();
+	}
+
+	/**
+	 * The Java heap bytes currently available for new allocations.
+	 */
+	static long getAvailableHeapBytes() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+	}
+
+	/**
+	 * The bytes currently available for new bitmap pixels.
+	 */
+	static long getAvailableBitmapBytes(Context context) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && context != null) {
+			ActivityManager activityManager =
+					(ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+			if (activityManager != null) {
+				ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+				activityManager.getMemoryInfo(memoryInfo);
+				return Math.max(0, memoryInfo.availMem - memoryInfo.threshold);
+			}
+		}
+		return getAvailableHeapBytes();
+	}
+
+	/**
+	 * Plan the sample size to decode or crop an image of the given size by: the smallest power of 2
+	 * multiple of the given sample size that the bitmaps held at the same time fit in the available
+	 * memory by, up to the given max sample size. Not increased if the bytes that don't depend on the
+	 * sample size don't fit by themselves.
+	 *
+	 * @param copies     the number of bitmaps of the sampled image size held at the same time
+	 * @param fixedBytes the bytes held at the same time that don't depend on the sample size
+	 */
+	static int planSampleSize(
+			Context context,
+			int width,
+			int height,
+			int sampleSize,
+			float copies,
+			long fixedBytes,
+			int maxSampleSize) {
+		long available = (long) (getAvailableBitmapBytes(context) * PLAN_SHARE);
+		int planned = Math.max(1, sampleSize);
+		if (fixedBytes < available) {
+			while (planned < maxSampleSize
+					&& estimateBytes(width, height, planned, copies) + fixedBytes > available) {
+				planned *= 2;
+			}
+		}
+		if (planned > sampleSize) {
+			mPlannedSamplingCount.incrementAndGet();
+		}
+		return planned;
+	}
+
+	/**
+	 * Count an out of memory error caught and retried by a larger sample size.
+	 */
+	static void onOutOfMemory() {
+		mOutOfMemoryCount.incrementAndGet();
+	}
+
+	// region: Private methods
+
+	/**
+	 * Estimate the bytes of the given number of ARGB_8888 bitmaps of the given size sampled by the
+	 * given sample size.
+	 */
+	private static long estimateBytes(int width, int height, int sampleSize, float copies) {
+		long pixels =
+				(long) ((width + sampleSize - 1) / sampleSize) * ((height + sampleSize - 1) / sampleSize);
+		return (long) (pixels * 4 * copies);
+	}
+	// endregion
+}
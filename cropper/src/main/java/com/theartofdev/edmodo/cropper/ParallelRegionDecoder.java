@@ -0,0 +1,448 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.net.Uri;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes large regions of an image split into row tiles decoded in parallel on multiple cores.<br>
+ * {@link BitmapRegionDecoder} decodes one region at a time, so every helper worker decodes by its
+ * own decoder opened on the image file descriptor, kept open between regions. The calling thread
+ * decodes tiles too by the decoder given to it, so the region is decoded even if no executor
+ * thread is free to help, the effective parallelism is bounded by the executor threads.<br>
+ * Decoded tiles are drawn into the region bitmap as they complete.
+ */
+final class ParallelRegionDecoder {
+
+	// region: Fields and Consts
+
+	/**
+	 * The min number of decoded pixels of a region to decode it in parallel
+	 */
+	static final int MIN_PARALLEL_PIXELS = 512 * 1024;
+
+	/**
+	 * The number of tiles per worker, more than one to balance the uneven cost of tiles
+	 */
+	private static final int TILES_PER_WORKER = 2;
+
+	/**
+	 * The tile rows are a multiple of this (times the sample size), the JPEG MCU row height
+	 */
+	private static final int TILE_ROWS_ALIGN = 16;
+
+	/**
+	 * The number of regions decoded in parallel
+	 */
+	private static final AtomicInteger mParallelDecodeCount = new AtomicInteger();
+
+	/**
+	 * The number of tiles of the regions decoded in parallel
+	 */
+	private static final AtomicInteger mTileCount = new AtomicInteger();
+
+	/**
+	 * The number of tiles decoded by helper workers and not the calling thread
+	 */
+	private static final AtomicInteger mHelperTileCount = new AtomicInteger();
+
+	private final Context mContext;
+
+	private final Uri mUri;
+
+	/**
+	 * The max number of workers decoding a region, including the calling thread
+	 */
+	private final int mParallelism;
+
+	/**
+	 * The executor helper workers run on
+	 */
+	private final Executor mExecutor;
+
+	/**
+	 * The opened decoders of helper workers not currently decoding
+	 */
+	private final List<BitmapRegionDecoder> mIdleDecoders = new ArrayList<>();
+
+	private boolean mClosed;
+	// endregion
+
+	ParallelRegionDecoder(Context context, Uri uri, int parallelism, Executor executor) {
+		mContext = context;
+		mUri = uri;
+		mParallelism = parallelism;
+		mExecutor = executor;
+	}
+
+	/**
+	 * The number of regions decoded in parallel by split to tiles.
+	 */
+	static int getParallelDecodeCount() {
+		return mParallelDecodeCount.get();
+	}
+
+	/**
+	 * The number of tiles the regions decoded in parallel were split to.
+	 */
+	static int getTileCount() {
+		return mTileCount.get();
+	}
+
+	/**
+	 * The number of tiles decoded by helper workers, the work taken off the calling thread.
+	 */
+	static int getHelperTileCount() {
+		return mHelperTileCount.get();
+	}
+
+	int getParallelism() {
+		return mParallelism;
+	}
+
+	Executor getExecutor() {
+		return mExecutor;
+	}
+
+	/**
+	 * If the given region decoded at the given sample size is large enough to decode in parallel.
+	 */
+	boolean shouldDecodeParallel(Rect rect, int sampleSize) {
+		long pixels = (long) (rect.width() / sampleSize) * (rect.height() / sampleSize);
+		return mParallelism > 1 && pixels >= MIN_PARALLEL_PIXELS;
+	}
+
+	/**
+	 * Decode the given region of the image at the given sample size into a pooled bitmap if possible,
+	 * split to tiles decoded in parallel.
+	 *
+	 * @param decoder      the decoder of the image the calling thread decodes tiles by
+	 * @param cancelSignal checked between tiles to stop the decode, null if not cancellable
+	 */
+	Bitmap decodeRegion(
+			BitmapRegionDecoder decoder, Rect rect, int sampleSize, DecodeCancelSignal cancelSignal)
+			throws IOException {
+
+		// rounded up as by the region decoder, so the size matches the region decoded at once
+		int width = Math.max(1, (rect.width() + sampleSize - 1) / sampleSize);
+		int height = Math.max(1, (rect.height() + sampleSize - 1) / sampleSize);
+		Bitmap bitmap = BitmapPool.get(width, height, Bitmap.Config.ARGB_8888);
+		if (bitmap == null) {
+			bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		} else {
+			bitmap.eraseColor(0);
+		}
+
+		RegionJob job =
+				new RegionJob(bitmap, rect, splitToTiles(rect, sampleSize), sampleSize, cancelSignal);
+		int helpers = Math.min(mParallelism, job.mTiles.size()) - 1;
+		for (int i = 0; i < helpers; i++) {
+			try {
+				mExecutor.execute(new HelperWorker(job));
+			} catch (RejectedExecutionException e) {
+				break;
+			}
+		}
+
+		job.decodeTiles(decoder, false);
+		job.awaitTiles();
+
+		if (job.mError != null) {
+			BitmapPool.recycle(bitmap);
+			if (job.mError instanceof IOException) {
+				throw (IOException) job.mError;
+			} else if (job.mError instanceof RuntimeException) {
+				throw (RuntimeException) job.mError;
+			} else if (job.mError instanceof Error) {
+				throw (Error) job.mError;
+			}
+			throw new IOException(job.mError);
+		}
+		mParallelDecodeCount.incrementAndGet();
+		mTileCount.addAndGet(job.mTiles.size());
+		return bitmap;
+	}
+
+	/**
+	 * Free the memory of the helper decoders not currently decoding, reopened on next use.
+	 */
+	void trim() {
+		releaseIdleDecoders(false);
+	}
+
+	/**
+	 * Close the helper decoders, decoders still decoding are recycled once done.
+	 */
+	void close() {
+		releaseIdleDecoders(true);
+	}
+
+	// region: Private methods
+
+	/**
+	 * Split the given region to row tiles, the tile rows aligned to sampled MCU rows.
+	 */
+	private List<Rect> splitToTiles(Rect rect, int sampleSize) {
+		int align = TILE_ROWS_ALIGN * sampleSize;
+		int tileCount = mParallelism * TILES_PER_WORKER;
+		int tileHeight = (rect.height() + tileCount - 1) / tileCount;
+		tileHeight = Math.max(align, (tileHeight + align - 1) / align * align);
+
+		List<Rect> tiles = new ArrayList<>();
+		for (int top = rect.top; top < rect.bottom; top += tileHeight) {
+			tiles.add(new Rect(rect.left, top, rect.right, Math.min(rect.bottom, top + tileHeight)));
+		}
+		return tiles;
+	}
+
+	/**
+	 * Get an idle helper decoder or open a new one.
+	 */
+	private BitmapRegionDecoder acquireHelperDecoder() throws IOException {
+		synchronized (mIdleDecoders) {
+			if (mClosed) {
+				return null;
+			}
+			if (!mIdleDecoders.isEmpty()) {
+				return mIdleDecoders.remove(mIdleDecoders.size() - 1);
+			}
+		}
+		return BitmapUtils.newRegionDecoder(mContext.getContentResolver(), mUri);
+	}
+
+	/**
+	 * Return the helper decoder for next regions, recycle it if closed.
+	 */
+	private void releaseHelperDecoder(BitmapRegionDecoder decoder) {
+		synchronized (mIdleDecoders) {
+			if (!mClosed && mIdleDecoders.size() < mParallelism - 1) {
+				mIdleDecoders.add(decoder);
+				return;
+			}
+		}
+		decoder.recycle();
+	}
+
+	private void releaseIdleDecoders(boolean close) {
+		List<BitmapRegionDecoder> recycle;
+		synchronized (mIdleDecoders) {
+			mClosed |= close;
+			recycle = new ArrayList<>(mIdleDecoders);
+			mIdleDecoders.clear();
+		}
+		for (BitmapRegionDecoder decoder : recycle) {
+			decoder.recycle();
+		}
+	}
+	// endregion
+
+	// region: Inner class: RegionJob
+
+	/**
+	 * The tiles of a region decoded by the calling thread and helper workers, each tile is claimed by
+	 * a single worker so workers starting after all tiles were claimed have nothing to do.
+	 */
+	private static final class RegionJob {
+
+		final Bitmap mBitmap;
+
+		final List<Rect> mTiles;
+
+		final int mSampleSize;
+
+		final DecodeCancelSignal mCancelSignal;
+
+		final Rect mRect;
+
+		/**
+		 * The index of the next tile to decode
+		 */
+		final AtomicInteger mNextTile = new AtomicInteger();
+
+		/**
+		 * Counted down for every decoded (or skipped) tile
+		 */
+		final CountDownLatch mDone;
+
+		/**
+		 * Set on first error to skip the rest of the tiles
+		 */
+		final AtomicBoolean mFailed = new AtomicBoolean();
+
+		/**
+		 * The first error decoding a tile
+		 */
+		volatile Throwable mError;
+
+		/**
+		 * Draws the decoded tiles into the region bitmap, guarded by the bitmap
+		 */
+		private final Canvas mCanvas;
+
+		RegionJob(
+				Bitmap bitmap,
+				Rect rect,
+				List<Rect> tiles,
+				int sampleSize,
+				DecodeCancelSignal cancelSignal) {
+			mBitmap = bitmap;
+			mRect = rect;
+			mTiles = tiles;
+			mSampleSize = sampleSize;
+			mCancelSignal = cancelSignal;
+			mDone = new CountDownLatch(tiles.size());
+			mCanvas = new Canvas(bitmap);
+		}
+
+		/**
+		 * Decode tiles by the given decoder until all tiles were claimed.
+		 *
+		 * @param helper if called by helper worker, for stats
+		 */
+		void decodeTiles(BitmapRegionDecoder decoder, boolean helper) {
+			int index;
+			while ((index = mNextTile.getAndIncrement()) < mTiles.size()) {
+				try {
+					if (!mFailed.get()) {
+						if (mCancelSignal != null) {
+							mCancelSignal.throwIfCancelled();
+						}
+						decodeTile(decoder, mTiles.get(index));
+						if (helper) {
+							mHelperTileCount.incrementAndGet();
+						}
+					}
+				} catch (Throwable e) {
+					fail(e);
+				} finally {
+					mDone.countDown();
+				}
+			}
+		}
+
+		/**
+		 * Wait for the tiles claimed by helper workers to be decoded.<br>
+		 * Interruption only skips the tiles not decoded yet, the tiles being decoded are still awaited
+		 * as they draw into the region bitmap.
+		 */
+		void awaitTiles() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					mDone.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+					fail(new CancellationException("Interrupted decoding region"));
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Set the error of the decode and skip the tiles not decoded yet.
+		 */
+		void fail(Throwable e) {
+			synchronized (this) {
+				if (mError == null) {
+					mError = e;
+				}
+			}
+			mFailed.set(true);
+		}
+
+		private void decodeTile(BitmapRegionDecoder decoder, Rect tile) throws IOException {
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inSampleSize = mSampleSize;
+			BitmapUtils.setReusableBitmap(options, tile.width(), tile.height());
+			Bitmap bitmap;
+			try {
+				bitmap = decoder.decodeRegion(tile, options);
+			} catch (IllegalArgumentException e) {
+				if (options.inBitmap == null) {
+					throw e;
+				}
+				BitmapUtils.releaseReusableBitmap(options);
+				bitmap = decoder.decodeRegion(tile, options);
+			}
+			if (bitmap == null) {
+				throw new IOException("Failed to decode region tile: " + tile);
+			}
+			try {
+				synchronized (mBitmap) {
+					mCanvas.drawBitmap(
+							bitmap,
+							(tile.left - mRect.left) / mSampleSize,
+							(tile.top - mRect.top) / mSampleSize,
+							null);
+				}
+			} finally {
+				BitmapPool.recycle(bitmap);
+			}
+		}
+	}
+	// endregion
+
+	// region: Inner class: HelperWorker
+
+	/**
+	 * Decodes tiles of a region on the executor by its own decoder.
+	 */
+	private final class HelperWorker implements Runnable {
+
+		private final RegionJob mJob;
+
+		HelperWorker(RegionJob job) {
+			mJob = job;
+		}
+
+		@Override
+		public void run() {
+			if (mJob.mNextTile.get() >= mJob.mTiles.size() || mJob.mFailed.get()) {
+				return;
+			}
+			BitmapRegionDecoder decoder = null;
+			try {
+				decoder = acquireHelperDecoder();
+				if (decoder != null) {
+					mJob.decodeTiles(decoder, true);
+				}
+			} catch (IOException e) {
+				// the calling thread decodes the tiles this worker didn't claim
+			} finally {
+				if (decoder != null) {
+					releaseHelperDecoder(decoder);
+				}
+			}
+		}
+	}
+	// endregion
+}
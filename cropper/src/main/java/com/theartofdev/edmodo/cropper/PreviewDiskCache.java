@@ -0,0 +1,234 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Optional persistent cache of the downsampled previews decoded for cropping, under the app cache
+ * dir, so reopening an image in a new process doesn't decode the full size source again.<br>
+ * Disabled by default, enable by setting the max size. Entries are evicted by least recently used
+ * when the size exceeds the max size, and invalidated when the source size or modification time
+ * changes.
+ */
+public final class PreviewDiskCache {
+
+	/**
+	 * The name of the cache directory under the app cache dir
+	 */
+	private static final String CACHE_DIR_NAME = "image_crop_previews";
+
+	/**
+	 * The max total size in bytes of the cached previews, 0 - disabled
+	 */
+	private static long mMaxSize;
+
+	/**
+	 * The cache directory, resolved on first use
+	 */
+	private static File mDir;
+
+	private PreviewDiskCache() {
+	}
+
+	/**
+	 * Set the max total size in bytes of the cached previews on disk, 0 disables the cache.<br>
+	 * <i>Default: 0</i>
+	 */
+	public static synchronized void setMaxSize(long maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("Cannot set max size to value less than 0.");
+		}
+		mMaxSize = maxSize;
+	}
+
+	/**
+	 * Delete all the cached previews.
+	 */
+	public static synchronized void clear(Context context) {
+		File[] files = getDir(context).listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Get the cached preview of the given source decoded with the given sample size.
+	 *
+	 * @param sourceKey the key of the source, see {@link ImageHeaderCache#getSourceKey}
+	 * @return the bitmap or null if disabled, not cached or source key is null
+	 */
+	static Bitmap get(Context context, Uri uri, String sourceKey, int sampleSize) {
+		if (mMaxSize <= 0 || sourceKey == null) {
+			return null;
+		}
+		try {
+			File file = new File(getDir(context), getFileName(uri, sourceKey, sampleSize));
+			if (!file.exists()) {
+				deleteStale(context, uri, sourceKey);
+				return null;
+			}
+			Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), null);
+			if (bitmap != null) {
+				// mark as recently used
+				file.setLastModified(System.currentTimeMillis());
+			} else {
+				file.delete();
+			}
+			return bitmap;
+		} catch (Exception | OutOfMemoryError e) {
+			Log.w("AIC", "Failed to read cached preview: " + uri, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Cache the given preview of the given source decoded with the given sample size, then evict
+	 * least recently used previews over the max size. No-op if disabled or source key is null.
+	 */
+	static void put(Context context, Uri uri, String sourceKey, int sampleSize, Bitmap bitmap) {
+		if (mMaxSize <= 0 || sourceKey == null || bitmap == null) {
+			return;
+		}
+		File dir = getDir(context);
+		File file = new File(dir, getFileName(uri, sourceKey, sampleSize));
+		File tmpFile = null;
+		OutputStream stream = null;
+		try {
+			dir.mkdirs();
+			// unique temp file per put, so concurrent puts of the same preview don't write into the
+			// same file and publish it torn
+			tmpFile = File.createTempFile(file.getName(), ".tmp", dir);
+			stream = new FileOutputStream(tmpFile);
+			boolean written =
+					bitmap.compress(
+							bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG,
+							90,
+							stream);
+			stream.close();
+			stream = null;
+			if (written && tmpFile.renameTo(file)) {
+				trimToSize(dir);
+			}
+		} catch (Exception e) {
+			Log.w("AIC", "Failed to cache preview: " + uri, e);
+		} finally {
+			BitmapUtils.closeSafe(stream);
+			if (tmpFile != null) {
+				tmpFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Delete the previews of the given uri that were cached for a different source version.
+	 */
+	private static void deleteStale(Context context, Uri uri, String sourceKey) {
+		String uriPrefix = hash(uri.toString()) + "_";
+		String versionPrefix = uriPrefix + hash(sourceKey) + "_";
+		File[] files = getDir(context).listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (name.startsWith(uriPrefix) && !name.startsWith(versionPrefix)) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Delete the least recently used previews until the total size is within the max size.
+	 */
+	private static synchronized void trimToSize(File dir) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		long size = 0;
+		for (File file : files) {
+			size += file.length();
+		}
+		if (size > mMaxSize) {
+			final long[] lastModified = new long[files.length];
+			for (int i = 0; i < files.length; i++) {
+				lastModified[i] = files[i].lastModified();
+			}
+			Integer[] order = new Integer[files.length];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(
+					order,
+					new Comparator<Integer>() {
+						@Override
+						public int compare(Integer lhs, Integer rhs) {
+							return lastModified[lhs] < lastModified[rhs]
+									? -1
+									: (lastModified[lhs] == lastModified[rhs] ? 0 : 1);
+						}
+					});
+			for (int i = 0; i < order.length && size > mMaxSize; i++) {
+				File file = files[order[i]];
+				long length = file.length();
+				if (file.delete()) {
+					size -= length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the cache file name for the given source version and sample size, prefixed by the uri
+	 * hash so stale versions of the same uri can be found.
+	 */
+	private static String getFileName(Uri uri, String sourceKey, int sampleSize) {
+		return hash(uri.toString()) + "_" + hash(sourceKey) + "_" + sampleSize;
+	}
+
+	private static synchronized File getDir(Context context) {
+		if (mDir == null) {
+			mDir = new File(context.getApplicationContext().getCacheDir(), CACHE_DIR_NAME);
+		}
+		return mDir;
+	}
+
+	/**
+	 * Get hex MD5 hash of the given value, safe to use in file name.
+	 */
+	private static String hash(String value) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes("UTF-8"));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(Integer.toHexString((b >> 4) & 0xF)).append(Integer.toHexString(b & 0xF));
+			}
+			return sb.toString();
+		} catch (Exception e) {
+			return Integer.toHexString(value.hashCode());
+		}
+	}
+}
@@ -0,0 +1,283 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.graphics.Bitmap;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Finds the highest compression quality a bitmap is encoded by within a max byte size.<br>
+ * Encodes the bitmap to memory by the max quality first, and if too large searches the lower
+ * qualities by encoding several evenly spaced candidates in parallel each round and narrowing the
+ * range to between the highest that fits and the lowest that doesn't. Candidates not started by the
+ * executor are encoded by the calling thread.
+ */
+final class QualitySearch {
+
+	// region: Fields and Consts
+
+	/**
+	 * The max number of candidate qualities encoded in parallel each round
+	 */
+	private static final int MAX_PARALLELISM = 4;
+
+	private final Bitmap mBitmap;
+
+	private final Bitmap.CompressFormat mCompressFormat;
+
+	private final int mMaxBytes;
+
+	private final int mExifOrientation;
+
+	private final Executor mExecutor;
+	// endregion
+
+	private QualitySearch(
+			Bitmap bitmap,
+			Bitmap.CompressFormat compressFormat,
+			int maxBytes,
+			int exifOrientation,
+			Executor executor) {
+		mBitmap = bitmap;
+		mCompressFormat = compressFormat;
+		mMaxBytes = maxBytes;
+		mExifOrientation = exifOrientation;
+		mExecutor = executor;
+	}
+
+	/**
+	 * Encode the given bitmap by the highest quality up to the given max quality within the given max
+	 * bytes, the smallest encoded (that doesn't fit) if none is.
+	 *
+	 * @param executor the executor to encode candidates in parallel on, null to encode on the calling
+	 *                 thread
+	 * @return the encoded candidate, all its data is kept if it fits the max bytes
+	 */
+	static Candidate encode(
+			Bitmap bitmap,
+			Bitmap.CompressFormat compressFormat,
+			int maxQuality,
+			int maxBytes,
+			int exifOrientation,
+			Executor executor)
+			throws IOException {
+		return new QualitySearch(bitmap, compressFormat, maxBytes, exifOrientation, executor)
+				.search(maxQuality);
+	}
+
+	private Candidate search(int maxQuality) throws IOException {
+		Candidate candidate = new Candidate(maxQuality);
+		candidate.runOrAwait();
+		candidate.throwIfFailed();
+		if (candidate.fits()) {
+			return candidate;
+		}
+
+		int parallelism =
+				mExecutor != null
+						? Math.max(1, Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors()))
+						: 1;
+		Candidate best = null;
+		Candidate smallest = candidate;
+		int low = 0;
+		int high = maxQuality - 1;
+		while (low <= high) {
+			int span = high - low + 1;
+			Candidate[] candidates = new Candidate[Math.min(parallelism, span)];
+			for (int i = 0; i < candidates.length; i++) {
+				candidates[i] = new Candidate(low + span * (i + 1) / (candidates.length + 1));
+				if (i > 0 && mExecutor != null) {
+					try {
+						mExecutor.execute(candidates[i]);
+					} catch (RejectedExecutionException ignored) {
+						// encoded by the calling thread
+					}
+				}
+			}
+			for (Candidate c : candidates) {
+				c.runOrAwait();
+			}
+
+			// narrow to between the highest that fits and the lowest above it that doesn't
+			int newLow = low;
+			int newHigh = high;
+			for (Candidate c : candidates) {
+				c.throwIfFailed();
+				if (c.fits()) {
+					newLow = c.mQuality + 1;
+					if (best == null || c.mQuality > best.mQuality) {
+						best = c;
+					}
+				} else {
+					if (c.mQuality < smallest.mQuality) {
+						smallest = c;
+					}
+					if (c.mQuality >= newLow) {
+						newHigh = Math.min(newHigh, c.mQuality - 1);
+					}
+				}
+			}
+			if (newLow == low && newHigh == high) {
+				break;
+			}
+			low = newLow;
+			high = newHigh;
+		}
+		return best != null ? best : smallest;
+	}
+
+	// region: Inner class: Candidate
+
+	/**
+	 * The bitmap encoded to memory by one quality, by the executor or the calling thread, whichever
+	 * claims it first.
+	 */
+	final class Candidate implements Runnable {
+
+		/**
+		 * The quality of the candidate
+		 */
+		final int mQuality;
+
+		private final AtomicBoolean mClaimed = new AtomicBoolean();
+
+		private final CountDownLatch mDone = new CountDownLatch(1);
+
+		private final LimitedBuffer mBuffer = new LimitedBuffer(mMaxBytes);
+
+		private volatile Exception mError;
+
+		Candidate(int quality) {
+			mQuality = quality;
+		}
+
+		/**
+		 * If the encoded data fits the max bytes.
+		 */
+		boolean fits() {
+			return mBuffer.mSize <= mMaxBytes;
+		}
+
+		/**
+		 * Write the encoded data to the given stream, complete only if it fits the max bytes.
+		 */
+		void writeTo(OutputStream stream) throws IOException {
+			mBuffer.writeTo(stream);
+		}
+
+		/**
+		 * The size of the encoded data.
+		 */
+		long getSize() {
+			return mBuffer.mSize;
+		}
+
+		@Override
+		public void run() {
+			if (mClaimed.compareAndSet(false, true)) {
+				try {
+					OutputStream stream = mBuffer;
+					if (mExifOrientation != ExifInterface.ORIENTATION_NORMAL
+							&& mCompressFormat == Bitmap.CompressFormat.JPEG) {
+						stream = new ExifOrientationOutputStream(stream, mExifOrientation);
+					}
+					if (!mBitmap.compress(mCompressFormat, mQuality, stream)) {
+						mError = new IOException("Failed to compress bitmap by quality: " + mQuality);
+					}
+				} catch (Exception e) {
+					mError = e;
+				} catch (OutOfMemoryError e) {
+					mError = new RuntimeException("Failed to compress bitmap by quality: " + mQuality, e);
+				} finally {
+					mDone.countDown();
+				}
+			}
+		}
+
+		/**
+		 * Encode on the calling thread if not claimed yet, otherwise wait for the claiming thread.
+		 */
+		void runOrAwait() {
+			run();
+			boolean interrupted = false;
+			while (true) {
+				try {
+					mDone.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		void throwIfFailed() throws IOException {
+			if (mError instanceof IOException) {
+				throw (IOException) mError;
+			} else if (mError != null) {
+				throw new IOException(mError.getMessage(), mError);
+			}
+		}
+	}
+	// endregion
+
+	// region: Inner class: LimitedBuffer
+
+	/**
+	 * In memory buffer that keeps only up to the given limit of the written data and counts the
+	 * rest, so candidates too large don't hold their whole encoded data.
+	 */
+	private static final class LimitedBuffer extends ByteArrayOutputStream {
+
+		private final int mLimit;
+
+		/**
+		 * The size of all the written data
+		 */
+		private volatile long mSize;
+
+		LimitedBuffer(int limit) {
+			super(Math.min(limit, 64 * 1024));
+			mLimit = limit;
+		}
+
+		@Override
+		public synchronized void write(int b) {
+			if (mSize < mLimit) {
+				super.write(b);
+			}
+			mSize++;
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			int keep = (int) Math.max(0, Math.min(len, mLimit - mSize));
+			if (keep > 0) {
+				super.write(b, off, keep);
+			}
+			mSize += len;
+		}
+	}
+	// endregion
+}
@@ -0,0 +1,258 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.content.Context;
+import android.graphics.BitmapRegionDecoder;
+import android.net.Uri;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the {@link BitmapRegionDecoder} of a loaded image open so consecutive crops and tiled
+ * rendering of the image don't re-read and re-index the whole source for every region.<br>
+ * The decoder is opened lazily on first use (on background thread), shared by concurrent users and
+ * recycled once the session is closed or trimmed and no user is decoding with it. A trimmed
+ * session reopens the decoder on next use, a closed session can no longer be used.<br>
+ * Large crop regions can be decoded in parallel by {@link ParallelRegionDecoder} helper decoders
+ * the session keeps open the same way, see {@link #setParallelism(int, Executor)}.
+ */
+public final class RegionDecoderSession {
+
+	/**
+	 * The number of region decoders opened by sessions
+	 */
+	private static final AtomicInteger mOpenCount = new AtomicInteger();
+
+	/**
+	 * The number of region decodes that reused an already open decoder
+	 */
+	private static final AtomicInteger mReuseCount = new AtomicInteger();
+
+	private final Context mContext;
+
+	/**
+	 * The URI of the image the session decodes regions of
+	 */
+	private final Uri mUri;
+
+	/**
+	 * The open decoder, null if not opened yet or trimmed
+	 */
+	private BitmapRegionDecoder mDecoder;
+
+	/**
+	 * The number of users currently decoding with the decoder
+	 */
+	private int mUsers;
+
+	/**
+	 * If to recycle the decoder once not used, the session can still be reopened
+	 */
+	private boolean mTrimmed;
+
+	private boolean mClosed;
+
+	/**
+	 * Decodes large regions in parallel, null if parallelism is 1
+	 */
+	private ParallelRegionDecoder mParallelDecoder;
+
+	RegionDecoderSession(Context context, Uri uri) {
+		mContext = context;
+		mUri = uri;
+	}
+
+	/**
+	 * The number of region decoders opened, each one reads and indexes the whole source image.
+	 */
+	public static int getOpenCount() {
+		return mOpenCount.get();
+	}
+
+	/**
+	 * The number of region decodes (crops and tiles) that reused an already open decoder.
+	 */
+	public static int getReuseCount() {
+		return mReuseCount.get();
+	}
+
+	/**
+	 * The number of crop regions decoded in parallel by split to tiles.
+	 */
+	public static int getParallelDecodeCount() {
+		return ParallelRegionDecoder.getParallelDecodeCount();
+	}
+
+	/**
+	 * The number of tiles the crop regions decoded in parallel were split to.
+	 */
+	public static int getParallelTileCount() {
+		return ParallelRegionDecoder.getTileCount();
+	}
+
+	/**
+	 * The number of tiles of regions decoded in parallel that were decoded by helper workers and not
+	 * the cropping thread.
+	 */
+	public static int getParallelHelperTileCount() {
+		return ParallelRegionDecoder.getHelperTileCount();
+	}
+
+	/**
+	 * The URI of the image the session decodes regions of.
+	 */
+	Uri getUri() {
+		return mUri;
+	}
+
+	/**
+	 * Get the region decoder of the session, opening it if required, must be released by {@link
+	 * #release(BitmapRegionDecoder)} after use.<br>
+	 * Must not be called on the UI thread as opening the decoder indexes the whole source image.
+	 *
+	 * @return the decoder or null if the session is closed
+	 */
+	BitmapRegionDecoder acquire() throws IOException {
+		synchronized (this) {
+			if (mClosed) {
+				return null;
+			}
+			if (mDecoder != null) {
+				mUsers++;
+				mReuseCount.incrementAndGet();
+				return mDecoder;
+			}
+		}
+
+		// open outside the lock so closing the session on UI thread doesn't wait for it
+		BitmapRegionDecoder decoder =
+				BitmapUtils.newRegionDecoder(mContext.getContentResolver(), mUri);
+		mOpenCount.incrementAndGet();
+
+		BitmapRegionDecoder recycle = null;
+		try {
+			synchronized (this) {
+				if (mClosed) {
+					recycle = decoder;
+					return null;
+				}
+				if (mDecoder != null) {
+					// opened concurrently by another user
+					recycle = decoder;
+				} else {
+					mDecoder = decoder;
+				}
+				mTrimmed = false;
+				mUsers++;
+				return mDecoder;
+			}
+		} finally {
+			if (recycle != null) {
+				recycle.recycle();
+			}
+		}
+	}
+
+	/**
+	 * Set the number of workers to decode large regions by in parallel, helper workers run on the
+	 * given executor each with its own decoder.
+	 *
+	 * @param parallelism the max number of workers including the decoding thread, 1 to not decode in
+	 *                    parallel
+	 */
+	void setParallelism(int parallelism, Executor executor) {
+		ParallelRegionDecoder close = null;
+		synchronized (this) {
+			if (mClosed
+					|| (mParallelDecoder == null && parallelism < 2)
+					|| (mParallelDecoder != null
+					&& mParallelDecoder.getParallelism() == parallelism
+					&& mParallelDecoder.getExecutor() == executor)) {
+				return;
+			}
+			close = mParallelDecoder;
+			mParallelDecoder =
+					parallelism > 1 ? new ParallelRegionDecoder(mContext, mUri, parallelism, executor) : null;
+		}
+		if (close != null) {
+			close.close();
+		}
+	}
+
+	/**
+	 * Get the decoder of large regions in parallel, null if not set or the parallelism is 1.
+	 */
+	synchronized ParallelRegionDecoder getParallelDecoder() {
+		return mParallelDecoder;
+	}
+
+	/**
+	 * Release the decoder acquired by {@link #acquire()}, recycle it if the session was closed or
+	 * trimmed and this is the last user.
+	 */
+	void release(BitmapRegionDecoder decoder) {
+		synchronized (this) {
+			mUsers--;
+			if (mUsers > 0 || !(mClosed || mTrimmed) || decoder != mDecoder) {
+				return;
+			}
+			mDecoder = null;
+		}
+		decoder.recycle();
+	}
+
+	/**
+	 * Free the memory of the open decoder, it is reopened on next use.
+	 */
+	void trim() {
+		releaseDecoder(false);
+	}
+
+	/**
+	 * Close the session, the decoder is recycled once not used.
+	 */
+	void close() {
+		releaseDecoder(true);
+	}
+
+	private void releaseDecoder(boolean close) {
+		BitmapRegionDecoder recycle = null;
+		ParallelRegionDecoder parallelDecoder;
+		synchronized (this) {
+			mClosed |= close;
+			parallelDecoder = mParallelDecoder;
+			if (close) {
+				mParallelDecoder = null;
+			}
+			if (mUsers == 0) {
+				recycle = mDecoder;
+				mDecoder = null;
+			} else {
+				mTrimmed = true;
+			}
+		}
+		if (recycle != null) {
+			recycle.recycle();
+		}
+		if (parallelDecoder != null) {
+			if (close) {
+				parallelDecoder.close();
+			} else {
+				parallelDecoder.trim();
+			}
+		}
+	}
+}
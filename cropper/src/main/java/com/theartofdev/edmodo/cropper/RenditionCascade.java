@@ -0,0 +1,264 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes a saved crop together with its smaller renditions in one job.<br>
+ * Every rendition is downscaled from the previous (larger) one instead of the full crop, and is
+ * encoded on the executor as soon as it is ready while the next one is downscaled, so the crop and
+ * all renditions are encoded in parallel. Encodes not started by the executor are run by the
+ * calling thread.
+ */
+final class RenditionCascade {
+
+	// region: Fields and Consts
+
+	/**
+	 * Sort renditions from the largest to the smallest
+	 */
+	private static final Comparator<CropRendition> LARGEST_FIRST =
+			new Comparator<CropRendition>() {
+				@Override
+				public int compare(CropRendition lhs, CropRendition rhs) {
+					return rhs.getMaxSize() - lhs.getMaxSize();
+				}
+			};
+
+	private final Context mContext;
+
+	private final Bitmap.CompressFormat mCompressFormat;
+
+	private final int mCompressQuality;
+
+	private final int mExifOrientation;
+
+	/**
+	 * The max size of every saved image, 0 if not limited
+	 */
+	private final int mMaxBytes;
+
+	/**
+	 * The filter to downscale the renditions by
+	 */
+	private final ImageCropView.ResizeFilter mResizeFilter;
+
+	private final Executor mExecutor;
+	// endregion
+
+	private RenditionCascade(
+			Context context,
+			Bitmap.CompressFormat compressFormat,
+			int compressQuality,
+			int exifOrientation,
+			int maxBytes,
+			ImageCropView.ResizeFilter resizeFilter,
+			Executor executor) {
+		mContext = context;
+		mCompressFormat = compressFormat;
+		mCompressQuality = compressQuality;
+		mExifOrientation = exifOrientation;
+		mMaxBytes = maxBytes;
+		mResizeFilter = resizeFilter;
+		mExecutor = executor;
+	}
+
+	/**
+	 * Write the given crop to the given uri and its given renditions to their uris, all by the
+	 * given compression. The given crop bitmap is not recycled.
+	 *
+	 * @param maxBytes     the max size of every saved image to search the compression quality by, 0
+	 *                     if not limited
+	 * @param resizeFilter the filter to downscale the renditions by, see {@link Resampler}
+	 * @param executor     the executor to encode and downscale in parallel on, null to run on the
+	 *                     calling thread
+	 */
+	static void write(
+			Context context,
+			Bitmap crop,
+			Uri saveUri,
+			List<CropRendition> renditions,
+			Bitmap.CompressFormat compressFormat,
+			int compressQuality,
+			int exifOrientation,
+			int maxBytes,
+			ImageCropView.ResizeFilter resizeFilter,
+			Executor executor)
+			throws Exception {
+		new RenditionCascade(
+				context, compressFormat, compressQuality, exifOrientation, maxBytes, resizeFilter, executor)
+				.write(crop, saveUri, renditions);
+	}
+
+	private void write(Bitmap crop, Uri saveUri, List<CropRendition> renditions) throws Exception {
+		List<CropRendition> sorted = new ArrayList<>(renditions);
+		Collections.sort(sorted, LARGEST_FIRST);
+
+		List<EncodeJob> jobs = new ArrayList<>();
+		List<Bitmap> downscaled = new ArrayList<>();
+		try {
+			jobs.add(submit(new EncodeJob(crop, saveUri)));
+			Bitmap source = crop;
+			for (CropRendition rendition : sorted) {
+				Bitmap bitmap = downscale(source, rendition.getMaxSize());
+				if (bitmap != source) {
+					downscaled.add(bitmap);
+				}
+				jobs.add(submit(new EncodeJob(bitmap, rendition.getSaveUri())));
+				source = bitmap;
+			}
+
+			for (EncodeJob job : jobs) {
+				job.runOrAwait();
+			}
+			for (EncodeJob job : jobs) {
+				if (job.mError != null) {
+					throw job.mError;
+				}
+			}
+		} finally {
+			// the bitmaps are released only once no encode uses them
+			for (EncodeJob job : jobs) {
+				job.skipOrAwait();
+			}
+			for (Bitmap bitmap : downscaled) {
+				BitmapPool.recycle(bitmap);
+			}
+		}
+	}
+
+	/**
+	 * Start the given encode on the executor, if any and not rejected.
+	 */
+	private EncodeJob submit(EncodeJob job) {
+		if (mExecutor != null) {
+			try {
+				mExecutor.execute(job);
+			} catch (RejectedExecutionException ignored) {
+				// encoded by the calling thread
+			}
+		}
+		return job;
+	}
+
+	/**
+	 * Downscale the given bitmap to fit inside the given size by the resize filter, the given bitmap
+	 * if already fits.
+	 */
+	private Bitmap downscale(Bitmap source, int maxSize) {
+		float scale = Math.max(source.getWidth(), source.getHeight()) / (float) maxSize;
+		if (scale <= 1) {
+			return source;
+		}
+		int width = Math.max(1, (int) (source.getWidth() / scale));
+		int height = Math.max(1, (int) (source.getHeight() / scale));
+		return Resampler.resize(source, width, height, mResizeFilter, mExecutor);
+	}
+
+	// region: Inner class: EncodeJob
+
+	/**
+	 * Encodes a bitmap to its uri once, by the executor or the calling thread, whichever claims it
+	 * first.
+	 */
+	private final class EncodeJob implements Runnable {
+
+		private final Bitmap mBitmap;
+
+		private final Uri mUri;
+
+		private final AtomicBoolean mClaimed = new AtomicBoolean();
+
+		private final CountDownLatch mDone = new CountDownLatch(1);
+
+		private volatile Exception mError;
+
+		EncodeJob(Bitmap bitmap, Uri uri) {
+			mBitmap = bitmap;
+			mUri = uri;
+		}
+
+		@Override
+		public void run() {
+			if (mClaimed.compareAndSet(false, true)) {
+				try {
+					BitmapUtils.writeBitmapToUri(
+							mContext,
+							mBitmap,
+							mUri,
+							mCompressFormat,
+							mCompressQuality,
+							mExifOrientation,
+							mMaxBytes,
+							mExecutor);
+				} catch (Exception e) {
+					mError = e;
+				} catch (OutOfMemoryError e) {
+					mError = new RuntimeException("Failed to encode rendition: " + mUri, e);
+				} finally {
+					mDone.countDown();
+				}
+			}
+		}
+
+		/**
+		 * Encode on the calling thread if not claimed yet, otherwise wait for the claiming thread.
+		 */
+		void runOrAwait() {
+			run();
+			await();
+		}
+
+		/**
+		 * Skip the encode if not claimed yet, otherwise wait for the claiming thread.
+		 */
+		void skipOrAwait() {
+			if (mClaimed.compareAndSet(false, true)) {
+				mDone.countDown();
+			} else {
+				await();
+			}
+		}
+
+		/**
+		 * Wait for the encode uninterruptibly, the bitmap must not be released while encoded.
+		 */
+		private void await() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					mDone.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	// endregion
+}
@@ -0,0 +1,494 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resizes bitmaps by the {@link ImageCropView.ResizeFilter}.<br>
+ * Halves the bitmap while it is at least twice the target size (a filtered draw by half averages
+ * every 2x2 pixels), then resizes to the target size by a single filtered draw for bilinear, or by
+ * a separable convolution of the filter for box and Lanczos.<br>
+ * The convolution is split into bands of rows resized in parallel on the executor, and by the
+ * calling thread for bands not started by the executor. The band buffers are pooled across calls.
+ */
+final class Resampler {
+
+	// region: Fields and Consts
+
+	/**
+	 * The max number of source pixels to resize in a single band
+	 */
+	private static final int BAND_SOURCE_PIXELS = 128 * 1024;
+
+	/**
+	 * The max number of band buffers kept for reuse
+	 */
+	private static final int MAX_POOLED_BUFFERS = 4;
+
+	/**
+	 * The lobes of the Lanczos filter
+	 */
+	private static final int LANCZOS_LOBES = 3;
+
+	/**
+	 * Band buffers kept for reuse
+	 */
+	private static final ArrayDeque<BandBuffers> mBufferPool = new ArrayDeque<>();
+
+	private final Bitmap mSource;
+
+	private final Bitmap mResult;
+
+	private final Kernel mKernelX;
+
+	private final Kernel mKernelY;
+
+	/**
+	 * The destination rows of every band
+	 */
+	private final int mBandRows;
+
+	private final int mBandCount;
+
+	/**
+	 * The next band to resize by the thread that claims it
+	 */
+	private final AtomicInteger mNextBand = new AtomicInteger();
+
+	private final CountDownLatch mBandsDone;
+
+	private volatile Throwable mError;
+	// endregion
+
+	private Resampler(Bitmap source, Bitmap result, ImageCropView.ResizeFilter filter) {
+		mSource = source;
+		mResult = result;
+		mKernelX = new Kernel(source.getWidth(), result.getWidth(), filter);
+		mKernelY = new Kernel(source.getHeight(), result.getHeight(), filter);
+		int sourceRowsPerRow = Math.max(1, source.getHeight() / result.getHeight());
+		mBandRows =
+				Math.max(1, BAND_SOURCE_PIXELS / (source.getWidth() * sourceRowsPerRow));
+		mBandCount = (result.getHeight() + mBandRows - 1) / mBandRows;
+		mBandsDone = new CountDownLatch(mBandCount);
+	}
+
+	/**
+	 * If resizing from the given size to the given size by the given filter requires more than a
+	 * single filtered draw.
+	 */
+	static boolean isRequired(
+			int width, int height, int newWidth, int newHeight, ImageCropView.ResizeFilter filter) {
+		if (newWidth >= width && newHeight >= height) {
+			// upscale, only Lanczos differs from the filtered draw
+			return filter == ImageCropView.ResizeFilter.LANCZOS
+					&& (newWidth != width || newHeight != height);
+		}
+		return filter != ImageCropView.ResizeFilter.BILINEAR
+				|| width >= newWidth * 2
+				|| height >= newHeight * 2;
+	}
+
+	/**
+	 * Resize the given bitmap to the given size by the given filter into a pooled or new bitmap.<br>
+	 * The source bitmap is not recycled.
+	 *
+	 * @param executor the executor to resize bands in parallel on, null to resize on the calling
+	 *                 thread
+	 */
+	static Bitmap resize(
+			Bitmap source,
+			int width,
+			int height,
+			ImageCropView.ResizeFilter filter,
+			Executor executor) {
+		Bitmap current = source;
+		while (current.getWidth() >= width * 2 || current.getHeight() >= height * 2) {
+			Bitmap half =
+					scale(
+							current,
+							current.getWidth() >= width * 2 ? current.getWidth() / 2 : current.getWidth(),
+							current.getHeight() >= height * 2 ? current.getHeight() / 2 : current.getHeight());
+			if (current != source) {
+				BitmapPool.recycle(current);
+			}
+			current = half;
+		}
+
+		Bitmap result;
+		if (current.getWidth() == width && current.getHeight() == height && current != source) {
+			result = current;
+		} else if (filter == ImageCropView.ResizeFilter.BILINEAR
+				|| current.getWidth() == width && current.getHeight() == height) {
+			result = scale(current, width, height);
+		} else {
+			result = newBitmap(width, height);
+			try {
+				new Resampler(current, result, filter).run(executor);
+			} catch (RuntimeException | Error e) {
+				BitmapPool.recycle(result);
+				throw e;
+			}
+			result.setHasAlpha(current.hasAlpha());
+		}
+		if (current != source && current != result) {
+			BitmapPool.recycle(current);
+		}
+		return result;
+	}
+
+	/**
+	 * Draw the given bitmap scaled to the given size into a pooled or new bitmap.
+	 */
+	static Bitmap scale(Bitmap source, int width, int height) {
+		Bitmap result = newBitmap(width, height);
+		Paint paint = new Paint();
+		paint.setFilterBitmap(true);
+		Canvas canvas = new Canvas(result);
+		canvas.drawBitmap(
+				source,
+				new Rect(0, 0, source.getWidth(), source.getHeight()),
+				new Rect(0, 0, width, height),
+				paint);
+		canvas.setBitmap(null);
+		result.setHasAlpha(source.hasAlpha());
+		return result;
+	}
+
+	// region: Private methods
+
+	/**
+	 * Resize all the bands, on the executor and the calling thread.
+	 */
+	private void run(Executor executor) {
+		int helpers =
+				executor != null
+						? Math.min(mBandCount, Runtime.getRuntime().availableProcessors()) - 1
+						: 0;
+		for (int i = 0; i < helpers; i++) {
+			try {
+				executor.execute(
+						new Runnable() {
+							@Override
+							public void run() {
+								resizeBands();
+							}
+						});
+			} catch (RejectedExecutionException ignored) {
+				// resized by the calling thread
+				break;
+			}
+		}
+		resizeBands();
+
+		boolean interrupted = false;
+		while (true) {
+			try {
+				mBandsDone.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (mError instanceof RuntimeException) {
+			throw (RuntimeException) mError;
+		} else if (mError instanceof Error) {
+			throw (Error) mError;
+		}
+	}
+
+	/**
+	 * Resize bands until all are claimed.
+	 */
+	private void resizeBands() {
+		BandBuffers buffers = null;
+		int band;
+		while ((band = mNextBand.getAndIncrement()) < mBandCount) {
+			try {
+				if (mError == null) {
+					if (buffers == null) {
+						buffers = obtainBuffers();
+					}
+					resizeBand(band, buffers);
+				}
+			} catch (RuntimeException | Error e) {
+				mError = e;
+			} finally {
+				mBandsDone.countDown();
+			}
+		}
+		if (buffers != null) {
+			releaseBuffers(buffers);
+		}
+	}
+
+	/**
+	 * Resize the given band: filter its source rows horizontally into premultiplied float rows of
+	 * the result width, then filter those vertically into the result rows.
+	 */
+	private void resizeBand(int band, BandBuffers buffers) {
+		int top = band * mBandRows;
+		int bottom = Math.min(mResult.getHeight(), top + mBandRows);
+		int sourceTop = mKernelY.mStart[top];
+		int sourceBottom = sourceTop;
+		for (int y = top; y < bottom; y++) {
+			sourceBottom = Math.max(sourceBottom, mKernelY.mStart[y] + mKernelY.mCount[y]);
+		}
+		int sourceWidth = mSource.getWidth();
+		int width = mResult.getWidth();
+		int sourceRows = sourceBottom - sourceTop;
+
+		int[] source = buffers.source(sourceWidth * sourceRows);
+		mSource.getPixels(source, 0, sourceWidth, 0, sourceTop, sourceWidth, sourceRows);
+
+		float[] rows = buffers.rows(width * sourceRows * 4);
+		int[] starts = mKernelX.mStart;
+		int[] counts = mKernelX.mCount;
+		float[] weights = mKernelX.mWeights;
+		int taps = mKernelX.mTaps;
+		for (int r = 0; r < sourceRows; r++) {
+			int rowOffset = r * sourceWidth;
+			int out = r * width * 4;
+			for (int x = 0; x < width; x++) {
+				float a = 0;
+				float red = 0;
+				float green = 0;
+				float blue = 0;
+				int p = rowOffset + starts[x];
+				int w = x * taps;
+				for (int k = counts[x]; k > 0; k--, p++, w++) {
+					int pixel = source[p];
+					float weight = weights[w];
+					float alpha = (pixel >>> 24) * weight;
+					a += alpha;
+					red += ((pixel >> 16) & 0xff) * alpha;
+					green += ((pixel >> 8) & 0xff) * alpha;
+					blue += (pixel & 0xff) * alpha;
+				}
+				rows[out++] = a;
+				rows[out++] = red;
+				rows[out++] = green;
+				rows[out++] = blue;
+			}
+		}
+
+		int[] result = buffers.result(width * (bottom - top));
+		starts = mKernelY.mStart;
+		counts = mKernelY.mCount;
+		weights = mKernelY.mWeights;
+		taps = mKernelY.mTaps;
+		int out = 0;
+		for (int y = top; y < bottom; y++) {
+			int rowsOffset = (starts[y] - sourceTop) * width * 4;
+			for (int x = 0; x < width; x++) {
+				float a = 0;
+				float red = 0;
+				float green = 0;
+				float blue = 0;
+				int p = rowsOffset + x * 4;
+				int w = y * taps;
+				for (int k = counts[y]; k > 0; k--, p += width * 4, w++) {
+					float weight = weights[w];
+					a += rows[p] * weight;
+					red += rows[p + 1] * weight;
+					green += rows[p + 2] * weight;
+					blue += rows[p + 3] * weight;
+				}
+				// un-premultiply, Lanczos lobes may overshoot the range
+				int pixel = 0;
+				if (a >= 0.5f) {
+					float unpremultiply = 1 / a;
+					pixel =
+							(clamp(a) << 24)
+									| (clamp(red * unpremultiply) << 16)
+									| (clamp(green * unpremultiply) << 8)
+									| clamp(blue * unpremultiply);
+				}
+				result[out++] = pixel;
+			}
+		}
+		synchronized (mResult) {
+			mResult.setPixels(result, 0, width, 0, top, width, bottom - top);
+		}
+	}
+
+	private static int clamp(float value) {
+		return value <= 0 ? 0 : value >= 255 ? 255 : (int) (value + 0.5f);
+	}
+
+	private static Bitmap newBitmap(int width, int height) {
+		Bitmap result = BitmapPool.get(width, height, Bitmap.Config.ARGB_8888);
+		if (result == null) {
+			result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		}
+		return result;
+	}
+
+	private static BandBuffers obtainBuffers() {
+		synchronized (mBufferPool) {
+			BandBuffers buffers = mBufferPool.poll();
+			return buffers != null ? buffers : new BandBuffers();
+		}
+	}
+
+	private static void releaseBuffers(BandBuffers buffers) {
+		synchronized (mBufferPool) {
+			if (mBufferPool.size() < MAX_POOLED_BUFFERS) {
+				mBufferPool.push(buffers);
+			}
+		}
+	}
+	// endregion
+
+	// region: Inner class: Kernel
+
+	/**
+	 * The source pixels and their weights of every destination pixel on one axis.
+	 */
+	private static final class Kernel {
+
+		/**
+		 * The first source pixel of every destination pixel
+		 */
+		final int[] mStart;
+
+		/**
+		 * The number of source pixels of every destination pixel
+		 */
+		final int[] mCount;
+
+		/**
+		 * The normalized weights of every destination pixel, {@link #mTaps} per pixel
+		 */
+		final float[] mWeights;
+
+		final int mTaps;
+
+		Kernel(int sourceSize, int size, ImageCropView.ResizeFilter filter) {
+			float scale = sourceSize / (float) size;
+			// downscale stretches the filter over the source pixels of a destination pixel
+			float filterScale = Math.max(1, scale);
+			float support =
+					filter == ImageCropView.ResizeFilter.LANCZOS
+							? LANCZOS_LOBES * filterScale
+							: filter == ImageCropView.ResizeFilter.BOX ? filterScale / 2 : filterScale;
+			mTaps = Math.min(sourceSize, (int) Math.ceil(support * 2) + 1);
+			mStart = new int[size];
+			mCount = new int[size];
+			mWeights = new float[size * mTaps];
+
+			for (int i = 0; i < size; i++) {
+				float center = (i + 0.5f) * scale;
+				int start = Math.max(0, (int) Math.floor(center - support));
+				int end = Math.min(sourceSize, (int) Math.ceil(center + support));
+				end = Math.max(start + 1, Math.min(end, start + mTaps));
+				float sum = 0;
+				for (int j = start; j < end; j++) {
+					float weight = weight(filter, (j + 0.5f - center) / filterScale, scale, filterScale);
+					mWeights[i * mTaps + j - start] = weight;
+					sum += weight;
+				}
+				if (sum == 0) {
+					// nearest pixel
+					int nearest = Math.min(sourceSize - 1, (int) center);
+					start = nearest;
+					end = nearest + 1;
+					mWeights[i * mTaps] = 1;
+					sum = 1;
+				}
+				for (int j = 0; j < end - start; j++) {
+					mWeights[i * mTaps + j] /= sum;
+				}
+				mStart[i] = start;
+				mCount[i] = end - start;
+			}
+		}
+
+		/**
+		 * The weight of a source pixel by its distance from the destination pixel center in filter
+		 * units.
+		 */
+		private static float weight(
+				ImageCropView.ResizeFilter filter, float x, float scale, float filterScale) {
+			x = Math.abs(x);
+			switch (filter) {
+				case BOX:
+					// the overlap of the source pixel with the destination pixel area
+					float half = 0.5f / filterScale;
+					return Math.max(0, Math.min(x + half, 0.5f) - Math.max(x - half, -0.5f))
+							* filterScale;
+				case LANCZOS:
+					return x < LANCZOS_LOBES ? sinc(x) * sinc(x / LANCZOS_LOBES) : 0;
+				default:
+					return Math.max(0, 1 - x);
+			}
+		}
+
+		private static float sinc(float x) {
+			if (x == 0) {
+				return 1;
+			}
+			double px = Math.PI * x;
+			return (float) (Math.sin(px) / px);
+		}
+	}
+	// endregion
+
+	// region: Inner class: BandBuffers
+
+	/**
+	 * The buffers a thread resizes bands by, grown as required.
+	 */
+	private static final class BandBuffers {
+
+		private int[] mSource = new int[0];
+
+		private float[] mRows = new float[0];
+
+		private int[] mResult = new int[0];
+
+		int[] source(int size) {
+			if (mSource.length < size) {
+				mSource = new int[size];
+			}
+			return mSource;
+		}
+
+		float[] rows(int size) {
+			if (mRows.length < size) {
+				mRows = new float[size];
+			}
+			return mRows;
+		}
+
+		int[] result(int size) {
+			if (mResult.length < size) {
+				mResult = new int[size];
+			}
+			return mResult;
+		}
+	}
+	// endregion
+}
@@ -0,0 +1,332 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Output stream of saved images with a large write buffer, written through the file channel when
+ * the output is a file descriptor.<br>
+ * File URIs are written to a temp file next to the target, preallocated by the expected size, and
+ * renamed over the target on {@link #commit()} so the target never holds a partial image. Closing
+ * without commit discards the written data.<br>
+ * Also tracks process wide write throughput by storage backend, to compare storage backends.
+ */
+public final class SaveOutputStream extends OutputStream {
+
+	// region: Fields and Consts
+
+	/**
+	 * The size of the write buffer, encoders write in small chunks
+	 */
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	/**
+	 * The backend name of file URIs in the write stats
+	 */
+	public static final String BACKEND_FILE = "file";
+
+	/**
+	 * The total bytes written and time spent writing them in nanoseconds by storage backend
+	 */
+	private static final Map<String, long[]> mStats = new HashMap<>();
+
+	/**
+	 * If to sync the written data to the storage device before the write completes
+	 */
+	private static volatile boolean mSyncEnabled;
+
+	/**
+	 * The storage backend of the output, file or the content provider authority
+	 */
+	private final String mBackend;
+
+	/**
+	 * The target file of file URI, null for content URI
+	 */
+	private final File mFile;
+
+	/**
+	 * The temp file written and renamed over the target file, null for content URI
+	 */
+	private final File mTempFile;
+
+	/**
+	 * The underlying output
+	 */
+	private final OutputStream mStream;
+
+	/**
+	 * The channel of the underlying output if it is a file, null otherwise
+	 */
+	private final FileChannel mChannel;
+
+	private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	/**
+	 * The bytes written to the underlying output
+	 */
+	private long mWritten;
+
+	/**
+	 * The time spent writing to the underlying output in nanoseconds
+	 */
+	private long mWriteTime;
+
+	private boolean mCommitted;
+
+	private boolean mClosed;
+	// endregion
+
+	private SaveOutputStream(
+			String backend, File file, File tempFile, OutputStream stream, FileChannel channel) {
+		mBackend = backend;
+		mFile = file;
+		mTempFile = tempFile;
+		mStream = stream;
+		mChannel = channel;
+	}
+
+	/**
+	 * Open output to save image to the given uri.
+	 *
+	 * @param expectedSize the expected size of the written data to preallocate, 0 if unknown
+	 */
+	static SaveOutputStream open(Context context, Uri uri, long expectedSize)
+			throws FileNotFoundException {
+		if (ContentResolver.SCHEME_FILE.equals(uri.getScheme()) && uri.getPath() != null) {
+			File file = new File(uri.getPath());
+			File tempFile;
+			try {
+				tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+			} catch (IOException e) {
+				throw new FileNotFoundException(
+						"Failed to create temp file: " + uri + "\r\n" + e.getMessage());
+			}
+			FileOutputStream stream = new FileOutputStream(tempFile);
+			preallocate(stream, expectedSize);
+			return new SaveOutputStream(BACKEND_FILE, file, tempFile, stream, stream.getChannel());
+		}
+
+		OutputStream stream = context.getContentResolver().openOutputStream(uri);
+		if (stream == null) {
+			throw new FileNotFoundException("Failed to open output stream: " + uri);
+		}
+		return new SaveOutputStream(
+				uri.getAuthority() != null ? uri.getAuthority() : String.valueOf(uri.getScheme()),
+				null,
+				null,
+				stream,
+				stream instanceof FileOutputStream ? ((FileOutputStream) stream).getChannel() : null);
+	}
+
+	/**
+	 * if written data is synced to the storage device before the write completes.
+	 * default: false.
+	 */
+	public static boolean isSyncEnabled() {
+		return mSyncEnabled;
+	}
+
+	/**
+	 * Set sync of saved images to enabled/disabled.<br>
+	 * When enabled, the saved image data is flushed to the storage device before the save completes,
+	 * so it survives power loss, at the cost of the save time.
+	 */
+	public static void setSyncEnabled(boolean syncEnabled) {
+		mSyncEnabled = syncEnabled;
+	}
+
+	/**
+	 * The total bytes of saved images written to the given storage backend.
+	 *
+	 * @param backend {@link #BACKEND_FILE} or the content provider authority
+	 */
+	public static long getWrittenBytes(String backend) {
+		synchronized (mStats) {
+			long[] stats = mStats.get(backend);
+			return stats != null ? stats[0] : 0;
+		}
+	}
+
+	/**
+	 * The write throughput of saved images to the given storage backend, in bytes per second of time
+	 * spent writing (excluding encoding).
+	 *
+	 * @param backend {@link #BACKEND_FILE} or the content provider authority
+	 */
+	public static long getBytesPerSecond(String backend) {
+		synchronized (mStats) {
+			long[] stats = mStats.get(backend);
+			return stats != null && stats[1] > 0 ? stats[0] * 1000000000L / stats[1] : 0;
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (!mBuffer.hasRemaining()) {
+			flushBuffer();
+		}
+		mBuffer.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (len > mBuffer.remaining()) {
+			flushBuffer();
+			if (len >= BUFFER_SIZE) {
+				// larger than the buffer, no need to copy
+				writeOut(ByteBuffer.wrap(b, off, len));
+				return;
+			}
+		}
+		mBuffer.put(b, off, len);
+	}
+
+	/**
+	 * Complete the write: flush the buffered data, trim the preallocated size, sync if enabled and
+	 * rename the temp file over the target file.
+	 */
+	void commit() throws IOException {
+		flushBuffer();
+		long start = System.nanoTime();
+		if (mChannel != null) {
+			try {
+				// trim the preallocated or previous longer content
+				mChannel.truncate(mChannel.position());
+			} catch (IOException e) {
+				if (mTempFile != null) {
+					throw e;
+				}
+				// content provider output may be a pipe
+			}
+		}
+		if (mSyncEnabled) {
+			if (mChannel != null) {
+				mChannel.force(true);
+			} else {
+				mStream.flush();
+			}
+		}
+		mClosed = true;
+		mStream.close();
+		if (mTempFile != null && !mTempFile.renameTo(mFile)) {
+			mTempFile.delete();
+			throw new IOException("Failed to rename temp file: " + mTempFile + " to: " + mFile);
+		}
+		mCommitted = true;
+		mWriteTime += System.nanoTime() - start;
+
+		synchronized (mStats) {
+			long[] stats = mStats.get(mBackend);
+			if (stats == null) {
+				stats = new long[2];
+				mStats.put(mBackend, stats);
+			}
+			stats[0] += mWritten;
+			stats[1] += mWriteTime;
+		}
+	}
+
+	/**
+	 * Close the output, discard the written data if not committed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!mClosed) {
+			mClosed = true;
+			BitmapUtils.closeSafe(mStream);
+		}
+		if (!mCommitted && mTempFile != null) {
+			mTempFile.delete();
+		}
+	}
+
+	// region: Private methods
+
+	/**
+	 * Write the buffered data to the underlying output.
+	 */
+	private void flushBuffer() throws IOException {
+		if (mBuffer.position() > 0) {
+			mBuffer.flip();
+			writeOut(mBuffer);
+			mBuffer.clear();
+		}
+	}
+
+	/**
+	 * Write all the given data to the underlying output, through the channel if a file.
+	 */
+	private void writeOut(ByteBuffer buffer) throws IOException {
+		long start = System.nanoTime();
+		int length = buffer.remaining();
+		if (mChannel != null) {
+			while (buffer.hasRemaining()) {
+				mChannel.write(buffer);
+			}
+		} else {
+			mStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+			buffer.position(buffer.limit());
+		}
+		mWritten += length;
+		mWriteTime += System.nanoTime() - start;
+	}
+
+	/**
+	 * Allocate the storage of the given expected size for the given file, so it is written
+	 * contiguously without growing the file on every write. Best effort, not all file systems
+	 * support it.
+	 */
+	private static void preallocate(FileOutputStream stream, long expectedSize) {
+		if (expectedSize > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			Fallocate.preallocate(stream, expectedSize);
+		}
+	}
+	// endregion
+
+	// region: Inner class: Fallocate
+
+	/**
+	 * Preallocates files by {@link Os#posix_fallocate}, in its own class so the API 21 classes it
+	 * uses are loaded only when called on API 21+.
+	 */
+	@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+	private static final class Fallocate {
+
+		static void preallocate(FileOutputStream stream, long expectedSize) {
+			try {
+				Os.posix_fallocate(stream.getFD(), 0, expectedSize);
+			} catch (ErrnoException | IOException ignored) {
+				// best effort, not supported by the file system
+			}
+		}
+	}
+	// endregion
+}
@@ -0,0 +1,122 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Crop of the crop window started in the background before it is requested, see {@link
+ * ImageCropView#setSpeculativeCropEnabled(boolean)}.<br>
+ * The crop request it matches takes its cropped bitmap instead of cropping again, cropping on the
+ * requesting thread if not started yet or waiting for it otherwise. A speculative crop not taken is
+ * released: its decode is aborted, or its bitmap recycled once cropped.
+ */
+final class SpeculativeCrop extends FutureTask<BitmapCroppingWorkerTask.Result> {
+
+	// region: Fields and Consts
+
+	/**
+	 * The crop to a bitmap this runs, not saved
+	 */
+	private final CropOperation mOperation;
+
+	/**
+	 * Used to abort the running decode when released
+	 */
+	private final DecodeCancelSignal mCancelSignal;
+
+	/**
+	 * Set once by the request taking the cropped bitmap or by the release, whichever is first
+	 */
+	private final AtomicBoolean mClaimed = new AtomicBoolean();
+	// endregion
+
+	SpeculativeCrop(CropOperation operation) {
+		this(operation, new DecodeCancelSignal());
+	}
+
+	private SpeculativeCrop(
+			final CropOperation operation, final DecodeCancelSignal cancelSignal) {
+		super(
+				new Callable<BitmapCroppingWorkerTask.Result>() {
+					@Override
+					public BitmapCroppingWorkerTask.Result call() throws Exception {
+						return operation.crop(cancelSignal);
+					}
+				});
+		mOperation = operation;
+		mCancelSignal = cancelSignal;
+	}
+
+	/**
+	 * If the given crop request can take the bitmap of this crop, see {@link
+	 * CropOperation#canUseCropOf(CropOperation)}.
+	 */
+	boolean matches(CropOperation operation) {
+		return !isCancelled() && operation.canUseCropOf(mOperation);
+	}
+
+	/**
+	 * Take the cropped bitmap, cropping on the calling thread if not started yet, otherwise waiting
+	 * for the crop to complete.
+	 *
+	 * @throws CancellationException if released before taken
+	 */
+	BitmapCroppingWorkerTask.Result take() throws Exception {
+		run();
+		BitmapCroppingWorkerTask.Result result;
+		try {
+			result = get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+		if (!mClaimed.compareAndSet(false, true)) {
+			throw new CancellationException();
+		}
+		return result;
+	}
+
+	/**
+	 * Release the crop not taken, abort the running decode or recycle the cropped bitmap.
+	 */
+	void release() {
+		mCancelSignal.cancel();
+		if (!cancel(false) && mClaimed.compareAndSet(false, true)) {
+			// cropped before released
+			try {
+				release(get());
+			} catch (Exception ignored) {
+				// failed crop has no bitmap
+			}
+		}
+	}
+
+	@Override
+	protected void set(BitmapCroppingWorkerTask.Result result) {
+		super.set(result);
+		if (isCancelled()) {
+			// released while cropping, the result is not kept
+			release(result);
+		}
+	}
+
+	private static void release(BitmapCroppingWorkerTask.Result result) {
+		if (result != null) {
+			BitmapCroppingWorkerTask.releaseCancelled(result.bitmap);
+		}
+	}
+}
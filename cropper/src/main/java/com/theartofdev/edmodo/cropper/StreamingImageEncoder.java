@@ -0,0 +1,108 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encoder of an image given row by row, so an image can be encoded without ever being whole in
+ * memory, unlike {@link Bitmap#compress(Bitmap.CompressFormat, int, OutputStream)}.
+ */
+abstract class StreamingImageEncoder {
+
+	/**
+	 * The stream the encoded image is written to
+	 */
+	final OutputStream mOut;
+
+	/**
+	 * The width of the encoded image
+	 */
+	final int mWidth;
+
+	/**
+	 * The height of the encoded image
+	 */
+	final int mHeight;
+
+	/**
+	 * The number of rows written so far
+	 */
+	int mRowsWritten;
+
+	StreamingImageEncoder(OutputStream out, int width, int height) {
+		mOut = out;
+		mWidth = width;
+		mHeight = height;
+	}
+
+	/**
+	 * If streaming encoding to the given format is supported.
+	 */
+	static boolean isSupported(Bitmap.CompressFormat format) {
+		return format == Bitmap.CompressFormat.JPEG || format == Bitmap.CompressFormat.PNG;
+	}
+
+	/**
+	 * Create streaming encoder of image with the given dimensions to the given format, the image
+	 * header is written to the stream.
+	 *
+	 * @param quality the quality (0 - 100) for lossy formats
+	 */
+	static StreamingImageEncoder create(
+			OutputStream out, Bitmap.CompressFormat format, int width, int height, int quality)
+			throws IOException {
+		switch (format) {
+			case JPEG:
+				return new StreamingJpegEncoder(out, width, height, quality);
+			case PNG:
+				return new StreamingPngEncoder(out, width, height);
+			default:
+				throw new IllegalArgumentException("Streaming encoding not supported: " + format);
+		}
+	}
+
+	/**
+	 * Encode the next rows of the image.
+	 *
+	 * @param pixels the rows pixels as ARGB colors (not premultiplied)
+	 * @param offset the index of the first pixel of the first row
+	 * @param stride the number of entries between rows
+	 * @param rows   the number of rows to encode
+	 */
+	final void writeRows(int[] pixels, int offset, int stride, int rows) throws IOException {
+		if (mRowsWritten + rows > mHeight) {
+			throw new IllegalStateException("Rows exceed image height: " + (mRowsWritten + rows));
+		}
+		onWriteRows(pixels, offset, stride, rows);
+		mRowsWritten += rows;
+	}
+
+	/**
+	 * Complete the encoded image after all rows were written, the stream is not closed.
+	 */
+	final void finish() throws IOException {
+		if (mRowsWritten != mHeight) {
+			throw new IllegalStateException("Image rows missing: " + mRowsWritten + "/" + mHeight);
+		}
+		onFinish();
+		mOut.flush();
+	}
+
+	abstract void onWriteRows(int[] pixels, int offset, int stride, int rows) throws IOException;
+
+	abstract void onFinish() throws IOException;
+}
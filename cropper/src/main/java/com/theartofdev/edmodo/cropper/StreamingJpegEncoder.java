@@ -0,0 +1,473 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Baseline JPEG (JFIF) encoder of image given row by row.<br>
+ * YCbCr with 4:2:0 chroma subsampling, the standard quantization tables scaled by quality and the
+ * standard Huffman tables, same as libjpeg defaults used by {@link
+ * android.graphics.Bitmap#compress}.<br>
+ * Only a single MCU row (16 image rows) is buffered.
+ */
+final class StreamingJpegEncoder extends StreamingImageEncoder {
+
+	// region: Fields and Consts
+
+	/**
+	 * The number of image rows in MCU row
+	 */
+	private static final int MCU_SIZE = 16;
+
+	/**
+	 * The natural (row major) index of the coefficients in zig-zag order
+	 */
+	static final int[] ZIGZAG = {
+			0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5, 12, 19, 26, 33, 40, 48, 41, 34, 27,
+			20, 13, 6, 7, 14, 21, 28, 35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51, 58,
+			59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63
+	};
+
+	private static final int[] LUMINANCE_QUANT = {
+			16, 11, 10, 16, 24, 40, 51, 61, 12, 12, 14, 19, 26, 58, 60, 55, 14, 13, 16, 24, 40, 57, 69,
+			56, 14, 17, 22, 29, 51, 87, 80, 62, 18, 22, 37, 56, 68, 109, 103, 77, 24, 35, 55, 64, 81, 104,
+			113, 92, 49, 64, 78, 87, 103, 121, 120, 101, 72, 92, 95, 98, 112, 100, 103, 99
+	};
+
+	private static final int[] CHROMINANCE_QUANT = {
+			17, 18, 24, 47, 99, 99, 99, 99, 18, 21, 26, 66, 99, 99, 99, 99, 24, 26, 56, 99, 99, 99, 99,
+			99, 47, 66, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99,
+			99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99
+	};
+
+	private static final float[] AAN_SCALE = {
+			1.0f, 1.387039845f, 1.306562965f, 1.175875602f, 1.0f, 0.785694958f, 0.541196100f, 0.275899379f
+	};
+
+	static final int[] DC_LUMINANCE_BITS = {0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0};
+
+	static final int[] DC_CHROMINANCE_BITS = {0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0};
+
+	static final int[] DC_VALUES = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+
+	static final int[] AC_LUMINANCE_BITS =
+			{0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d};
+
+	static final int[] AC_LUMINANCE_VALUES = {
+			0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13,
+			0x51, 0x61, 0x07, 0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08, 0x23, 0x42,
+			0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0, 0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a,
+			0x16, 0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28, 0x29, 0x2a, 0x34, 0x35,
+			0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49, 0x4a,
+			0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67,
+			0x68, 0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x83, 0x84,
+			0x85, 0x86, 0x87, 0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98,
+			0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3,
+			0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5, 0xc6, 0xc7,
+			0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1,
+			0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4,
+			0xf5, 0xf6, 0xf7, 0xf8, 0xf9, 0xfa
+	};
+
+	static final int[] AC_CHROMINANCE_BITS =
+			{0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77};
+
+	static final int[] AC_CHROMINANCE_VALUES = {
+			0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51,
+			0x07, 0x61, 0x71, 0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1,
+			0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0, 0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24,
+			0x34, 0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26, 0x27, 0x28, 0x29, 0x2a,
+			0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+			0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66,
+			0x67, 0x68, 0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x82,
+			0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96,
+			0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7, 0xa8, 0xa9, 0xaa,
+			0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+			0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9,
+			0xda, 0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4,
+			0xf5, 0xf6, 0xf7, 0xf8, 0xf9, 0xfa
+	};
+
+	/**
+	 * The quantization tables scaled by quality, in natural order
+	 */
+	private final int[] mLuminanceQuant = new int[64];
+
+	private final int[] mChrominanceQuant = new int[64];
+
+	/**
+	 * The quantization divisors including the AAN DCT scaling, in natural order
+	 */
+	private final float[] mLuminanceDivisors = new float[64];
+
+	private final float[] mChrominanceDivisors = new float[64];
+
+	/**
+	 * Huffman codes and code lengths by symbol
+	 */
+	private final int[] mDcLuminanceCodes = new int[256];
+
+	private final int[] mDcLuminanceSizes = new int[256];
+
+	private final int[] mAcLuminanceCodes = new int[256];
+
+	private final int[] mAcLuminanceSizes = new int[256];
+
+	private final int[] mDcChrominanceCodes = new int[256];
+
+	private final int[] mDcChrominanceSizes = new int[256];
+
+	private final int[] mAcChrominanceCodes = new int[256];
+
+	private final int[] mAcChrominanceSizes = new int[256];
+
+	/**
+	 * The image rows of the current MCU row
+	 */
+	private final int[] mRows;
+
+	/**
+	 * The number of rows buffered in the current MCU row
+	 */
+	private int mBufferedRows;
+
+	/**
+	 * The blocks of the MCU being encoded, 4 luminance and 2 chrominance
+	 */
+	private final float[][] mY = new float[4][64];
+
+	private final float[] mCb = new float[64];
+
+	private final float[] mCr = new float[64];
+
+	private final int[] mCoefficients = new int[64];
+
+	private int mDcY;
+
+	private int mDcCb;
+
+	private int mDcCr;
+
+	/**
+	 * Entropy coded bits not yet written to the stream
+	 */
+	private int mBitBuffer;
+
+	private int mBitCount;
+	// endregion
+
+	StreamingJpegEncoder(OutputStream out, int width, int height, int quality) throws IOException {
+		super(out, width, height);
+		if (width < 1 || height < 1 || width > 65535 || height > 65535) {
+			throw new IOException("Invalid JPEG dimensions: " + width + "x" + height);
+		}
+		mRows = new int[width * MCU_SIZE];
+
+		initQuantTables(quality);
+		initHuffmanCodes(DC_LUMINANCE_BITS, DC_VALUES, mDcLuminanceCodes, mDcLuminanceSizes);
+		initHuffmanCodes(DC_CHROMINANCE_BITS, DC_VALUES, mDcChrominanceCodes, mDcChrominanceSizes);
+		initHuffmanCodes(
+				AC_LUMINANCE_BITS, AC_LUMINANCE_VALUES, mAcLuminanceCodes, mAcLuminanceSizes);
+		initHuffmanCodes(
+				AC_CHROMINANCE_BITS, AC_CHROMINANCE_VALUES, mAcChrominanceCodes, mAcChrominanceSizes);
+
+		writeHeaders();
+	}
+
+	@Override
+	void onWriteRows(int[] pixels, int offset, int stride, int rows) throws IOException {
+		for (int i = 0; i < rows; i++) {
+			System.arraycopy(pixels, offset + i * stride, mRows, mBufferedRows * mWidth, mWidth);
+			mBufferedRows++;
+			if (mBufferedRows == MCU_SIZE) {
+				encodeMcuRow();
+			}
+		}
+	}
+
+	@Override
+	void onFinish() throws IOException {
+		if (mBufferedRows > 0) {
+			encodeMcuRow();
+		}
+
+		// pad the last byte with 1-bits
+		if (mBitCount > 0) {
+			writeBits(0x7F, 8 - mBitCount);
+		}
+		writeMarker(0xD9);
+	}
+
+	// region: Private methods
+
+	/**
+	 * Scale the standard quantization tables by quality the same as libjpeg.
+	 */
+	private void initQuantTables(int quality) {
+		quality = Math.max(1, Math.min(100, quality));
+		int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+		for (int i = 0; i < 64; i++) {
+			mLuminanceQuant[i] = Math.max(1, Math.min(255, (LUMINANCE_QUANT[i] * scale + 50) / 100));
+			mChrominanceQuant[i] = Math.max(1, Math.min(255, (CHROMINANCE_QUANT[i] * scale + 50) / 100));
+
+			float aan = AAN_SCALE[i / 8] * AAN_SCALE[i % 8] * 8;
+			mLuminanceDivisors[i] = 1f / (mLuminanceQuant[i] * aan);
+			mChrominanceDivisors[i] = 1f / (mChrominanceQuant[i] * aan);
+		}
+	}
+
+	/**
+	 * Generate the Huffman codes of the symbols from the code length counts (JPEG annex C).
+	 */
+	static void initHuffmanCodes(int[] bits, int[] values, int[] codes, int[] sizes) {
+		int code = 0;
+		int k = 0;
+		for (int length = 1; length <= 16; length++) {
+			for (int i = 0; i < bits[length - 1]; i++) {
+				codes[values[k]] = code;
+				sizes[values[k]] = length;
+				code++;
+				k++;
+			}
+			code <<= 1;
+		}
+	}
+
+	private void writeHeaders() throws IOException {
+		writeMarker(0xD8);
+
+		// JFIF APP0
+		writeMarker(0xE0);
+		writeShort(16);
+		mOut.write(new byte[] {'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0});
+
+		writeMarker(0xDB);
+		writeShort(2 + 65 * 2);
+		mOut.write(0);
+		for (int i = 0; i < 64; i++) {
+			mOut.write(mLuminanceQuant[ZIGZAG[i]]);
+		}
+		mOut.write(1);
+		for (int i = 0; i < 64; i++) {
+			mOut.write(mChrominanceQuant[ZIGZAG[i]]);
+		}
+
+		// baseline frame, luminance sampled 2x2 with table 0, chrominance 1x1 with table 1
+		writeMarker(0xC0);
+		writeShort(17);
+		mOut.write(8);
+		writeShort(mHeight);
+		writeShort(mWidth);
+		mOut.write(3);
+		mOut.write(new byte[] {1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1});
+
+		writeMarker(0xC4);
+		writeShort(2 + 4 * 17 + 2 * DC_VALUES.length + 2 * AC_LUMINANCE_VALUES.length);
+		writeHuffmanTable(0x00, DC_LUMINANCE_BITS, DC_VALUES);
+		writeHuffmanTable(0x10, AC_LUMINANCE_BITS, AC_LUMINANCE_VALUES);
+		writeHuffmanTable(0x01, DC_CHROMINANCE_BITS, DC_VALUES);
+		writeHuffmanTable(0x11, AC_CHROMINANCE_BITS, AC_CHROMINANCE_VALUES);
+
+		writeMarker(0xDA);
+		writeShort(12);
+		mOut.write(new byte[] {3, 1, 0x00, 2, 0x11, 3, 0x11, 0, 63, 0});
+	}
+
+	private void writeHuffmanTable(int tableClassId, int[] bits, int[] values) throws IOException {
+		mOut.write(tableClassId);
+		for (int bit : bits) {
+			mOut.write(bit);
+		}
+		for (int value : values) {
+			mOut.write(value);
+		}
+	}
+
+	/**
+	 * Encode the buffered rows as MCU row, rows and columns beyond the image edge repeat the edge
+	 * pixels.
+	 */
+	private void encodeMcuRow() throws IOException {
+		for (int mcuX = 0; mcuX < mWidth; mcuX += MCU_SIZE) {
+			for (int i = 0; i < 64; i++) {
+				mCb[i] = 0;
+				mCr[i] = 0;
+			}
+			for (int y = 0; y < MCU_SIZE; y++) {
+				int rowOffset = Math.min(y, mBufferedRows - 1) * mWidth;
+				for (int x = 0; x < MCU_SIZE; x++) {
+					int color = mRows[rowOffset + Math.min(mcuX + x, mWidth - 1)];
+					int r = (color >> 16) & 0xFF;
+					int g = (color >> 8) & 0xFF;
+					int b = color & 0xFF;
+
+					// level shifted by -128, the chrominance offset of +128 cancels out
+					float[] block = mY[(y / 8) * 2 + x / 8];
+					block[(y % 8) * 8 + x % 8] = 0.299f * r + 0.587f * g + 0.114f * b - 128;
+					int c = (y / 2) * 8 + x / 2;
+					mCb[c] += -0.168736f * r - 0.331264f * g + 0.5f * b;
+					mCr[c] += 0.5f * r - 0.418688f * g - 0.081312f * b;
+				}
+			}
+			for (int i = 0; i < 64; i++) {
+				mCb[i] *= 0.25f;
+				mCr[i] *= 0.25f;
+			}
+
+			for (float[] block : mY) {
+				mDcY = encodeBlock(block, mLuminanceDivisors, mDcY, true);
+			}
+			mDcCb = encodeBlock(mCb, mChrominanceDivisors, mDcCb, false);
+			mDcCr = encodeBlock(mCr, mChrominanceDivisors, mDcCr, false);
+		}
+		mBufferedRows = 0;
+	}
+
+	/**
+	 * Transform, quantize and entropy code the given block.
+	 *
+	 * @return the DC coefficient of the block for the next block of the component
+	 */
+	private int encodeBlock(float[] block, float[] divisors, int prevDc, boolean luminance)
+			throws IOException {
+		forwardDct(block);
+		for (int i = 0; i < 64; i++) {
+			// baseline AC coefficients are limited to 10 bits, may overflow by rounding at quality 100
+			mCoefficients[i] = Math.max(-1023, Math.min(1023, Math.round(block[i] * divisors[i])));
+		}
+
+		int[] dcCodes = luminance ? mDcLuminanceCodes : mDcChrominanceCodes;
+		int[] dcSizes = luminance ? mDcLuminanceSizes : mDcChrominanceSizes;
+		int[] acCodes = luminance ? mAcLuminanceCodes : mAcChrominanceCodes;
+		int[] acSizes = luminance ? mAcLuminanceSizes : mAcChrominanceSizes;
+
+		int dc = mCoefficients[0];
+		int diff = dc - prevDc;
+		int size = bitLength(diff);
+		writeBits(dcCodes[size], dcSizes[size]);
+		if (size > 0) {
+			writeBits(diff < 0 ? diff - 1 : diff, size);
+		}
+
+		int run = 0;
+		for (int k = 1; k < 64; k++) {
+			int value = mCoefficients[ZIGZAG[k]];
+			if (value == 0) {
+				run++;
+			} else {
+				while (run > 15) {
+					writeBits(acCodes[0xF0], acSizes[0xF0]);
+					run -= 16;
+				}
+				size = bitLength(value);
+				int symbol = (run << 4) | size;
+				writeBits(acCodes[symbol], acSizes[symbol]);
+				writeBits(value < 0 ? value - 1 : value, size);
+				run = 0;
+			}
+		}
+		if (run > 0) {
+			writeBits(acCodes[0x00], acSizes[0x00]);
+		}
+		return dc;
+	}
+
+	/**
+	 * Forward DCT in place by the AAN algorithm, the output is scaled by the AAN factors that are
+	 * included in the quantization divisors.
+	 */
+	private static void forwardDct(float[] data) {
+		for (int pass = 0; pass < 2; pass++) {
+			// first pass on rows, second on columns
+			int step = pass == 0 ? 1 : 8;
+			int next = pass == 0 ? 8 : 1;
+			for (int i = 0, p = 0; i < 8; i++, p += next) {
+				float tmp0 = data[p] + data[p + 7 * step];
+				float tmp7 = data[p] - data[p + 7 * step];
+				float tmp1 = data[p + step] + data[p + 6 * step];
+				float tmp6 = data[p + step] - data[p + 6 * step];
+				float tmp2 = data[p + 2 * step] + data[p + 5 * step];
+				float tmp5 = data[p + 2 * step] - data[p + 5 * step];
+				float tmp3 = data[p + 3 * step] + data[p + 4 * step];
+				float tmp4 = data[p + 3 * step] - data[p + 4 * step];
+
+				// even part
+				float tmp10 = tmp0 + tmp3;
+				float tmp13 = tmp0 - tmp3;
+				float tmp11 = tmp1 + tmp2;
+				float tmp12 = tmp1 - tmp2;
+
+				data[p] = tmp10 + tmp11;
+				data[p + 4 * step] = tmp10 - tmp11;
+
+				float z1 = (tmp12 + tmp13) * 0.707106781f;
+				data[p + 2 * step] = tmp13 + z1;
+				data[p + 6 * step] = tmp13 - z1;
+
+				// odd part
+				tmp10 = tmp4 + tmp5;
+				tmp11 = tmp5 + tmp6;
+				tmp12 = tmp6 + tmp7;
+
+				float z5 = (tmp10 - tmp12) * 0.382683433f;
+				float z2 = 0.541196100f * tmp10 + z5;
+				float z4 = 1.306562965f * tmp12 + z5;
+				float z3 = tmp11 * 0.707106781f;
+
+				float z11 = tmp7 + z3;
+				float z13 = tmp7 - z3;
+
+				data[p + 5 * step] = z13 + z2;
+				data[p + 3 * step] = z13 - z2;
+				data[p + step] = z11 + z4;
+				data[p + 7 * step] = z11 - z4;
+			}
+		}
+	}
+
+	/**
+	 * The number of bits required for the magnitude of the given value.
+	 */
+	private static int bitLength(int value) {
+		return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+	}
+
+	/**
+	 * Write the low bits of the given value to the entropy coded data, stuffing 0 after 0xFF bytes.
+	 */
+	private void writeBits(int value, int size) throws IOException {
+		mBitBuffer = (mBitBuffer << size) | (value & ((1 << size) - 1));
+		mBitCount += size;
+		while (mBitCount >= 8) {
+			int b = (mBitBuffer >> (mBitCount - 8)) & 0xFF;
+			mOut.write(b);
+			if (b == 0xFF) {
+				mOut.write(0);
+			}
+			mBitCount -= 8;
+		}
+	}
+
+	private void writeMarker(int marker) throws IOException {
+		mOut.write(0xFF);
+		mOut.write(marker);
+	}
+
+	private void writeShort(int value) throws IOException {
+		mOut.write((value >> 8) & 0xFF);
+		mOut.write(value & 0xFF);
+	}
+	// endregion
+}
@@ -0,0 +1,195 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * PNG encoder of image given row by row.<br>
+ * 8 bit RGBA, rows are Paeth filtered and deflated into IDAT chunks as they are written, only the
+ * previous row is kept.
+ */
+final class StreamingPngEncoder extends StreamingImageEncoder {
+
+	// region: Fields and Consts
+
+	private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+	/**
+	 * The size of the deflated data in each IDAT chunk
+	 */
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private static final int FILTER_PAETH = 4;
+
+	private final CRC32 mCrc = new CRC32();
+
+	/**
+	 * Deflates the filtered rows into IDAT chunks
+	 */
+	private final DeflaterOutputStream mDeflater;
+
+	/**
+	 * The RGBA bytes of the current and previous rows
+	 */
+	private byte[] mRow;
+
+	private byte[] mPrevRow;
+
+	/**
+	 * The filtered row with the filter type byte
+	 */
+	private final byte[] mFilteredRow;
+	// endregion
+
+	StreamingPngEncoder(OutputStream out, int width, int height) throws IOException {
+		super(out, width, height);
+		if (width < 1 || height < 1) {
+			throw new IOException("Invalid PNG dimensions: " + width + "x" + height);
+		}
+		mRow = new byte[width * 4];
+		mPrevRow = new byte[width * 4];
+		mFilteredRow = new byte[width * 4 + 1];
+
+		mOut.write(SIGNATURE);
+		byte[] header = new byte[13];
+		putInt(header, 0, width);
+		putInt(header, 4, height);
+		header[8] = 8; // bit depth
+		header[9] = 6; // color type RGBA
+		writeChunk("IHDR", header, 0, header.length);
+
+		mDeflater = new DeflaterOutputStream(new ChunkOutputStream());
+	}
+
+	@Override
+	void onWriteRows(int[] pixels, int offset, int stride, int rows) throws IOException {
+		for (int i = 0; i < rows; i++) {
+			int rowOffset = offset + i * stride;
+			for (int x = 0, b = 0; x < mWidth; x++) {
+				int color = pixels[rowOffset + x];
+				mRow[b++] = (byte) (color >> 16);
+				mRow[b++] = (byte) (color >> 8);
+				mRow[b++] = (byte) color;
+				mRow[b++] = (byte) (color >> 24);
+			}
+			filterPaeth();
+			mDeflater.write(mFilteredRow);
+
+			byte[] swap = mPrevRow;
+			mPrevRow = mRow;
+			mRow = swap;
+		}
+	}
+
+	@Override
+	void onFinish() throws IOException {
+		// writes the remaining deflated data as the last IDAT chunk and frees the native deflater
+		mDeflater.close();
+		writeChunk("IEND", new byte[0], 0, 0);
+	}
+
+	// region: Private methods
+
+	/**
+	 * Filter the current row by the Paeth predictor of left, up and up-left bytes.
+	 */
+	private void filterPaeth() {
+		mFilteredRow[0] = FILTER_PAETH;
+		for (int i = 0; i < mRow.length; i++) {
+			int a = i >= 4 ? mRow[i - 4] & 0xFF : 0;
+			int b = mPrevRow[i] & 0xFF;
+			int c = i >= 4 ? mPrevRow[i - 4] & 0xFF : 0;
+			int p = a + b - c;
+			int pa = Math.abs(p - a);
+			int pb = Math.abs(p - b);
+			int pc = Math.abs(p - c);
+			int predictor = pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+			mFilteredRow[i + 1] = (byte) (mRow[i] - predictor);
+		}
+	}
+
+	private void writeChunk(String type, byte[] data, int offset, int length) throws IOException {
+		byte[] typeBytes = type.getBytes("US-ASCII");
+		byte[] intBytes = new byte[4];
+		putInt(intBytes, 0, length);
+		mOut.write(intBytes);
+		mOut.write(typeBytes);
+		mOut.write(data, offset, length);
+
+		mCrc.reset();
+		mCrc.update(typeBytes);
+		mCrc.update(data, offset, length);
+		putInt(intBytes, 0, (int) mCrc.getValue());
+		mOut.write(intBytes);
+	}
+
+	private static void putInt(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) (value >> 24);
+		buffer[offset + 1] = (byte) (value >> 16);
+		buffer[offset + 2] = (byte) (value >> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+	// endregion
+
+	// region: Inner class: ChunkOutputStream
+
+	/**
+	 * Collects the deflated data into IDAT chunks of {@link #CHUNK_SIZE}.
+	 */
+	private final class ChunkOutputStream extends OutputStream {
+
+		private final byte[] mBuffer = new byte[CHUNK_SIZE];
+
+		private int mCount;
+
+		@Override
+		public void write(int b) throws IOException {
+			mBuffer[mCount++] = (byte) b;
+			if (mCount == mBuffer.length) {
+				flush();
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int count = Math.min(len, mBuffer.length - mCount);
+				System.arraycopy(b, off, mBuffer, mCount, count);
+				mCount += count;
+				off += count;
+				len -= count;
+				if (mCount == mBuffer.length) {
+					flush();
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (mCount > 0) {
+				writeChunk("IDAT", mBuffer, 0, mCount);
+				mCount = 0;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+	// endregion
+}
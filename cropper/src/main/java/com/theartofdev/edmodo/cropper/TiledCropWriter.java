@@ -0,0 +1,316 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+
+import java.io.IOException;
+
+/**
+ * Writes full resolution crop of image loaded from URI to URI without ever holding the whole
+ * cropped image in memory, for crops too large for the heap.<br>
+ * The crop rectangle is decoded in bands by the region decoder, each band is rotated/flipped into
+ * the output rows and streamed to {@link StreamingImageEncoder}, so peak memory is bounded by the
+ * band size and not the output size. Bands large enough are decoded in parallel by the session
+ * {@link ParallelRegionDecoder}.<br>
+ * Supports rotation by multiples of 90 degrees and the formats streaming encoding supports.
+ */
+final class TiledCropWriter {
+
+	/**
+	 * The max memory of the pixels of a band, held 3 times: decoded, as pixels and as output rows
+	 */
+	private static final int BAND_MAX_BYTES = 4 * 1024 * 1024;
+
+	/**
+	 * The number of output rows of a band is a multiple of this, the JPEG MCU row height
+	 */
+	private static final int BAND_ROWS_ALIGN = 16;
+
+	private TiledCropWriter() {
+	}
+
+	/**
+	 * If the crop with the given parameters can be written tiled.
+	 */
+	static boolean isSupported(
+			int degreesRotated, int reqWidth, int reqHeight, Bitmap.CompressFormat format) {
+		return degreesRotated % 90 == 0
+				&& reqWidth <= 0
+				&& reqHeight <= 0
+				&& StreamingImageEncoder.isSupported(format);
+	}
+
+	/**
+	 * If the cropped image of the given rectangle is too large to crop as a single bitmap in the
+	 * memory currently available for bitmaps, including the rotated copy, see {@link MemoryBudget}.
+	 */
+	static boolean exceedsAvailableMemory(Context context, Rect rect) {
+		return (long) rect.width() * rect.height() * 4 * 2
+				> MemoryBudget.getAvailableBitmapBytes(context);
+	}
+
+	/**
+	 * Crop the given rectangle of the image and write it to the given uri band by band.
+	 *
+	 * @param rect                 the rectangle to crop in the source image coordinates
+	 * @param regionDecoderSession the session to decode bands by, null to open a decoder
+	 * @param cancelSignal         checked between bands to stop the crop, null if not cancellable
+	 */
+	static void cropToUri(
+			Context context,
+			Uri uri,
+			Rect rect,
+			int degreesRotated,
+			boolean flipHorizontally,
+			boolean flipVertically,
+			RegionDecoderSession regionDecoderSession,
+			DecodeCancelSignal cancelSignal,
+			Uri saveUri,
+			Bitmap.CompressFormat saveCompressFormat,
+			int saveCompressQuality)
+			throws IOException {
+
+		BitmapRegionDecoder decoder = null;
+		boolean sessionDecoder = false;
+		SaveOutputStream outputStream = null;
+		try {
+			if (regionDecoderSession != null) {
+				decoder = regionDecoderSession.acquire();
+				sessionDecoder = decoder != null;
+			}
+			if (decoder == null) {
+				decoder = BitmapUtils.newRegionDecoder(context.getContentResolver(), uri);
+			}
+			ParallelRegionDecoder parallelDecoder =
+					regionDecoderSession != null ? regionDecoderSession.getParallelDecoder() : null;
+
+			outputStream =
+					SaveOutputStream.open(
+							context,
+							saveUri,
+							BitmapUtils.estimateCompressedSize(
+									(long) rect.width() * rect.height(), saveCompressFormat, saveCompressQuality));
+
+			BandMapper mapper =
+					new BandMapper(
+							rect.width(), rect.height(), degreesRotated, flipHorizontally, flipVertically);
+			StreamingImageEncoder encoder =
+					StreamingImageEncoder.create(
+							outputStream,
+							saveCompressFormat,
+							mapper.mOutWidth,
+							mapper.mOutHeight,
+							saveCompressQuality);
+
+			// the source band of output rows spans the crop width, or height if rotated by 90
+			int sourceBandLength = degreesRotated % 180 == 0 ? rect.width() : rect.height();
+			int bandRows = BAND_MAX_BYTES / (sourceBandLength * 4);
+			bandRows = Math.max(BAND_ROWS_ALIGN, bandRows - bandRows % BAND_ROWS_ALIGN);
+
+			int[] bandPixels = new int[bandRows * mapper.mOutWidth];
+			int[] sourcePixels = new int[bandRows * sourceBandLength];
+			Rect sourceRect = new Rect();
+			for (int outY = 0; outY < mapper.mOutHeight; outY += bandRows) {
+				if (cancelSignal != null) {
+					cancelSignal.throwIfCancelled();
+				}
+				int rows = Math.min(bandRows, mapper.mOutHeight - outY);
+				mapper.getSourceRect(outY, rows, sourceRect);
+
+				Bitmap band = decodeBand(decoder, parallelDecoder, rect, sourceRect, cancelSignal);
+				try {
+					band.getPixels(
+							sourcePixels,
+							0,
+							sourceRect.width(),
+							0,
+							0,
+							sourceRect.width(),
+							sourceRect.height());
+				} finally {
+					BitmapPool.recycle(band);
+				}
+
+				mapper.mapBand(sourcePixels, sourceRect, outY, rows, bandPixels);
+				encoder.writeRows(bandPixels, 0, mapper.mOutWidth, rows);
+			}
+			encoder.finish();
+			outputStream.commit();
+		} finally {
+			BitmapUtils.closeSafe(outputStream);
+			if (sessionDecoder) {
+				regionDecoderSession.release(decoder);
+			} else if (decoder != null) {
+				decoder.recycle();
+			}
+		}
+	}
+
+	/**
+	 * Decode the given band of the crop at full resolution, into a pooled bitmap if possible.
+	 *
+	 * @param parallelDecoder decodes the band in parallel if large enough, null to not
+	 * @param sourceRect      the band rectangle relative to the crop rectangle
+	 */
+	private static Bitmap decodeBand(
+			BitmapRegionDecoder decoder,
+			ParallelRegionDecoder parallelDecoder,
+			Rect rect,
+			Rect sourceRect,
+			DecodeCancelSignal cancelSignal)
+			throws IOException {
+		Rect regionRect = new Rect(sourceRect);
+		regionRect.offset(rect.left, rect.top);
+
+		Bitmap band;
+		if (parallelDecoder != null && parallelDecoder.shouldDecodeParallel(regionRect, 1)) {
+			band = parallelDecoder.decodeRegion(decoder, regionRect, 1, cancelSignal);
+		} else {
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			BitmapUtils.setReusableBitmap(options, regionRect.width(), regionRect.height());
+			try {
+				band = decoder.decodeRegion(regionRect, options);
+			} catch (IllegalArgumentException e) {
+				if (options.inBitmap == null) {
+					throw e;
+				}
+				BitmapUtils.releaseReusableBitmap(options);
+				band = decoder.decodeRegion(regionRect, options);
+			}
+		}
+		if (band == null
+				|| band.getWidth() < sourceRect.width()
+				|| band.getHeight() < sourceRect.height()) {
+			if (band != null) {
+				BitmapPool.recycle(band);
+			}
+			throw new IOException("Failed to decode crop band: " + regionRect);
+		}
+		return band;
+	}
+
+	// region: Inner class: BandMapper
+
+	/**
+	 * Maps output pixels of the rotated and flipped crop to the source pixels of the crop.<br>
+	 * The same transformation as rotating by degrees (clockwise) and then flipping.
+	 */
+	private static final class BandMapper {
+
+		/**
+		 * The dimensions of the crop in the source image
+		 */
+		private final int mWidth;
+
+		private final int mHeight;
+
+		/**
+		 * The dimensions of the output image after rotation
+		 */
+		final int mOutWidth;
+
+		final int mOutHeight;
+
+		private final int mDegrees;
+
+		private final boolean mFlipHorizontally;
+
+		private final boolean mFlipVertically;
+
+		private final int[] mPoint = new int[2];
+
+		BandMapper(
+				int width,
+				int height,
+				int degreesRotated,
+				boolean flipHorizontally,
+				boolean flipVertically) {
+			mWidth = width;
+			mHeight = height;
+			mDegrees = (degreesRotated % 360 + 360) % 360;
+			mOutWidth = mDegrees % 180 == 0 ? width : height;
+			mOutHeight = mDegrees % 180 == 0 ? height : width;
+			mFlipHorizontally = flipHorizontally;
+			mFlipVertically = flipVertically;
+		}
+
+		/**
+		 * Get the rectangle in the crop of the source pixels of the given output rows.
+		 */
+		void getSourceRect(int outY, int rows, Rect sourceRect) {
+			map(0, outY);
+			int x0 = mPoint[0];
+			int y0 = mPoint[1];
+			map(mOutWidth - 1, outY + rows - 1);
+			sourceRect.set(
+					Math.min(x0, mPoint[0]),
+					Math.min(y0, mPoint[1]),
+					Math.max(x0, mPoint[0]) + 1,
+					Math.max(y0, mPoint[1]) + 1);
+		}
+
+		/**
+		 * Fill the given output rows from the given source pixels of the band.
+		 */
+		void mapBand(int[] sourcePixels, Rect sourceRect, int outY, int rows, int[] bandPixels) {
+			int stride = sourceRect.width();
+			for (int row = 0; row < rows; row++) {
+				map(0, outY + row);
+				int index = (mPoint[1] - sourceRect.top) * stride + mPoint[0] - sourceRect.left;
+				int step = 0;
+				if (mOutWidth > 1) {
+					map(1, outY + row);
+					int next = (mPoint[1] - sourceRect.top) * stride + mPoint[0] - sourceRect.left;
+					step = next - index;
+				}
+				int out = row * mOutWidth;
+				for (int x = 0; x < mOutWidth; x++, index += step) {
+					bandPixels[out + x] = sourcePixels[index];
+				}
+			}
+		}
+
+		/**
+		 * Map the given output pixel to the source pixel in the crop, set in {@link #mPoint}.
+		 */
+		private void map(int outX, int outY) {
+			int x = mFlipHorizontally ? mOutWidth - 1 - outX : outX;
+			int y = mFlipVertically ? mOutHeight - 1 - outY : outY;
+			switch (mDegrees) {
+				case 90:
+					mPoint[0] = y;
+					mPoint[1] = mHeight - 1 - x;
+					break;
+				case 180:
+					mPoint[0] = mWidth - 1 - x;
+					mPoint[1] = mHeight - 1 - y;
+					break;
+				case 270:
+					mPoint[0] = mWidth - 1 - y;
+					mPoint[1] = x;
+					break;
+				default:
+					mPoint[0] = x;
+					mPoint[1] = y;
+					break;
+			}
+		}
+	}
+	// endregion
+}
@@ -0,0 +1,354 @@
+// "Therefore those skilled at the unorthodox
+// are infinite as heaven and earth,
+// inexhaustible as the great rivers.
+// When they come to an end,
+// they begin again,
+// like the days and months;
+// they die and are reborn,
+// like the four seasons."
+//
+// - Sun Tsu,
+// "The Art of War"
+
+package com.theartofdev.edmodo.cropper;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Image view that draws full resolution tiles of the visible viewport over the sampled preview
+ * bitmap, so zooming into huge images stays sharp.<br>
+ * The preview is the low resolution base layer, tiles are decoded by the {@link
+ * BitmapRegionDecoder} of the image {@link RegionDecoderSession} (shared with crops) on background
+ * threads at the sampling the current zoom requires, kept in LRU cache and dropped once out of
+ * view, so memory is bounded by the view size and not the source size.<br>
+ * Tiles are positioned in the preview bitmap coordinates, so the image matrix (zoom, rotation and
+ * flip) applies to them the same as to the preview.
+ */
+public class TiledImageView extends ImageView {
+
+	// region: Fields and Consts
+
+	/**
+	 * The size in pixels of a decoded tile
+	 */
+	private static final int TILE_SIZE = 512;
+
+	/**
+	 * Decoded tiles by key of sample size and grid position, accessed on UI thread only
+	 */
+	private final LruCache<String, Bitmap> mTiles =
+			new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / 16)) {
+				@Override
+				protected int sizeOf(String key, Bitmap value) {
+					// tiles decoded into pooled bitmaps may be smaller than their allocation
+					return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+							? value.getAllocationByteCount()
+							: value.getByteCount();
+				}
+
+				@Override
+				protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+					if (oldValue != newValue) {
+						BitmapPool.recycle(oldValue);
+					}
+				}
+			};
+
+	/**
+	 * The keys of tiles being decoded, accessed on UI thread only
+	 */
+	private final Set<String> mPendingTiles = new HashSet<>();
+
+	/**
+	 * The keys of tiles in the viewport on last draw, decoding of tiles no longer visible is skipped
+	 */
+	private volatile Set<String> mVisibleTiles = Collections.emptySet();
+
+	/**
+	 * Used to deliver decoded tiles to the UI thread
+	 */
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+	private final Matrix mInverseMatrix = new Matrix();
+
+	private final float[] mMatrixValues = new float[9];
+
+	private final RectF mViewportRect = new RectF();
+
+	private final Rect mTileRect = new Rect();
+
+	private final RectF mTileDrawRect = new RectF();
+
+	private final Paint mTilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+	/**
+	 * The region decoder session of the source image to decode tiles by, null if tiled rendering is
+	 * off
+	 */
+	private RegionDecoderSession mSession;
+
+	/**
+	 * The sample size the preview bitmap was decoded with
+	 */
+	private int mSampleSize;
+
+	/**
+	 * The executor to open the region decoder and decode tiles on
+	 */
+	private Executor mExecutor = ImageCropExecutors.getDefault();
+
+	/**
+	 * Incremented for every source change so tiles of previous source are discarded
+	 */
+	private volatile int mGeneration;
+
+	/**
+	 * The dimensions of the source image, known once the region decoder is opened
+	 */
+	private int mImageWidth;
+
+	private int mImageHeight;
+	// endregion
+
+	public TiledImageView(Context context) {
+		super(context);
+	}
+
+	public TiledImageView(Context context, AttributeSet attrs) {
+		super(context, attrs);
+	}
+
+	/**
+	 * Set the source image to decode tiles from for the currently shown preview bitmap.
+	 *
+	 * @param session    the region decoder session of the source image, owned by the caller
+	 * @param sampleSize the sample size the preview bitmap was decoded with
+	 * @param executor   the executor to decode tiles on
+	 */
+	void setTileSource(final RegionDecoderSession session, int sampleSize, Executor executor) {
+		clearTileSource();
+		mSession = session;
+		mSampleSize = sampleSize;
+		mExecutor = executor;
+		final int generation = mGeneration;
+		mExecutor.execute(
+				new Runnable() {
+					@Override
+					public void run() {
+						openDecoder(session, generation);
+					}
+				});
+	}
+
+	/**
+	 * Stop tiled rendering of the current source and release all tiles, the region decoder session
+	 * is closed by its owner.
+	 */
+	void clearTileSource() {
+		mGeneration++;
+		mSession = null;
+		mImageWidth = 0;
+		mImageHeight = 0;
+		mTiles.evictAll();
+		mPendingTiles.clear();
+		mVisibleTiles = Collections.emptySet();
+		invalidate();
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		super.onDraw(canvas);
+		if (mSession != null && mImageWidth > 0 && getDrawable() != null) {
+			drawTiles(canvas);
+		}
+	}
+
+	/**
+	 * Draw the decoded tiles of the visible viewport over the preview, request decoding of the
+	 * missing tiles and drop the tiles no longer visible.
+	 */
+	private void drawTiles(Canvas canvas) {
+		Matrix matrix = getImageMatrix();
+		matrix.getValues(mMatrixValues);
+		float scale =
+				(float) Math.hypot(mMatrixValues[Matrix.MSCALE_X], mMatrixValues[Matrix.MSKEW_Y]);
+
+		// the largest tile sampling that still has at least one pixel per screen pixel
+		int tileSampleSize = 1;
+		while (tileSampleSize * 2 * scale <= mSampleSize) {
+			tileSampleSize *= 2;
+		}
+
+		Set<String> visibleTiles = new HashSet<>();
+		if (tileSampleSize < mSampleSize && matrix.invert(mInverseMatrix)) {
+
+			// the viewport in the source image coordinates, the image matrix maps to the view content
+			// area inside the padding
+			mViewportRect.set(
+					0,
+					0,
+					getWidth() - getPaddingLeft() - getPaddingRight(),
+					getHeight() - getPaddingTop() - getPaddingBottom());
+			mInverseMatrix.mapRect(mViewportRect);
+			int left = Math.max(0, (int) (mViewportRect.left * mSampleSize));
+			int top = Math.max(0, (int) (mViewportRect.top * mSampleSize));
+			int right = Math.min(mImageWidth, (int) Math.ceil(mViewportRect.right * mSampleSize));
+			int bottom = Math.min(mImageHeight, (int) Math.ceil(mViewportRect.bottom * mSampleSize));
+
+			canvas.save();
+			canvas.translate(getPaddingLeft(), getPaddingTop());
+			canvas.concat(matrix);
+
+			int tileSize = TILE_SIZE * tileSampleSize;
+			for (int row = top / tileSize; row * tileSize < bottom; row++) {
+				for (int col = left / tileSize; col * tileSize < right; col++) {
+					String key = tileSampleSize + "_" + col + "_" + row;
+					visibleTiles.add(key);
+
+					mTileRect.set(
+							col * tileSize,
+							row * tileSize,
+							Math.min(mImageWidth, (col + 1) * tileSize),
+							Math.min(mImageHeight, (row + 1) * tileSize));
+					Bitmap tile = mTiles.get(key);
+					if (tile != null) {
+						mTileDrawRect.set(
+								mTileRect.left / (float) mSampleSize,
+								mTileRect.top / (float) mSampleSize,
+								mTileRect.right / (float) mSampleSize,
+								mTileRect.bottom / (float) mSampleSize);
+						canvas.drawBitmap(tile, null, mTileDrawRect, mTilePaint);
+					} else if (mPendingTiles.add(key)) {
+						requestTile(key, new Rect(mTileRect), tileSampleSize);
+					}
+				}
+			}
+			canvas.restore();
+		}
+
+		mVisibleTiles = visibleTiles;
+		for (String key : mTiles.snapshot().keySet()) {
+			if (!visibleTiles.contains(key)) {
+				mTiles.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Decode the given tile on background thread, then add it to the tiles cache and redraw.
+	 */
+	private void requestTile(final String key, final Rect rect, final int sampleSize) {
+		final RegionDecoderSession session = mSession;
+		final int generation = mGeneration;
+		mExecutor.execute(
+				new Runnable() {
+					@Override
+					public void run() {
+						final Bitmap tile =
+								generation == mGeneration && mVisibleTiles.contains(key)
+										? decodeTile(session, rect, sampleSize)
+										: null;
+						mHandler.post(
+								new Runnable() {
+									@Override
+									public void run() {
+										if (generation == mGeneration) {
+											mPendingTiles.remove(key);
+											if (tile != null) {
+												mTiles.put(key, tile);
+												invalidate();
+											}
+										} else if (tile != null) {
+											BitmapPool.recycle(tile);
+										}
+									}
+								});
+					}
+				});
+	}
+
+	/**
+	 * Decode the given region of the source image with the given sampling, null if failed or the
+	 * session was closed by source change.
+	 */
+	private Bitmap decodeTile(RegionDecoderSession session, Rect rect, int sampleSize) {
+		BitmapRegionDecoder decoder = null;
+		try {
+			decoder = session.acquire();
+			if (decoder == null) {
+				return null;
+			}
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inSampleSize = sampleSize;
+			BitmapUtils.setReusableBitmap(options, rect.width(), rect.height());
+			try {
+				return decoder.decodeRegion(rect, options);
+			} catch (IllegalArgumentException e) {
+				if (options.inBitmap == null) {
+					throw e;
+				}
+				BitmapUtils.releaseReusableBitmap(options);
+				return decoder.decodeRegion(rect, options);
+			}
+		} catch (Exception | OutOfMemoryError e) {
+			Log.w("AIC", "Failed to decode tile: " + rect, e);
+			return null;
+		} finally {
+			if (decoder != null) {
+				session.release(decoder);
+			}
+		}
+	}
+
+	/**
+	 * Open the region decoder of the current source on background thread to get the source image
+	 * dimensions, then start drawing tiles.
+	 */
+	private void openDecoder(RegionDecoderSession session, final int generation) {
+		BitmapRegionDecoder decoder = null;
+		try {
+			decoder = session.acquire();
+			if (decoder != null) {
+				final int width = decoder.getWidth();
+				final int height = decoder.getHeight();
+				mHandler.post(
+						new Runnable() {
+							@Override
+							public void run() {
+								if (generation == mGeneration) {
+									mImageWidth = width;
+									mImageHeight = height;
+									invalidate();
+								}
+							}
+						});
+			}
+		} catch (Exception e) {
+			Log.w("AIC", "Failed to open region decoder for tiles: " + session.getUri(), e);
+		} finally {
+			if (decoder != null) {
+				session.release(decoder);
+			}
+		}
+	}
+}
@@ -2,11 +2,13 @@ package com.theartofdev.edmodo.cropper.test;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.util.Log;
 
 import androidx.appcompat.app.AppCompatActivity;
 
 import android.view.View;
 import android.widget.ImageView;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import com.example.test.R;
@@ -15,6 +17,8 @@ import com.theartofdev.edmodo.cropper.IntentUtils;
 import com.theartofdev.edmodo.cropper.ImageCropOptions;
 import com.theartofdev.edmodo.cropper.ImageCropView;
 
+import java.util.concurrent.Callable;
+
 import static com.theartofdev.edmodo.cropper.ActivityResult.getActivityResult;
 import static com.theartofdev.edmodo.cropper.Constants.CROP_IMAGE_ACTIVITY_REQUEST_CODE;
 import static com.theartofdev.edmodo.cropper.Constants.CROP_IMAGE_ACTIVITY_RESULT_ERROR_CODE;
@@ -34,6 +38,51 @@ public class MainActivity extends AppCompatActivity {
 		new ImageCropOptions.Builder(null).setGuidelines(ImageCropView.Guidelines.ON).start(this);
 	}
 
+	/**
+	 * Run the resize benchmark in background and show its report.
+	 */
+	public void onResizeBenchmarkClick(View view) {
+		runBenchmark(
+				view,
+				"ResizeBenchmark",
+				new Callable<String>() {
+					@Override
+					public String call() {
+						return ResizeBenchmark.run(MainActivity.this);
+					}
+				});
+	}
+
+	/**
+	 * Run the parallel region decode benchmark in background and show its report.
+	 */
+	public void onRegionDecodeBenchmarkClick(View view) {
+		runBenchmark(
+				view,
+				"RegionDecodeBenchmark",
+				new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return RegionDecodeBenchmark.run(MainActivity.this);
+					}
+				});
+	}
+
+	/**
+	 * Run the single pass crop transform benchmark in background and show its report.
+	 */
+	public void onTransformCropBenchmarkClick(View view) {
+		runBenchmark(
+				view,
+				"TransformCropBenchmark",
+				new Callable<String>() {
+					@Override
+					public String call() {
+						return TransformCropBenchmark.run(MainActivity.this);
+					}
+				});
+	}
+
 	@Override
 	protected void onActivityResult(int requestCode, int resultCode, Intent data) {
 
@@ -50,4 +99,36 @@ public class MainActivity extends AppCompatActivity {
 			}
 		}
 	}
+
+	/**
+	 * Run the given benchmark in background, the given button disabled, and show its report.
+	 */
+	private void runBenchmark(final View view, final String name, final Callable<String> benchmark) {
+		final TextView resultView = (TextView) findViewById(R.id.benchmark_result);
+		resultView.setText("Running " + name + "...");
+		view.setEnabled(false);
+		new Thread(
+				new Runnable() {
+					@Override
+					public void run() {
+						String report;
+						try {
+							report = benchmark.call();
+						} catch (Throwable e) {
+							report = name + " failed: " + e;
+						}
+						Log.i(name, report);
+						final String text = report;
+						runOnUiThread(
+								new Runnable() {
+									@Override
+									public void run() {
+										resultView.setText(text);
+										view.setEnabled(true);
+									}
+								});
+					}
+				})
+				.start();
+	}
 }
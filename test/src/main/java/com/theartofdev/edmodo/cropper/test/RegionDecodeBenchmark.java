@@ -0,0 +1,175 @@
+package com.theartofdev.edmodo.cropper.test;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.net.Uri;
+
+import com.theartofdev.edmodo.cropper.CropEngine;
+import com.theartofdev.edmodo.cropper.CropSpec;
+import com.theartofdev.edmodo.cropper.ImageCropView;
+import com.theartofdev.edmodo.cropper.RegionDecoderSession;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Benchmark of decoding a region of a large JPEG in parallel, by every decode parallelism up to the
+ * core count (4 to 8) on executors of a few pool sizes.<br>
+ * Reports the best crop time (of a few runs) of every parallelism, the speedup over decoding the
+ * region on the calling thread alone by the same pool, and the row tiles the region was split to
+ * and the share of them decoded by helper threads, as counted by {@link RegionDecoderSession}.<br>
+ * The source is a synthetic JPEG of smooth gradients and fine noise, written to the cache dir and
+ * deleted when done.
+ */
+final class RegionDecodeBenchmark {
+
+	private static final int SOURCE_WIDTH = 4000;
+
+	private static final int SOURCE_HEIGHT = 3000;
+
+	/**
+	 * The cropped region, decoded at full resolution
+	 */
+	private static final Rect REGION = new Rect(400, 300, 3600, 2700);
+
+	private static final int MAX_PARALLELISM = 8;
+
+	private static final int RUNS = 3;
+
+	private RegionDecodeBenchmark() {
+	}
+
+	/**
+	 * Run the benchmark, must not be called on the UI thread.
+	 *
+	 * @return the report of the crop time and speedup of every pool size and parallelism
+	 */
+	static String run(Context context) throws IOException {
+		int cores = Runtime.getRuntime().availableProcessors();
+		int maxParallelism = Math.min(MAX_PARALLELISM, Math.max(4, cores));
+		SortedSet<Integer> poolSizes = new TreeSet<>();
+		poolSizes.add(2);
+		poolSizes.add(4);
+		poolSizes.add(Math.max(1, cores - 1));
+
+		File file = new File(context.getCacheDir(), "region_decode_benchmark.jpg");
+		StringBuilder report = new StringBuilder();
+		try {
+			writeSource(file);
+			report.append(
+					String.format(
+							Locale.US,
+							"%dx%d JPEG, region %dx%d, %d cores\n\n",
+							SOURCE_WIDTH,
+							SOURCE_HEIGHT,
+							REGION.width(),
+							REGION.height(),
+							cores));
+
+			Uri uri = Uri.fromFile(file);
+			CropSpec spec = new CropSpec.Builder(REGION).build();
+			for (int poolSize : poolSizes) {
+				report.append(String.format(Locale.US, "pool of %d threads\n", poolSize));
+				ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+				try {
+					long serial = 0;
+					for (int parallelism = 1; parallelism <= maxParallelism; parallelism++) {
+						CropEngine engine =
+								new CropEngine(context, executor).setDecodeParallelism(parallelism);
+						int decodes = RegionDecoderSession.getParallelDecodeCount();
+						int tiles = RegionDecoderSession.getParallelTileCount();
+						int helperTiles = RegionDecoderSession.getParallelHelperTileCount();
+						long best = timeCrop(engine, uri, spec);
+						decodes = RegionDecoderSession.getParallelDecodeCount() - decodes;
+						tiles = RegionDecoderSession.getParallelTileCount() - tiles;
+						helperTiles = RegionDecoderSession.getParallelHelperTileCount() - helperTiles;
+						if (parallelism == 1) {
+							serial = best;
+						}
+						report.append(
+								String.format(
+										Locale.US,
+										"  parallelism %d  %6.1f ms  %4.2fx  tiles %2d  helpers %3d%%\n",
+										parallelism,
+										best / 1e6,
+										serial / (double) best,
+										decodes > 0 ? tiles / decodes : 1,
+										tiles > 0 ? helperTiles * 100 / tiles : 0));
+					}
+				} finally {
+					executor.shutdown();
+				}
+				report.append('\n');
+			}
+		} finally {
+			//noinspection ResultOfMethodCallIgnored
+			file.delete();
+		}
+		return report.toString();
+	}
+
+	// region: Private methods
+
+	/**
+	 * The best time of cropping the region by the given engine, after a warm up crop.
+	 */
+	private static long timeCrop(CropEngine engine, Uri uri, CropSpec spec) {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i <= RUNS; i++) {
+			long start = System.nanoTime();
+			ImageCropView.CropResult result = engine.crop(uri, spec, 0, false, false);
+			long nanos = System.nanoTime() - start;
+			if (result.getError() != null) {
+				throw new RuntimeException(result.getError());
+			}
+			result.getBitmap().recycle();
+			if (i > 0) {
+				best = Math.min(best, nanos);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Write the synthetic source JPEG: smooth color gradients, so the decode cost is realistic, with
+	 * fine noise, so the JPEG is not trivially compressible.
+	 */
+	private static void writeSource(File file) throws IOException {
+		Bitmap source = Bitmap.createBitmap(SOURCE_WIDTH, SOURCE_HEIGHT, Bitmap.Config.ARGB_8888);
+		try {
+			int[] row = new int[SOURCE_WIDTH];
+			int seed = 1;
+			for (int y = 0; y < SOURCE_HEIGHT; y++) {
+				for (int x = 0; x < SOURCE_WIDTH; x++) {
+					seed = seed * 1103515245 + 12345;
+					int noise = (seed >>> 28) - 8;
+					int r = clamp(x * 255 / SOURCE_WIDTH + noise);
+					int g = clamp(y * 255 / SOURCE_HEIGHT + noise);
+					int b = clamp((x + y) * 255 / (SOURCE_WIDTH + SOURCE_HEIGHT) + noise);
+					row[x] = 0xff000000 | r << 16 | g << 8 | b;
+				}
+				source.setPixels(row, 0, SOURCE_WIDTH, 0, y, SOURCE_WIDTH, 1);
+			}
+			FileOutputStream stream = new FileOutputStream(file);
+			try {
+				source.compress(Bitmap.CompressFormat.JPEG, 90, stream);
+			} finally {
+				stream.close();
+			}
+		} finally {
+			source.recycle();
+		}
+	}
+
+	private static int clamp(int value) {
+		return Math.max(0, Math.min(255, value));
+	}
+	// endregion
+}
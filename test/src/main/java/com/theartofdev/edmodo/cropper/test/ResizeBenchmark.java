@@ -0,0 +1,196 @@
+package com.theartofdev.edmodo.cropper.test;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import com.theartofdev.edmodo.cropper.CropEngine;
+import com.theartofdev.edmodo.cropper.CropSpec;
+import com.theartofdev.edmodo.cropper.ImageCropView;
+
+import java.util.Locale;
+
+/**
+ * Benchmark of resizing a crop by every {@link ImageCropView.ResizeFilter}, compared with the
+ * single filtered scale and the unfiltered scale the crop was resized by before.<br>
+ * Reports the throughput in source megapixels per second (best of a few runs) and the quality as
+ * PSNR against the synthetic source image averaged over the area of every target pixel.<br>
+ * The source is a zone plate, concentric rings rising to the pixel frequency limit at the corners,
+ * that shows every aliasing and blur of a resize.
+ */
+final class ResizeBenchmark {
+
+	private static final int SOURCE_WIDTH = 3000;
+
+	private static final int SOURCE_HEIGHT = 2000;
+
+	/**
+	 * The sizes to resize to: downscale to less than half, downscale to more than half and upscale
+	 */
+	private static final int[][] TARGET_SIZES = {{800, 533}, {2100, 1400}, {3600, 2400}};
+
+	private static final int RUNS = 3;
+
+	/**
+	 * The max samples per axis of every target pixel area in the reference image
+	 */
+	private static final int MAX_REFERENCE_SAMPLES = 4;
+
+	private ResizeBenchmark() {
+	}
+
+	/**
+	 * Run the benchmark, must not be called on the UI thread.
+	 *
+	 * @return the report of the throughput and quality of every filter and target size
+	 */
+	static String run(Context context) {
+		Bitmap source = createSource();
+		StringBuilder report = new StringBuilder();
+		try {
+			for (int[] size : TARGET_SIZES) {
+				int width = size[0];
+				int height = size[1];
+				int[] reference = createReference(width, height);
+				report.append(
+						String.format(
+								Locale.US, "%dx%d -> %dx%d\n", SOURCE_WIDTH, SOURCE_HEIGHT, width, height));
+
+				CropSpec spec =
+						new CropSpec.Builder(new Rect(0, 0, SOURCE_WIDTH, SOURCE_HEIGHT))
+								.setRequestedSize(width, height, ImageCropView.RequestSizeOptions.RESIZE_EXACT)
+								.build();
+				for (ImageCropView.ResizeFilter filter : ImageCropView.ResizeFilter.values()) {
+					CropEngine engine = new CropEngine(context).setResizeFilter(filter);
+					long best = Long.MAX_VALUE;
+					Bitmap result = null;
+					for (int i = 0; i < RUNS; i++) {
+						recycle(result);
+						long start = System.nanoTime();
+						ImageCropView.CropResult cropResult = engine.crop(source, spec, 0, false, false);
+						best = Math.min(best, System.nanoTime() - start);
+						if (cropResult.getError() != null) {
+							throw new RuntimeException(cropResult.getError());
+						}
+						result = cropResult.getBitmap();
+					}
+					appendResult(report, filter.name(), best, result, reference);
+					recycle(result);
+				}
+				for (boolean filtered : new boolean[]{true, false}) {
+					long best = Long.MAX_VALUE;
+					Bitmap result = null;
+					for (int i = 0; i < RUNS; i++) {
+						recycle(result);
+						long start = System.nanoTime();
+						result = Bitmap.createScaledBitmap(source, width, height, filtered);
+						best = Math.min(best, System.nanoTime() - start);
+					}
+					appendResult(
+							report, filtered ? "single pass" : "unfiltered", best, result, reference);
+					recycle(result);
+				}
+				report.append('\n');
+			}
+		} finally {
+			source.recycle();
+		}
+		return report.toString();
+	}
+
+	// region: Private methods
+
+	private static void appendResult(
+			StringBuilder report, String name, long nanos, Bitmap result, int[] reference) {
+		double megapixelsPerSecond = SOURCE_WIDTH * (double) SOURCE_HEIGHT * 1000 / nanos;
+		report.append(
+				String.format(
+						Locale.US,
+						"  %-12s %7.1f MP/s  %5.2f dB\n",
+						name,
+						megapixelsPerSecond,
+						getPsnr(result, reference)));
+	}
+
+	/**
+	 * The zone plate brightness (0 - 1) at the given point in source pixel units: rings around the
+	 * center whose frequency rises linearly to half a cycle per pixel at the corners.
+	 */
+	private static double getZonePlate(double x, double y) {
+		double dx = x - SOURCE_WIDTH / 2d;
+		double dy = y - SOURCE_HEIGHT / 2d;
+		double radius = Math.hypot(SOURCE_WIDTH / 2d, SOURCE_HEIGHT / 2d);
+		return 0.5 + 0.5 * Math.cos(Math.PI * (dx * dx + dy * dy) / (2 * radius));
+	}
+
+	/**
+	 * Create the source bitmap by sampling the zone plate at the pixel centers.
+	 */
+	private static Bitmap createSource() {
+		Bitmap source = Bitmap.createBitmap(SOURCE_WIDTH, SOURCE_HEIGHT, Bitmap.Config.ARGB_8888);
+		int[] row = new int[SOURCE_WIDTH];
+		for (int y = 0; y < SOURCE_HEIGHT; y++) {
+			for (int x = 0; x < SOURCE_WIDTH; x++) {
+				row[x] = toGray(getZonePlate(x + 0.5, y + 0.5));
+			}
+			source.setPixels(row, 0, SOURCE_WIDTH, 0, y, SOURCE_WIDTH, 1);
+		}
+		return source;
+	}
+
+	/**
+	 * Create the ideal resize of the source to the given size, the zone plate averaged over the
+	 * area of every target pixel.
+	 */
+	private static int[] createReference(int width, int height) {
+		double scaleX = SOURCE_WIDTH / (double) width;
+		double scaleY = SOURCE_HEIGHT / (double) height;
+		int samples =
+				Math.min(MAX_REFERENCE_SAMPLES, (int) Math.ceil(2 * Math.max(scaleX, scaleY)));
+		int[] reference = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				double sum = 0;
+				for (int sy = 0; sy < samples; sy++) {
+					for (int sx = 0; sx < samples; sx++) {
+						sum +=
+								getZonePlate(
+										(x + (sx + 0.5) / samples) * scaleX, (y + (sy + 0.5) / samples) * scaleY);
+					}
+				}
+				reference[y * width + x] = toGray(sum / (samples * samples));
+			}
+		}
+		return reference;
+	}
+
+	/**
+	 * The peak signal to noise ratio of the given bitmap to the given reference, higher is closer.
+	 */
+	private static double getPsnr(Bitmap bitmap, int[] reference) {
+		int width = bitmap.getWidth();
+		int[] row = new int[width];
+		double squaredError = 0;
+		for (int y = 0; y < bitmap.getHeight(); y++) {
+			bitmap.getPixels(row, 0, width, 0, y, width, 1);
+			for (int x = 0; x < width; x++) {
+				int error = (row[x] & 0xff) - (reference[y * width + x] & 0xff);
+				squaredError += error * error;
+			}
+		}
+		double mse = squaredError / reference.length;
+		return mse > 0 ? 10 * Math.log10(255 * 255 / mse) : Double.POSITIVE_INFINITY;
+	}
+
+	private static int toGray(double value) {
+		int gray = (int) Math.round(Math.max(0, Math.min(1, value)) * 255);
+		return 0xff000000 | gray << 16 | gray << 8 | gray;
+	}
+
+	private static void recycle(Bitmap bitmap) {
+		if (bitmap != null) {
+			bitmap.recycle();
+		}
+	}
+	// endregion
+}
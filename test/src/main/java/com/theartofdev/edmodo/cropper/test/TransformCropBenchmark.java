@@ -0,0 +1,269 @@
+package com.theartofdev.edmodo.cropper.test;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+
+import com.theartofdev.edmodo.cropper.BitmapPool;
+import com.theartofdev.edmodo.cropper.CropEngine;
+import com.theartofdev.edmodo.cropper.CropSpec;
+import com.theartofdev.edmodo.cropper.ImageCropView;
+
+import java.util.Locale;
+
+/**
+ * Benchmark of the single pass crop transform, that rotates, flips, crops and resizes the crop
+ * region into one bitmap of the final size, compared with the chain it replaced: rotate and flip
+ * the region into a new bitmap, crop the rotated bitmap by the crop window if rotated by not
+ * straight angle, then scale the crop into another bitmap.<br>
+ * Reports the best time (of a few runs) of both on the same crop region, and the bitmaps every crop
+ * allocates: created by the chain, and taken from the bitmap pool (or created when the pool has
+ * none) by the transform.
+ */
+final class TransformCropBenchmark {
+
+	private static final int SOURCE_WIDTH = 3000;
+
+	private static final int SOURCE_HEIGHT = 2000;
+
+	/**
+	 * The size of the crop window, centered on the image
+	 */
+	private static final int CROP_WIDTH = 1600;
+
+	private static final int CROP_HEIGHT = 1000;
+
+	/**
+	 * The crops: rotation degrees, flip horizontally, and requested width and height (0 to not
+	 * resize)
+	 */
+	private static final int[][] CASES = {
+			{0, 0, 0, 0}, {90, 0, 1200, 800}, {30, 1, 1200, 800}, {30, 1, 400, 300}
+	};
+
+	private static final int RUNS = 3;
+
+	private TransformCropBenchmark() {
+	}
+
+	/**
+	 * Run the benchmark, must not be called on the UI thread.
+	 *
+	 * @return the report of the time and allocated bitmaps of the chain and the transform per crop
+	 */
+	static String run(Context context) {
+		Bitmap source = createSource();
+		StringBuilder report = new StringBuilder();
+		try {
+			CropEngine engine = new CropEngine(context);
+			for (int[] crop : CASES) {
+				int degrees = crop[0];
+				boolean flip = crop[1] != 0;
+				int reqWidth = crop[2];
+				int reqHeight = crop[3];
+				float[] points = getCropPoints(degrees);
+				report.append(
+						String.format(
+								Locale.US,
+								"rotate %d%s, %s\n",
+								degrees,
+								flip ? " flip" : "",
+								reqWidth > 0 ? "resize inside " + reqWidth + "x" + reqHeight : "no resize"));
+
+				long best = Long.MAX_VALUE;
+				int allocations = 0;
+				for (int i = 0; i < RUNS; i++) {
+					int[] count = new int[1];
+					long start = System.nanoTime();
+					Bitmap result = cropByChain(source, points, degrees, flip, reqWidth, reqHeight, count);
+					best = Math.min(best, System.nanoTime() - start);
+					allocations = count[0];
+					result.recycle();
+				}
+				appendResult(report, "chain", best, allocations);
+
+				CropSpec.Builder builder = new CropSpec.Builder(points);
+				if (reqWidth > 0) {
+					builder.setRequestedSize(
+							reqWidth, reqHeight, ImageCropView.RequestSizeOptions.RESIZE_INSIDE);
+				}
+				CropSpec spec = builder.build();
+				best = Long.MAX_VALUE;
+				for (int i = 0; i < RUNS; i++) {
+					int poolGets = BitmapPool.getHitCount() + BitmapPool.getMissCount();
+					long start = System.nanoTime();
+					ImageCropView.CropResult result = engine.crop(source, spec, degrees, flip, false);
+					best = Math.min(best, System.nanoTime() - start);
+					if (result.getError() != null) {
+						throw new RuntimeException(result.getError());
+					}
+					allocations = BitmapPool.getHitCount() + BitmapPool.getMissCount() - poolGets;
+					result.getBitmap().recycle();
+				}
+				appendResult(report, "transform", best, allocations);
+				report.append('\n');
+			}
+		} finally {
+			source.recycle();
+		}
+		return report.toString();
+	}
+
+	// region: Private methods
+
+	private static void appendResult(StringBuilder report, String name, long nanos, int bitmaps) {
+		report.append(
+				String.format(
+						Locale.US, "  %-10s %7.1f ms  %d bitmaps\n", name, nanos / 1e6, bitmaps));
+	}
+
+	/**
+	 * Crop by the chain the single pass transform replaced, counting the bitmaps it creates.
+	 *
+	 * @param count the counter of created bitmaps, at index 0
+	 */
+	private static Bitmap cropByChain(
+			Bitmap source,
+			float[] points,
+			int degrees,
+			boolean flip,
+			int reqWidth,
+			int reqHeight,
+			int[] count) {
+		Rect rect = getBoundingRect(points);
+
+		// rotate and flip the crop region
+		Matrix matrix = new Matrix();
+		matrix.setRotate(degrees);
+		matrix.postScale(flip ? -1 : 1, 1);
+		Bitmap result =
+				count(
+						source,
+						Bitmap.createBitmap(
+								source, rect.left, rect.top, rect.width(), rect.height(), matrix, true),
+						count);
+
+		// extra crop of the crop window out of the image rotated by not straight angle
+		if (degrees % 90 != 0) {
+			Rect rotatedRect = getRotatedCropRect(points, rect, degrees);
+			rotatedRect.intersect(0, 0, result.getWidth(), result.getHeight());
+			result =
+					count(
+							result,
+							Bitmap.createBitmap(
+									result,
+									rotatedRect.left,
+									rotatedRect.top,
+									rotatedRect.width(),
+									rotatedRect.height()),
+							count);
+		}
+
+		// resize inside the requested size
+		if (reqWidth > 0 && reqHeight > 0) {
+			int width = result.getWidth();
+			int height = result.getHeight();
+			float scale = Math.max(width / (float) reqWidth, height / (float) reqHeight);
+			if (scale > 1) {
+				result =
+						count(
+								result,
+								Bitmap.createScaledBitmap(
+										result, (int) (width / scale), (int) (height / scale), false),
+								count);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Count the given result bitmap if created by the step, and recycle the input of the step
+	 * unless it is the source image.
+	 */
+	private static Bitmap count(Bitmap input, Bitmap result, int[] count) {
+		if (result != input) {
+			count[0]++;
+			if (count[0] > 1) {
+				input.recycle();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The corners of the crop window, centered on the image rotated by the given degrees, in the
+	 * image coordinates.
+	 */
+	private static float[] getCropPoints(int degrees) {
+		float left = (SOURCE_WIDTH - CROP_WIDTH) / 2f;
+		float top = (SOURCE_HEIGHT - CROP_HEIGHT) / 2f;
+		float[] points = {
+				left, top,
+				left + CROP_WIDTH, top,
+				left + CROP_WIDTH, top + CROP_HEIGHT,
+				left, top + CROP_HEIGHT
+		};
+		Matrix matrix = new Matrix();
+		matrix.setRotate(-degrees, SOURCE_WIDTH / 2f, SOURCE_HEIGHT / 2f);
+		matrix.mapPoints(points);
+		return points;
+	}
+
+	private static Rect getBoundingRect(float[] points) {
+		float left = Float.MAX_VALUE;
+		float top = Float.MAX_VALUE;
+		float right = -Float.MAX_VALUE;
+		float bottom = -Float.MAX_VALUE;
+		for (int i = 0; i < points.length; i += 2) {
+			left = Math.min(left, points[i]);
+			top = Math.min(top, points[i + 1]);
+			right = Math.max(right, points[i]);
+			bottom = Math.max(bottom, points[i + 1]);
+		}
+		return new Rect(
+				Math.max(0, Math.round(left)),
+				Math.max(0, Math.round(top)),
+				Math.min(SOURCE_WIDTH, Math.round(right)),
+				Math.min(SOURCE_HEIGHT, Math.round(bottom)));
+	}
+
+	/**
+	 * The rectangle of the crop window in the region rotated by not straight angle, as the chain
+	 * computed it.
+	 */
+	private static Rect getRotatedCropRect(float[] points, Rect rect, int degrees) {
+		double rads = Math.toRadians(degrees);
+		int compareTo =
+				degrees < 90 || (degrees > 180 && degrees < 270) ? rect.left : rect.right;
+		for (int i = 0; i < points.length; i += 2) {
+			if (points[i] >= compareTo - 1 && points[i] <= compareTo + 1) {
+				int adjLeft = (int) Math.abs(Math.sin(rads) * (rect.bottom - points[i + 1]));
+				int adjTop = (int) Math.abs(Math.cos(rads) * (points[i + 1] - rect.top));
+				int width = (int) Math.abs((points[i + 1] - rect.top) / Math.sin(rads));
+				int height = (int) Math.abs((rect.bottom - points[i + 1]) / Math.cos(rads));
+				return new Rect(adjLeft, adjTop, adjLeft + width, adjTop + height);
+			}
+		}
+		return new Rect(0, 0, rect.width(), rect.height());
+	}
+
+	/**
+	 * Create the source bitmap of smooth color gradients.
+	 */
+	private static Bitmap createSource() {
+		Bitmap source = Bitmap.createBitmap(SOURCE_WIDTH, SOURCE_HEIGHT, Bitmap.Config.ARGB_8888);
+		int[] row = new int[SOURCE_WIDTH];
+		for (int y = 0; y < SOURCE_HEIGHT; y++) {
+			for (int x = 0; x < SOURCE_WIDTH; x++) {
+				int r = x * 255 / SOURCE_WIDTH;
+				int g = y * 255 / SOURCE_HEIGHT;
+				int b = (x + y) * 255 / (SOURCE_WIDTH + SOURCE_HEIGHT);
+				row[x] = 0xff000000 | r << 16 | g << 8 | b;
+			}
+			source.setPixels(row, 0, SOURCE_WIDTH, 0, y, SOURCE_WIDTH, 1);
+		}
+		return source;
+	}
+	// endregion
+}